@@ -28,6 +28,7 @@ import java.awt.Shape;
 import java.awt.Stroke;
 import java.awt.TexturePaint;
 import java.awt.Toolkit;
+import java.awt.Transparency;
 import java.awt.font.FontRenderContext;
 import java.awt.font.GlyphVector;
 import java.awt.geom.AffineTransform;
@@ -179,6 +180,8 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
 
     public final static int ROUGH_TEXT_RENDERING_STRATEGY = 0;
     public final static int BEST_TEXT_RENDERING_STRATEGY = 1;
+    /** Text too large for the glyph textures is drawn from distance fields */
+    public final static int DISTANCE_FIELD_TEXT_RENDERING_STRATEGY = 2;
 
     // GraphicsEngine class
     //
@@ -207,8 +210,10 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
         private ImageManager      imageManager;
         private StencilManager    stencilManager;
         private GradientManager   gradientManager;
+        private PrimitiveBatch    batch;
 
         private TextureFontRenderer textureFont;
+        private DistanceFieldFontRenderer distanceFieldFont;
         private OutlineFontRenderer outlineFont;
         private OutlineRoughFontRenderer outlineRoughFont;
         private FontManager fontManager;
@@ -225,6 +230,9 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
         private double[]          flatMatrix = new double[6];
         private Rectangle         windowBounds = null;
         private int               paintMode;
+        private boolean           opaquePaint = true;
+        private boolean           xorPaint;
+        private Texture           paintTexture;
 
         private boolean           frcAntialiasing;
         private boolean           frcUsesFractionalMetrics;
@@ -254,6 +262,7 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
         private boolean  immutableImageHint;
         private boolean  incrementalFontHint;
         private boolean  antiAliasingHint;
+        private boolean  batchHint;
         // will change the value when we can create a MULTISAMPLE_BUFFER with gl4java
         //        private boolean  aaEnabled = false;
 
@@ -266,12 +275,23 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
         Arc2D            arcProto = new Arc2D.Double();
         Line2D           lineProto = new Line2D.Double();
         Rectangle2D      rectProto = new Rectangle2D.Double();
+        HitTester        hitTester = new HitTester();
+
+        // Culling state: the clip whose device space bounds are cached
+        private Area       cullClip;
+        private boolean    cullRectangular;
+        private double     cullMinX, cullMinY, cullMaxX, cullMaxY;
+        private float[]    glyphPositions = new float[64];
+        int                culledCount;
+        int                drawnCount;
+        ArcGenerator     arcs = new ArcGenerator();
         double[]         point = new double[2];
         Graphics2D       g2d;
         BufferedImage    buf;
         Graphics2D       bg;
         double         maxLineWidth;
         double         minLineWidth;
+        float          glLineWidth = 1;
         int              maxTexSize;
 
         GraphicsEngine(GLAutoDrawable drawable) {
@@ -359,9 +379,10 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
             stencilManager = new StencilManager(gl);
             textureFont = new TextureFontRenderer();
             //TextureFontRenderer.setMaxTextureSize(maxTexSize);
+            distanceFieldFont = new DistanceFieldFontRenderer();
             outlineFont = new OutlineFontRenderer(tesselator);
             outlineRoughFont = new OutlineRoughFontRenderer(tesselator);
-            fontManager = new FontManager(gl, textureFont, outlineFont, outlineRoughFont);
+            fontManager = new FontManager(gl, textureFont, distanceFieldFont, outlineFont, outlineRoughFont);
             fontManager.setRoughOutlineQuality(FontManager.MIN_QUALITY);
 
             frcAntialiasing = false;
@@ -372,6 +393,7 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
             frc = g2d.getFontRenderContext();
 
             gradientManager = new GradientManager(gl);
+            batch = new PrimitiveBatch(gl);
 
             inited = true;
             if (DEBUG_CHECK_GL)
@@ -386,6 +408,7 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
         // Prepares the engine for rendering - resets the transform
         //
         void doReset() {
+            flushBatch();
             Dimension sz = new Dimension(drawable.getWidth(), drawable.getHeight());
             windowBounds = new Rectangle(0, 0, sz.width, sz.height);
 
@@ -396,6 +419,8 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
 
             shapeManager.flush(); // Deletes any unused call lists
             imageManager.flush(); // Deletes any unused call lists
+            textureFont.resetCounters(); // Glyph uploads are counted per frame
+            distanceFieldFont.resetCounters();
 
             if (DEBUG_CHECK_GL)
                 checkForErrors();
@@ -407,6 +432,13 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
             immutableShapeHint = (hints.get(AgileRenderingHints.KEY_IMMUTABLE_SHAPE_HINT) == Boolean.TRUE);
             immutableImageHint = (hints.get(AgileRenderingHints.KEY_IMMUTABLE_IMAGE_HINT) != Boolean.FALSE);
             incrementalFontHint = (hints.get(AgileRenderingHints.KEY_INCREMENTAL_FONT_RENDERER_HINT) != Boolean.FALSE);
+            batchHint = (hints.get(AgileRenderingHints.KEY_BATCH_PRIMITIVES_HINT) == Boolean.TRUE);
+            tesselator.setUseTriangulator(hints.get(AgileRenderingHints.KEY_JAVA_TRIANGULATOR_HINT) == Boolean.TRUE);
+            shapeManager.setContentCaching(hints.get(AgileRenderingHints.KEY_SHAPE_CONTENT_CACHE_HINT) == Boolean.TRUE);
+            Integer async = (Integer)hints.get(AgileRenderingHints.KEY_ASYNC_TESSELATION_HINT);
+            shapeManager.setAsyncPolicy(async == null ? ShapeManager.ASYNC_OFF : async.intValue());
+            if (! batchHint)
+                flushBatch();
             setProjectionMatrix((double[])hints.get(AgileRenderingHints.KEY_GL_PROJECTION_HINT));
             setModelViewMatrix((double[])hints.get(AgileRenderingHints.KEY_GL_MODELVIEW_HINT));
             frcAntialiasing =
@@ -433,10 +465,12 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
         void doEnableAntialiasing() {
             if (! antiAliasingHint)
                 return;
+            flushBatch();
             glState.glEnable(GL2.GL_MULTISAMPLE);
         }
 
         void doDisableAntialiasing() {
+            flushBatch();
             glState.glDisable(GL2.GL_MULTISAMPLE);
         }
 
@@ -474,29 +508,41 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
 
             }
 
+            opaquePaint = a == -1;
             glState.glColor4ub(r, g, b, a);
+            batch.setColor(r, g, b, a);
+            setBlend(a != -1);
+            if (DEBUG_CHECK_GL)
+                checkForErrors();
+        }
 
-            if (a != -1) {
+        // Enables or disables blending. While primitives are batched,
+        // blending is kept enabled: the translucent ones need it and it
+        // leaves the pixels of the opaque ones unchanged.
+        private void setBlend(boolean blend) {
+            if (blend) {
                 glState.glEnable(GL.GL_BLEND);
             }
-            else {
+            else if (batch.isEmpty()) {
                 glState.glDisable(GL.GL_BLEND);
             }
-            if (DEBUG_CHECK_GL)
-                checkForErrors();
         }
 
         void doSetGradient(GradientPaint gradient) {
+            flushBatch();
             useFastShapes = false;
             paintMode = PAINT_GRADIENT;
+            opaquePaint = alpha == 1 && gradient.getTransparency() == Transparency.OPAQUE;
             gradientManager.setGradient(gradient);
             gradientManager.setAlpha((float)alpha);
         }
 
         void doSetTexturePaint(TexturePaint tp) {
+            flushBatch();
             useFastShapes = false;
             gl.glColor4f(1.0f, 1.0f, 1.0f, (float)alpha);
             paintMode = PAINT_TEXTURE;
+            opaquePaint = alpha == 1 && tp.getTransparency() == Transparency.OPAQUE;
             texturePaint = tp;
         }
 
@@ -516,6 +562,7 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
         // arbitrary shape clipping.
         //
         void doSetClip(Rectangle rect) {
+            flushBatch();
             if (useShapeClip) {
                 stencilManager.disableClipping(StencilManager.STENCIL_1);
                 this.useShapeClip = false;
@@ -610,6 +657,7 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
             //
             // Need to render the shape into the Stencil buffer
             //
+            flushBatch();
             stencilManager.begin(StencilManager.STENCIL_1, null);
 
             // Fill the shape - note that clips are specified
@@ -652,7 +700,7 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
                     float t = (float)absLineWidth;
                     if (t < 1)
                         t = 1;
-                    gl.glLineWidth(t);
+                    setLineWidth(t);
                 }
             }
             if (DEBUG_CHECK_GL)
@@ -662,6 +710,8 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
 
         // PAINT MODE
         void doSetPaintXOR(boolean xor) {
+            flushBatch();
+            xorPaint = xor;
             if (xor) {
                 glState.glLogicOp(GL.GL_XOR);
             } else {
@@ -673,6 +723,7 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
 
         // TRANSFORMS
         private void loadProjectionMatrix() {
+            flushBatch();
             gl.glMatrixMode(GL2.GL_PROJECTION);
 
             if (projectionMatrix == null) {
@@ -799,11 +850,12 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
                         (point[1] * point[1]));
             }
 
+            batch.setTransform(transform);
             absLineWidth = lineWidth * scale;
             if (absLineWidth <= 0)
-                gl.glLineWidth(1);
+                setLineWidth(1);
             else if (absLineWidth < maxLineWidth) {
-                gl.glLineWidth((float)absLineWidth);
+                setLineWidth((float)absLineWidth);
             }
             shapeManager.setTolerance(1.0 / scale);
             active.relClipArea = null;
@@ -811,6 +863,42 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
                 checkForErrors();
         }
 
+        // Sets the GL line width, sending the batched lines first if
+        // they have been accumulated with another width.
+        private void setLineWidth(float width) {
+            if (batch.hasLines() && batch.getLineWidth() != width)
+                flushBatch();
+            glLineWidth = width;
+            gl.glLineWidth(width);
+        }
+
+        //
+        // Sends the batched primitives. Their vertices are already
+        // transformed, so they are drawn with the base modelview matrix.
+        //
+        void flushBatch() {
+            if (batch == null || batch.isEmpty())
+                return;
+            gl.glPushMatrix();
+            loadIdentityMatrix();
+            batch.flush();
+            gl.glPopMatrix();
+            if (DEBUG_CHECK_GL)
+                checkForErrors();
+        }
+
+        // Prepares the batch for a primitive of the specified kind and
+        // returns true, or returns false if batching is disabled.
+        private boolean beginBatch(int mode, int texture) {
+            if (! batchHint)
+                return false;
+            if (! batch.accepts(mode, texture, glLineWidth)) {
+                flushBatch();
+                batch.accepts(mode, texture, glLineWidth);
+            }
+            return true;
+        }
+
         public void doScale(double sx, double sy) {
             gl.glScaled(sx, sy, 1);
             transformChanged();
@@ -885,6 +973,10 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
         // STROKING
         void doDrawLine(float x1, float y1, float x2, float y2) {
             if (useFastShapes && absLineWidth < maxLineWidth) {
+                if (beginBatch(GL.GL_LINES, 0)) {
+                    batch.addLine(x1, y1, x2, y2);
+                    return;
+                }
                 gl.glBegin(GL.GL_LINES);
                 gl.glVertex2f(x1, y1);
                 gl.glVertex2f(x2, y2);
@@ -898,6 +990,7 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
         }
 
         void doDrawLines(int[] xPts, int[] yPts, int nPts, int mode) {
+            flushBatch();
             if (useFastShapes && absLineWidth < maxLineWidth) {
                 shapeManager.begin(mode);
                 for (int i = 0; i < nPts; i++)
@@ -922,7 +1015,7 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
         void doDrawRect(int x1, int y1, int width, int height) {
 
             //If rectangle is outside the clipping view, return routine immediately
-            if( isOutside(new Rectangle2D.Double(x1, y1, width, height)) )
+            if (isOutside(x1, y1, width, height))
                 return;
 
             int x2 = x1 + width;
@@ -935,6 +1028,10 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
 
             if (useFastShapes) {
                 if (absLineWidth < maxLineWidth) {
+                    if (beginBatch(GL.GL_LINES, 0)) {
+                        batch.addRectOutline(x1, y1, x3, y3);
+                        return;
+                    }
                     // For 4 vertices, glBegin/glEnd is faster than vertex arrays
                     gl.glBegin(GL2.GL_LINE_LOOP);
                     gl.glVertex2i(x1, y1);
@@ -944,7 +1041,18 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
                     gl.glEnd();
                 } else {
                     float lw = (float)(lineWidth / 2.0);
-                    if (lw >= width || lw >= height) {
+                    if (beginBatch(GL.GL_TRIANGLES, 0)) {
+                        if (lw >= width || lw >= height) {
+                            batch.addRect(x1-lw, y1-lw, x3+lw, y3+lw);
+                        }
+                        else {
+                            batch.addQuad(x1-lw, y1-lw, x2+lw, y2-lw, x2-lw, y2+lw, x1+lw, y1+lw);
+                            batch.addQuad(x4-lw, y4+lw, x1-lw, y1-lw, x1+lw, y1+lw, x4+lw, y4-lw);
+                            batch.addQuad(x4-lw, y4+lw, x3+lw, y3+lw, x3-lw, y3-lw, x4+lw, y4-lw);
+                            batch.addQuad(x2+lw, y2-lw, x3+lw, y3+lw, x3-lw, y3-lw, x2-lw, y2+lw);
+                        }
+                    }
+                    else if (lw >= width || lw >= height) {
                         gl.glRectf(x1-lw, y1-lw, x3+lw, y3+lw);
                     }
                     else {
@@ -965,18 +1073,83 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
         }
 
         boolean isOutside(Rectangle2D bounds){
-            Rectangle2D tBounds = RectUtils.transform(bounds, active.transform);
+            return isOutside(bounds.getX(), bounds.getY(), bounds.getWidth(), bounds.getHeight());
+        }
 
+        // Returns true if a rectangle in user space, widened by the line
+        // width, cannot touch the clip. The rectangle is transformed as a
+        // center and extents, so this does not allocate; the Area is only
+        // tested when the clip is not a rectangle and its bounds are hit.
+        boolean isOutside(double x, double y, double w, double h) {
+            Area clip = active.clipArea;
+            if (clip == null) {
+                drawnCount++;
+                return false;
+            }
+            if (clip != cullClip)
+                setCullClip(clip);
+
+            AffineTransform t = active.transform;
+            double m00 = t.getScaleX(), m01 = t.getShearX();
+            double m10 = t.getShearY(), m11 = t.getScaleY();
+            double hw = w / 2, hh = h / 2;
+            double cx = m00 * (x + hw) + m01 * (y + hh) + t.getTranslateX();
+            double cy = m10 * (x + hw) + m11 * (y + hh) + t.getTranslateY();
+            double ex = Math.abs(m00 * hw) + Math.abs(m01 * hh) + absLineWidth / 2;
+            double ey = Math.abs(m10 * hw) + Math.abs(m11 * hh) + absLineWidth / 2;
+
+            if (cx + ex < cullMinX || cx - ex > cullMaxX
+                || cy + ey < cullMinY || cy - ey > cullMaxY
+                || (!cullRectangular && !clip.intersects(cx - ex, cy - ey, 2 * ex, 2 * ey))) {
+                culledCount++;
+                return true;
+            }
+            drawnCount++;
+            return false;
+        }
+
+        // Caches the device space bounds of a clip area
+        private void setCullClip(Area clip) {
+            Rectangle2D bounds = clip.getBounds2D();
+            cullMinX = bounds.getMinX();
+            cullMinY = bounds.getMinY();
+            cullMaxX = bounds.getMaxX();
+            cullMaxY = bounds.getMaxY();
+            cullRectangular = clip.isRectangular();
+            cullClip = clip;
+        }
 
-            tBounds.add(tBounds.getMinX()-absLineWidth/2, tBounds.getMinY()-absLineWidth/2);
-            tBounds.add(tBounds.getMaxX()+absLineWidth/2, tBounds.getMaxY()+absLineWidth/2);
+        // Returns true if a string drawn at (x, y) cannot touch the clip.
+        // The glyphs are assumed to fit in boxes two em wide, from two em
+        // above the baseline to one em below, so that no visible string is
+        // culled.
+        private boolean isTextOutside(Font font, int glyphs, float x, float y) {
+            if (font.isTransformed())
+                return false;
+            float em = font.getSize2D();
+            return isOutside(x - em, y - 2 * em, (glyphs + 1) * 2 * em, 3 * em);
+        }
 
-            //The Shape.intersects() method is faster, although less precise, than its Area.intersects() counterpart
-            //See http://docs.oracle.com/javase/1.4.2/docs/api/java/awt/Shape.html#intersects(java.awt.geom.Rectangle2D)
-            if ( (active.clipArea != null) && !( ((Shape)active.clipArea).intersects(tBounds)))
-                return true;
-            else
+        // Same as above for a glyph vector, from the positions of its glyphs
+        private boolean isTextOutside(GlyphVector g, float x, float y) {
+            Font font = g.getFont();
+            int n = g.getNumGlyphs();
+            if (n == 0 || font.isTransformed() || g.getGlyphTransform(0) != null)
                 return false;
+            if (glyphPositions.length < 2 * (n + 1))
+                glyphPositions = new float[2 * (n + 1)];
+            g.getGlyphPositions(0, n + 1, glyphPositions);
+            float minX = glyphPositions[0], maxX = minX;
+            float minY = glyphPositions[1], maxY = minY;
+            for (int i = 2; i < 2 * (n + 1); i += 2) {
+                minX = Math.min(minX, glyphPositions[i]);
+                maxX = Math.max(maxX, glyphPositions[i]);
+                minY = Math.min(minY, glyphPositions[i+1]);
+                maxY = Math.max(maxY, glyphPositions[i+1]);
+            }
+            float em = font.getSize2D();
+            return isOutside(x + minX - 2 * em, y + minY - 2 * em,
+                             maxX - minX + 4 * em, maxY - minY + 3 * em);
         }
 
         void doDrawShape(Shape shape) {
@@ -989,7 +1162,10 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
                 // draw the vertices using GL Lines.
                 //
                 PathIterator path = shape.getPathIterator(null, shapeManager.getTolerance()/scale);
-                shapeManager.send(path, false);
+                if (beginBatch(GL.GL_LINES, 0))
+                    batch.addPath(path, false);
+                else
+                    shapeManager.send(path, false);
             } else {
                 drawShape(shape, null, immutableShapeHint, convexHint);
             }
@@ -1005,11 +1181,16 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
         // All drawn shapes go through this primitive method (unless faster methods for drawing exist)
         //
         private void drawShape(Shape shape, VertexAttributes attributes, boolean immutable, boolean convex) {
-            if (paintMode != PAINT_SOLID) {
+            flushBatch();
+            // Opaque strokes can be drawn with overlapping triangles
+            boolean opaque = opaquePaint && !xorPaint;
+            if (paintMode != PAINT_SOLID && !(opaque && active.stroke instanceof BasicStroke)) {
                 // Push strokes drawn with a gradient through the fill routine...
                 fillShape(active.stroke.createStrokedShape(shape), attributes, false, convex);
-            } else {
-                shapeManager.draw(shape, attributes, (float)scale, active.stroke, immutable, convex);
+            } else if (beginPaint()) {
+                shapeManager.draw(shape, attributes, (float)scale, active.stroke,
+                                  immutable, convex, opaque);
+                endPaint();
             }
             if (DEBUG_CHECK_GL)
                 checkForErrors();
@@ -1020,7 +1201,12 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
             if (width <= 0 || height <= 0)
                 return;
             if (useFastShapes) {
-                gl.glRectd(x1, y1, x1 + width, y1 + height);
+                if (isOutside(x1, y1, width, height))
+                    return;
+                if (beginBatch(GL.GL_TRIANGLES, 0))
+                    batch.addRect(x1, y1, x1 + width, y1 + height);
+                else
+                    gl.glRectd(x1, y1, x1 + width, y1 + height);
             } else {
                 rectProto.setRect(x1, y1, width, height);
                 fillShape(rectProto, null, false, true);
@@ -1031,6 +1217,11 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
 
         void doFillPolygon(int[] xPts, int[] yPts, int nPts) {
             if (useFastShapes) {
+                if ((nPts <= 4 || convexHint) && beginBatch(GL.GL_TRIANGLES, 0)) {
+                    batch.addPolygon(xPts, yPts, nPts);
+                    return;
+                }
+                flushBatch();
                 shapeManager.fill(xPts, yPts, nPts, convexHint);
             } else {
                 Polygon p = new Polygon(xPts, yPts, nPts);
@@ -1041,59 +1232,248 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
         }
 
         void doFillShape(Shape shape) {
-            //            fillShape(shape, null, immutableShapeHint, convexHint);
-            tesselator.fill(gl, shape,  null, 1);
+            fillShape(shape, null, immutableShapeHint, convexHint);
         }
 
         void doFillShape(Shape shape, boolean convex) {
             fillShape(shape, null, immutableShapeHint, convex);
         }
 
+        // Fills the instances of a prototype with a solid paint, expanded
+        // on the CPU into the primitive batch. Returns false if the paint
+        // is not solid.
+        boolean doFillInstances(Shape prototype, float[] transforms, int[] colors, int count) {
+            if (paintMode != PAINT_SOLID)
+                return false;
+            if (count <= 0)
+                return true;
+
+            // Flatten for the largest instance on the screen
+            double maxScale = 0;
+            for (int i = 0; i < count * 6; i += 6) {
+                maxScale = Math.max(maxScale, Math.hypot(transforms[i], transforms[i+1]));
+                maxScale = Math.max(maxScale, Math.hypot(transforms[i+2], transforms[i+3]));
+            }
+            if (maxScale == 0)
+                return true;
+            VertexArray triangles = shapeManager.getPrototype(prototype,
+                    shapeManager.getTolerance() / (scale * maxScale), convexHint);
+            int n = triangles.getVertexCount();
+            if (n == 0)
+                return true;
+            java.nio.FloatBuffer vertices = triangles.getDataRef();
+
+            if (! batch.accepts(GL.GL_TRIANGLES, 0, glLineWidth)) {
+                flushBatch();
+                batch.accepts(GL.GL_TRIANGLES, 0, glLineWidth);
+            }
+            boolean translucent = false;
+            for (int i = 0; i < count; i++) {
+                if (colors != null) {
+                    int argb = colors[i];
+                    byte a = (byte)(alpha * (argb >>> 24));
+                    batch.setColor((byte)(argb >> 16), (byte)(argb >> 8), (byte)argb, a);
+                    translucent |= a != -1;
+                }
+                batch.addInstance(vertices, n, transforms, i * 6);
+            }
+            if (colors != null) {
+                batch.setColor(AgileState.lastR, AgileState.lastG, AgileState.lastB, AgileState.lastA);
+                if (translucent)
+                    setBlend(true);
+            }
+            if (! batchHint)
+                flushBatch();
+            return true;
+        }
+
         void doFillVertexArray(VertexArray array, VertexAttributes attributes) {
             fillShape(array, attributes, immutableShapeHint, false);
         }
 
+        // OVALS, ROUND RECTANGLES AND ARCS
+        // With a solid paint, they are generated from unit circle tables,
+        // with a number of segments depending on their size on the
+        // screen, and sent as one convex fan or line loop.
+        void doFillOval(double x, double y, double w, double h) {
+            if (! useFastShapes) {
+                ovalProto.setFrame(x, y, w, h);
+                doFillShape(ovalProto, true);
+                return;
+            }
+            if (w <= 0 || h <= 0 || isOutside(x, y, w, h))
+                return;
+            arcs.oval(x, y, w, h, ArcGenerator.getSegments(Math.max(w, h) / 2 * scale));
+            fillArcs();
+        }
+
+        void doDrawOval(double x, double y, double w, double h) {
+            if (! useFastShapes || absLineWidth >= maxLineWidth) {
+                ovalProto.setFrame(x, y, w, h);
+                doDrawShape(ovalProto);
+                return;
+            }
+            if (w < 0 || h < 0 || isOutside(x, y, w, h))
+                return;
+            arcs.oval(x, y, w, h, ArcGenerator.getSegments(Math.max(w, h) / 2 * scale));
+            drawArcs(true);
+        }
+
+        void doFillRoundRect(double x, double y, double w, double h, double arcWidth, double arcHeight) {
+            if (! useFastShapes) {
+                roundRectProto.setRoundRect(x, y, w, h, arcWidth, arcHeight);
+                doFillShape(roundRectProto, true);
+                return;
+            }
+            if (w <= 0 || h <= 0 || isOutside(x, y, w, h))
+                return;
+            double radius = Math.max(Math.min(Math.abs(arcWidth), w), Math.min(Math.abs(arcHeight), h)) / 2;
+            arcs.roundRect(x, y, w, h, arcWidth, arcHeight, ArcGenerator.getSegments(radius * scale));
+            fillArcs();
+        }
+
+        void doDrawRoundRect(double x, double y, double w, double h, double arcWidth, double arcHeight) {
+            if (! useFastShapes || absLineWidth >= maxLineWidth) {
+                roundRectProto.setRoundRect(x, y, w, h, arcWidth, arcHeight);
+                doDrawShape(roundRectProto);
+                return;
+            }
+            if (w < 0 || h < 0 || isOutside(x, y, w, h))
+                return;
+            double radius = Math.max(Math.min(Math.abs(arcWidth), w), Math.min(Math.abs(arcHeight), h)) / 2;
+            arcs.roundRect(x, y, w, h, arcWidth, arcHeight, ArcGenerator.getSegments(radius * scale));
+            drawArcs(true);
+        }
+
+        void doFillArc(double x, double y, double w, double h, double start, double extent) {
+            if (! useFastShapes) {
+                arcProto.setArc(x, y, w, h, start, extent, Arc2D.PIE);
+                fillShape(arcProto, null, false, false);
+                return;
+            }
+            if (w <= 0 || h <= 0 || extent == 0 || isOutside(x, y, w, h))
+                return;
+            arcs.arc(x, y, w, h, start, extent, ArcGenerator.getSegments(Math.max(w, h) / 2 * scale), true);
+            fillArcs();
+        }
+
+        void doDrawArc(double x, double y, double w, double h, double start, double extent) {
+            if (! useFastShapes || absLineWidth >= maxLineWidth) {
+                arcProto.setArc(x, y, w, h, start, extent, Arc2D.OPEN);
+                doDrawShape(arcProto);
+                return;
+            }
+            if (w < 0 || h < 0 || isOutside(x, y, w, h))
+                return;
+            boolean closed = arcs.arc(x, y, w, h, start, extent,
+                                      ArcGenerator.getSegments(Math.max(w, h) / 2 * scale), false);
+            drawArcs(closed);
+        }
+
+        // Fills the convex polygon of the arc generator
+        private void fillArcs() {
+            double[] xPts = arcs.getX(), yPts = arcs.getY();
+            int n = arcs.getCount();
+            if (beginBatch(GL.GL_TRIANGLES, 0)) {
+                batch.addPolygon(xPts, yPts, n);
+            }
+            else {
+                flushBatch();
+                shapeManager.begin(GL2.GL_TRIANGLE_FAN);
+                for (int i = 0; i < n; i++)
+                    shapeManager.addVertex(xPts[i], yPts[i]);
+                shapeManager.end();
+            }
+            if (DEBUG_CHECK_GL)
+                checkForErrors();
+        }
+
+        // Draws the polyline of the arc generator with GL lines
+        private void drawArcs(boolean closed) {
+            double[] xPts = arcs.getX(), yPts = arcs.getY();
+            int n = arcs.getCount();
+            if (beginBatch(GL.GL_LINES, 0)) {
+                batch.addPolyline(xPts, yPts, n, closed);
+            }
+            else {
+                flushBatch();
+                shapeManager.begin(closed ? GL2.GL_LINE_LOOP : GL2.GL_LINE_STRIP);
+                for (int i = 0; i < n; i++)
+                    shapeManager.addVertex(xPts[i], yPts[i]);
+                shapeManager.end();
+            }
+            if (DEBUG_CHECK_GL)
+                checkForErrors();
+        }
+
         // All fill methods come here
         private void fillShape(Shape shape, VertexAttributes attributes, boolean immutable, boolean convex) {
             if(isOutside(shape.getBounds2D()))
                 return;
 
-            switch (paintMode) {
-            case PAINT_SOLID:
-                // Just fill the shape
+            if (paintMode == PAINT_SOLID && convex && !immutable && attributes == null
+                    && !(shape instanceof VertexArray)
+                    && beginBatch(GL.GL_TRIANGLES, 0)) {
+                // Small convex shapes (ovals, round rects) are sent
+                // flattened as triangle fans.
+                batch.addPath(shape.getPathIterator(null, shapeManager.getTolerance()/scale), true);
+                return;
+            }
+            flushBatch();
+
+            if (beginPaint()) {
                 shapeManager.fill(shape, attributes, (float)scale, immutable, convex);
-                break;
+                endPaint();
+            }
+
+            if (DEBUG_CHECK_GL)
+                checkForErrors();
+        }
+
+        // Sets up the current paint before filling triangles. Returns false
+        // if nothing should be drawn.
+        private boolean beginPaint() {
+            switch (paintMode) {
             case PAINT_GRADIENT:
                 // Installs a 1D texture with a suitable texture generator
-                // and fills the shape.
                 gradientManager.begin((float)alpha);
-                shapeManager.fill(shape, attributes, (float)scale, immutable, convex);
-                gradientManager.end();
                 break;
             case PAINT_TEXTURE:
                 // Installs a 2D texture with S and T texture gen
-                // and fills the shape.
-                Texture texture = imageManager.findTexture(texturePaint.getImage(),
+                paintTexture = imageManager.findTexture(texturePaint.getImage(),
                         null,
                         immutableImageHint, true);
-
-                if (texture != null) {
-                    texture.begin(texturePaint.getAnchorRect());
-                    shapeManager.fill(shape, attributes, (float)scale, immutable, convex);
-                    texture.end();
-                }
+                if (paintTexture == null)
+                    return false;
+                paintTexture.begin(texturePaint.getAnchorRect());
+                break;
+            default:
+                // Just fill the shape
                 break;
             }
+            return true;
+        }
 
-            if (DEBUG_CHECK_GL)
-                checkForErrors();
+        private void endPaint() {
+            switch (paintMode) {
+            case PAINT_GRADIENT:
+                gradientManager.end();
+                break;
+            case PAINT_TEXTURE:
+                paintTexture.end();
+                paintTexture = null;
+                break;
+            default:
+                break;
+            }
         }
 
 
         // TEXT
         void doDrawString(String string, float x, float y) {
-            if (font == null)
+            if (font == null || isTextOutside(font, string.length(), x, y))
                 return;
+            flushBatch();
             gl.glPushMatrix();
             gl.glTranslated(x, y, 0);
 
@@ -1108,9 +1488,12 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
 
 
         void doDrawGlyphVector(GlyphVector g, float x, float y) {
+            if (isTextOutside(g, x, y))
+                return;
             Font font = g.getFont();
             FontRenderContext frc_gv = g.getFontRenderContext();
 
+            flushBatch();
             gl.glPushMatrix();
             gl.glTranslatef(x, y, 0);
 
@@ -1128,6 +1511,18 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
         void doDrawTexture(Texture tex, double x1, double y1, double x2, double y2) {
             if (alpha == 0)
                 return;
+            if (batchHint) {
+                if (tex.isUpdateNeeded())
+                    flushBatch(); // the pixels of a batched quad may change
+                tex.prepare();
+                if (tex.hasAlpha())
+                    setBlend(true);
+                beginBatch(GL.GL_TRIANGLES, tex.getId());
+                batch.setColor((byte)-1, (byte)-1, (byte)-1, (byte)(alpha * 255));
+                tex.paint(batch, x1, y1, x2, y2);
+                active.setPaint(active.paint);
+                return;
+            }
             glState.glColor4f(1, 1, 1, (float)alpha);
             tex.paint(x1, y1, x2, y2);
             active.setPaint(active.paint);
@@ -1168,6 +1563,7 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
         //        }
 
         void doCopyArea(Rectangle src, Rectangle dst) {
+            flushBatch();
             int wasBlending = glState.getState(GL.GL_BLEND);
             gl.glReadBuffer(glState.getState(GL2.GL_DOUBLEBUFFER)!=0 ? GL.GL_BACK : GL.GL_FRONT);
             gl.glPushMatrix();
@@ -1186,6 +1582,7 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
         // EXTENSION
 
         void doRunGL(GLEventListener ev) {
+            flushBatch();
             try {
                 glState.save();
                 ev.init(drawable);
@@ -1283,12 +1680,138 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
         return engine.fontManager.getRenderingStrategy();
     }
 
+    /**
+     * Set the maximum number of bytes used to cache the geometry of
+     * immutable shapes in OpenGL buffers. When the budget is exceeded, the
+     * least recently drawn shapes are evicted.
+     */
+    public void setShapeCacheBudget(long bytes) {
+        GeometryCache.defaultBudget = bytes;
+        if (engine.shapeManager != null)
+            engine.shapeManager.getCache().setBudget(bytes);
+    }
+
+    public long getShapeCacheBudget() {
+        if (engine.shapeManager != null)
+            return engine.shapeManager.getCache().getBudget();
+        return GeometryCache.defaultBudget;
+    }
+
+    /**
+     * Returns the number of bytes currently used to cache the geometry of
+     * immutable shapes.
+     */
+    public long getShapeCacheSize() {
+        return engine.shapeManager == null ? 0 : engine.shapeManager.getCache().getSize();
+    }
+
+    /**
+     * Returns the number of immutable shapes drawn from the cache.
+     */
+    public int getShapeCacheHitCount() {
+        return engine.shapeManager == null ? 0 : engine.shapeManager.getCache().getHitCount();
+    }
+
+    /**
+     * Returns the number of immutable shapes that had to be tesselated.
+     */
+    public int getShapeCacheMissCount() {
+        return engine.shapeManager == null ? 0 : engine.shapeManager.getCache().getMissCount();
+    }
+
+    /**
+     * Returns the number of shapes evicted from the cache to fit the budget.
+     */
+    public int getShapeCacheEvictionCount() {
+        return engine.shapeManager == null ? 0 : engine.shapeManager.getCache().getEvictionCount();
+    }
+
+    /**
+     * Returns the number of primitives, images and strings skipped because
+     * their bounds were outside of the clip.
+     */
+    public int getCulledCount() {
+        return engine.culledCount;
+    }
+
+    /**
+     * Returns the number of primitives, images and strings whose bounds
+     * were tested against the clip and found visible.
+     */
+    public int getDrawnCount() {
+        return engine.drawnCount;
+    }
+
+    /**
+     * Resets the culled and drawn counters.
+     */
+    public void resetCullingCounters() {
+        engine.culledCount = 0;
+        engine.drawnCount = 0;
+    }
+
+    /**
+     * Returns the fraction of the glyph atlas, shared by all the fonts
+     * rendered as textures, taken by glyphs.
+     */
+    public double getGlyphAtlasOccupancy() {
+        return TextureFontRenderer.getAtlas().getOccupancy();
+    }
+
+    /**
+     * Returns the number of glyphs in the glyph atlas.
+     */
+    public int getGlyphAtlasGlyphCount() {
+        return TextureFontRenderer.getAtlas().getGlyphCount();
+    }
+
+    /**
+     * Returns the number of texture uploads of glyph atlas pages since the
+     * last {@link #resetAll(GLAutoDrawable)}, usually the current frame.
+     */
+    public int getGlyphUploadCount() {
+        if (engine.textureFont == null)
+            return 0;
+        return engine.textureFont.getUploadCount() + engine.distanceFieldFont.getUploadCount();
+    }
+
+    /**
+     * Returns the number of bytes of glyph atlas pages uploaded since the
+     * last {@link #resetAll(GLAutoDrawable)}.
+     */
+    public long getGlyphUploadedBytes() {
+        if (engine.textureFont == null)
+            return 0;
+        return engine.textureFont.getUploadedBytes() + engine.distanceFieldFont.getUploadedBytes();
+    }
+
+    /**
+     * Returns the number of draw calls issued for texture glyphs since the
+     * last {@link #resetAll(GLAutoDrawable)}: one per string and atlas page.
+     */
+    public int getGlyphDrawCount() {
+        if (engine.textureFont == null)
+            return 0;
+        return engine.textureFont.getDrawCount() + engine.distanceFieldFont.getDrawCount();
+    }
+
     /**
      * @see java.awt.Graphics#dispose()
      */
     public void dispose() {
         // Not clear whether its safe to dispose of the drawable so we
-        // just do nothing here.
+        // just send the pending primitives here.
+        flush();
+    }
+
+    /**
+     * Sends the primitives accumulated when the
+     * {@link AgileRenderingHints#KEY_BATCH_PRIMITIVES_HINT} is set to OpenGL.
+     * Applications using this hint should call it at the end of their
+     * display method, before reading or swapping the frame buffer.
+     */
+    public void flush() {
+        engine.flushBatch();
     }
 
 
@@ -1823,9 +2346,7 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
     public void drawRoundRect(int x, int y, int width, int height,
             int arcWidth, int arcHeight) {
         makeCurrent();
-        engine.roundRectProto.setRoundRect(x, y, width, height, arcWidth,
-                arcHeight);
-        draw(engine.roundRectProto);
+        engine.doDrawRoundRect(x, y, width, height, arcWidth, arcHeight);
     }
 
     /**
@@ -1833,8 +2354,7 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
      */
     public void drawOval(int x, int y, int width, int height) {
         makeCurrent();
-        engine.ovalProto.setFrame(x, y, width, height);
-        draw(engine.ovalProto);
+        engine.doDrawOval(x, y, width, height);
     }
 
 
@@ -1844,8 +2364,7 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
     public void drawArc(int x, int y, int width, int height, int startAngle,
             int arcAngle) {
         makeCurrent();
-        engine.arcProto.setArc(x, y, width, height, startAngle, arcAngle, Arc2D.OPEN);
-        draw(engine.arcProto);
+        engine.doDrawArc(x, y, width, height, startAngle, arcAngle);
     }
 
     /**
@@ -1886,26 +2405,24 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
      * @see java.awt.Graphics#fillRoundRect(int, int, int, int, int, int)
      */
     public void fillRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
-        engine.roundRectProto.setRoundRect(x, y, width, height, arcWidth, arcHeight);
         makeCurrent();
-        engine.doFillShape(engine.roundRectProto, true);
+        engine.doFillRoundRect(x, y, width, height, arcWidth, arcHeight);
     }
 
     /**
      * @see java.awt.Graphics#fillOval(int, int, int, int)
      */
     public void fillOval(int x, int y, int width, int height) {
-        engine.ovalProto.setFrame(x, y, width, height);
         makeCurrent();
-        engine.doFillShape(engine.ovalProto, true);
+        engine.doFillOval(x, y, width, height);
     }
 
     /**
      * @see java.awt.Graphics#fillArc(int, int, int, int, int, int)
      */
     public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
-        engine.arcProto.setArc(x, y, width, height, startAngle, arcAngle, Arc2D.PIE);
-        fill(engine.arcProto);
+        makeCurrent();
+        engine.doFillArc(x, y, width, height, startAngle, arcAngle);
     }
 
     /**
@@ -1916,6 +2433,45 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
         engine.doFillPolygon(xPts, yPts, nPts);
     }
 
+    /**
+     * Fills many copies of a shape with a single draw call. The shape is
+     * tesselated once, and each instance is transformed by its own matrix
+     * before the current transform, and filled with its own color.
+     *
+     * <p>
+     * With a solid paint, the instances are expanded on the CPU into one
+     * vertex stream; otherwise they are filled one by one. The prototype
+     * is cached: it must not be modified afterwards.
+     * </p>
+     *
+     * @param prototype the shape to fill
+     * @param transforms six values per instance, in the order of
+     *   {@link AffineTransform#getMatrix(double[])}
+     * @param colors one ARGB color per instance, or null to use the current
+     *   paint
+     * @param count the number of instances
+     */
+    public void fillInstances(Shape prototype, float[] transforms, int[] colors, int count) {
+        makeCurrent();
+        if (engine.doFillInstances(prototype, transforms, colors, count))
+            return;
+        AffineTransform saved = getTransform();
+        Paint savedPaint = getPaint();
+        AffineTransform instance = new AffineTransform();
+        for (int i = 0; i < count; i++) {
+            int k = i * 6;
+            instance.setTransform(transforms[k], transforms[k+1], transforms[k+2],
+                                  transforms[k+3], transforms[k+4], transforms[k+5]);
+            setTransform(saved);
+            transform(instance);
+            if (colors != null)
+                setColor(new Color(colors[i], true));
+            fill(prototype);
+        }
+        setTransform(saved);
+        setPaint(savedPaint);
+    }
+
     /**
      * @see java.awt.Graphics2D#fill(java.awt.Shape)
      */
@@ -2096,15 +2652,20 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
         int dst_w = dx2 - dx1;
         int dst_h = dy2 - dy1;
 
+        // Skip the upload of images outside of the clip
+        if (engine.isOutside(dx1, dy1, dst_w, dst_h))
+            return true;
+
         // Explore simple case we can handle right away
         if (! engine.immutableImageHint &&
                 engine.alpha == 1 &&
                 isTransformTranslation() &&
                 (img instanceof BufferedImage) &&
                 sx1 == 0 && sy1 == 0 &&
-                src_w == dst_w && src_h == dst_h &&
-                engine.imageManager.drawImage((BufferedImage)img, dx1, dy1, src_w, src_h)) {
-            return true;
+                src_w == dst_w && src_h == dst_h) {
+            engine.flushBatch();
+            if (engine.imageManager.drawImage((BufferedImage)img, dx1, dy1, src_w, src_h))
+                return true;
         }
 
         // SUPPORT IMAGES LARGER THAN MAX_TEX_SIZE x MAX_TEX_SIZE BY SHRINKING THEM TO FIT IN A TEXTURE
@@ -2184,21 +2745,16 @@ public final class AgileGraphics2D extends Graphics2D implements Cloneable, Vert
     }
 
     /**
-     * Falls back on Java2D: Uses a Java2D graphics to do hit testing
+     * Tests the rectangle, restricted to the clip, against the triangles of
+     * the filled or stroked shape. With the
+     * {@link AgileRenderingHints#KEY_IMMUTABLE_SHAPE_HINT} set, the
+     * triangles and the last result are cached for the shape.
      *
      * @see java.awt.Graphics2D#hit(Rectangle, Shape, boolean)
      */
     public boolean hit(Rectangle rect, Shape s, boolean onStroke) {
-        Graphics2D g2 = engine.g2d;
-        g2.setTransform(transform);
-        g2.setStroke(stroke);
-        g2.setClip(clipArea);
-
-        boolean result = g2.hit(rect, s, onStroke);
-        g2.setTransform(IDENTITY);
-        g2.setClip(null);
-
-        return result;
+        boolean immutable = renderingHints.get(AgileRenderingHints.KEY_IMMUTABLE_SHAPE_HINT) == Boolean.TRUE;
+        return engine.hitTester.hit(rect, s, stroke, onStroke, transform, clipArea, immutable);
     }
 
     /**
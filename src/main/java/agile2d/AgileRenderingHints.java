@@ -23,7 +23,7 @@ public class AgileRenderingHints {
     }
 
     private static int nextKey = 0;
-    //private static Key genIntKey() { return new Key(nextKey++, Integer.class); }
+    private static Key genIntKey() { return new Key(nextKey++, Integer.class); }
     private static Key genBoolKey() { return new Key(nextKey++, Boolean.class); }
     private static Key genObjectKey() { return new Key(nextKey++, Object.class); }
     private static Key genMatrixKey() { return new Key(nextKey++, double[].class); }
@@ -98,4 +98,60 @@ public class AgileRenderingHints {
     */
     public static final RenderingHints.Key KEY_INCREMENTAL_FONT_RENDERER_HINT = genBoolKey();
 
+    /**
+    * <p>Hint indicating if small primitives should be batched.
+    * If this rendering hint is set to Boolean.TRUE, lines, rectangles,
+    * small convex polygons and images drawn with a solid paint are
+    * accumulated and sent to OpenGL with a single draw call, as long as the
+    * blending, clipping and line width do not change. The pending primitives
+    * are sent before any other drawing, and when
+    * {@link AgileGraphics2D#flush()} or dispose() is called; applications
+    * that read or swap the frame buffer themselves should call flush() at the
+    * end of their display method.
+    *
+    * <p>The default is Boolean.FALSE.</p>
+    */
+    public static final RenderingHints.Key KEY_BATCH_PRIMITIVES_HINT = genBoolKey();
+    /**
+    * <p>Hint selecting the triangulation engine used for concave shapes,
+    * strokes and glyph outlines. If this rendering hint is set to
+    * Boolean.TRUE, the pure Java {@link Triangulator} is used instead of
+    * the GLU tesselator.
+    *
+    * <p>The default is Boolean.FALSE.</p>
+    */
+    public static final RenderingHints.Key KEY_JAVA_TRIANGULATOR_HINT = genBoolKey();
+    /**
+    * <p>Hint indicating if the geometry of shapes should be cached by
+    * content. If this rendering hint is set to Boolean.TRUE, the triangles
+    * of drawn and filled shapes are cached under a fingerprint of their
+    * path, winding rule, stroke and flattening tolerance, so a shape
+    * rebuilt every frame with the same coordinates is tesselated once,
+    * and a shape modified after being drawn is tesselated again. It takes
+    * precedence over {@link #KEY_IMMUTABLE_SHAPE_HINT}, and shares its
+    * cache budget.
+    *
+    * <p>The default is Boolean.FALSE.</p>
+    */
+    public static final RenderingHints.Key KEY_SHAPE_CONTENT_CACHE_HINT = genBoolKey();
+    /**
+    * <p>Hint selecting where immutable shapes are tesselated. With
+    * {@link #VALUE_ASYNC_TESSELATION_OFF}, the default, they are tesselated
+    * on the GL thread when first drawn. With
+    * {@link #VALUE_ASYNC_TESSELATION_SKIP} or
+    * {@link #VALUE_ASYNC_TESSELATION_BOUNDS}, they are tesselated by the
+    * {@link Triangulator} on background threads, and the GL thread only
+    * uploads and draws the finished triangles; until they are ready, the
+    * shape is not drawn, or its bounds are filled.
+    * Only applies to concave shapes drawn with
+    * {@link #KEY_IMMUTABLE_SHAPE_HINT} set, which must not be modified
+    * afterwards.
+    */
+    public static final RenderingHints.Key KEY_ASYNC_TESSELATION_HINT = genIntKey();
+    /** Immutable shapes are tesselated on the GL thread. */
+    public static final Integer VALUE_ASYNC_TESSELATION_OFF = Integer.valueOf(ShapeManager.ASYNC_OFF);
+    /** Immutable shapes are tesselated in the background, and not drawn until ready. */
+    public static final Integer VALUE_ASYNC_TESSELATION_SKIP = Integer.valueOf(ShapeManager.ASYNC_SKIP);
+    /** Immutable shapes are tesselated in the background, and their bounds filled until ready. */
+    public static final Integer VALUE_ASYNC_TESSELATION_BOUNDS = Integer.valueOf(ShapeManager.ASYNC_BOUNDS);
 }
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2006 Jon Meyer, Ben Bederson and Jean-Daniel Fekete               *
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d;
+
+
+/**
+ * Generates the outlines of ovals, rounded rectangles and arcs as
+ * polygons, from precomputed tables of the unit circle.
+ *
+ * <p>
+ * The number of segments of a full ellipse is a multiple of four, chosen
+ * from its radius on the screen so that the polygon stays within a quarter
+ * of a pixel from the curve. The points are stored in arrays reused from
+ * one shape to the next, so generating a shape does not allocate, nor
+ * compute any sine or cosine except at the ends of arcs.
+ * </p>
+ */
+final class ArcGenerator {
+    /** Maximum distance in pixels between the polygon and the curve. */
+    static final double FLATNESS = 0.25;
+    static final int MIN_SEGMENTS = 8;
+    static final int MAX_SEGMENTS = 1024;
+
+    // Tables of the unit circle, indexed by the number of segments / 4
+    private double[][] cosTables = new double[MAX_SEGMENTS / 4 + 1][];
+    private double[][] sinTables = new double[MAX_SEGMENTS / 4 + 1][];
+
+    private double[] xPts = new double[MAX_SEGMENTS + 8];
+    private double[] yPts = new double[MAX_SEGMENTS + 8];
+    private int      count;
+
+    double[] getX() {
+        return xPts;
+    }
+
+    double[] getY() {
+        return yPts;
+    }
+
+    /**
+     * Returns the number of points generated.
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of segments of a full ellipse whose largest
+     * radius is the specified number of pixels.
+     */
+    static int getSegments(double radius) {
+        if (radius <= FLATNESS)
+            return MIN_SEGMENTS;
+        double step = 2 * Math.acos(1 - FLATNESS / radius);
+        if (!(step > 0)) // radius too large for the precision
+            return MAX_SEGMENTS;
+        int n = (int)Math.min(MAX_SEGMENTS, Math.ceil(2 * Math.PI / step));
+        n = (n + 3) & ~3;
+        return Math.max(MIN_SEGMENTS, n);
+    }
+
+    private void prepare(int n) {
+        int index = n >> 2;
+        if (cosTables[index] != null)
+            return;
+        double[] cos = new double[n];
+        double[] sin = new double[n];
+        for (int i = 0; i < n; i++) {
+            double a = 2 * Math.PI * i / n;
+            cos[i] = Math.cos(a);
+            sin[i] = Math.sin(a);
+        }
+        cosTables[index] = cos;
+        sinTables[index] = sin;
+    }
+
+    private void add(double x, double y) {
+        xPts[count] = x;
+        yPts[count] = y;
+        count++;
+    }
+
+    /**
+     * Generates an ellipse inscribed in a rectangle.
+     *
+     * @param n the number of segments, from getSegments()
+     */
+    void oval(double x, double y, double w, double h, int n) {
+        prepare(n);
+        double[] cos = cosTables[n >> 2];
+        double[] sin = sinTables[n >> 2];
+        double rx = w / 2, ry = h / 2;
+        double cx = x + rx, cy = y + ry;
+        count = 0;
+        for (int i = 0; i < n; i++)
+            add(cx + rx * cos[i], cy + ry * sin[i]);
+    }
+
+    /**
+     * Generates a rectangle with rounded corners, as with
+     * RoundRectangle2D.
+     *
+     * @param n the number of segments of a full ellipse of the corner
+     *   radii, from getSegments()
+     */
+    void roundRect(double x, double y, double w, double h,
+                   double arcWidth, double arcHeight, int n) {
+        double rx = Math.min(Math.abs(arcWidth), w) / 2;
+        double ry = Math.min(Math.abs(arcHeight), h) / 2;
+        count = 0;
+        if (rx <= 0 || ry <= 0) {
+            add(x, y);
+            add(x + w, y);
+            add(x + w, y + h);
+            add(x, y + h);
+            return;
+        }
+        prepare(n);
+        double[] cos = cosTables[n >> 2];
+        double[] sin = sinTables[n >> 2];
+        int q = n >> 2;
+        // Clockwise on the screen, from the top of the top right corner
+        corner(x + w - rx, y + ry, rx, ry, cos, sin, 3 * q, q, n);
+        corner(x + w - rx, y + h - ry, rx, ry, cos, sin, 0, q, n);
+        corner(x + rx, y + h - ry, rx, ry, cos, sin, q, q, n);
+        corner(x + rx, y + ry, rx, ry, cos, sin, 2 * q, q, n);
+    }
+
+    private void corner(double cx, double cy, double rx, double ry,
+                        double[] cos, double[] sin, int first, int q, int n) {
+        for (int i = 0; i <= q; i++) {
+            int k = (first + i) % n;
+            add(cx + rx * cos[k], cy + ry * sin[k]);
+        }
+    }
+
+    /**
+     * Generates an elliptic arc, as with Arc2D: the angles are in degrees,
+     * counter-clockwise on the screen.
+     *
+     * @param n the number of segments of the full ellipse, from
+     *   getSegments()
+     * @param pie true to start with the center of the ellipse, making a
+     *   pie slice
+     * @return true if the arc is a full ellipse
+     */
+    boolean arc(double x, double y, double w, double h,
+                double start, double extent, int n, boolean pie) {
+        if (Math.abs(extent) >= 360) {
+            oval(x, y, w, h, n);
+            return true;
+        }
+        prepare(n);
+        double[] cos = cosTables[n >> 2];
+        double[] sin = sinTables[n >> 2];
+        double rx = w / 2, ry = h / 2;
+        double cx = x + rx, cy = y + ry;
+        count = 0;
+        if (pie)
+            add(cx, cy);
+
+        // Rotate the table by the start angle: the points are at
+        // start + k*step, then the exact end
+        double a = Math.toRadians(start);
+        double cs = Math.cos(a), ss = Math.sin(a);
+        double sign = extent < 0 ? -1 : 1;
+        double step = 2 * Math.PI / n;
+        int m = (int)Math.ceil(Math.abs(Math.toRadians(extent)) / step);
+        for (int k = 0; k < m; k++) {
+            double c = cs * cos[k] - sign * ss * sin[k];
+            double s = ss * cos[k] + sign * cs * sin[k];
+            add(cx + rx * c, cy - ry * s);
+        }
+        double end = Math.toRadians(start + extent);
+        add(cx + rx * Math.cos(end), cy - ry * Math.sin(end));
+        return false;
+    }
+}
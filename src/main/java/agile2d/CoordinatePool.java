@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2006 Jon Meyer, Ben Bederson and Jean-Daniel Fekete               *
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d;
+
+
+/**
+ * Growable pool of vertex coordinates handed to the GLU tesselator.
+ *
+ * <p>
+ * The GLU tesselator keeps a reference to the coordinates of every vertex
+ * until the polygon is ended, so each vertex needs its own array. The pool
+ * keeps these arrays from one polygon to the next: it is reset when a
+ * polygon starts, and only allocates when a polygon has more vertices than
+ * any previous one.
+ * </p>
+ */
+final class CoordinatePool {
+    private double[][] coords;
+    private int        used;
+
+    CoordinatePool(int reserve) {
+        coords = new double[reserve][];
+    }
+
+    CoordinatePool() {
+        this(256);
+    }
+
+    /**
+     * Makes all the coordinates available again. Must not be called while
+     * the tesselator still references them.
+     */
+    void reset() {
+        used = 0;
+    }
+
+    /**
+     * Returns the number of coordinates handed out since the last reset.
+     */
+    int getUsed() {
+        return used;
+    }
+
+    /**
+     * Returns the number of coordinates allocated by the pool.
+     */
+    int getAllocated() {
+        int n = 0;
+        while (n < coords.length && coords[n] != null)
+            n++;
+        return n;
+    }
+
+    /**
+     * Returns a three element array for one vertex.
+     */
+    double[] next() {
+        if (used == coords.length) {
+            double[][] newCoords = new double[used * 2][];
+            System.arraycopy(coords, 0, newCoords, 0, used);
+            coords = newCoords;
+        }
+        double[] c = coords[used];
+        if (c == null) {
+            c = new double[3];
+            coords[used] = c;
+        }
+        used++;
+        return c;
+    }
+
+    /**
+     * Returns an array for one vertex, initialized with the specified
+     * coordinates.
+     */
+    double[] next(double x, double y) {
+        double[] c = next();
+        c[0] = x;
+        c[1] = y;
+        c[2] = 0;
+        return c;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2006 Jon Meyer, Ben Bederson and Jean-Daniel Fekete               *
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+/**
+ * Computes signed distance fields of shapes, used to render glyphs at any
+ * scale from a single image.
+ *
+ * <p>
+ * The shape is rasterized without anti-aliasing at a multiple of the
+ * resolution of the field, the distances of each sample to the nearest
+ * sample on the other side of the outline are computed with the exact
+ * squared Euclidean distance transform of Felzenszwalb and Huttenlocher,
+ * then averaged over the samples of each pixel of the field.
+ * </p>
+ *
+ * <p>
+ * The field is stored as bytes: 128 on the outline, 255 at
+ * <code>spread</code> pixels or more inside the shape and 0 at
+ * <code>spread</code> pixels or more outside, so that it can be drawn
+ * with an alpha threshold of 0.5.
+ * </p>
+ */
+public final class DistanceField {
+    private static final double INF = 1e20;
+
+    private DistanceField() {
+    }
+
+    /**
+     * Computes the distance field of a shape.
+     *
+     * @param shape the shape, in pixels
+     * @param x the left of the field in the coordinates of the shape
+     * @param y the top of the field in the coordinates of the shape
+     * @param width the width of the field in pixels
+     * @param height the height of the field in pixels
+     * @param spread the distance, in pixels, mapped to half of the range
+     * @param upsample the number of samples per pixel in each direction
+     * @param dst the bytes receiving the field
+     * @param offset the index of the top left pixel in dst
+     * @param stride the number of bytes between two rows in dst
+     */
+    public static void compute(Shape shape, double x, double y, int width, int height,
+                               double spread, int upsample,
+                               byte[] dst, int offset, int stride) {
+        int w = width * upsample;
+        int h = height * upsample;
+        BufferedImage mask = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = mask.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        g.setColor(Color.WHITE);
+        g.scale(upsample, upsample);
+        g.translate(-x, -y);
+        g.fill(shape);
+        g.dispose();
+        byte[] inside = ((DataBufferByte) mask.getRaster().getDataBuffer()).getData();
+
+        // Squared distances to the nearest inside and outside samples
+        double[] toInside = new double[w * h];
+        double[] toOutside = new double[w * h];
+        for (int i = 0; i < inside.length; i++) {
+            boolean in = inside[i] != 0;
+            toInside[i] = in ? 0 : INF;
+            toOutside[i] = in ? INF : 0;
+        }
+        transform(toInside, w, h);
+        transform(toOutside, w, h);
+
+        double scale = 1.0 / (2 * spread * upsample);
+        double samples = upsample * upsample;
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < width; i++) {
+                // Signed distance, negative inside, the outline being half
+                // way between the two samples on each side of it
+                double sum = 0;
+                for (int sj = 0; sj < upsample; sj++) {
+                    int row = (j * upsample + sj) * w + i * upsample;
+                    for (int si = 0; si < upsample; si++) {
+                        int k = row + si;
+                        if (inside[k] != 0)
+                            sum += 0.5 - Math.sqrt(toOutside[k]);
+                        else
+                            sum += Math.sqrt(toInside[k]) - 0.5;
+                    }
+                }
+                double v = 0.5 - sum / samples * scale;
+                int b = (int) (v * 255 + 0.5);
+                dst[offset + j * stride + i] = (byte) (b < 0 ? 0 : b > 255 ? 255 : b);
+            }
+        }
+    }
+
+    // Two dimensional distance transform, by columns then by rows
+    private static void transform(double[] grid, int w, int h) {
+        int n = Math.max(w, h);
+        double[] f = new double[n];
+        double[] d = new double[n];
+        double[] z = new double[n + 1];
+        int[] v = new int[n];
+        for (int i = 0; i < w; i++) {
+            for (int j = 0; j < h; j++)
+                f[j] = grid[j * w + i];
+            transform(f, h, d, v, z);
+            for (int j = 0; j < h; j++)
+                grid[j * w + i] = d[j];
+        }
+        for (int j = 0; j < h; j++) {
+            System.arraycopy(grid, j * w, f, 0, w);
+            transform(f, w, d, v, z);
+            System.arraycopy(d, 0, grid, j * w, w);
+        }
+    }
+
+    // One dimensional distance transform of a sampled function: the lower
+    // envelope of the parabolas rooted at each sample
+    private static void transform(double[] f, int n, double[] d, int[] v, double[] z) {
+        int k = 0;
+        v[0] = 0;
+        z[0] = -INF;
+        z[1] = INF;
+        for (int q = 1; q < n; q++) {
+            double s = ((f[q] + q * q) - (f[v[k]] + v[k] * v[k])) / (2 * q - 2 * v[k]);
+            while (s <= z[k]) {
+                k--;
+                s = ((f[q] + q * q) - (f[v[k]] + v[k] * v[k])) / (2 * q - 2 * v[k]);
+            }
+            k++;
+            v[k] = q;
+            z[k] = s;
+            z[k + 1] = INF;
+        }
+        k = 0;
+        for (int q = 0; q < n; q++) {
+            while (z[k + 1] < q)
+                k++;
+            d[q] = (q - v[k]) * (q - v[k]) + f[v[k]];
+        }
+    }
+}
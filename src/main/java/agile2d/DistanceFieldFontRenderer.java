@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2006 Jon Meyer, Ben Bederson and Jean-Daniel Fekete               *
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d;
+
+import java.awt.Font;
+
+import javax.media.opengl.GL2;
+import javax.media.opengl.GLAutoDrawable;
+
+/**
+ * Render Fonts from distance fields
+ *
+ * Each glyph is stored once, as the distance field of its outline at a
+ * fixed size, in an atlas of its own. A fragment shader thresholds the
+ * bilinearly filtered field, so that the same glyphs are sharp at every
+ * scale and text is drawn at the cost of textured quads while zooming.
+ *
+ * @author Jean-Daniel Fekete
+ * @version $Revision: 1.0 $
+ */
+class DistanceFieldFontRenderer extends TextureFontRenderer {
+    /** Size in pixels of the glyphs the distance fields are computed at */
+    static final float FIELD_SIZE = 48;
+    /** Distance in pixels covered by the fields around the outlines */
+    static final int SPREAD = 6;
+
+    static GlyphAtlas fieldAtlas = new GlyphAtlas(texWidth, texHeight, maxPages, SPREAD);
+
+    // Smooth threshold over about one pixel on the screen
+    static final String[] FRAGMENT_SHADER = {
+        "uniform sampler2D field;\n",
+        "void main() {\n",
+        "    float d = texture2D(field, gl_TexCoord[0].st).a;\n",
+        "    float w = fwidth(d) * 0.7;\n",
+        "    float a = smoothstep(0.5 - w, 0.5 + w, d);\n",
+        "    gl_FragColor = vec4(gl_Color.rgb, gl_Color.a * a);\n",
+        "}\n"
+    };
+
+    int program;
+    boolean supported = true;
+
+    public DistanceFieldFontRenderer() {
+        textureFilter = GL2.GL_LINEAR;
+    }
+
+    protected GlyphAtlas getSharedAtlas() {
+        return fieldAtlas;
+    }
+
+    /**
+     * Returns <code>true</code> if the shader could be compiled.
+     */
+    public boolean isSupported(GL2 gl) {
+        if (program == 0 && supported)
+            program = createProgram(gl);
+        return supported;
+    }
+
+    private int createProgram(GL2 gl) {
+        if (!gl.isFunctionAvailable("glCreateShader")) {
+            supported = false;
+            return 0;
+        }
+        int[] status = { 0 };
+        int shader = gl.glCreateShader(GL2.GL_FRAGMENT_SHADER);
+        gl.glShaderSource(shader, FRAGMENT_SHADER.length, FRAGMENT_SHADER, null, 0);
+        gl.glCompileShader(shader);
+        gl.glGetShaderiv(shader, GL2.GL_COMPILE_STATUS, status, 0);
+        if (status[0] == 0) {
+            gl.glDeleteShader(shader);
+            supported = false;
+            return 0;
+        }
+        int p = gl.glCreateProgram();
+        gl.glAttachShader(p, shader);
+        gl.glLinkProgram(p);
+        gl.glDeleteShader(shader); // Freed with the program
+        gl.glGetProgramiv(p, GL2.GL_LINK_STATUS, status, 0);
+        if (status[0] == 0) {
+            gl.glDeleteProgram(p);
+            supported = false;
+            return 0;
+        }
+        gl.glUseProgram(p);
+        gl.glUniform1i(gl.glGetUniformLocation(p, "field"), 0);
+        gl.glUseProgram(0);
+        return p;
+    }
+
+    public boolean install(GLAutoDrawable drawable,
+        Font font, double scale, boolean aa, boolean ufm) {
+        installed = false;
+        if (!isSupported(drawable.getGL().getGL2()))
+            return false;
+        // The same glyphs serve every scale
+        double s = FIELD_SIZE / font.getSize2D();
+        if (current == null || !current.equals(font, s, true, true))
+            current = findCached(font, s, true, true);
+        installed = true;
+        return true;
+    }
+
+    protected void begin(GL2 gl, AgileState glState) {
+        super.begin(gl, glState);
+        gl.glUseProgram(program);
+    }
+
+    protected void end(AgileState glState) {
+        super.end(glState);
+        glState.getGL().glUseProgram(0);
+    }
+
+    public void render(
+        GLAutoDrawable drawable,
+        String string,
+        double scale,
+        Font font) {
+
+        GL2 gl = drawable.getGL().getGL2();
+        AgileState glState = AgileState.get(gl);
+        begin(gl, glState);
+        // Fractional advances, the text being scaled up
+        double x = 0;
+        for (int i = 0; i < string.length(); ) {
+            int c = string.codePointAt(i);
+            i += Character.charCount(c);
+            GlyphAtlas.Glyph g = addGlyph(glState, current.getGlyphCode(c), x, 0);
+            x += g != null ? g.advance : current.metrics.charWidth(c);
+        }
+        end(glState);
+    }
+}
@@ -24,6 +24,7 @@ import java.awt.font.GlyphVector;
 class FontManager {
     public static final int TEXTURE_MODE = 0;
     public static final int OUTLINE_MODE = 1;
+    public static final int DISTANCE_FIELD_MODE = 2;
 
     public static final int PRECISE_OUTLINE_OPTION = 0;
     public static final int ROUGH_OUTLINE_OPTION = 1;
@@ -36,6 +37,7 @@ class FontManager {
     private static int current_strategy = AgileGraphics2D.ROUGH_TEXT_RENDERING_STRATEGY;
 
     private TextureFontRenderer textureFont;
+    private DistanceFieldFontRenderer distanceFieldFont;
     private OutlineFontRenderer outlineFont;
     private OutlineRoughFontRenderer roughOutlineFont;
 
@@ -62,13 +64,14 @@ class FontManager {
         current_strategy = init_strategy;
     }
 
-    public FontManager(GL2 gl, TextureFontRenderer textureFont, OutlineFontRenderer outlineFont, OutlineRoughFontRenderer roughOutlineFont) {
+    public FontManager(GL2 gl, TextureFontRenderer textureFont, DistanceFieldFontRenderer distanceFieldFont, OutlineFontRenderer outlineFont, OutlineRoughFontRenderer roughOutlineFont) {
         this.gl = gl;
         this.glState = AgileState.get(gl);
         if(isTextureModeSupported())
             current_mode = TEXTURE_MODE;
         //get pointers to different rendering strategies
         this.textureFont = textureFont;
+        this.distanceFieldFont = distanceFieldFont;
         this.outlineFont = outlineFont;
         this.roughOutlineFont = roughOutlineFont;
         this.setRenderingStrategy(current_strategy);
@@ -97,6 +100,12 @@ class FontManager {
             textureFont.setHighQuality(false);
             current_outline_option = ROUGH_OUTLINE_OPTION;
         }
+        //Small text still uses the texture mode, larger text distance fields,
+        //and rough outlines if shaders are not available
+        else if(current_strategy==AgileGraphics2D.DISTANCE_FIELD_TEXT_RENDERING_STRATEGY){
+            textureFont.setHighQuality(false);
+            current_outline_option = ROUGH_OUTLINE_OPTION;
+        }
     }
 
     public int getRenderingStrategy(){
@@ -122,10 +131,19 @@ class FontManager {
     }
 
 
+    //check if the distance field mode is chosen and working in the current state
+    private boolean isDistanceFieldModeSupported(){
+        return current_strategy == AgileGraphics2D.DISTANCE_FIELD_TEXT_RENDERING_STRATEGY
+            && useFastShapes
+            && distanceFieldFont.install(drawable, font, scale, frcAntialiasing, frcUsesFractionalMetrics);
+    }
+
     public void drawString(String string_){
         //By default, agile always try to use the texture strategy
         if(isTextureModeSupported())
             current_mode = TEXTURE_MODE;
+        else if(isDistanceFieldModeSupported())
+            current_mode = DISTANCE_FIELD_MODE;
         else
             current_mode = OUTLINE_MODE;
         //then, check which strategy is on and call it
@@ -133,6 +151,9 @@ class FontManager {
             case TEXTURE_MODE:
                 _drawTextureString(string_);
                 break;
+            case DISTANCE_FIELD_MODE:
+                _drawDistanceFieldString(string_);
+                break;
             //Too big to fit in a texture - draw from outlines instead
             case OUTLINE_MODE:
                 if(current_outline_option==PRECISE_OUTLINE_OPTION)
@@ -159,6 +180,13 @@ class FontManager {
             checkForErrors();
     }
 
+    private void _drawDistanceFieldString(String string) {
+        distanceFieldFont.render(drawable, string, scale, font);
+        ag2d_active.setPaint(ag2d_active.getPaint());
+        if (DEBUG_CHECK_GL)
+            checkForErrors();
+    }
+
     private void _drawOutlineString(String string) {
         //the block below temporarily cancel effect of the global scale transformation
         if(scale != 1.0){
@@ -222,6 +250,8 @@ class FontManager {
         //By default, agile always try to use the texture mode
         if(isTextureModeSupported())
             current_mode = TEXTURE_MODE;
+        else if(isDistanceFieldModeSupported())
+            current_mode = DISTANCE_FIELD_MODE;
         else
             current_mode = OUTLINE_MODE;
         //then, check which mode is on and call it
@@ -229,6 +259,9 @@ class FontManager {
         case TEXTURE_MODE:
             _drawTextureGlyphVector(gV);
             break;
+        case DISTANCE_FIELD_MODE:
+            _drawDistanceFieldGlyphVector(gV);
+            break;
         case OUTLINE_MODE:
             //Too big to fit in a texture - draw from outlines instead
             if(current_outline_option==PRECISE_OUTLINE_OPTION)
@@ -253,6 +286,13 @@ class FontManager {
             checkForErrors();
     }
 
+    private void _drawDistanceFieldGlyphVector(GlyphVector g) {
+        distanceFieldFont.render(drawable, g, scale);
+        ag2d_active.setPaint(ag2d_active.getPaint());
+        if (DEBUG_CHECK_GL)
+            checkForErrors();
+    }
+
     private void _drawOutlineGlyphVector(GlyphVector g) {
         if (outlineFont.prepareGlyphVertices(drawable)) {
             outlineFont.render(drawable, g);
@@ -0,0 +1,455 @@
+/*
+ * Copyright (C) 2006 Jon Meyer, Ben Bederson and Jean-Daniel Fekete               *
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.WeakHashMap;
+
+import javax.media.opengl.GL2;
+
+import agile2d.geom.VertexArray;
+import agile2d.geom.VertexAttributes;
+
+
+/**
+ * Cache of the geometry computed for immutable shapes, stored in OpenGL
+ * vertex buffer objects.
+ *
+ * <p>
+ * Each cached shape holds one vertex buffer containing its vertices
+ * (and its per-vertex colors if any), drawn with a single glDrawArrays.
+ * The total size of the buffers is bounded by a byte budget; when it is
+ * exceeded, the least recently drawn shapes are evicted. The buffers of
+ * shapes that have been garbage collected are released by {@link #flush()},
+ * which must be called with the GL context current.
+ * </p>
+ *
+ * <p>
+ * When vertex buffer objects are not supported, the geometry is kept in
+ * client-side vertex arrays under the same budget.
+ * </p>
+ *
+ * <p>
+ * A shape can have several entries, one per level of detail: the power of
+ * two bucket of the flattening tolerance it was computed with. They are
+ * created on demand and evicted independently.
+ * </p>
+ *
+ * <p>
+ * Geometry can also be cached by content, under a {@link ShapeKey}
+ * computed from the path of the shape. Such entries do not depend on the
+ * Shape object, and are only released when evicted.
+ * </p>
+ */
+final class GeometryCache {
+    /** Level of detail of the geometry that is not flattened. */
+    static final int ANY_LOD = Integer.MIN_VALUE;
+
+    /** Default budget in bytes for the cached geometry. */
+    static long defaultBudget = 16 * 1024 * 1024;
+
+    private GL2 gl;
+    private boolean useVBO;
+    private long budget = defaultBudget;
+    private long size;
+    private int[] idRef = new int[1];
+
+    // Must use weak references so that the buffers get freed when the
+    // shapes do. The entries of the levels of detail of a shape are linked.
+    private WeakHashMap<Object, Entry> drawn = new WeakHashMap<Object, Entry>();
+    private WeakHashMap<Object, Entry> filled = new WeakHashMap<Object, Entry>();
+    private HashMap<ShapeKey, Entry> contents = new HashMap<ShapeKey, Entry>();
+    // Access-ordered: the eldest entry is the least recently drawn
+    private LinkedHashMap<Entry, Entry> lru = new LinkedHashMap<Entry, Entry>(64, 0.75f, true);
+    // Entries whose shape has been collected
+    private ReferenceQueue<Object> released = new ReferenceQueue<Object>();
+
+    // Statistics
+    private int hits;
+    private int misses;
+    private int evictions;
+
+    /**
+     * A cached geometry. It references its shape weakly and is enqueued
+     * when the shape is collected.
+     */
+    static final class Entry extends WeakReference<Object> {
+        ShapeKey key; // Non null if in the contents map
+        boolean stroked; // true if in the drawn map
+        Object stroke; // Null for filled shapes
+        int lod = ANY_LOD;
+        Entry next; // next level of detail of the same shape
+        int buffer; // vertex buffer object, 0 if client-side
+        VertexArray array; // client-side geometry, null if in a buffer
+        ByteBuffer colors; // client-side colors
+        int mode;
+        int count;
+        long colorOffset = -1; // offset of the colors in the buffer, -1 if none
+        boolean smooth;
+        boolean lineMode; // draw polygons as outlines
+        long bytes;
+
+        Entry(Object shape, ReferenceQueue<Object> queue) {
+            super(shape, queue);
+        }
+    }
+
+    GeometryCache(GL2 gl) {
+        this.gl = gl;
+        this.useVBO = gl.isFunctionAvailable("glGenBuffers");
+    }
+
+    /**
+     * Returns the budget in bytes of the cache.
+     */
+    long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Sets the budget in bytes of the cache, evicting entries if needed.
+     */
+    void setBudget(long budget) {
+        this.budget = budget;
+        evict(0);
+    }
+
+    /**
+     * Returns the number of bytes used by the cached geometry.
+     */
+    long getSize() {
+        return size;
+    }
+
+    int getHitCount() {
+        return hits;
+    }
+
+    int getMissCount() {
+        return misses;
+    }
+
+    int getEvictionCount() {
+        return evictions;
+    }
+
+    int getEntryCount() {
+        return lru.size();
+    }
+
+    void resetCounters() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    /**
+     * Returns the cached geometry of a stroked shape at a level of detail,
+     * or null.
+     */
+    Entry getDrawn(Object shape, Object stroke, int lod) {
+        Entry e = drawn.get(shape);
+        if (e != null && e.stroke != stroke) {
+            // All the levels have the same stroke
+            while (e != null) {
+                Entry next = e.next;
+                release(e);
+                e = next;
+            }
+        }
+        return found(find(e, lod));
+    }
+
+    /**
+     * Returns the cached geometry of a filled shape at a level of detail,
+     * or null.
+     */
+    Entry getFilled(Object shape, int lod) {
+        return found(find(filled.get(shape), lod));
+    }
+
+    private static Entry find(Entry e, int lod) {
+        while (e != null && e.lod != lod)
+            e = e.next;
+        return e;
+    }
+
+    /**
+     * Returns the cached geometry of a shape at the level of detail
+     * closest to the specified one, or null. The statistics are not
+     * updated.
+     */
+    Entry getClosest(Object shape, Object stroke, boolean stroked, int lod) {
+        Entry best = null;
+        long bestDistance = Long.MAX_VALUE;
+        for (Entry e = (stroked ? drawn : filled).get(shape); e != null; e = e.next) {
+            long distance = Math.abs((long)e.lod - lod);
+            if (e.stroke == stroke && distance < bestDistance) {
+                best = e;
+                bestDistance = distance;
+            }
+        }
+        if (best != null)
+            lru.get(best); // touch
+        return best;
+    }
+
+    /**
+     * Returns the cached geometry of a shape with the same content as the
+     * specified key, or null.
+     */
+    Entry get(ShapeKey key) {
+        return found(contents.get(key));
+    }
+
+    private Entry found(Entry e) {
+        if (e == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        lru.get(e); // touch
+        return e;
+    }
+
+    /**
+     * Caches the geometry of a shape and returns its entry, or returns null
+     * if it does not fit in the budget.
+     *
+     * @param shape the shape, used as the key
+     * @param stroke the stroke for a stroked shape, null for a filled one
+     * @param lod the level of detail, or ANY_LOD
+     * @param array the vertices, copied in the cache
+     * @param attributes the vertex colors or null
+     * @param lineMode true to draw polygons as outlines
+     */
+    Entry put(Object shape, Object stroke, boolean stroked, int lod,
+              VertexArray array, VertexAttributes attributes, boolean lineMode) {
+        Entry e = store(shape, array, attributes, lineMode, 0);
+        if (e != null) {
+            e.stroked = stroked;
+            e.stroke = stroke;
+            e.lod = lod;
+            WeakHashMap<Object, Entry> map = stroked ? drawn : filled;
+            e.next = map.get(shape);
+            map.put(shape, e);
+        }
+        return e;
+    }
+
+    /**
+     * Caches the triangles of a shape under its content key and returns
+     * its entry, or returns null if they do not fit in the budget.
+     *
+     * @param key the key, which must not be modified afterwards
+     * @param array the triangles, copied in the cache
+     */
+    Entry put(ShapeKey key, VertexArray array) {
+        Entry e = store(null, array, null, false, key.getByteSize());
+        if (e != null) {
+            e.key = key;
+            contents.put(key, e);
+        }
+        return e;
+    }
+
+    private Entry store(Object shape, VertexArray array, VertexAttributes attributes,
+                        boolean lineMode, long extraBytes) {
+        int count = array.getVertexCount();
+        if (attributes != null)
+            count = Math.min(count, attributes.getSize());
+        long bytes = count * 8L + (attributes != null ? count * 4L : 0);
+        if (count == 0 || bytes + extraBytes > budget)
+            return null;
+        evict(bytes + extraBytes);
+
+        Entry e = new Entry(shape, released);
+        e.mode = array.getMode();
+        e.count = count;
+        e.lineMode = lineMode;
+        e.bytes = bytes + extraBytes;
+        FloatBuffer vertices = window(array.getDataRef(), count * 2);
+        ByteBuffer colors = attributes == null ? null : window(attributes.getColorRef(), count * 4);
+        if (attributes != null)
+            e.smooth = attributes.isSmooth();
+
+        if (useVBO) {
+            gl.glGenBuffers(1, idRef, 0);
+            e.buffer = idRef[0];
+            gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, e.buffer);
+            gl.glBufferData(GL2.GL_ARRAY_BUFFER, bytes, null, GL2.GL_STATIC_DRAW);
+            gl.glBufferSubData(GL2.GL_ARRAY_BUFFER, 0, count * 8L, vertices);
+            if (colors != null) {
+                e.colorOffset = count * 8L;
+                gl.glBufferSubData(GL2.GL_ARRAY_BUFFER, e.colorOffset, count * 4L, colors);
+            }
+            gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
+        }
+        else {
+            // Keep a private copy since the shape may be modified
+            e.array = new VertexArray(count * 2);
+            e.array.setMode(e.mode);
+            e.array.getDataRef().put(vertices);
+            e.array.getDataRef().rewind();
+            if (colors != null) {
+                e.colors = VertexArray.newByteBuffer(count * 4);
+                e.colors.put(colors);
+                e.colors.rewind();
+                e.colorOffset = 0;
+            }
+        }
+
+        lru.put(e, e);
+        size += e.bytes;
+        return e;
+    }
+
+    private static FloatBuffer window(FloatBuffer buffer, int length) {
+        FloatBuffer b = buffer.duplicate();
+        b.position(0);
+        b.limit(length);
+        return b;
+    }
+
+    private static ByteBuffer window(ByteBuffer buffer, int length) {
+        ByteBuffer b = buffer.duplicate();
+        b.position(0);
+        b.limit(length);
+        return b;
+    }
+
+    /**
+     * Draws a cached geometry.
+     */
+    void render(Entry e) {
+        if (e.lineMode)
+            gl.glPolygonMode(GL2.GL_FRONT_AND_BACK, GL2.GL_LINE);
+        if (e.smooth)
+            gl.glShadeModel(GL2.GL_SMOOTH);
+        gl.glEnableClientState(GL2.GL_VERTEX_ARRAY);
+        if (e.colorOffset >= 0)
+            gl.glEnableClientState(GL2.GL_COLOR_ARRAY);
+
+        if (e.buffer != 0) {
+            gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, e.buffer);
+            gl.glVertexPointer(2, GL2.GL_FLOAT, 0, 0L);
+            if (e.colorOffset >= 0)
+                gl.glColorPointer(4, GL2.GL_UNSIGNED_BYTE, 0, e.colorOffset);
+            gl.glDrawArrays(e.mode, 0, e.count);
+            gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
+        }
+        else {
+            FloatBuffer vertices = e.array.getDataRef();
+            vertices.rewind();
+            gl.glVertexPointer(2, GL2.GL_FLOAT, 0, vertices);
+            if (e.colors != null)
+                gl.glColorPointer(4, GL2.GL_UNSIGNED_BYTE, 0, e.colors);
+            gl.glDrawArrays(e.mode, 0, e.count);
+        }
+
+        if (e.colorOffset >= 0)
+            gl.glDisableClientState(GL2.GL_COLOR_ARRAY);
+        gl.glDisableClientState(GL2.GL_VERTEX_ARRAY);
+        if (e.smooth)
+            gl.glShadeModel(GL2.GL_FLAT);
+        if (e.lineMode)
+            gl.glPolygonMode(GL2.GL_FRONT_AND_BACK, GL2.GL_FILL);
+    }
+
+    // Evicts the least recently used entries until the specified
+    // number of bytes fits in the budget.
+    private void evict(long needed) {
+        Iterator<Entry> it = lru.keySet().iterator();
+        while (size + needed > budget && it.hasNext()) {
+            Entry e = it.next();
+            it.remove();
+            unmap(e);
+            free(e);
+            evictions++;
+        }
+    }
+
+    private void release(Entry e) {
+        if (lru.remove(e) != null) {
+            unmap(e);
+            free(e);
+        }
+    }
+
+    // Removes an entry from its map
+    private void unmap(Entry e) {
+        if (e.key != null) {
+            contents.remove(e.key);
+            return;
+        }
+        Object shape = e.get();
+        if (shape != null) {
+            WeakHashMap<Object, Entry> map = e.stroked ? drawn : filled;
+            Entry first = map.get(shape);
+            if (first == e) {
+                if (e.next == null)
+                    map.remove(shape);
+                else
+                    map.put(shape, e.next);
+            }
+            else {
+                while (first != null && first.next != e)
+                    first = first.next;
+                if (first != null)
+                    first.next = e.next;
+            }
+        }
+        e.next = null;
+        e.clear(); // will not be enqueued anymore
+    }
+
+    private void free(Entry e) {
+        size -= e.bytes;
+        if (e.buffer != 0) {
+            idRef[0] = e.buffer;
+            gl.glDeleteBuffers(1, idRef, 0);
+            e.buffer = 0;
+        }
+        e.array = null;
+        e.colors = null;
+    }
+
+    /**
+     * Releases the geometry of the shapes that have been garbage collected.
+     */
+    void flush() {
+        Reference<?> ref;
+        while ((ref = released.poll()) != null) {
+            Entry e = (Entry)ref;
+            if (lru.remove(e) != null)
+                free(e);
+        }
+    }
+
+    /**
+     * Releases all the cached geometry.
+     */
+    void clear() {
+        for (Entry e : lru.keySet()) {
+            e.clear();
+            free(e);
+        }
+        lru.clear();
+        drawn.clear();
+        filled.clear();
+        contents.clear();
+        size = 0;
+    }
+}
@@ -0,0 +1,576 @@
+/*
+ * Copyright (C) 2006 Jon Meyer, Ben Bederson and Jean-Daniel Fekete               *
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Grayscale images of glyphs, rendered on demand and packed into a bounded
+ * number of pages.
+ *
+ * <p>
+ * A glyph is identified by its font, its glyph code, a scale bucket and
+ * the anti-aliasing and fractional metrics flags, so any glyph of any font
+ * can be stored, not only the Latin-1 characters. Each page is filled by
+ * shelves: rows as high as the first glyph placed in them, where the
+ * following glyphs go to the lowest shelf they fit in. Glyphs can also be
+ * stored as distance fields, drawn at any scale with a threshold.
+ * </p>
+ *
+ * <p>
+ * When all the pages are full, the least recently used page is emptied and
+ * its glyphs are evicted; they are rendered again the next time they are
+ * asked for. Each page has a version, incremented whenever its image
+ * changes, and remembers the version each row was last changed in, so that
+ * the textures holding copies of the pages only upload the rows changed
+ * since their last upload.
+ * </p>
+ *
+ * @author Jean-Daniel Fekete
+ * @version $Revision: 1.0 $
+ */
+public final class GlyphAtlas {
+    /** Empty pixels around each glyph, so that filtering does not bleed */
+    static final int PAD = 1;
+    /** Samples per pixel in each direction to compute distance fields */
+    static final int DISTANCE_FIELD_UPSAMPLE = 4;
+
+    /**
+     * A glyph stored in the atlas.
+     */
+    public static final class Glyph {
+        // Key
+        Font    font;
+        int     scaleBucket;
+        int     flags;
+        int     code;
+        // Location in its page, or a negative page when evicted
+        int     page;
+        int     x, y, width, height;
+        // Offset of the image from the glyph origin, in pixels
+        int     left, top;
+        // Texture coordinates of the image in its page
+        float   s0, t0, s1, t1;
+        float   advance;
+
+        Glyph() {
+        }
+
+        Glyph(Glyph key) {
+            font = key.font;
+            scaleBucket = key.scaleBucket;
+            flags = key.flags;
+            code = key.code;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        /**
+         * Returns the page holding the image of the glyph, or -1 when the
+         * glyph has been evicted.
+         */
+        public int getPage() {
+            return page;
+        }
+
+        public boolean isEvicted() {
+            return page < 0;
+        }
+
+        /** Returns the left of the image in its page, in pixels. */
+        public int getX() {
+            return x;
+        }
+
+        /** Returns the top of the image in its page, in pixels. */
+        public int getY() {
+            return y;
+        }
+
+        /** Returns the width of the image, 0 for a blank glyph. */
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /** Returns the horizontal offset of the image from the glyph origin. */
+        public int getLeft() {
+            return left;
+        }
+
+        /** Returns the vertical offset of the image from the glyph origin. */
+        public int getTop() {
+            return top;
+        }
+
+        /** Returns the horizontal advance of the glyph, in pixels. */
+        public float getAdvance() {
+            return advance;
+        }
+
+        public int hashCode() {
+            return ((font.hashCode() * 31 + scaleBucket) * 31 + flags) * 31 + code;
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Glyph))
+                return false;
+            Glyph g = (Glyph) obj;
+            return code == g.code && scaleBucket == g.scaleBucket
+                && flags == g.flags && font.equals(g.font);
+        }
+    }
+
+    static final class Page {
+        BufferedImage image;
+        byte[] pixels;
+        Graphics2D graphics;
+        // Shelves: top, height and first free column
+        int[] shelfY = new int[16];
+        int[] shelfHeight = new int[16];
+        int[] shelfX = new int[16];
+        int shelfCount;
+        int top;
+        ArrayList<Glyph> glyphs = new ArrayList<Glyph>();
+        long lastUsed;
+        int version;
+        // Version of the last change of each row
+        int[] rowVersions;
+        long usedArea;
+
+        Page(int width, int height) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+            rowVersions = new int[height];
+            pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            graphics = image.createGraphics();
+            graphics.setColor(Color.WHITE);
+        }
+
+        void clear() {
+            Arrays.fill(pixels, (byte) 0);
+            shelfCount = 0;
+            top = 0;
+            glyphs.clear();
+            usedArea = 0;
+            version++;
+        }
+
+        // Reserves a w x h rectangle, returns false if there is no room
+        boolean allocate(Glyph g, int w, int h, int pageWidth, int pageHeight) {
+            int best = -1;
+            for (int i = 0; i < shelfCount; i++) {
+                if (shelfHeight[i] >= h && pageWidth - shelfX[i] >= w
+                    && (best == -1 || shelfHeight[i] < shelfHeight[best]))
+                    best = i;
+            }
+            if (best == -1) {
+                if (pageHeight - top < h || pageWidth < w)
+                    return false;
+                if (shelfCount == shelfY.length) {
+                    shelfY = Arrays.copyOf(shelfY, shelfCount * 2);
+                    shelfHeight = Arrays.copyOf(shelfHeight, shelfCount * 2);
+                    shelfX = Arrays.copyOf(shelfX, shelfCount * 2);
+                }
+                best = shelfCount++;
+                shelfY[best] = top;
+                shelfHeight[best] = h;
+                shelfX[best] = 0;
+                top += h;
+            }
+            g.x = shelfX[best];
+            g.y = shelfY[best];
+            shelfX[best] += w;
+            return true;
+        }
+    }
+
+    private int pageWidth;
+    private int pageHeight;
+    private int maxPages;
+    private int spread;
+    private ArrayList<Page> pages = new ArrayList<Page>();
+    private HashMap<Glyph, Glyph> glyphs = new HashMap<Glyph, Glyph>();
+    private Glyph probe = new Glyph();
+    // Page receiving the new glyphs
+    private int fillPage;
+    private long clock;
+    private int evictions;
+    // Pages used since the start of the run are not evicted
+    private long runStart = Long.MAX_VALUE;
+
+    // Last scaled font, reused while the same font is filled in
+    private Font lastFont;
+    private int lastBucket;
+    private Font scaledFont;
+    private FontRenderContext[] frcs = new FontRenderContext[4];
+    private int[] codes = new int[1];
+
+    /**
+     * Creates an atlas.
+     *
+     * @param pageWidth the width of the pages in pixels
+     * @param pageHeight the height of the pages in pixels
+     * @param maxPages the maximum number of pages
+     */
+    public GlyphAtlas(int pageWidth, int pageHeight, int maxPages) {
+        this(pageWidth, pageHeight, maxPages, 0);
+    }
+
+    /**
+     * Creates an atlas storing the glyphs as images or distance fields.
+     *
+     * @param pageWidth the width of the pages in pixels
+     * @param pageHeight the height of the pages in pixels
+     * @param maxPages the maximum number of pages
+     * @param spread 0 to store images of the glyphs, or the distance in
+     * pixels covered by their distance fields around their outlines
+     * @see DistanceField
+     */
+    public GlyphAtlas(int pageWidth, int pageHeight, int maxPages, int spread) {
+        if (pageWidth <= 0 || pageHeight <= 0 || maxPages <= 0 || spread < 0)
+            throw new IllegalArgumentException("Invalid atlas size");
+        this.pageWidth = pageWidth;
+        this.pageHeight = pageHeight;
+        this.maxPages = maxPages;
+        this.spread = spread;
+    }
+
+    /**
+     * Returns the scale bucket of a scale: glyphs are shared by the
+     * scales rounding to the same hundredth.
+     */
+    public static int getScaleBucket(double scale) {
+        return (int) Math.round(scale * 100);
+    }
+
+    /**
+     * Returns <code>true</code> for the codes of the invisible glyphs
+     * given to characters like tabs and line separators. Composite fonts
+     * keep the slot of the physical font in the high byte of their glyph
+     * codes, so only the low bits are tested.
+     */
+    public static boolean isInvisible(int code) {
+        return (code & 0xFFFFFF) >= 0xFFFE;
+    }
+
+    static int getFlags(boolean aa, boolean ufm) {
+        return (aa ? 1 : 0) | (ufm ? 2 : 0);
+    }
+
+    public int getPageWidth() {
+        return pageWidth;
+    }
+
+    public int getPageHeight() {
+        return pageHeight;
+    }
+
+    public int getMaxPages() {
+        return maxPages;
+    }
+
+    /**
+     * Returns the spread of the distance fields, or 0 if the glyphs are
+     * stored as images.
+     */
+    public int getSpread() {
+        return spread;
+    }
+
+    public synchronized int getPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * Returns the image of a page, white glyphs on a black background.
+     */
+    public synchronized BufferedImage getPageImage(int page) {
+        return pages.get(page).image;
+    }
+
+    /**
+     * Returns the pixels of a page, one byte per pixel, row by row.
+     */
+    public synchronized byte[] getPagePixels(int page) {
+        return pages.get(page).pixels;
+    }
+
+    /**
+     * Returns a number changed whenever the image of a page changes.
+     */
+    public synchronized int getPageVersion(int page) {
+        return pages.get(page).version;
+    }
+
+    public synchronized int getGlyphCount() {
+        return glyphs.size();
+    }
+
+    /**
+     * Returns the number of pages emptied to make room for new glyphs.
+     */
+    public synchronized int getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Finds the rows of a page changed since a version.
+     *
+     * @param page the page
+     * @param version the version of the last upload of the page
+     * @param rows receives the first changed row and the row after the
+     * last one
+     * @return <code>false</code> if no row changed
+     */
+    public synchronized boolean getChangedRows(int page, int version, int[] rows) {
+        Page p = pages.get(page);
+        if (p.version == version)
+            return false;
+        int[] v = p.rowVersions;
+        int first = 0;
+        while (first < v.length && v[first] <= version)
+            first++;
+        if (first == v.length)
+            return false;
+        int end = v.length;
+        while (v[end - 1] <= version)
+            end--;
+        rows[0] = first;
+        rows[1] = end;
+        return true;
+    }
+
+    /**
+     * Returns the number of pixels taken by the glyphs, padding included.
+     */
+    public synchronized long getUsedArea() {
+        long area = 0;
+        for (int i = 0; i < pages.size(); i++)
+            area += pages.get(i).usedArea;
+        return area;
+    }
+
+    /**
+     * Returns the fraction of the maximum number of pages taken by the
+     * glyphs.
+     */
+    public double getOccupancy() {
+        return (double) getUsedArea() / ((long) pageWidth * pageHeight * maxPages);
+    }
+
+    /**
+     * Returns <code>true</code> if glyphs of the specified bounds, in
+     * pixels, fit in a page.
+     */
+    public boolean fits(double width, double height) {
+        return width + 2 * PAD <= pageWidth && height + 2 * PAD <= pageHeight;
+    }
+
+    /**
+     * Empties the atlas.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < pages.size(); i++) {
+            Page p = pages.get(i);
+            evict(p);
+            p.clear();
+        }
+        glyphs.clear();
+        fillPage = 0;
+    }
+
+    /**
+     * Starts a run of glyphs drawn together. Until the next run or
+     * {@link #endRun()}, the pages holding the glyphs returned are not
+     * evicted, so {@link #getGlyph} returns <code>null</code> when no
+     * other page can be emptied; the glyphs of the run should then be
+     * drawn and a new run started.
+     */
+    public synchronized void beginRun() {
+        runStart = clock + 1;
+    }
+
+    public synchronized void endRun() {
+        runStart = Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns a glyph, rendering it into a page if it is not in the atlas.
+     *
+     * @param font the font
+     * @param scale the scale the glyph is rendered at
+     * @param aa anti-aliased
+     * @param ufm uses fractional metrics
+     * @param code the glyph code in the font
+     * @return the glyph, or <code>null</code> if it is larger than a page
+     * or if all the pages are full and used by the current run
+     */
+    public synchronized Glyph getGlyph(Font font, double scale, boolean aa, boolean ufm, int code) {
+        probe.font = font;
+        probe.scaleBucket = getScaleBucket(scale);
+        probe.flags = getFlags(aa, ufm);
+        probe.code = code;
+        Glyph g = glyphs.get(probe);
+        clock++;
+        if (g != null) {
+            probe.font = null;
+            pages.get(g.page).lastUsed = clock;
+            return g;
+        }
+        g = new Glyph(probe);
+        probe.font = null;
+        if (!render(g, scale))
+            return null;
+        glyphs.put(g, g);
+        return g;
+    }
+
+    private boolean render(Glyph g, double scale) {
+        if (lastFont != g.font || lastBucket != g.scaleBucket) {
+            scaledFont = g.font.deriveFont(AffineTransform.getScaleInstance(scale, scale));
+            lastFont = g.font;
+            lastBucket = g.scaleBucket;
+        }
+        FontRenderContext frc = frcs[g.flags];
+        if (frc == null) {
+            frc = new FontRenderContext(null, (g.flags & 1) != 0, (g.flags & 2) != 0);
+            frcs[g.flags] = frc;
+        }
+        codes[0] = g.code;
+        GlyphVector gv = scaledFont.createGlyphVector(frc, codes);
+        g.advance = gv.getGlyphMetrics(0).getAdvanceX();
+        Shape outline = null;
+        Rectangle d;
+        if (spread == 0) {
+            d = gv.getGlyphPixelBounds(0, frc, 0, 0);
+        }
+        else {
+            // The field extends spread pixels around the outline
+            outline = gv.getGlyphOutline(0);
+            d = outline.getBounds();
+            if (!d.isEmpty())
+                d.grow(spread, spread);
+        }
+
+        if (d == null || d.isEmpty()) {
+            // Blank, nothing to draw but its page keeps track of it
+            Page p = page(fillPage);
+            g.page = fillPage;
+            p.glyphs.add(g);
+            p.lastUsed = clock;
+            return true;
+        }
+        int w = d.width + 2 * PAD;
+        int h = d.height + 2 * PAD;
+        if (w > pageWidth || h > pageHeight)
+            return false;
+        int index = allocate(g, w, h);
+        if (index == -1)
+            return false;
+        Page p = pages.get(index);
+        g.page = index;
+        g.width = d.width;
+        g.height = d.height;
+        g.left = d.x;
+        g.top = d.y;
+        g.s0 = (float) (g.x + PAD) / pageWidth;
+        g.t0 = (float) (g.y + PAD) / pageHeight;
+        g.s1 = (float) (g.x + PAD + d.width) / pageWidth;
+        g.t1 = (float) (g.y + PAD + d.height) / pageHeight;
+        p.glyphs.add(g);
+        p.lastUsed = clock;
+        p.version++;
+        p.usedArea += w * h;
+        Arrays.fill(p.rowVersions, g.y, g.y + h, p.version);
+
+        if (outline != null) {
+            DistanceField.compute(outline, d.x, d.y, d.width, d.height,
+                                  spread, DISTANCE_FIELD_UPSAMPLE, p.pixels,
+                                  (g.y + PAD) * pageWidth + g.x + PAD, pageWidth);
+            return true;
+        }
+        Graphics2D graphics = p.graphics;
+        graphics.setRenderingHint(
+            RenderingHints.KEY_TEXT_ANTIALIASING,
+            frc.isAntiAliased() ?
+                RenderingHints.VALUE_TEXT_ANTIALIAS_ON :
+                RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+        graphics.setRenderingHint(
+            RenderingHints.KEY_FRACTIONALMETRICS,
+            frc.usesFractionalMetrics() ?
+                RenderingHints.VALUE_FRACTIONALMETRICS_ON :
+                RenderingHints.VALUE_FRACTIONALMETRICS_OFF);
+        graphics.drawGlyphVector(gv, g.x + PAD - d.x, g.y + PAD - d.y);
+        return true;
+    }
+
+    private Page page(int index) {
+        if (index == pages.size())
+            pages.add(new Page(pageWidth, pageHeight));
+        return pages.get(index);
+    }
+
+    // Finds room for a w x h image, evicting the least recently used page
+    // when all the pages are full, or returns -1
+    private int allocate(Glyph g, int w, int h) {
+        int n = pages.size();
+        for (int i = 0; i < n; i++) {
+            int index = (fillPage + i) % n;
+            if (pages.get(index).allocate(g, w, h, pageWidth, pageHeight)) {
+                fillPage = index;
+                return index;
+            }
+        }
+        if (n < maxPages) {
+            fillPage = n;
+        }
+        else {
+            int lru = -1;
+            for (int i = 0; i < n; i++) {
+                long used = pages.get(i).lastUsed;
+                if (used < runStart && (lru == -1 || used < pages.get(lru).lastUsed))
+                    lru = i;
+            }
+            if (lru == -1)
+                return -1;
+            Page p = pages.get(lru);
+            evict(p);
+            p.clear();
+            evictions++;
+            fillPage = lru;
+        }
+        page(fillPage).allocate(g, w, h, pageWidth, pageHeight);
+        return fillPage;
+    }
+
+    private void evict(Page p) {
+        for (int i = 0; i < p.glyphs.size(); i++) {
+            Glyph g = p.glyphs.get(i);
+            glyphs.remove(g);
+            g.page = -1;
+        }
+    }
+}
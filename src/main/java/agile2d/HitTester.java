@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2006 Jon Meyer, Ben Bederson and Jean-Daniel Fekete               *
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d;
+
+import java.awt.BasicStroke;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.nio.FloatBuffer;
+import java.util.WeakHashMap;
+
+import agile2d.geom.VertexArray;
+
+
+/**
+ * Tests whether shapes intersect device space rectangles, from the
+ * triangles covering the filled or stroked shapes.
+ *
+ * <p>
+ * The shapes are triangulated like for their rendering, by the
+ * {@link Triangulator} and, for BasicStrokes, the {@link Stroker}, with a
+ * flattening tolerance of a quarter of a pixel. The rectangle is mapped to
+ * the shape coordinates, where it is a parallelogram tested against the
+ * bounds of the shape, then against each triangle.
+ * </p>
+ *
+ * <p>
+ * The triangles of immutable shapes are cached, with the last query and its
+ * result, so that testing the same shapes repeatedly, as when picking under
+ * the mouse, does not triangulate them again.
+ * </p>
+ */
+public final class HitTester {
+    private static final double FLATNESS = 0.25;
+
+    // Weakly keyed by shape, like the geometry cache
+    private WeakHashMap<Object, Entry> filled = new WeakHashMap<Object, Entry>();
+    private WeakHashMap<Object, Entry> stroked = new WeakHashMap<Object, Entry>();
+
+    private Triangulator triangulator = new Triangulator();
+    private Stroker      stroker = new Stroker();
+    private VertexArray  scratch = new VertexArray();
+    private double[]     matrix = new double[6];
+    // The query rectangle in shape coordinates
+    private double[]     quad = new double[8];
+    private double       qMinX, qMinY, qMaxX, qMaxY;
+
+    /**
+     * The triangles of a shape at a level of detail, and the last query.
+     */
+    static final class Entry {
+        Object   stroke;
+        int      lod;
+        float[]  triangles;
+        int      count; // number of vertices
+        double   minX, minY, maxX, maxY;
+
+        Rectangle lastRect = new Rectangle();
+        double[]  lastMatrix = new double[6];
+        boolean   lastResult;
+        boolean   hasLast;
+    }
+
+    /**
+     * Returns true if the filled or stroked shape intersects a rectangle.
+     *
+     * @param rect the rectangle in device space
+     * @param shape the shape
+     * @param stroke the stroke, used when onStroke is true
+     * @param onStroke true to test the stroked shape, false the filled one
+     * @param transform the transform from the shape to device space
+     * @param immutable true to cache the triangles of the shape
+     */
+    public boolean hit(Rectangle rect, Shape shape, Stroke stroke, boolean onStroke,
+                       AffineTransform transform, boolean immutable) {
+        return hit(rect, shape, stroke, onStroke, transform, null, immutable);
+    }
+
+    /**
+     * Returns true if the part of the filled or stroked shape inside a clip
+     * intersects a rectangle. The rectangle is first reduced to the bounds
+     * of the clip, which is exact for rectangular clips.
+     *
+     * @param rect the rectangle in device space
+     * @param shape the shape
+     * @param stroke the stroke, used when onStroke is true
+     * @param onStroke true to test the stroked shape, false the filled one
+     * @param transform the transform from the shape to device space
+     * @param clip the clip in device space, or null
+     * @param immutable true to cache the triangles of the shape
+     */
+    public boolean hit(Rectangle rect, Shape shape, Stroke stroke, boolean onStroke,
+                       AffineTransform transform, Shape clip, boolean immutable) {
+        if (rect.isEmpty())
+            return false;
+        if (clip != null) {
+            if (!clip.intersects(rect))
+                return false;
+            rect = rect.intersection(clip.getBounds());
+            if (rect.isEmpty())
+                return false;
+        }
+        transform.getMatrix(matrix);
+        double scale = Math.sqrt(Math.abs(matrix[0] * matrix[3] - matrix[1] * matrix[2]));
+        if (!(scale > 0))
+            return false;
+        int lod = Math.getExponent(FLATNESS / scale);
+
+        if (!onStroke)
+            stroke = null;
+        Entry e = null;
+        if (immutable) {
+            e = (onStroke ? stroked : filled).get(shape);
+            if (e != null && (e.stroke != stroke || e.lod != lod))
+                e = null;
+            if (e != null && e.hasLast && e.lastRect.equals(rect) && sameMatrix(e.lastMatrix))
+                return e.lastResult;
+        }
+
+        if (!setQuery(rect))
+            return false;
+        boolean result;
+        if (e != null) {
+            result = overlapsBounds(e.minX, e.minY, e.maxX, e.maxY) && hitTriangles(e);
+        }
+        else {
+            Rectangle2D b = getBounds(shape, stroke);
+            if (!overlapsBounds(b.getMinX(), b.getMinY(), b.getMaxX(), b.getMaxY()))
+                return false;
+            e = triangulate(shape, stroke, lod);
+            result = overlapsBounds(e.minX, e.minY, e.maxX, e.maxY) && hitTriangles(e);
+            if (immutable)
+                (onStroke ? stroked : filled).put(shape, e);
+        }
+        if (immutable) {
+            e.lastRect.setBounds(rect);
+            System.arraycopy(matrix, 0, e.lastMatrix, 0, 6);
+            e.lastResult = result;
+            e.hasLast = true;
+        }
+        return result;
+    }
+
+    private boolean sameMatrix(double[] m) {
+        for (int i = 0; i < 6; i++) {
+            if (m[i] != matrix[i])
+                return false;
+        }
+        return true;
+    }
+
+    // Conservative bounds of the filled or stroked shape
+    private static Rectangle2D getBounds(Shape shape, Stroke stroke) {
+        Rectangle2D b = shape.getBounds2D();
+        if (stroke == null)
+            return b;
+        if (!(stroke instanceof BasicStroke))
+            return stroke.createStrokedShape(shape).getBounds2D();
+        BasicStroke bs = (BasicStroke)stroke;
+        double pad = bs.getLineWidth() / 2;
+        if (bs.getLineJoin() == BasicStroke.JOIN_MITER)
+            pad *= Math.max(bs.getMiterLimit(), Math.sqrt(2));
+        else
+            pad *= Math.sqrt(2);
+        b.setRect(b.getX() - pad, b.getY() - pad, b.getWidth() + 2 * pad, b.getHeight() + 2 * pad);
+        return b;
+    }
+
+    private Entry triangulate(Shape shape, Stroke stroke, int lod) {
+        double flatness = Math.scalb(1.0, lod);
+        scratch.clear();
+        if (stroke == null)
+            triangulator.triangulate(shape.getPathIterator(null, flatness), scratch);
+        else if (stroke instanceof BasicStroke)
+            stroker.stroke(shape.getPathIterator(null, flatness), (BasicStroke)stroke, flatness, scratch);
+        else
+            triangulator.triangulate(stroke.createStrokedShape(shape).getPathIterator(null, flatness), scratch);
+
+        Entry e = new Entry();
+        e.stroke = stroke;
+        e.lod = lod;
+        e.count = scratch.getVertexCount() / 3 * 3;
+        e.triangles = new float[e.count * 2];
+        FloatBuffer data = scratch.getDataRef().duplicate();
+        data.position(0);
+        data.get(e.triangles);
+        if (e.count == 0) {
+            e.minX = e.minY = Double.POSITIVE_INFINITY;
+            e.maxX = e.maxY = Double.NEGATIVE_INFINITY;
+            return e;
+        }
+        float minX = e.triangles[0], minY = e.triangles[1], maxX = minX, maxY = minY;
+        for (int i = 2; i < e.triangles.length; i += 2) {
+            float x = e.triangles[i], y = e.triangles[i+1];
+            if (x < minX) minX = x; else if (x > maxX) maxX = x;
+            if (y < minY) minY = y; else if (y > maxY) maxY = y;
+        }
+        e.minX = minX;
+        e.minY = minY;
+        e.maxX = maxX;
+        e.maxY = maxY;
+        return e;
+    }
+
+    // Maps the corners of the rectangle to the shape coordinates. Returns
+    // false if the transform is not invertible.
+    private boolean setQuery(Rectangle rect) {
+        double det = matrix[0] * matrix[3] - matrix[1] * matrix[2];
+        if (det == 0)
+            return false;
+        double x1 = rect.x, y1 = rect.y;
+        double x2 = x1 + rect.width, y2 = y1 + rect.height;
+        inverse(x1, y1, det, 0);
+        inverse(x2, y1, det, 2);
+        inverse(x2, y2, det, 4);
+        inverse(x1, y2, det, 6);
+        qMinX = qMaxX = quad[0];
+        qMinY = qMaxY = quad[1];
+        for (int i = 2; i < 8; i += 2) {
+            qMinX = Math.min(qMinX, quad[i]);
+            qMaxX = Math.max(qMaxX, quad[i]);
+            qMinY = Math.min(qMinY, quad[i+1]);
+            qMaxY = Math.max(qMaxY, quad[i+1]);
+        }
+        return true;
+    }
+
+    // matrix is m00 m10 m01 m11 m02 m12
+    private void inverse(double x, double y, double det, int index) {
+        x -= matrix[4];
+        y -= matrix[5];
+        quad[index] = (matrix[3] * x - matrix[2] * y) / det;
+        quad[index+1] = (matrix[0] * y - matrix[1] * x) / det;
+    }
+
+    private boolean overlapsBounds(double minX, double minY, double maxX, double maxY) {
+        return minX <= qMaxX && qMinX <= maxX && minY <= qMaxY && qMinY <= maxY;
+    }
+
+    private boolean hitTriangles(Entry e) {
+        float[] t = e.triangles;
+        for (int i = 0; i < e.count * 2; i += 6) {
+            double ax = t[i], ay = t[i+1], bx = t[i+2], by = t[i+3], cx = t[i+4], cy = t[i+5];
+            if (Math.max(ax, Math.max(bx, cx)) < qMinX || Math.min(ax, Math.min(bx, cx)) > qMaxX
+                || Math.max(ay, Math.max(by, cy)) < qMinY || Math.min(ay, Math.min(by, cy)) > qMaxY)
+                continue;
+            if (intersects(ax, ay, bx, by, cx, cy))
+                return true;
+        }
+        return false;
+    }
+
+    // Separating axis test between a triangle and the query parallelogram
+    private boolean intersects(double ax, double ay, double bx, double by, double cx, double cy) {
+        // Axes normal to the edges of the parallelogram
+        for (int i = 0; i < 4; i += 2) {
+            double nx = quad[i+3] - quad[i+1], ny = quad[i] - quad[i+2];
+            if (separates(nx, ny, ax, ay, bx, by, cx, cy))
+                return false;
+        }
+        // Axes normal to the edges of the triangle
+        return !separates(by - ay, ax - bx, ax, ay, bx, by, cx, cy)
+            && !separates(cy - by, bx - cx, ax, ay, bx, by, cx, cy)
+            && !separates(ay - cy, cx - ax, ax, ay, bx, by, cx, cy);
+    }
+
+    private boolean separates(double nx, double ny,
+                              double ax, double ay, double bx, double by, double cx, double cy) {
+        double a = nx * ax + ny * ay, b = nx * bx + ny * by, c = nx * cx + ny * cy;
+        double tMin = Math.min(a, Math.min(b, c)), tMax = Math.max(a, Math.max(b, c));
+        double qMin = Double.POSITIVE_INFINITY, qMax = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < 8; i += 2) {
+            double q = nx * quad[i] + ny * quad[i+1];
+            qMin = Math.min(qMin, q);
+            qMax = Math.max(qMax, q);
+        }
+        return tMax < qMin || qMax < tMin;
+    }
+
+    public void clear() {
+        filled.clear();
+        stroked.clear();
+    }
+}
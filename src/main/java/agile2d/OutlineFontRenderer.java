@@ -123,8 +123,7 @@ class OutlineFontRenderer extends BasicOutlineFontRenderer {
             return false;
         GL2 gl = drawable.getGL().getGL2();
         gl.glNewList(listBase_ + c, GL2.GL_COMPILE);
-        for (int i = 0; i < v.size(); i++)
-            ShapeManager.render(gl, v.getVertexArrayAt(i), null);
+        ShapeManager.render(gl, v);
         gl.glEndList();
         //listFont[c] = this.font;
         return true;
@@ -137,8 +136,7 @@ class OutlineFontRenderer extends BasicOutlineFontRenderer {
             return false;
         GL2 gl = drawable.getGL().getGL2();
         gl.glNewList(listBase_ + g, GL2.GL_COMPILE);
-        for (int i = 0; i < v.size(); i++)
-            ShapeManager.render(gl, v.getVertexArrayAt(i), null);
+        ShapeManager.render(gl, v);
         gl.glEndList();
         return true;
     }
@@ -186,6 +184,7 @@ class OutlineFontRenderer extends BasicOutlineFontRenderer {
         VertexArrayList v = new VertexArrayList();
         VertexArrayTesselatorVisitor visitor = new VertexArrayTesselatorVisitor(v);
         tesselator.tesselate(s.getPathIterator(null, 0.01), visitor);
+        v.pack(VertexArray.STORAGE_SHORT);
         vertices[charIndex] = v;
         return true;
     }
@@ -195,6 +194,7 @@ class OutlineFontRenderer extends BasicOutlineFontRenderer {
         VertexArrayList v = new VertexArrayList();
         VertexArrayTesselatorVisitor visitor = new VertexArrayTesselatorVisitor(v);
         tesselator.tesselate(s.getPathIterator(null, 0.01), visitor);
+        v.pack(VertexArray.STORAGE_SHORT);
         verticesGlyphs[glyphIndex] = v;
         return true;
     }
@@ -7,6 +7,7 @@
 
 package agile2d;
 
+import agile2d.geom.VertexArray;
 import agile2d.geom.VertexArrayList;
 
 import java.awt.Font;
@@ -139,12 +140,8 @@ class OutlineRoughFontRenderer extends BasicOutlineFontRenderer {
                 //a polygon composing one glyph (a char may be composed of many glyphs)
                 gl.glPushMatrix();
                 gl.glScaled(scale, scale, 1.0);
-                for (int j = 0; j < currentGlyphVAL.size(); j++){
-                    gl.glPushMatrix();
-                    gl.glTranslated(gV.getGlyphPosition(i).getX(), 0.0, 0.0);
-                    ShapeManager.render(gl, currentGlyphVAL.getVertexArrayAt(j), null);
-                    gl.glPopMatrix();
-                }
+                gl.glTranslated(gV.getGlyphPosition(i).getX(), 0.0, 0.0);
+                ShapeManager.render(gl, currentGlyphVAL);
                 gl.glPopMatrix();
             }
         }
@@ -173,6 +170,7 @@ class OutlineRoughFontRenderer extends BasicOutlineFontRenderer {
         VertexArrayList tempGlyphVAL = new VertexArrayList();
         VertexArrayTesselatorVisitor visitor = new VertexArrayTesselatorVisitor(tempGlyphVAL);
         tesselator.tesselate(s.getPathIterator(null, 0.01), visitor);
+        tempGlyphVAL.pack(VertexArray.STORAGE_SHORT);
         return tempGlyphVAL;
     }
 
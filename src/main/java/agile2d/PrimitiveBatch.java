@@ -0,0 +1,468 @@
+/*
+ * Copyright (C) 2006 Jon Meyer, Ben Bederson and Jean-Daniel Fekete               *
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import javax.media.opengl.GL2;
+
+import agile2d.geom.BufferPool;
+import agile2d.geom.VertexArray;
+
+
+/**
+ * Collects the small primitives produced by the fast paths of the
+ * GraphicsEngine (lines, rectangles, small polygons, image quads) into
+ * one client-side vertex stream, and sends them to OpenGL with a single
+ * glDrawArrays call.
+ *
+ * <p>
+ * Vertices are transformed on the CPU by the current Java2D transform, so
+ * that a change of transform does not break a batch. Every vertex also
+ * carries its own color (and texture coordinates for image quads), so color
+ * changes do not break a batch either. The batch must be flushed by its
+ * owner before any other GL state that affects rasterization changes
+ * (blending, clipping, line width, projection...) and before anything
+ * else is drawn.
+ * </p>
+ *
+ * <p>
+ * The vertices are expressed relative to the base modelview matrix: the
+ * caller is responsible for loading it before calling {@link #flush()}.
+ * </p>
+ */
+final class PrimitiveBatch {
+    private GL2 gl;
+    private AgileState glState;
+
+    private FloatBuffer vertexBuffer;
+    private ByteBuffer  colorBuffer;
+    private FloatBuffer texCoordBuffer;
+    private ByteBuffer  vertexBytes; // storage of the float buffers, for the pool
+    private ByteBuffer  texCoordBytes;
+    private int         count; // number of vertices in the batch
+    private int         capacity; // number of vertices that fit in the buffers
+
+    // Batch key: a batch only holds primitives sharing these
+    private int         mode = VertexArray.MODE_INVALID;
+    private int         texture;
+    private float       lineWidth;
+
+    // Current attributes applied to incoming vertices
+    private AffineTransform transform;
+    private byte r, g, b, a = -1;
+    private float[]     segment = new float[6]; // for addPath
+
+    // Statistics
+    private int         drawCount;
+    private int         primitiveCount;
+
+    /**
+     * Creates a batch. The GL context is only used by {@link #flush()}, so
+     * that primitives can be collected and checked without one.
+     */
+    PrimitiveBatch(GL2 gl) {
+        this.gl = gl;
+        ensureCapacity(1024);
+    }
+
+    /**
+     * Sets the transform applied to the vertices added from now on.
+     * The transform is read when vertices are added, it can be changed
+     * in place afterwards.
+     */
+    void setTransform(AffineTransform transform) {
+        this.transform = transform;
+    }
+
+    /**
+     * Sets the color given to the vertices added from now on.
+     */
+    void setColor(byte r, byte g, byte b, byte a) {
+        this.r = r;
+        this.g = g;
+        this.b = b;
+        this.a = a;
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Returns the number of pending vertices.
+     */
+    int getVertexCount() {
+        return count;
+    }
+
+    /**
+     * Reads the coordinates of a pending vertex, after transformation.
+     */
+    void getVertex(int index, float[] xy) {
+        xy[0] = vertexBuffer.get(2 * index);
+        xy[1] = vertexBuffer.get(2 * index + 1);
+    }
+
+    /**
+     * Reads the color of a pending vertex.
+     */
+    void getColor(int index, byte[] rgba) {
+        for (int i = 0; i < 4; i++)
+            rgba[i] = colorBuffer.get(4 * index + i);
+    }
+
+    boolean hasLines() {
+        return count != 0 && mode == GL2.GL_LINES;
+    }
+
+    float getLineWidth() {
+        return lineWidth;
+    }
+
+    /**
+     * Returns the number of glDrawArrays issued since the last call to
+     * {@link #resetCounters()}.
+     */
+    int getDrawCount() {
+        return drawCount;
+    }
+
+    /**
+     * Returns the number of primitives added since the last call to
+     * {@link #resetCounters()}.
+     */
+    int getPrimitiveCount() {
+        return primitiveCount;
+    }
+
+    void resetCounters() {
+        drawCount = 0;
+        primitiveCount = 0;
+    }
+
+    /**
+     * Prepares the batch to receive primitives of the specified mode
+     * (GL_LINES or GL_TRIANGLES), textured with the specified texture
+     * (0 for none). Returns <code>false</code> if the pending primitives
+     * are not compatible and the batch must be flushed first.
+     */
+    boolean accepts(int mode, int texture, float lineWidth) {
+        if (count == 0) {
+            this.mode = mode;
+            this.texture = texture;
+            this.lineWidth = lineWidth;
+            return true;
+        }
+        return this.mode == mode
+            && this.texture == texture
+            && (mode != GL2.GL_LINES || this.lineWidth == lineWidth);
+    }
+
+    private void ensureCapacity(int size) {
+        if (size <= capacity)
+            return;
+        int newSize = capacity * 2;
+        if (newSize < size)
+            newSize = size;
+        ByteBuffer  newVertexBytes = VertexArray.newByteBuffer(newSize * 8);
+        ByteBuffer  newColors = VertexArray.newByteBuffer(newSize * 4);
+        ByteBuffer  newTexCoordBytes = VertexArray.newByteBuffer(newSize * 8);
+        FloatBuffer newVertices = newVertexBytes.asFloatBuffer();
+        FloatBuffer newTexCoords = newTexCoordBytes.asFloatBuffer();
+        if (count != 0) {
+            vertexBuffer.flip();
+            newVertices.put(vertexBuffer);
+            colorBuffer.flip();
+            newColors.put(colorBuffer);
+            texCoordBuffer.flip();
+            newTexCoords.put(texCoordBuffer);
+        }
+        if (vertexBuffer != null) {
+            BufferPool.release(vertexBytes);
+            BufferPool.release(colorBuffer);
+            BufferPool.release(texCoordBytes);
+        }
+        vertexBytes = newVertexBytes;
+        texCoordBytes = newTexCoordBytes;
+        vertexBuffer = newVertices;
+        colorBuffer = newColors;
+        texCoordBuffer = newTexCoords;
+        capacity = newSize;
+    }
+
+    private void vertex(double x, double y, float s, float t) {
+        if (transform != null) {
+            vertexBuffer.put((float)(transform.getScaleX() * x + transform.getShearX() * y + transform.getTranslateX()));
+            vertexBuffer.put((float)(transform.getShearY() * x + transform.getScaleY() * y + transform.getTranslateY()));
+        }
+        else {
+            vertexBuffer.put((float)x);
+            vertexBuffer.put((float)y);
+        }
+        colorBuffer.put(r);
+        colorBuffer.put(g);
+        colorBuffer.put(b);
+        colorBuffer.put(a);
+        texCoordBuffer.put(s);
+        texCoordBuffer.put(t);
+        count++;
+    }
+
+    /**
+     * Adds a line segment. The batch must accept GL_LINES.
+     */
+    void addLine(double x1, double y1, double x2, double y2) {
+        ensureCapacity(count + 2);
+        vertex(x1, y1, 0, 0);
+        vertex(x2, y2, 0, 0);
+        primitiveCount++;
+    }
+
+    /**
+     * Adds the outline of a rectangle as four line segments. The batch must
+     * accept GL_LINES.
+     */
+    void addRectOutline(double x1, double y1, double x2, double y2) {
+        ensureCapacity(count + 8);
+        vertex(x1, y1, 0, 0); vertex(x2, y1, 0, 0);
+        vertex(x2, y1, 0, 0); vertex(x2, y2, 0, 0);
+        vertex(x2, y2, 0, 0); vertex(x1, y2, 0, 0);
+        vertex(x1, y2, 0, 0); vertex(x1, y1, 0, 0);
+        primitiveCount++;
+    }
+
+    /**
+     * Adds a filled quadrilateral as two triangles. The batch must accept
+     * GL_TRIANGLES.
+     */
+    void addQuad(double x1, double y1, double x2, double y2,
+                 double x3, double y3, double x4, double y4) {
+        ensureCapacity(count + 6);
+        vertex(x1, y1, 0, 0); vertex(x2, y2, 0, 0); vertex(x3, y3, 0, 0);
+        vertex(x1, y1, 0, 0); vertex(x3, y3, 0, 0); vertex(x4, y4, 0, 0);
+        primitiveCount++;
+    }
+
+    /**
+     * Adds a filled axis-aligned rectangle. The batch must accept
+     * GL_TRIANGLES.
+     */
+    void addRect(double x1, double y1, double x2, double y2) {
+        addQuad(x1, y1, x2, y1, x2, y2, x1, y2);
+    }
+
+    /**
+     * Adds a textured rectangle. The batch must accept GL_TRIANGLES with the
+     * texture the coordinates refer to.
+     */
+    void addTexturedRect(double x1, double y1, double x2, double y2, float s2, float t2) {
+        ensureCapacity(count + 6);
+        vertex(x1, y1, 0, 0);  vertex(x1, y2, 0, t2); vertex(x2, y2, s2, t2);
+        vertex(x1, y1, 0, 0);  vertex(x2, y2, s2, t2); vertex(x2, y1, s2, 0);
+        primitiveCount++;
+    }
+
+    /**
+     * Adds a convex polygon as a triangle fan. The batch must accept
+     * GL_TRIANGLES.
+     */
+    void addPolygon(int[] xPts, int[] yPts, int nPts) {
+        if (nPts < 3)
+            return;
+        ensureCapacity(count + (nPts - 2) * 3);
+        for (int i = 2; i < nPts; i++) {
+            vertex(xPts[0], yPts[0], 0, 0);
+            vertex(xPts[i-1], yPts[i-1], 0, 0);
+            vertex(xPts[i], yPts[i], 0, 0);
+        }
+        primitiveCount++;
+    }
+
+    /**
+     * Adds a convex polygon as a triangle fan. The batch must accept
+     * GL_TRIANGLES.
+     */
+    void addPolygon(double[] xPts, double[] yPts, int nPts) {
+        if (nPts < 3)
+            return;
+        ensureCapacity(count + (nPts - 2) * 3);
+        for (int i = 2; i < nPts; i++) {
+            vertex(xPts[0], yPts[0], 0, 0);
+            vertex(xPts[i-1], yPts[i-1], 0, 0);
+            vertex(xPts[i], yPts[i], 0, 0);
+        }
+        primitiveCount++;
+    }
+
+    /**
+     * Adds a polyline as line segments, closing it if requested. The batch
+     * must accept GL_LINES.
+     */
+    void addPolyline(double[] xPts, double[] yPts, int nPts, boolean closed) {
+        if (nPts < 2)
+            return;
+        ensureCapacity(count + nPts * 2);
+        for (int i = 1; i < nPts; i++) {
+            vertex(xPts[i-1], yPts[i-1], 0, 0);
+            vertex(xPts[i], yPts[i], 0, 0);
+        }
+        if (closed) {
+            vertex(xPts[nPts-1], yPts[nPts-1], 0, 0);
+            vertex(xPts[0], yPts[0], 0, 0);
+        }
+        primitiveCount++;
+    }
+
+    /**
+     * Adds a copy of a list of triangles, transformed by an instance matrix
+     * before the current transform. The batch must accept GL_TRIANGLES.
+     *
+     * @param vertices the coordinates of the triangles
+     * @param n the number of vertices
+     * @param matrix the instance matrices, six values each in the order of
+     *   AffineTransform.getMatrix()
+     * @param offset the index of the instance matrix in the array
+     */
+    void addInstance(FloatBuffer vertices, int n, float[] matrix, int offset) {
+        double m00 = matrix[offset], m10 = matrix[offset+1];
+        double m01 = matrix[offset+2], m11 = matrix[offset+3];
+        double m02 = matrix[offset+4], m12 = matrix[offset+5];
+        if (transform != null) {
+            // Concatenate the two matrices once for all the vertices
+            double t00 = transform.getScaleX(), t01 = transform.getShearX();
+            double t10 = transform.getShearY(), t11 = transform.getScaleY();
+            double c00 = t00 * m00 + t01 * m10, c01 = t00 * m01 + t01 * m11;
+            double c10 = t10 * m00 + t11 * m10, c11 = t10 * m01 + t11 * m11;
+            double c02 = t00 * m02 + t01 * m12 + transform.getTranslateX();
+            double c12 = t10 * m02 + t11 * m12 + transform.getTranslateY();
+            m00 = c00; m01 = c01; m02 = c02;
+            m10 = c10; m11 = c11; m12 = c12;
+        }
+        ensureCapacity(count + n);
+        for (int i = 0; i < n; i++) {
+            float x = vertices.get(2*i);
+            float y = vertices.get(2*i+1);
+            vertexBuffer.put((float)(m00 * x + m01 * y + m02));
+            vertexBuffer.put((float)(m10 * x + m11 * y + m12));
+            colorBuffer.put(r);
+            colorBuffer.put(g);
+            colorBuffer.put(b);
+            colorBuffer.put(a);
+            texCoordBuffer.put(0);
+            texCoordBuffer.put(0);
+        }
+        count += n;
+        primitiveCount++;
+    }
+
+    /**
+     * Adds a flattened path, either as line segments (the batch must accept
+     * GL_LINES) or as convex polygons split in triangle fans (the batch must
+     * accept GL_TRIANGLES).
+     */
+    void addPath(PathIterator path, boolean fill) {
+        double firstX = 0, firstY = 0;
+        double lastX = 0, lastY = 0;
+        int nPts = 0;
+        while (!path.isDone()) {
+            switch (path.currentSegment(segment)) {
+            case PathIterator.SEG_MOVETO:
+                nPts = 0;
+                firstX = lastX = segment[0];
+                firstY = lastY = segment[1];
+                nPts++;
+                break;
+            case PathIterator.SEG_LINETO:
+                if (fill) {
+                    if (nPts >= 2) {
+                        ensureCapacity(count + 3);
+                        vertex(firstX, firstY, 0, 0);
+                        vertex(lastX, lastY, 0, 0);
+                        vertex(segment[0], segment[1], 0, 0);
+                    }
+                }
+                else {
+                    ensureCapacity(count + 2);
+                    vertex(lastX, lastY, 0, 0);
+                    vertex(segment[0], segment[1], 0, 0);
+                }
+                lastX = segment[0];
+                lastY = segment[1];
+                nPts++;
+                break;
+            case PathIterator.SEG_CLOSE:
+                if (!fill && nPts > 1 && (lastX != firstX || lastY != firstY)) {
+                    ensureCapacity(count + 2);
+                    vertex(lastX, lastY, 0, 0);
+                    vertex(firstX, firstY, 0, 0);
+                }
+                lastX = firstX;
+                lastY = firstY;
+                nPts = 1;
+                break;
+            }
+            path.next();
+        }
+        primitiveCount++;
+    }
+
+    /**
+     * Discards the pending primitives.
+     */
+    void clear() {
+        count = 0;
+        vertexBuffer.clear();
+        colorBuffer.clear();
+        texCoordBuffer.clear();
+    }
+
+    /**
+     * Sends the pending primitives to OpenGL in one glDrawArrays call.
+     */
+    void flush() {
+        if (count == 0)
+            return;
+
+        vertexBuffer.rewind();
+        colorBuffer.rewind();
+        gl.glEnableClientState(GL2.GL_VERTEX_ARRAY);
+        gl.glEnableClientState(GL2.GL_COLOR_ARRAY);
+        gl.glVertexPointer(2, GL2.GL_FLOAT, 0, vertexBuffer);
+        gl.glColorPointer(4, GL2.GL_UNSIGNED_BYTE, 0, colorBuffer);
+        if (texture != 0) {
+            if (glState == null)
+                glState = AgileState.get(gl);
+            texCoordBuffer.rewind();
+            glState.glEnable(GL2.GL_TEXTURE_2D);
+            glState.bindTexture2D(texture);
+            if (glState.setState(GL2.GL_TEXTURE_ENV_MODE, GL2.GL_MODULATE)) {
+                gl.glTexEnvf(GL2.GL_TEXTURE_ENV, GL2.GL_TEXTURE_ENV_MODE, GL2.GL_MODULATE);
+            }
+            gl.glEnableClientState(GL2.GL_TEXTURE_COORD_ARRAY);
+            gl.glTexCoordPointer(2, GL2.GL_FLOAT, 0, texCoordBuffer);
+        }
+
+        gl.glDrawArrays(mode, 0, count);
+        drawCount++;
+
+        if (texture != 0) {
+            gl.glDisableClientState(GL2.GL_TEXTURE_COORD_ARRAY);
+            glState.glDisable(GL2.GL_TEXTURE_2D);
+        }
+        gl.glDisableClientState(GL2.GL_COLOR_ARRAY);
+        gl.glDisableClientState(GL2.GL_VERTEX_ARRAY);
+        // The current color is undefined after using a color array
+        gl.glColor4ub(AgileState.lastR, AgileState.lastG, AgileState.lastB, AgileState.lastA);
+
+        clear();
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2006 Jon Meyer, Ben Bederson and Jean-Daniel Fekete               *
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d;
+
+import java.awt.BasicStroke;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.PathIterator;
+import java.util.Arrays;
+
+
+/**
+ * Fingerprint of the geometry of a shape, used to find its tesselation in
+ * the {@link GeometryCache} whatever the Shape object holding it.
+ *
+ * <p>
+ * The key holds the path segments in object space, the winding rule, the
+ * stroke parameters for a stroked shape and the flattening tolerance
+ * rounded down to a power of two. Two shapes with the same key produce
+ * the same triangles.
+ * </p>
+ *
+ * <p>
+ * A single key is reused to probe the cache; {@link #copy()} makes the
+ * immutable copy stored in the cache on a miss.
+ * </p>
+ */
+final class ShapeKey {
+    private byte[]  types = new byte[16];
+    private float[] coords = new float[64];
+    private int     typeCount;
+    private int     coordCount;
+    private int     windingRule;
+    private int     flatness; // exponent of the tolerance
+    private boolean stroked;
+    private float   lineWidth;
+    private int     endCap;
+    private int     lineJoin;
+    private float   miterLimit;
+    private float[] dash;
+    private float   dashPhase;
+    private Stroke  stroke; // for strokes other than BasicStroke
+    private int     hash;
+    private float[] segment = new float[6];
+
+    /**
+     * Returns the flattening tolerance stored in a key made with the
+     * specified tolerance: the largest power of two not above it.
+     */
+    static double getFlatness(double tolerance) {
+        return Math.scalb(1.0, Math.getExponent(tolerance));
+    }
+
+    /**
+     * Sets this key to the geometry of a shape.
+     *
+     * @param shape the shape
+     * @param stroke the stroke for a stroked shape, null for a filled one
+     * @param tolerance the flattening tolerance in object space
+     */
+    void set(Shape shape, Stroke stroke, double tolerance) {
+        typeCount = 0;
+        coordCount = 0;
+        PathIterator path = shape.getPathIterator(null);
+        windingRule = path.getWindingRule();
+        for (; !path.isDone(); path.next()) {
+            int type = path.currentSegment(segment);
+            int n;
+            switch (type) {
+            case PathIterator.SEG_MOVETO:
+            case PathIterator.SEG_LINETO:
+                n = 2;
+                break;
+            case PathIterator.SEG_QUADTO:
+                n = 4;
+                break;
+            case PathIterator.SEG_CUBICTO:
+                n = 6;
+                break;
+            default:
+                n = 0;
+            }
+            if (typeCount == types.length)
+                types = Arrays.copyOf(types, typeCount * 2);
+            types[typeCount++] = (byte)type;
+            if (coordCount + n > coords.length)
+                coords = Arrays.copyOf(coords, Math.max(coords.length * 2, coordCount + n));
+            System.arraycopy(segment, 0, coords, coordCount, n);
+            coordCount += n;
+        }
+        flatness = Math.getExponent(tolerance);
+
+        stroked = stroke != null;
+        this.stroke = null;
+        dash = null;
+        if (stroke instanceof BasicStroke) {
+            BasicStroke bs = (BasicStroke)stroke;
+            lineWidth = bs.getLineWidth();
+            endCap = bs.getEndCap();
+            lineJoin = bs.getLineJoin();
+            miterLimit = bs.getMiterLimit();
+            dash = bs.getDashArray();
+            dashPhase = bs.getDashPhase();
+        }
+        else {
+            this.stroke = stroke;
+        }
+        hash = computeHash();
+    }
+
+    private int computeHash() {
+        int h = windingRule;
+        h = 31 * h + flatness;
+        for (int i = 0; i < typeCount; i++)
+            h = 31 * h + types[i];
+        for (int i = 0; i < coordCount; i++)
+            h = 31 * h + Float.floatToIntBits(coords[i]);
+        if (stroked) {
+            h = 31 * h + Float.floatToIntBits(lineWidth);
+            h = 31 * h + endCap;
+            h = 31 * h + lineJoin;
+            h = 31 * h + Float.floatToIntBits(miterLimit);
+            h = 31 * h + Arrays.hashCode(dash);
+            h = 31 * h + Float.floatToIntBits(dashPhase);
+            h = 31 * h + (stroke == null ? 0 : stroke.hashCode());
+        }
+        return h;
+    }
+
+    /**
+     * Returns an immutable copy of this key, trimmed to its content.
+     */
+    ShapeKey copy() {
+        ShapeKey key = new ShapeKey();
+        key.types = Arrays.copyOf(types, typeCount);
+        key.coords = Arrays.copyOf(coords, coordCount);
+        key.typeCount = typeCount;
+        key.coordCount = coordCount;
+        key.windingRule = windingRule;
+        key.flatness = flatness;
+        key.stroked = stroked;
+        key.lineWidth = lineWidth;
+        key.endCap = endCap;
+        key.lineJoin = lineJoin;
+        key.miterLimit = miterLimit;
+        key.dash = dash; // already a private copy
+        key.dashPhase = dashPhase;
+        key.stroke = stroke;
+        key.hash = hash;
+        key.segment = null;
+        return key;
+    }
+
+    /**
+     * Returns the number of bytes used by the geometry of this key.
+     */
+    long getByteSize() {
+        return typeCount + coordCount * 4L;
+    }
+
+    public int hashCode() {
+        return hash;
+    }
+
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof ShapeKey))
+            return false;
+        ShapeKey other = (ShapeKey)obj;
+        if (hash != other.hash
+            || typeCount != other.typeCount
+            || coordCount != other.coordCount
+            || windingRule != other.windingRule
+            || flatness != other.flatness
+            || stroked != other.stroked)
+            return false;
+        if (stroked
+            && (lineWidth != other.lineWidth
+                || endCap != other.endCap
+                || lineJoin != other.lineJoin
+                || miterLimit != other.miterLimit
+                || dashPhase != other.dashPhase
+                || !Arrays.equals(dash, other.dash)
+                || (stroke == null ? other.stroke != null : !stroke.equals(other.stroke))))
+            return false;
+        for (int i = 0; i < typeCount; i++)
+            if (types[i] != other.types[i])
+                return false;
+        for (int i = 0; i < coordCount; i++)
+            if (coords[i] != other.coords[i])
+                return false;
+        return true;
+    }
+}
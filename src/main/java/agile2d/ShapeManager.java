@@ -8,12 +8,13 @@
 package agile2d;
 
 
+import java.awt.BasicStroke;
 import java.awt.Shape;
 import java.awt.Stroke;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
 import java.util.WeakHashMap;
 
 import javax.media.opengl.GL;
@@ -21,6 +22,7 @@ import javax.media.opengl.GL2;
 import javax.media.opengl.GLAutoDrawable;
 
 import agile2d.geom.VertexArray;
+import agile2d.geom.VertexArrayList;
 import agile2d.geom.VertexAttributes;
 
 
@@ -28,11 +30,19 @@ import agile2d.geom.VertexAttributes;
  * Support for drawing Java2D shapes in OpenGL. The most correct approach is
  * to tesselate the shape in device space, and render the tesselation.
  * However this is very costly. ShapeManager supports two additional flags
- * for optimizations:  immutable - ShapeManager caches immutable shapes in
- * OpenGL display lists, which  are faster to render. Only works for shapes
- * that never change their geometry. convex - ShapeManager renders convex
+ * for optimizations:  immutable - ShapeManager caches the triangles of
+ * immutable shapes in OpenGL vertex buffers, which are faster to render,
+ * at one level of detail per power of two of the flattening tolerance.
+ * Only works for shapes that never change their geometry. convex - ShapeManager renders convex
  * shapes and strokes using GL2.GL_POLYGON objects rather than tesselating. May
  * produce unexpected results if the shape is not convex.
+ * When content caching is enabled, the triangles of the other shapes are
+ * cached under a fingerprint of their geometry, so a shape rebuilt with the
+ * same coordinates is not tesselated again, and a modified shape is.
+ * When asynchronous tesselation is enabled, immutable shapes that are not
+ * cached yet and not convex are tesselated by the {@link TesselationWorker};
+ * until their triangles are ready, their closest cached level of detail or
+ * a placeholder is drawn.
  */
 class ShapeManager extends VertexArray implements TesselatorVisitor {
     private GL2 gl;
@@ -42,37 +52,42 @@ class ShapeManager extends VertexArray implements TesselatorVisitor {
     private WeakReference dataRef;
     private double tolerance = 1;
 
-    // Must use weak references so that the draw lists get freed when the
-    // shapes do
-    private WeakHashMap drawn = new WeakHashMap();
-    private WeakHashMap filled = new WeakHashMap();
-
-    // This is an array of draw lists that need deleting
-    private ArrayList toDelete = new ArrayList();
-
-    // ID generation fields
-    private int numIDs;
-
-    // ID generation fields
-    private int nextID;
+    // Geometry of the immutable shapes
+    private GeometryCache cache;
+
+    // When recording, the primitives are collected as triangles in the
+    // recorded array instead of being rendered
+    private boolean recording;
+    private VertexArray recorded = new VertexArray();
+
+    // Primitives of a tesselation drawn at once, as indexed triangles
+    private TriangleListVisitor triangleList = new TriangleListVisitor();
+
+    // Cache geometry by content
+    private boolean contentCaching;
+    private ShapeKey probe = new ShapeKey();
+
+    // Tesselation of immutable shapes in the background
+    static final int ASYNC_OFF = 0;
+    static final int ASYNC_SKIP = 1;
+    static final int ASYNC_BOUNDS = 2;
+    private int asyncPolicy = ASYNC_OFF;
+    private WeakHashMap<Object, TesselationWorker.Job> pendingDrawn =
+        new WeakHashMap<Object, TesselationWorker.Job>();
+    private WeakHashMap<Object, TesselationWorker.Job> pendingFilled =
+        new WeakHashMap<Object, TesselationWorker.Job>();
     private static final AffineTransform IDENTITY = new AffineTransform();
 
-    // The ShapeInfo class is what is added to the drawn/filled maps.
-    //
-    private class ShapeInfo {
-        int id; // GL Drawing list for shape
-        Object stroke; // Null for filled shapes
+    // Triangles of the strokes
+    private Stroker stroker = new Stroker();
+    private VertexArray strokes = new VertexArray();
 
-        ShapeInfo(int id, Stroke stroke) {
-            this.id = id;
-            this.stroke = stroke;
-        }
+    // Triangles of the shapes used as instance prototypes
+    private WeakHashMap<Object, Prototype> prototypes = new WeakHashMap<Object, Prototype>();
 
-        protected void finalize() {
-            synchronized (toDelete) {
-                toDelete.add(new Integer(id));
-            }
-        }
+    static final class Prototype {
+        int lod;
+        VertexArray triangles;
     }
 
     /**
@@ -85,69 +100,138 @@ class ShapeManager extends VertexArray implements TesselatorVisitor {
     public ShapeManager(Tesselator tesselator, GL2 gl) {
         this.tesselator = tesselator;
         this.gl = gl;
+        this.cache = new GeometryCache(gl);
     }
 
-    // Called to release free draw lists
+    // Called to release the geometry of collected shapes
     void flush() {
-        ArrayList toFree = null;
-        synchronized (toDelete) {
-            if (toDelete.size() > 0) {
-                toFree = new ArrayList();
-                toFree.addAll(toDelete);
-                toDelete.clear();
-            }
-        }
-        if (toFree != null) {
-            for (int i = 0; i < toFree.size(); i++) {
-                Integer id = (Integer) toFree.get(i);
-                gl.glDeleteLists(id.intValue(), 1);
-            }
+        cache.flush();
+    }
+
+    GeometryCache getCache() {
+        return cache;
+    }
+
+    boolean isContentCaching() {
+        return contentCaching;
+    }
+
+    void setContentCaching(boolean contentCaching) {
+        this.contentCaching = contentCaching;
+    }
+
+    int getAsyncPolicy() {
+        return asyncPolicy;
+    }
+
+    /**
+     * Sets how immutable shapes are tesselated: ASYNC_OFF on the GL
+     * thread, ASYNC_SKIP in the background, drawing nothing until they are
+     * ready, or ASYNC_BOUNDS in the background, filling their bounds until
+     * they are ready.
+     */
+    void setAsyncPolicy(int asyncPolicy) {
+        this.asyncPolicy = asyncPolicy;
+        if (asyncPolicy == ASYNC_OFF) {
+            pendingDrawn.clear();
+            pendingFilled.clear();
         }
     }
 
     protected void tesselate(PathIterator path) {
-        tesselator.tesselate(path, this);
+        if (recording) {
+            tesselator.tesselate(path, this);
+            return;
+        }
+        triangleList.clear();
+        tesselator.tesselate(path, triangleList);
+        render(gl, triangleList);
     }
 
     protected void tesselate(int[] xPts, int[] yPts, int nPts) {
-        tesselator.tesselate(xPts, yPts, nPts, this);
+        if (recording) {
+            tesselator.tesselate(xPts, yPts, nPts, this);
+            return;
+        }
+        triangleList.clear();
+        tesselator.tesselate(xPts, yPts, nPts, triangleList);
+        render(gl, triangleList);
     }
 
     void setModelViewMatrix(double[] m) {
         modelViewMatrix = m;
     }
 
-    // Draw a stroke
+    // Draw a stroke. When the paint is opaque, the triangles of a
+    // BasicStroke may overlap, and are computed by the stroker.
     //
     public void draw(Shape shape, VertexAttributes attributes, float scale,
-                     Stroke stroke, boolean immutable, boolean convex) {
-        if (immutable) {
+                     Stroke stroke, boolean immutable, boolean convex, boolean opaque) {
+        if (contentCaching && !(shape instanceof VertexArray)) {
+            // Cached by content, in the same way as immutable shapes
+            double flatness = ShapeKey.getFlatness(tolerance/scale);
+            probe.set(shape, stroke, flatness);
+            GeometryCache.Entry info = cache.get(probe);
+            if (info == null) {
+                PathIterator path = stroke.createStrokedShape(shape).getPathIterator(IDENTITY, flatness);
+                beginRecording();
+                if (convex)
+                    send(path, true);
+                else
+                    tesselate(path);
+                info = endRecording(probe.copy());
+                if (info == null)
+                    return;
+            }
+            cache.render(info);
+        } else if (immutable) {
             //
             // Cached route -
             //    1. flatten the stroke in object space
             //    2. draw as polygon or tesselation according to the convex parameter
-            //    3. store the result in a display list
+            //    3. store the resulting triangles in a vertex buffer
             //
-            ShapeInfo info = (ShapeInfo) drawn.get(shape);
-            if (info == null || info.stroke != stroke) {
+            int lod = getLOD(shape, scale);
+            GeometryCache.Entry info = cache.getDrawn(shape, stroke, lod);
+            if (info == null) {
                 // Not in cache
-                int id = genID();
-                gl.glNewList(id, GL2.GL_COMPILE);
-
                 if (shape instanceof VertexArray) {
-                    renderLineMode((VertexArray)shape, attributes);
-                } else if (convex) {
-                    send(getStrokeIterator(shape, scale, stroke), true);
+                    VertexArray array = (VertexArray)shape;
+                    info = cache.put(shape, stroke, true, lod, array, attributes,
+                                     array.getMode() >= VertexArray.MODE_TRIANGLES);
+                    if (info == null) {
+                        renderLineMode(array, attributes);
+                        return;
+                    }
+                } else if (asyncPolicy != ASYNC_OFF && !convex && !asyncFailed(shape, stroke)) {
+                    info = tesselateAsync(shape, stroke, lod);
+                    if (info == null)
+                        return;
                 } else {
-                    tesselate(getStrokeIterator(shape, scale, stroke));
+                    PathIterator path = stroke.createStrokedShape(shape)
+                        .getPathIterator(IDENTITY, Math.scalb(1.0, lod));
+                    beginRecording();
+                    if (convex) {
+                        send(path, true);
+                    } else {
+                        tesselate(path);
+                    }
+                    info = endRecording(shape, stroke, true, lod);
+                    if (info == null)
+                        return;
                 }
-                gl.glEndList();
-                info = new ShapeInfo(id, stroke);
-                drawn.put(shape, info);
             }
-            gl.glCallList(info.id);
+            cache.render(info);
         } else if (shape instanceof VertexArray) {
             renderLineMode((VertexArray)shape, attributes);
+        } else if (opaque && stroke instanceof BasicStroke) {
+            // Fast route - flatten the shape in object space and stroke it
+            // directly into triangles
+            strokes.clear();
+            strokes.setMode(MODE_TRIANGLES);
+            stroker.stroke(shape.getPathIterator(IDENTITY, tolerance/scale), (BasicStroke)stroke,
+                           tolerance/scale, strokes);
+            render(gl, strokes, null);
         } else if (convex) {
             // Faster route - flatten the stroke in object space and draw as polygon
             send(getStrokeIterator(shape, scale, stroke), true);
@@ -165,33 +249,60 @@ class ShapeManager extends VertexArray implements TesselatorVisitor {
     // Fill a Shape.
     //
     public void fill(Shape shape, VertexAttributes attributes, float scale, boolean immutable, boolean convex) {
-        if (immutable) {
+        if (contentCaching && !(shape instanceof VertexArray)) {
+            // Cached by content, in the same way as immutable shapes
+            double flatness = ShapeKey.getFlatness(tolerance/scale);
+            probe.set(shape, null, flatness);
+            GeometryCache.Entry info = cache.get(probe);
+            if (info == null) {
+                PathIterator path = shape.getPathIterator(IDENTITY, flatness);
+                beginRecording();
+                if (convex)
+                    send(path, true);
+                else
+                    tesselate(path);
+                info = endRecording(probe.copy());
+                if (info == null)
+                    return;
+            }
+            cache.render(info);
+        }
+        else if (immutable) {
             //
             // Cached route -
             //    1. flatten the shape in object space
             //    2. draw as polygon or tesselation according to the convex parameter
-            //    3. store the result in a display list
+            //    3. store the resulting triangles in a vertex buffer
             //
-            ShapeInfo info = (ShapeInfo) filled.get(shape);
+            int lod = getLOD(shape, scale);
+            GeometryCache.Entry info = cache.getFilled(shape, lod);
             if (info == null) {
                 // Not in cache
-                int id = genID();
-                gl.glNewList(id, GL2.GL_COMPILE);
-
                 if (shape instanceof VertexArray) {
                     //if (varray.getMode() < VertexArray.MODE_TRIANGLES)
                     //    return; // not filled
-                    render(gl, (VertexArray)shape, attributes);
+                    info = cache.put(shape, null, false, lod, (VertexArray)shape, attributes, false);
+                    if (info == null) {
+                        render(gl, (VertexArray)shape, attributes);
+                        return;
+                    }
+                } else if (asyncPolicy != ASYNC_OFF && !convex && !asyncFailed(shape, null)) {
+                    info = tesselateAsync(shape, null, lod);
+                    if (info == null)
+                        return;
                 } else {
-                    PathIterator path = shape.getPathIterator(IDENTITY, tolerance/scale);
-                    tesselate(path);
+                    PathIterator path = shape.getPathIterator(IDENTITY, Math.scalb(1.0, lod));
+                    beginRecording();
+                    if (convex)
+                        send(path, true);
+                    else
+                        tesselate(path);
+                    info = endRecording(shape, null, false, lod);
+                    if (info == null)
+                        return;
                 }
-
-                gl.glEndList();
-                info = new ShapeInfo(id, null);
-                filled.put(shape, info);
             }
-            gl.glCallList(info.id);
+            cache.render(info);
         }
         else if (shape instanceof VertexArray) {
             render(gl, (VertexArray)shape, attributes);
@@ -205,11 +316,7 @@ class ShapeManager extends VertexArray implements TesselatorVisitor {
 //            System.out.println("In shapeManager.fill(). Shape is neither immutable nor convex. Slowest route");
             // Slowest and most correct route - flatten the shape in device space & tesselate
             PathIterator path = shape.getPathIterator(IDENTITY, tolerance/scale);
-//            tesselate(path);
-//            we will test to use the routine (and TesselatorAdaptor class) used by GLite toolkit
-//            GLite lines code are below
-//                TesselationManager tess = TesselationManager.get(ctx);
-                    tesselator.fill(gl, shape, null, 1);
+            tesselate(path);
 
         }
     }
@@ -284,14 +391,170 @@ class ShapeManager extends VertexArray implements TesselatorVisitor {
         }
     }
 
-    private int genID() {
-        if (numIDs == 0) {
-            nextID = gl.glGenLists(5000);
-            numIDs = 5000;
+    // Returns the level of detail of the cached geometry of a shape
+    // drawn at the specified scale: the exponent of its flattening
+    // tolerance, rounded down to a power of two.
+    private int getLOD(Shape shape, float scale) {
+        if (shape instanceof VertexArray)
+            return GeometryCache.ANY_LOD;
+        return Math.getExponent(tolerance/scale);
+    }
+
+    // Tells if the background tesselation of a shape failed, and forgets
+    // the failed job: the shape is then tesselated on the GL thread, where
+    // errors reach the caller, and cached instead of being submitted again.
+    private boolean asyncFailed(Shape shape, Stroke stroke) {
+        WeakHashMap<Object, TesselationWorker.Job> pending = stroke == null ? pendingFilled : pendingDrawn;
+        TesselationWorker.Job job = pending.get(shape);
+        if (job == null || !job.isFailed())
+            return false;
+        pending.remove(shape);
+        return true;
+    }
+
+    // Submits an immutable shape to the background tesselator, or caches
+    // its triangles if they are ready. Returns null if they are not, after
+    // drawing the closest level of detail available or the placeholder.
+    private GeometryCache.Entry tesselateAsync(Shape shape, Stroke stroke, int lod) {
+        WeakHashMap<Object, TesselationWorker.Job> pending = stroke == null ? pendingFilled : pendingDrawn;
+        TesselationWorker.Job job = pending.get(shape);
+        // A failed job is kept for asyncFailed on the next frame
+        if (job != null && job.isDone() && !job.isFailed()) {
+            pending.remove(shape);
+            VertexArray triangles = job.getResult();
+            if (job.stroke == stroke) {
+                GeometryCache.Entry info = cache.put(shape, stroke, stroke != null, job.lod,
+                                                     triangles, null, false);
+                if (job.lod == lod) {
+                    if (info == null)
+                        render(gl, triangles, null);
+                    return info;
+                }
+            }
+            job = null;
         }
-        int id = nextID++;
-        numIDs--;
-        return id;
+        if (job == null) {
+            job = TesselationWorker.submit(shape, stroke, Math.scalb(1.0, lod), lod);
+            pending.put(shape, job);
+        }
+        GeometryCache.Entry closest = cache.getClosest(shape, stroke, stroke != null, lod);
+        if (closest != null)
+            cache.render(closest);
+        else if (asyncPolicy == ASYNC_BOUNDS)
+            drawBounds(shape, stroke);
+        return null;
+    }
+
+    // Fills the bounds of a shape, including the stroke width
+    private void drawBounds(Shape shape, Stroke stroke) {
+        Rectangle2D bounds = shape.getBounds2D();
+        double w = 0;
+        if (stroke instanceof BasicStroke)
+            w = ((BasicStroke)stroke).getLineWidth() / 2;
+        gl.glRectd(bounds.getMinX() - w, bounds.getMinY() - w,
+                   bounds.getMaxX() + w, bounds.getMaxY() + w);
+    }
+
+    /**
+     * Returns the triangles of a filled shape used as a prototype for
+     * instances, computed once per level of detail. The shape must not
+     * be modified afterwards.
+     *
+     * @param shape the shape
+     * @param flatness the flattening tolerance in object space
+     * @param convex true if the shape is convex
+     */
+    VertexArray getPrototype(Shape shape, double flatness, boolean convex) {
+        int lod = Math.getExponent(flatness);
+        Prototype p = prototypes.get(shape);
+        if (p == null || p.lod != lod) {
+            p = new Prototype();
+            p.lod = lod;
+            p.triangles = new VertexArray();
+            VertexArray saved = recorded;
+            recorded = p.triangles;
+            beginRecording();
+            PathIterator path = shape.getPathIterator(IDENTITY, Math.scalb(1.0, lod));
+            if (convex)
+                send(path, true);
+            else
+                tesselate(path);
+            recording = false;
+            recorded = saved;
+            prototypes.put(shape, p);
+        }
+        return p.triangles;
+    }
+
+    // Starts collecting the primitives sent to this visitor as triangles
+    private void beginRecording() {
+        recorded.clear();
+        recorded.setMode(MODE_TRIANGLES);
+        recording = true;
+    }
+
+    // Stops collecting triangles and caches them. If they do not fit in
+    // the cache, renders them and returns null.
+    private GeometryCache.Entry endRecording(Shape shape, Object stroke, boolean stroked, int lod) {
+        recording = false;
+        GeometryCache.Entry info = cache.put(shape, stroke, stroked, lod, recorded, null, false);
+        if (info == null)
+            render(gl, recorded, null);
+        recorded.clear();
+        return info;
+    }
+
+    // Stops collecting triangles and caches them under a content key
+    private GeometryCache.Entry endRecording(ShapeKey key) {
+        recording = false;
+        GeometryCache.Entry info = cache.put(key, recorded);
+        if (info == null)
+            render(gl, recorded, null);
+        recorded.clear();
+        return info;
+    }
+
+    // Appends the current primitive, converted to independent triangles,
+    // to the recorded array
+    private void record() {
+        int n = getVertexCount();
+        switch (getMode()) {
+        case MODE_TRIANGLES:
+            for (int i = 0; i + 2 < n; i += 3)
+                recordTriangle(i, i + 1, i + 2);
+            break;
+        case MODE_TRIANGLE_STRIP:
+            for (int i = 2; i < n; i++)
+                recordTriangle(i - 2, i - 1, i);
+            break;
+        case MODE_TRIANGLE_FAN:
+        case MODE_POLYGON:
+            for (int i = 2; i < n; i++)
+                recordTriangle(0, i - 1, i);
+            break;
+        case MODE_QUADS:
+            for (int i = 0; i + 3 < n; i += 4) {
+                recordTriangle(i, i + 1, i + 2);
+                recordTriangle(i, i + 2, i + 3);
+            }
+            break;
+        case MODE_QUAD_STRIP:
+            for (int i = 0; i + 3 < n; i += 2) {
+                recordTriangle(i, i + 1, i + 3);
+                recordTriangle(i, i + 3, i + 2);
+            }
+            break;
+        default:
+            // Lines and points have no area
+            break;
+        }
+    }
+
+    private void recordTriangle(int a, int b, int c) {
+        java.nio.FloatBuffer data = getDataRef();
+        recorded.addVertex(data.get(2*a), data.get(2*a+1));
+        recorded.addVertex(data.get(2*b), data.get(2*b+1));
+        recorded.addVertex(data.get(2*c), data.get(2*c+1));
     }
     /**
      * Returns the tolerance.
@@ -338,7 +601,10 @@ class ShapeManager extends VertexArray implements TesselatorVisitor {
      * @see agile2d.TesselatorVisitor#end()
      */
     public void end() {
-        render();
+        if (recording)
+            record();
+        else
+            render();
     }
 
     public Tesselator getTesselator() {
@@ -362,9 +628,12 @@ class ShapeManager extends VertexArray implements TesselatorVisitor {
 
     // Basic method for rendering a VertexArray
     static void render(GLAutoDrawable drawable, VertexArray array, VertexAttributes attributes) {
-        GL2 gl = drawable.getGL().getGL2();
+        render(drawable.getGL().getGL2(), array, attributes);
+    }
+
+    // Basic method for rendering a VertexArray
+    static void render(GL2 gl, VertexArray array, VertexAttributes attributes) {
         int count = array.getVertexCount();
-        java.nio.FloatBuffer arrayData = array.getDataRef();
 
         if (count == 0) {
             return;
@@ -374,9 +643,10 @@ class ShapeManager extends VertexArray implements TesselatorVisitor {
             // It would be great if we could avoid setting the vertex pointer, but
             // we couldn't because Java Garbage Collector can move objects at any time.
             gl.glEnableClientState(GL2.GL_VERTEX_ARRAY);
-            arrayData.rewind();
-            gl.glVertexPointer(2, GL2.GL_FLOAT, 0, arrayData);
+            boolean pushed = vertexPointer(gl, array);
             gl.glDrawArrays(array.getMode(), 0, count);
+            if (pushed)
+                gl.glPopMatrix();
             gl.glDisableClientState(GL2.GL_VERTEX_ARRAY);
 
             return;
@@ -394,9 +664,11 @@ class ShapeManager extends VertexArray implements TesselatorVisitor {
         // TODO: JM - we could potentially use the VertexBufferObject in JOGL to address this!
         gl.glEnableClientState(GL2.GL_COLOR_ARRAY);
         gl.glEnableClientState(GL2.GL_VERTEX_ARRAY);
-        gl.glVertexPointer(2, GL2.GL_FLOAT, 0, arrayData);
+        boolean pushed = vertexPointer(gl, array);
         gl.glColorPointer(4, GL2.GL_UNSIGNED_BYTE, 0, attributeData);
         gl.glDrawArrays(array.getMode(), 0, count);
+        if (pushed)
+            gl.glPopMatrix();
         gl.glDisableClientState(GL2.GL_COLOR_ARRAY);
         gl.glDisableClientState(GL2.GL_VERTEX_ARRAY);
 
@@ -405,47 +677,87 @@ class ShapeManager extends VertexArray implements TesselatorVisitor {
         }
     }
 
-    // Basic method for rendering a VertexArray
-    static void render(GL2 gl, VertexArray array, VertexAttributes attributes) {
-        int count = array.getVertexCount();
-        java.nio.FloatBuffer arrayData = array.getDataRef();
-
-        if (count == 0) {
+    // Renders all the VertexArrays of a list, with one glMultiDrawArrays
+    // per mode when it is packed
+    static void render(GL2 gl, VertexArrayList list) {
+        if (!list.isPacked()) {
+            for (int i = 0; i < list.size(); i++)
+                render(gl, list.getVertexArrayAt(i), null);
             return;
         }
-
-        if (attributes == null) {
-            // It would be great if we could avoid setting the vertex pointer, but
-            // we couldn't because Java Garbage Collector can move objects at any time.
-            gl.glEnableClientState(GL2.GL_VERTEX_ARRAY);
-            arrayData.rewind();
-            gl.glVertexPointer(2, GL2.GL_FLOAT, 0, arrayData);
-            gl.glDrawArrays(array.getMode(), 0, count);
-            gl.glDisableClientState(GL2.GL_VERTEX_ARRAY);
-
+        int n = list.size();
+        if (n == 0)
             return;
-        }
-
-        count = Math.min(array.getVertexCount(), attributes.getSize());
-        java.nio.ByteBuffer attributeData = attributes.getColorRef();
+        int[] firsts = list.getFirstsRef();
+        int[] counts = list.getCountsRef();
+        int[] modes = list.getModesRef();
 
-        if (attributes.isSmooth()) {
-            gl.glShadeModel(GL2.GL_SMOOTH);
+        gl.glEnableClientState(GL2.GL_VERTEX_ARRAY);
+        boolean pushed = vertexPointer(gl, list.getPackedRef());
+        for (int start = 0; start < n; ) {
+            int end = start + 1;
+            while (end < n && modes[end] == modes[start])
+                end++;
+            gl.glMultiDrawArrays(modes[start], firsts, start, counts, start, end - start);
+            start = end;
         }
+        if (pushed)
+            gl.glPopMatrix();
+        gl.glDisableClientState(GL2.GL_VERTEX_ARRAY);
+    }
+
+    // Renders the triangles collected from a tesselation with one
+    // glDrawElements
+    static void render(GL2 gl, TriangleListVisitor list) {
+        int count = list.getIndexCount();
+        if (count == 0)
+            return;
+        if (indexScratch == null || indexScratch.capacity() < count)
+            indexScratch = VertexArray.newByteBuffer(count * 4).asIntBuffer();
+        indexScratch.clear();
+        indexScratch.put(list.getIndices(), 0, count);
+        indexScratch.rewind();
 
-        // It would be great if we could avoid setting the vertex pointer, but
-        // we couldn't because Java Garbage Collector can move objects at any time.
-        // TODO: JM - we could potentially use the VertexBufferObject in JOGL to address this!
-        gl.glEnableClientState(GL2.GL_COLOR_ARRAY);
         gl.glEnableClientState(GL2.GL_VERTEX_ARRAY);
-        gl.glVertexPointer(2, GL2.GL_FLOAT, 0, arrayData);
-        gl.glColorPointer(4, GL2.GL_UNSIGNED_BYTE, 0, attributeData);
-        gl.glDrawArrays(array.getMode(), 0, count);
-        gl.glDisableClientState(GL2.GL_COLOR_ARRAY);
+        boolean pushed = vertexPointer(gl, list.getVertices());
+        gl.glDrawElements(GL2.GL_TRIANGLES, count, GL2.GL_UNSIGNED_INT, indexScratch);
+        if (pushed)
+            gl.glPopMatrix();
         gl.glDisableClientState(GL2.GL_VERTEX_ARRAY);
+    }
 
-        if (attributes.isSmooth()) {
-            gl.glShadeModel(GL2.GL_FLAT);
+    // Scratch buffers where heap arrays and indices are copied to be
+    // drawn, only used on the GL thread
+    private static java.nio.FloatBuffer floatScratch;
+    private static java.nio.IntBuffer indexScratch;
+    private static float[] quantization = new float[4];
+
+    // Sets the vertex pointer to the coordinates of an array. Quantized
+    // coordinates are read as shorts, and scaled by the modelview matrix:
+    // returns true if the matrix has been pushed.
+    private static boolean vertexPointer(GL2 gl, VertexArray array) {
+        int size = array.getCoordsCount();
+        switch (array.getStorage()) {
+        case VertexArray.STORAGE_SHORT:
+            array.getQuantization(quantization);
+            gl.glPushMatrix();
+            gl.glTranslatef(quantization[2], quantization[3], 0);
+            gl.glScalef(quantization[0], quantization[1], 1);
+            gl.glVertexPointer(2, GL2.GL_SHORT, 0, array.getQuantizedRef());
+            return true;
+        case VertexArray.STORAGE_HEAP:
+            if (floatScratch == null || floatScratch.capacity() < size)
+                floatScratch = VertexArray.newByteBuffer(size * 4).asFloatBuffer();
+            floatScratch.clear();
+            array.putCoords(floatScratch);
+            floatScratch.rewind();
+            gl.glVertexPointer(2, GL2.GL_FLOAT, 0, floatScratch);
+            return false;
+        default:
+            java.nio.FloatBuffer arrayData = array.getDataRef();
+            arrayData.rewind();
+            gl.glVertexPointer(2, GL2.GL_FLOAT, 0, arrayData);
+            return false;
         }
     }
 }
@@ -0,0 +1,417 @@
+/*
+ * Copyright (C) 2006 Jon Meyer, Ben Bederson and Jean-Daniel Fekete               *
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d;
+
+import java.awt.BasicStroke;
+import java.awt.geom.PathIterator;
+
+import agile2d.geom.VertexArray;
+
+
+/**
+ * Converts a flattened path stroked with a BasicStroke directly into
+ * triangles, without computing its outline and tesselating it.
+ *
+ * <p>
+ * Each segment is output as a strip of two triangles, followed by the
+ * triangles of its join with the next segment; open subpaths get their caps.
+ * Dashes are cut from the subpaths before stroking them; the dash crossing
+ * the start of a closed subpath is joined there, not capped. All the
+ * triangles go to a single VertexArray in MODE_TRIANGLES, drawn with one
+ * call.
+ * </p>
+ *
+ * <p>
+ * Unlike the tesselated outline, the triangles overlap at the joins and
+ * where the path crosses itself: they should only be drawn with an opaque
+ * paint, since translucent or XOR pixels would be painted twice.
+ * </p>
+ *
+ * <p>
+ * The stroker does not use OpenGL. It is not thread safe: each thread should
+ * use its own instance.
+ * </p>
+ */
+public final class Stroker {
+    private static final double EPSILON = 1e-9;
+    private static final int MAX_ARC_STEPS = 64;
+
+    // Points of the current subpath
+    private double[] px = new double[64];
+    private double[] py = new double[64];
+    private int      n;
+    private boolean  hasSegment;
+
+    // Points of the current dash
+    private double[] qx = new double[64];
+    private double[] qy = new double[64];
+    private int      m;
+
+    // Points of the first dash of a closed subpath, joined to its last dash
+    private double[] fx = new double[64];
+    private double[] fy = new double[64];
+    private int      fm;
+    private double   firstUx, firstUy;
+
+    private double[] coords = new double[6];
+    private VertexArray out;
+    private double   halfWidth;
+    private int      cap;
+    private int      join;
+    private double   miterLimit;
+    private float[]  dash;
+    private double   dashPhase;
+    private double   dashLength;
+    private double   arcStep;
+
+    /**
+     * Appends the triangles covering a stroked path to a VertexArray.
+     *
+     * @param path the flattened path
+     * @param stroke the stroke
+     * @param flatness the tolerance used to approximate round joins and caps
+     * @param array the array receiving the triangles
+     */
+    public void stroke(PathIterator path, BasicStroke stroke, double flatness, VertexArray array) {
+        out = array;
+        if (array.getMode() == VertexArray.MODE_INVALID)
+            array.setMode(VertexArray.MODE_TRIANGLES);
+        halfWidth = Math.max(stroke.getLineWidth(), EPSILON) / 2;
+        cap = stroke.getEndCap();
+        join = stroke.getLineJoin();
+        miterLimit = stroke.getMiterLimit();
+        dash = stroke.getDashArray();
+        dashPhase = stroke.getDashPhase();
+        dashLength = 0;
+        if (dash != null) {
+            for (int i = 0; i < dash.length; i++)
+                dashLength += dash[i];
+            if (dashLength <= 0)
+                dash = null;
+        }
+        double cos = 1 - flatness / halfWidth;
+        arcStep = cos <= -1 ? Math.PI : 2 * Math.acos(cos);
+
+        double sx = 0, sy = 0;
+        n = 0;
+        hasSegment = false;
+        try {
+            for (; !path.isDone(); path.next()) {
+                switch (path.currentSegment(coords)) {
+                case PathIterator.SEG_MOVETO:
+                    finish(false);
+                    sx = coords[0];
+                    sy = coords[1];
+                    addPoint(sx, sy);
+                    break;
+                case PathIterator.SEG_LINETO:
+                    if (n == 0)
+                        addPoint(sx, sy);
+                    addPoint(coords[0], coords[1]);
+                    hasSegment = true;
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    if (n > 1 && same(px[n-1], py[n-1], px[0], py[0]))
+                        n--;
+                    hasSegment = true;
+                    finish(true);
+                    break;
+                default:
+                    // The path is flattened
+                    break;
+                }
+            }
+            finish(false);
+        }
+        finally {
+            out = null;
+            dash = null;
+        }
+    }
+
+    private static boolean same(double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        return dx*dx + dy*dy < EPSILON;
+    }
+
+    private void addPoint(double x, double y) {
+        if (n > 0 && same(px[n-1], py[n-1], x, y))
+            return;
+        if (n == px.length) {
+            px = grow(px);
+            py = grow(py);
+        }
+        px[n] = x;
+        py[n] = y;
+        n++;
+    }
+
+    private static double[] grow(double[] array) {
+        double[] newArray = new double[array.length * 2];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+
+    // Strokes the current subpath
+    private void finish(boolean closed) {
+        if (n == 1) {
+            if (hasSegment)
+                dot(px[0], py[0], 1, 0);
+        }
+        else if (n > 1) {
+            if (dash == null)
+                strokePolyline(px, py, n, closed);
+            else
+                dashPolyline(closed);
+        }
+        n = 0;
+        hasSegment = false;
+    }
+
+    // Cuts the current subpath into dashes and strokes them
+    private void dashPolyline(boolean closed) {
+        int index = 0;
+        boolean on = true;
+        double remaining = dash[0];
+        double phase = dashPhase % dashLength;
+        if (phase < 0)
+            phase += dashLength;
+        while (phase > 0) {
+            if (phase >= remaining) {
+                phase -= remaining;
+                index = (index + 1) % dash.length;
+                on = !on;
+                remaining = dash[index];
+            }
+            else {
+                remaining -= phase;
+                phase = 0;
+            }
+        }
+
+        // A closed subpath starting inside a dash has no end there: its
+        // first dash is held until the last one, which it continues
+        boolean holding = closed && on;
+        m = 0;
+        fm = 0;
+        if (on)
+            addDashPoint(px[0], py[0]);
+        int segments = closed ? n : n - 1;
+        double ux = 1, uy = 0;
+        for (int i = 0; i < segments; i++) {
+            double x0 = px[i], y0 = py[i];
+            int j = (i + 1) % n;
+            double length = Math.hypot(px[j] - x0, py[j] - y0);
+            ux = (px[j] - x0) / length;
+            uy = (py[j] - y0) / length;
+            double t = 0;
+            while (length - t > remaining) {
+                t += remaining;
+                double x = x0 + ux * t, y = y0 + uy * t;
+                if (on) {
+                    addDashPoint(x, y);
+                    if (holding) {
+                        holdDash(ux, uy);
+                        holding = false;
+                    }
+                    else {
+                        emitDash(ux, uy);
+                    }
+                }
+                else {
+                    m = 0;
+                    addDashPoint(x, y);
+                }
+                on = !on;
+                index = (index + 1) % dash.length;
+                remaining = dash[index];
+            }
+            remaining -= length - t;
+            if (on)
+                addDashPoint(px[j], py[j]);
+        }
+        if (on) {
+            // The last dash ends at the start, continued by the first one
+            for (int i = 0; i < fm; i++)
+                addDashPoint(fx[i], fy[i]);
+            emitDash(ux, uy);
+        }
+        else if (fm > 0) {
+            m = 0;
+            for (int i = 0; i < fm; i++)
+                addDashPoint(fx[i], fy[i]);
+            emitDash(firstUx, firstUy);
+        }
+        fm = 0;
+    }
+
+    private void holdDash(double ux, double uy) {
+        if (fx.length < m) {
+            fx = new double[qx.length];
+            fy = new double[qy.length];
+        }
+        System.arraycopy(qx, 0, fx, 0, m);
+        System.arraycopy(qy, 0, fy, 0, m);
+        fm = m;
+        firstUx = ux;
+        firstUy = uy;
+        m = 0;
+    }
+
+    private void addDashPoint(double x, double y) {
+        if (m > 0 && same(qx[m-1], qy[m-1], x, y))
+            return;
+        if (m == qx.length) {
+            qx = grow(qx);
+            qy = grow(qy);
+        }
+        qx[m] = x;
+        qy[m] = y;
+        m++;
+    }
+
+    private void emitDash(double ux, double uy) {
+        if (m == 1)
+            dot(qx[0], qy[0], ux, uy);
+        else if (m > 1)
+            strokePolyline(qx, qy, m, false);
+        m = 0;
+    }
+
+    // Strokes a zero length segment: only its caps are visible
+    private void dot(double x, double y, double ux, double uy) {
+        if (cap == BasicStroke.CAP_BUTT)
+            return;
+        cap(x, y, ux, uy);
+        cap(x, y, -ux, -uy);
+    }
+
+    private void strokePolyline(double[] x, double[] y, int count, boolean closed) {
+        int segments = closed ? count : count - 1;
+        double firstUx = 0, firstUy = 0, ux = 0, uy = 0;
+        for (int i = 0; i < segments; i++) {
+            int j = (i + 1) % count;
+            double dx = x[j] - x[i], dy = y[j] - y[i];
+            double length = Math.hypot(dx, dy);
+            double prevUx = ux, prevUy = uy;
+            ux = dx / length;
+            uy = dy / length;
+            double nx = -uy * halfWidth, ny = ux * halfWidth;
+            triangle(x[i] + nx, y[i] + ny, x[i] - nx, y[i] - ny, x[j] - nx, y[j] - ny);
+            triangle(x[i] + nx, y[i] + ny, x[j] - nx, y[j] - ny, x[j] + nx, y[j] + ny);
+            if (i == 0) {
+                firstUx = ux;
+                firstUy = uy;
+            }
+            else {
+                join(x[i], y[i], prevUx, prevUy, ux, uy);
+            }
+        }
+        if (closed) {
+            join(x[0], y[0], ux, uy, firstUx, firstUy);
+        }
+        else {
+            cap(x[0], y[0], -firstUx, -firstUy);
+            cap(x[count-1], y[count-1], ux, uy);
+        }
+    }
+
+    // Fills the outer side of the join at (x, y) between a segment of
+    // direction (ux0, uy0) and a segment of direction (ux1, uy1)
+    private void join(double x, double y, double ux0, double uy0, double ux1, double uy1) {
+        double cross = ux0 * uy1 - uy0 * ux1;
+        double dot = ux0 * ux1 + uy0 * uy1;
+        if (Math.abs(cross) < EPSILON && dot > 0)
+            return; // Straight
+        // The outer side is opposite to the turn
+        double s = cross > 0 ? -halfWidth : halfWidth;
+        double ax = x - uy0 * s, ay = y + ux0 * s;
+        double bx = x - uy1 * s, by = y + ux1 * s;
+
+        switch (join) {
+        case BasicStroke.JOIN_ROUND:
+            arc(x, y, -uy0 * s, ux0 * s, -uy1 * s, ux1 * s, ux0, uy0);
+            break;
+        case BasicStroke.JOIN_MITER:
+            // The miter length relative to the line width is 1/cos(a/2),
+            // a being the angle between the normals
+            double denom = 1 + dot;
+            if (denom > EPSILON && Math.sqrt(2 / denom) <= miterLimit) {
+                double mx = x + (ax - x + bx - x) / denom;
+                double my = y + (ay - y + by - y) / denom;
+                triangle(x, y, ax, ay, mx, my);
+                triangle(x, y, mx, my, bx, by);
+            }
+            else {
+                triangle(x, y, ax, ay, bx, by); // Beveled beyond the limit
+            }
+            break;
+        default:
+            triangle(x, y, ax, ay, bx, by);
+            break;
+        }
+    }
+
+    // Adds the cap at the end (x, y) of a segment going in direction (ux, uy)
+    private void cap(double x, double y, double ux, double uy) {
+        double nx = -uy * halfWidth, ny = ux * halfWidth;
+        switch (cap) {
+        case BasicStroke.CAP_SQUARE:
+            double ex = ux * halfWidth, ey = uy * halfWidth;
+            triangle(x + nx, y + ny, x - nx, y - ny, x - nx + ex, y - ny + ey);
+            triangle(x + nx, y + ny, x - nx + ex, y - ny + ey, x + nx + ex, y + ny + ey);
+            break;
+        case BasicStroke.CAP_ROUND:
+            arc(x, y, nx, ny, -nx, -ny, ux, uy);
+            break;
+        default:
+            break;
+        }
+    }
+
+    // Adds a fan of triangles centered on (x, y) from the offset (ax, ay)
+    // to the offset (bx, by), bulging in the direction (ux, uy)
+    private void arc(double x, double y, double ax, double ay, double bx, double by,
+                     double ux, double uy) {
+        double a0 = Math.atan2(ay, ax);
+        double delta = Math.atan2(by, bx) - a0;
+        if (delta > Math.PI)
+            delta -= 2 * Math.PI;
+        else if (delta <= -Math.PI)
+            delta += 2 * Math.PI;
+        double mid = a0 + delta / 2;
+        if (Math.cos(mid) * ux + Math.sin(mid) * uy < 0)
+            delta += delta > 0 ? -2 * Math.PI : 2 * Math.PI;
+
+        int steps = (int)Math.ceil(Math.abs(delta) / arcStep);
+        steps = Math.max(1, Math.min(steps, MAX_ARC_STEPS));
+        double prevX = x + ax, prevY = y + ay;
+        for (int i = 1; i <= steps; i++) {
+            double nextX, nextY;
+            if (i == steps) {
+                nextX = x + bx;
+                nextY = y + by;
+            }
+            else {
+                double a = a0 + delta * i / steps;
+                nextX = x + Math.cos(a) * halfWidth;
+                nextY = y + Math.sin(a) * halfWidth;
+            }
+            triangle(x, y, prevX, prevY, nextX, nextY);
+            prevX = nextX;
+            prevY = nextY;
+        }
+    }
+
+    private void triangle(double x1, double y1, double x2, double y2, double x3, double y3) {
+        out.addVertex(x1, y1);
+        out.addVertex(x2, y2);
+        out.addVertex(x3, y3);
+    }
+}
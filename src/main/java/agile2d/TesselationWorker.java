@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2006 Jon Meyer, Ben Bederson and Jean-Daniel Fekete               *
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d;
+
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.PathIterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import agile2d.geom.VertexArray;
+
+
+/**
+ * Tesselates shapes into VertexArrays on a pool of background threads, with
+ * the {@link Triangulator}, so that complex shapes do not stall the GL
+ * thread.
+ *
+ * <p>
+ * The GL thread submits a {@link Job} and polls it on the following frames;
+ * once it is done, the triangles are uploaded and drawn. When the
+ * tesselation fails, the job keeps the exception and the GL thread
+ * tesselates the shape synchronously instead. The shapes must not
+ * be modified while they are tesselated, so only immutable shapes should be
+ * submitted.
+ * </p>
+ */
+final class TesselationWorker {
+    private static ExecutorService pool;
+
+    // Each thread of the pool has its own triangulator
+    private static final ThreadLocal<Triangulator> triangulators = new ThreadLocal<Triangulator>() {
+        protected Triangulator initialValue() {
+            return new Triangulator();
+        }
+    };
+
+    /**
+     * A shape being tesselated.
+     */
+    static final class Job implements Runnable {
+        private Shape shape; // Released when done
+        final Stroke stroke; // Null for a filled shape
+        final double flatness;
+        final int lod;
+        private volatile VertexArray result;
+        private volatile RuntimeException error;
+
+        Job(Shape shape, Stroke stroke, double flatness, int lod) {
+            this.shape = shape;
+            this.stroke = stroke;
+            this.flatness = flatness;
+            this.lod = lod;
+        }
+
+        public void run() {
+            try {
+                VertexArray array = new VertexArray();
+                Shape s = stroke == null ? shape : stroke.createStrokedShape(shape);
+                PathIterator path = s.getPathIterator(null, flatness);
+                triangulators.get().triangulate(path, array);
+                result = array;
+            }
+            catch (RuntimeException e) {
+                // Kept for the GL thread, which tesselates the shape itself
+                error = e;
+            }
+            finally {
+                shape = null;
+            }
+        }
+
+        /**
+         * Returns true when the triangles are available or the job failed.
+         */
+        boolean isDone() {
+            return result != null || error != null;
+        }
+
+        /**
+         * Returns true if the tesselation threw an exception.
+         */
+        boolean isFailed() {
+            return error != null;
+        }
+
+        /**
+         * Returns the exception thrown by the tesselation, or null.
+         */
+        RuntimeException getError() {
+            return error;
+        }
+
+        /**
+         * Returns the triangles, or null if the job is not done or failed.
+         */
+        VertexArray getResult() {
+            return result;
+        }
+    }
+
+    private TesselationWorker() { }
+
+    /**
+     * Schedules the tesselation of a shape.
+     *
+     * @param shape the shape, which must not be modified until the job is done
+     * @param stroke the stroke for a stroked shape, null for a filled one
+     * @param flatness the flattening tolerance in object space
+     * @param lod the level of detail of the result in the geometry cache
+     * @return the job
+     */
+    static Job submit(Shape shape, Stroke stroke, double flatness, int lod) {
+        Job job = new Job(shape, stroke, flatness, lod);
+        getPool().execute(job);
+        return job;
+    }
+
+    private static synchronized ExecutorService getPool() {
+        if (pool == null) {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                    private int count;
+
+                    public synchronized Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "agile2d-tesselator-" + (count++));
+                        t.setDaemon(true);
+                        t.setPriority(Thread.NORM_PRIORITY - 1);
+                        return t;
+                    }
+                });
+        }
+        return pool;
+    }
+}
@@ -22,15 +22,17 @@ import javax.media.opengl.glu.GLUtessellatorCallbackAdapter;
 
 /**
  * Wrapper on the GLU Tess Functions, used to tesselate arbitary flattened
- * paths.
+ * paths. The tesselation can be delegated to a pure Java
+ * {@link Triangulator} instead.
  */
 final class Tesselator extends GLUtessellatorCallbackAdapter {
     private GLUtessellator tobj;
     private GLU glu;
     private double[] point = new double[8];
-    // JM - rather than using a static array like this, now dynamically allocates points
-    // private double[][]        coords = new double[10000][3];
+    // Coordinates of the vertices of the current polygon, reused across polygons
+    private CoordinatePool coords = new CoordinatePool();
     private TesselatorVisitor visitor;
+    private Triangulator triangulator; // null when using GLU
 
     /**
      * Create a new Tesselator object.
@@ -73,6 +75,10 @@ final class Tesselator extends GLUtessellatorCallbackAdapter {
      * @param path DOCUMENT ME!
      */
     public void tesselate(PathIterator path, TesselatorVisitor visitor) {
+        if (triangulator != null) {
+            triangulator.triangulate(path, visitor);
+            return;
+        }
         this.visitor = visitor;
         switch (path.getWindingRule()) {
         case PathIterator.WIND_EVEN_ODD:
@@ -83,6 +89,7 @@ final class Tesselator extends GLUtessellatorCallbackAdapter {
             break;
         }
 
+        coords.reset();
         glu.gluTessBeginPolygon(tobj, (double[])null);
 
         boolean closed = true;
@@ -106,10 +113,7 @@ final class Tesselator extends GLUtessellatorCallbackAdapter {
                     //System.out.println("Lineto without moveto");
                 }
 //                System.out.println("LINETO " + point[0] + ", " + point[1]);
-                double[] coord = new double[3]; // coords[numCoords];
-                coord[0] = point[0];
-                coord[1] = point[1];
-                coord[2] = 0;
+                double[] coord = coords.next(point[0], point[1]);
                 glu.gluTessVertex(tobj, coord, 0, coord);
                 numCoords++;
                 break;
@@ -136,17 +140,19 @@ final class Tesselator extends GLUtessellatorCallbackAdapter {
     public void tesselate(int[] xPts, int[] yPts, int nPts, TesselatorVisitor visitor) {
         if (nPts < 3)
             return;
+        if (triangulator != null) {
+            triangulator.triangulate(xPts, yPts, nPts, visitor);
+            return;
+        }
         this.visitor = visitor;
         setWindingRule(GLU.GLU_TESS_WINDING_ODD);
 
+        coords.reset();
         glu.gluTessBeginPolygon(tobj, (double[])null);
         glu.gluTessBeginContour(tobj);
 
         for (int i = 0; i < nPts; i++) {
-            double[] coord = new double[3]; // coords[i];
-            coord[0] = xPts[i];
-            coord[1] = yPts[i];
-            coord[2] = 0;
+            double[] coord = coords.next(xPts[i], yPts[i]);
             glu.gluTessVertex(tobj, coord, 0, coord);
         }
 
@@ -154,6 +160,22 @@ final class Tesselator extends GLUtessellatorCallbackAdapter {
         glu.gluTessEndPolygon(tobj);
     }
 
+    /**
+     * Selects the pure Java triangulator or the GLU tesselator.
+     *
+     * @param b true to use the pure Java triangulator
+     */
+    public void setUseTriangulator(boolean b) {
+        if (b && triangulator == null)
+            triangulator = new Triangulator();
+        else if (!b)
+            triangulator = null;
+    }
+
+    public boolean isUsingTriangulator() {
+        return triangulator != null;
+    }
+
     private void setWindingRule(int rule) {
         glu.gluTessProperty(tobj, GLU.GLU_TESS_WINDING_RULE, rule);
     }
@@ -223,13 +245,17 @@ final class Tesselator extends GLUtessellatorCallbackAdapter {
      */
 //    public void combine(double[] coords, double[] data, float[] weight, double[] dataOut) {
       public void combine(double[] coords, Object[] data, float[] weight, Object[] dataOut) {
+        // Offer a pooled array to the visitor for the new vertex
+        dataOut[0] = this.coords.next();
         visitor.combine(coords, data, weight, dataOut);
     }
 
 
     /**
      * Default implementation of the TesselatorVisitor combine method usable
-     * in any implementations.
+     * in any implementations. If dataOut[0] already holds an array of
+     * at least three elements, as set by the Tesselator, it is reused for
+     * the new vertex.
      *
      * @param coords DOCUMENT ME!
      * @param data DOCUMENT ME!
@@ -238,7 +264,11 @@ final class Tesselator extends GLUtessellatorCallbackAdapter {
      */
 
   public static void defaultCombine(double[] coords, Object[] data,float[] weight, Object[] dataOut) {
-      double[] vertex = new double[6];
+      double[] vertex;
+      if (dataOut[0] instanceof double[] && ((double[])dataOut[0]).length >= 3)
+          vertex = (double[])dataOut[0];
+      else
+          vertex = new double[3];
 
     /*
     //System.err.println("Vertex length: "+vertex.length+", data length :"+data.length+" and weight length: "+weight.length);
@@ -428,6 +428,36 @@ final class Texture {
         disable();
     }
 
+    boolean isUpdateNeeded() {
+        return updateNeeded;
+    }
+
+    boolean hasAlpha() {
+        return pixelFormat == GL2.GL_RGBA || pixelFormat == GL2.GL_LUMINANCE_ALPHA;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    /**
+     * Creates the texture object and uploads its pixels if needed, without
+     * enabling texturing.
+     */
+    void prepare() {
+        create();
+        update();
+    }
+
+    /**
+     * Adds the textured rectangle to the specified batch instead of drawing
+     * it. The texture should have been prepared and the batch set up for
+     * this texture.
+     */
+    synchronized void paint(PrimitiveBatch batch, double x1, double y1, double x2, double y2) {
+        batch.addTexturedRect(x1, y1, x2, y2, s2, t2);
+    }
+
     double[] xequal= new double[4];
     double[] yequal= new double[4];
 
@@ -10,34 +10,55 @@ package agile2d;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics2D;
-import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.font.FontRenderContext;
 import java.awt.font.GlyphVector;
 import java.awt.geom.AffineTransform;
-import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferByte;
 import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 
-import javax.media.opengl.GL;
 import javax.media.opengl.GL2;
 import javax.media.opengl.GLAutoDrawable;
 
+import agile2d.geom.VertexArray;
+
 /**
  * Render Fonts as grayscale images
  *
- * A texture containing a mosaic of character glyphs is used to
- * allow OpenGL to render the fonts.
+ * Textures containing the pages of a glyph atlas shared by all the fonts
+ * are used to allow OpenGL to render the fonts. Glyphs are added to the
+ * atlas when they are first drawn, so any character can be rendered, and
+ * only the rows of the pages changed since the last upload are copied.
  *
  * @author Jean-Daniel Fekete
  * @version $Revision: 1.3 $
  */
 class TextureFontRenderer extends BasicFontRenderer {
-    int texture;
+    // One texture per atlas page, and the page version it holds
+    int[] textures = new int[0];
+    int[] uploadedVersions = new int[0];
+    GlyphAtlas textureAtlas;
+    int[] rows = new int[2];
+    int uploadCount;
+    long uploadedBytes;
+    int drawCount;
+    // Pending glyph quads of each atlas page
+    float[][] quads = new float[0][];
+    int[] quadSizes = new int[0];
+    int pendingQuads;
+    FloatBuffer quadBuffer;
+    // Glyphs of the GlyphVector being drawn
+    int[] glyphCodes;
+    float[] glyphPositions;
+    // Use the Nearest filters to avoid messing up anti-aliasing
+    // without having to pixel-align the transform, which is very expensive
+    int textureFilter = GL2.GL_NEAREST;
     CacheInfo current;
     boolean highQuality = true;
     //boolean highQuality = false;
@@ -46,8 +67,10 @@ class TextureFontRenderer extends BasicFontRenderer {
     static int maxCacheLength = 100;
     static LinkedList cache = new LinkedList();
 
-    static int texWidth = 256;
-    static int texHeight = 128;
+    static int texWidth = 512;
+    static int texHeight = 512;
+    static int maxPages = 4;
+    static GlyphAtlas atlas = new GlyphAtlas(texWidth, texHeight, maxPages);
 
     public TextureFontRenderer() {
     }
@@ -59,239 +82,102 @@ class TextureFontRenderer extends BasicFontRenderer {
     public static void setMaxTextureSize(int size) {
         texWidth = size;
         texHeight = size;
+        resetAtlas();
+    }
+
+    /**
+     * Sets the maximum number of pages of the glyph atlas, each one
+     * the size of the texture.
+     */
+    public static void setMaxAtlasPages(int pages) {
+        maxPages = pages;
+        resetAtlas();
+    }
+
+    public static GlyphAtlas getAtlas() {
+        return atlas;
     }
 
-    public static int countGlyphs(Font font) {
-        int cnt = 0;
-        for (int i = 0; i < 256; i++) {
-            if (font.canDisplay((char) i))
-                cnt++;
+    private static void resetAtlas() {
+        synchronized (cache) {
+            atlas = new GlyphAtlas(texWidth, texHeight, maxPages);
+            cache.clear();
         }
-        return cnt;
     }
 
     static class CacheInfo {
         static AffineTransform tmpTransform = new AffineTransform();
-        static char[] tmpChar = { 0 };
+        static Graphics2D metricsGraphics;
         Font font;
         FontRenderContext frc;
         double scale;
         FontMetrics metrics;
-        BufferedImage image;
-        Graphics2D graphics;
-        // Texture indices for each defined character
-        Rectangle2D.Double[] charTexIndices;
-        // Pixel dimension for each defined character
-        Rectangle[] charDimensions;
-        GlyphVector glyphs;
+        boolean tooLarge;
+        // Glyph codes of the Latin-1 characters, -2 until known
+        int[] latin1Codes;
+        // Glyph codes of the other characters
+        HashMap<Integer, Integer> codes;
 
         CacheInfo(Font font, double scale, boolean aa, boolean ufm) {
             this.font = font;
             tmpTransform.setToScale(scale, scale);
             this.frc = new FontRenderContext(tmpTransform, aa, ufm);
             this.scale = scale;
-            charTexIndices = new Rectangle2D.Double[256];
-            charDimensions = new Rectangle[256];
+            // getMaxCharBounds doesn't look at the transform in the FontRenderContext
+            Rectangle2D maxBounds = font.getMaxCharBounds(frc);
+            tooLarge = maxBounds.getWidth() == 0 ||
+                !atlas.fits(Math.ceil(maxBounds.getWidth()*scale),
+                            Math.ceil(maxBounds.getHeight()*scale));
+            latin1Codes = new int[256];
+            Arrays.fill(latin1Codes, -2);
+            codes = new HashMap<Integer, Integer>();
+
+            if (metricsGraphics == null)
+                metricsGraphics = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY).createGraphics();
+            metricsGraphics.setFont(font.deriveFont(frc.getTransform()));
+            metricsGraphics.setRenderingHint(
+                RenderingHints.KEY_TEXT_ANTIALIASING,
+                (aa ?
+                 RenderingHints.VALUE_TEXT_ANTIALIAS_ON :
+                 RenderingHints.VALUE_TEXT_ANTIALIAS_OFF));
+            metricsGraphics.setRenderingHint(
+                RenderingHints.KEY_FRACTIONALMETRICS,
+                (ufm ?
+                 RenderingHints.VALUE_FRACTIONALMETRICS_ON :
+                 RenderingHints.VALUE_FRACTIONALMETRICS_OFF));
+            metrics = metricsGraphics.getFontMetrics();
         }
 
         public boolean equals(Font font, double scale, boolean aa, boolean ufm) {
             return this.font.equals(font) &&
                    frc.isAntiAliased() == aa &&
                    frc.usesFractionalMetrics() == ufm &&
-                   ((this.scale <= scale && charTexIndices == null) ||
+                   ((this.scale <= scale && tooLarge) ||
                     isSameScale(this.scale, scale));
         }
 
-        public int createImage() {
-            // First, a quick check with just the max char bounds
-            // Pessimistic but much faster than the exact computation.
-            // We use a "fuge factor" to be a little less pessimistic.  If it is too
-            // optimistic, there is a check later.
-            final float fudge = 0.5f;
-
-            Rectangle2D maxBounds = font.getMaxCharBounds(frc);
-            // getMaxCharBounds doesn't look at the transform in the FontRenderContext
-            int minCols = maxBounds.getWidth() == 0 ? 0 : texWidth / (int) Math.ceil(maxBounds.getWidth()*scale);
-
-            if (minCols == 0) {
-                charTexIndices = null;
-                charDimensions = null;
-                return 0;
-            }
-            int minRows = texHeight / (int) Math.ceil(maxBounds.getHeight()*scale);
-            if (minRows == 0 || (minRows * minCols < countGlyphs(font)*fudge)) {
-                charTexIndices = null;
-                charDimensions = null;
-                return 0;
-            }
-
-            // We passed the pessimistic computation, now compute the
-            // exact required image height.
-            // Just allocate in order and wrap to next line when reaching the
-            // right side of the image.
-            // TODO: sort characters according to their height before storing them
-            // in the image so that they are more packed.  If one line contains very
-            // small glyphs except for one deep and high one, we need the whole
-            // height for the whole line.
-            int lastX = 0;
-            int lastY = 0;
-            int curHeight = 0;
-            Point2D.Double zero = new Point2D.Double();
-
-            glyphs = font.createGlyphVector(frc, latin1Chars);
-
-            for (int i = 0; i < 256; i++) {
-                if (!font.canDisplay((char) i))
-                    continue;
-                glyphs.setGlyphPosition(i, zero);
-                // The code below is not optimal.
-                // The optimal code, commented out, is VERY slow since it forces a
-                // rendering of each glyph!
-                Rectangle d = glyphs.getGlyphVisualBounds(i).getBounds();
-                if (d == null || d.isEmpty())
-                    continue;
-                d.x -= 1;
-                d.y -= 1;
-                d.width = 2 + (int)(d.width * scale);
-                d.height = 2 + (int)(d.height * scale);
-//                Rectangle d = glyphs.getGlyphPixelBounds(i, frc, 0, 0);
-//                if (d == null || d.isEmpty())
-//                    continue;
-                charDimensions[i] = d;
-                if ((texWidth - lastX) < d.width) {
-                    lastX = 0;
-                    lastY += curHeight;
-                    curHeight = 0;
-                }
-                if ((texHeight - lastY) < d.height) {
-                    charTexIndices = null;
-                    charDimensions = null;
-                    //System.err.println("refusing to allocate bitmap");
-                    return 0; // ODD: Not enough room, refuse to allocate
-                }
-                // create a texture index not normalized for now.
-                // Normalization will mean present in the mosaic.
-                Rectangle2D.Double tex =
-                    new Rectangle2D.Double(lastX, lastY, d.width, d.height);
-                charTexIndices[i] = tex;
-                curHeight = Math.max(curHeight, d.height);
-                lastX += d.width;
-            }
-            int height = lastY + curHeight;
-            image = new BufferedImage(texWidth, height, BufferedImage.TYPE_BYTE_GRAY);
-            return height;
-        }
-
         public boolean isImageTooLarge() {
-            return charTexIndices == null;
-        }
-
-        public boolean isCharRendered(char c) {
-            return !font.canDisplay(c) ||
-                   charTexIndices[c] == null ||
-                   charTexIndices[c].getWidth() <= 1.0;
-        }
-
-        public synchronized boolean createMosaic(String s, int minGlyphsToRender) {
-            int i;
-
-            if (metrics == null) {
-                // we never tried to create any character in the mosaic yet
-                graphics = (Graphics2D) image.getGraphics();
-                //System.out.println("Current font: "+font.getName());
-                //System.out.println("Texture font size BEFORE derive: "+graphics.getFont().getSize()+" and transform: "+graphics.getFont().getTransform());
-                graphics.setFont(font.deriveFont(frc.getTransform()));
-                //System.out.println("Texture font size AFTER derive: "+graphics.getFont().getSize()+" and transform: "+graphics.getFont().getTransform());
-                graphics.setRenderingHint(
-                    RenderingHints.KEY_TEXT_ANTIALIASING,
-                    (frc.isAntiAliased() ?
-                     RenderingHints.VALUE_TEXT_ANTIALIAS_ON :
-                     RenderingHints.VALUE_TEXT_ANTIALIAS_OFF));
-                graphics.setRenderingHint(
-                    RenderingHints.KEY_FRACTIONALMETRICS,
-                    (frc.usesFractionalMetrics() ?
-                     RenderingHints.VALUE_FRACTIONALMETRICS_ON :
-                     RenderingHints.VALUE_FRACTIONALMETRICS_OFF));
-                metrics = graphics.getFontMetrics();
-            }
-            else if (graphics == null) {
-                // we have already filled the mosaic
-                return false;
-            }
-            // we need to make sure the characters in the string are in the
-            // mosaic and we may want to create more if we have time
-            boolean missing = false;
-            for (i = 0; i < s.length(); i++) {
-                if (! isCharRendered(s.charAt(i))) {
-                    missing = true;
-                    break;
-                }
-            }
-            if (! missing) {
-                // maybe create other characters, we'll see later
-                return false;
-            }
-
-            for (i = 0; i < s.length(); i++) {
-                char c = s.charAt(i);
-                if (isCharRendered(c))
-                    continue;
-
-                minGlyphsToRender--;
-                renderChar(c);
-            }
-            while (minGlyphsToRender-- > 0) {
-                int c = nextGlyphToRender();
-                if (c == -1) {
-                    //System.out.println("Font rendering finished for "+font);
-                    graphics = null;
-                    break;
-                }
-                renderChar((char)c);
-            }
-            //new ImageBrowser(font.toString(), image);
-            return true;
-        }
-
-        private int nextGlyphToRender() {
-            for (char c = 0; c < 256; c++) {
-                if (! isCharRendered(c))
-                    return c;
-            }
-            return -1;
+            return tooLarge;
         }
 
-        private void renderChar(char c) {
-            Rectangle2D.Double tex = charTexIndices[c];
-            Rectangle d = glyphs.getGlyphPixelBounds(c, frc, 0, 0);
-            charDimensions[c] = d; // put the exact bounds now.
-
-            tmpChar[0] = c;
-            graphics.drawChars(tmpChar, 0, 1, (int)tex.x - d.x, (int)tex.y - d.y);
-            tex.setRect(
-                tex.x/texWidth, tex.y/texHeight,
-                (double)d.width/texWidth, (double)d.height/texHeight);
-        }
-
-        public void installImage(GL2 gl) {
-            if (image == null)
-                return;
-            DataBufferByte buffer =
-                (DataBufferByte) image.getData().getDataBuffer();
-            byte[] bytes = buffer.getBankData()[0];
-            ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
-            gl.glPixelStorei(GL2.GL_UNPACK_ALIGNMENT, 1);
-            gl.glTexSubImage2D(
-                GL2.GL_TEXTURE_2D,
-                0,
-                0,
-                0,
-                image.getWidth(),
-                image.getHeight(),
-                GL2.GL_ALPHA,
-                GL2.GL_UNSIGNED_BYTE,
-                byteBuffer);
-            gl.glPixelStorei(GL2.GL_UNPACK_ALIGNMENT, 4);
+        /**
+         * Returns the glyph code of a character, or -1 if the font
+         * cannot display it.
+         */
+        public int getGlyphCode(int c) {
+            if (c < 256 && latin1Codes[c] != -2)
+                return latin1Codes[c];
+            Integer code = c < 256 ? null : codes.get(c);
+            if (code != null)
+                return code.intValue();
+            int g = -1;
+            if (font.canDisplay(c))
+                g = font.createGlyphVector(frc, Character.toChars(c)).getGlyphCode(0);
+            if (c < 256)
+                latin1Codes[c] = g;
+            else
+                codes.put(c, g);
+            return g;
         }
     }
 
@@ -316,7 +202,6 @@ class TextureFontRenderer extends BasicFontRenderer {
                 first = false;
             }
             info = new CacheInfo(font, scale, aa, ufm);
-            info.createImage();
             cache.addFirst(info);
             setMaxCacheLength(maxCacheLength); // cleanup cache
         }
@@ -347,39 +232,109 @@ class TextureFontRenderer extends BasicFontRenderer {
         this.highQuality = highQuality;
     }
 
-    protected void bind(AgileState glState) {
+    /**
+     * Returns the atlas the glyphs are taken from.
+     */
+    protected GlyphAtlas getSharedAtlas() {
+        return atlas;
+    }
+
+    // Deletes the textures of a previous atlas
+    private void checkAtlas(GL2 gl) {
+        if (textureAtlas == getSharedAtlas())
+            return;
+        if (textures.length != 0)
+            gl.glDeleteTextures(textures.length, textures, 0);
+        textures = new int[0];
+        uploadedVersions = new int[0];
+        textureAtlas = getSharedAtlas();
+    }
+
+    protected void bind(AgileState glState, int page) {
         GL2 gl = glState.getGL();
-        // Allocates just one texture (for now) and copy per-font texture mosaic into it.
-        if (texture == 0) {
-            int maxTex[] = { 0 };
-            gl.glGenTextures(1, maxTex, 0);
-
-            texture = maxTex[0];
-            glState.bindTexture2D(texture);
-            // Use the Nearest filters to avoid messing up anti-aliasing
-            // without having to pixel-align the transform, which is very expensive
-            gl.glTexParameterf(
-                GL2.GL_TEXTURE_2D,
-                GL2.GL_TEXTURE_MAG_FILTER,
-                GL2.GL_NEAREST);
-            gl.glTexParameterf(
-                GL2.GL_TEXTURE_2D,
-                GL2.GL_TEXTURE_MIN_FILTER,
-                GL2.GL_NEAREST);
-            gl.glTexImage2D(
+        if (page >= textures.length) {
+            int n = textureAtlas.getMaxPages();
+            int[] newTextures = new int[n];
+            gl.glGenTextures(n - textures.length, newTextures, textures.length);
+            System.arraycopy(textures, 0, newTextures, 0, textures.length);
+            for (int i = textures.length; i < n; i++) {
+                glState.bindTexture2D(newTextures[i]);
+                gl.glTexParameterf(
+                    GL2.GL_TEXTURE_2D,
+                    GL2.GL_TEXTURE_MAG_FILTER,
+                    textureFilter);
+                gl.glTexParameterf(
+                    GL2.GL_TEXTURE_2D,
+                    GL2.GL_TEXTURE_MIN_FILTER,
+                    textureFilter);
+                gl.glTexImage2D(
+                    GL2.GL_TEXTURE_2D,
+                    0,
+                    GL2.GL_ALPHA,
+                    textureAtlas.getPageWidth(),
+                    textureAtlas.getPageHeight(),
+                    0,
+                    GL2.GL_ALPHA,
+                    GL2.GL_UNSIGNED_BYTE,
+                    null);
+            }
+            textures = newTextures;
+            uploadedVersions = Arrays.copyOf(uploadedVersions, n);
+        }
+        glState.bindTexture2D(textures[page]);
+        // Rows changed after this version are uploaded the next time
+        int version = textureAtlas.getPageVersion(page);
+        if (textureAtlas.getChangedRows(page, uploadedVersions[page], rows)) {
+            int width = textureAtlas.getPageWidth();
+            int height = rows[1] - rows[0];
+            ByteBuffer byteBuffer = ByteBuffer.wrap(
+                textureAtlas.getPagePixels(page), rows[0] * width, height * width);
+            gl.glPixelStorei(GL2.GL_UNPACK_ALIGNMENT, 1);
+            gl.glTexSubImage2D(
                 GL2.GL_TEXTURE_2D,
                 0,
-                GL2.GL_ALPHA,
-                texWidth,
-                texHeight,
                 0,
+                rows[0],
+                width,
+                height,
                 GL2.GL_ALPHA,
                 GL2.GL_UNSIGNED_BYTE,
-                null);
-        }
-        else {
-            glState.bindTexture2D(texture);
+                byteBuffer);
+            gl.glPixelStorei(GL2.GL_UNPACK_ALIGNMENT, 4);
+            uploadCount++;
+            uploadedBytes += height * width;
         }
+        uploadedVersions[page] = version;
+    }
+
+    /**
+     * Returns the number of texture uploads since the last call to
+     * {@link #resetCounters()}.
+     */
+    public int getUploadCount() {
+        return uploadCount;
+    }
+
+    /**
+     * Returns the number of bytes uploaded since the last call to
+     * {@link #resetCounters()}.
+     */
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    /**
+     * Returns the number of draw calls issued for glyphs since the last
+     * call to {@link #resetCounters()}.
+     */
+    public int getDrawCount() {
+        return drawCount;
+    }
+
+    public void resetCounters() {
+        uploadCount = 0;
+        uploadedBytes = 0;
+        drawCount = 0;
     }
 
     public boolean install(GLAutoDrawable drawable,
@@ -398,22 +353,10 @@ class TextureFontRenderer extends BasicFontRenderer {
         return true;
     }
 
-    public void render(
-        GLAutoDrawable drawable,
-        String string,
-        double scale,
-        Font font) {
-
-        GL2 gl = drawable.getGL().getGL2();
-        AgileState glState = AgileState.get(gl);
-        bind(glState);
-        // next line will install the texture the first time the font
-        // is used.
-        if (current.createMosaic(string, isIncremental() ? 10 : 256) ||
-            ! installed) {
-            current.installImage(gl);
-            installed = true;
-        }
+    // Sets up the texturing of the glyphs and starts a run of quads
+    protected void begin(GL2 gl, AgileState glState) {
+        checkAtlas(gl);
+        installed = true;
         glState.glEnable(GL2.GL_TEXTURE_2D);
         glState.glEnable(GL2.GL_BLEND);
         if (glState.setState(GL2.GL_TEXTURE_ENV_MODE, GL2.GL_MODULATE)) {
@@ -422,55 +365,124 @@ class TextureFontRenderer extends BasicFontRenderer {
                 GL2.GL_TEXTURE_ENV_MODE,
                 GL2.GL_MODULATE);
         }
-        gl.glScaled(1 / current.scale, 1 / current.scale, 1);
-        for (int i = 0; i < string.length(); i++) {
-            int c = string.charAt(i);
-
-            Rectangle2D.Double texCoords = current.charTexIndices[c];
-            Rectangle dim = current.charDimensions[c];
-
-            if (texCoords != null
-                && dim != null
-                && !texCoords.isEmpty()) {
-                gl.glBegin(GL2.GL_QUADS);
-                gl.glTexCoord2d(
-                    texCoords.getMinX(),
-                    texCoords.getMinY());
-                gl.glVertex2d(dim.getMinX(), dim.getMinY());
-                gl.glTexCoord2d(
-                    texCoords.getMaxX(),
-                    texCoords.getMinY());
-                gl.glVertex2d(dim.getMaxX(), dim.getMinY());
-                gl.glTexCoord2d(
-                    texCoords.getMaxX(),
-                    texCoords.getMaxY());
-                gl.glVertex2d(dim.getMaxX(), dim.getMaxY());
-                gl.glTexCoord2d(
-                    texCoords.getMinX(),
-                    texCoords.getMaxY());
-                gl.glVertex2d(dim.getMinX(), dim.getMaxY());
-                gl.glEnd();
+        textureAtlas.beginRun();
+    }
 
-            }
-            gl.glTranslated(current.metrics.charWidth(c), 0, 0);
-        }
+    protected void end(AgileState glState) {
+        flushQuads(glState);
+        textureAtlas.endRun();
         glState.glDisable(GL2.GL_TEXTURE_2D);
     }
 
+    // Appends the quad of a glyph, the pen position being in pixels at the
+    // scale of the current font, and returns the glyph
+    protected GlyphAtlas.Glyph addGlyph(AgileState glState, int code, double x, double y) {
+        if (code == -1)
+            return null;
+        boolean aa = current.frc.isAntiAliased();
+        boolean ufm = current.frc.usesFractionalMetrics();
+        GlyphAtlas.Glyph g = textureAtlas.getGlyph(current.font, current.scale, aa, ufm, code);
+        if (g == null && pendingQuads != 0) {
+            // The pages holding the pending quads are full, draw them first
+            flushQuads(glState);
+            g = textureAtlas.getGlyph(current.font, current.scale, aa, ufm, code);
+        }
+        if (g == null || g.width == 0)
+            return g;
+
+        if (g.page >= quads.length) {
+            quads = Arrays.copyOf(quads, textureAtlas.getMaxPages());
+            quadSizes = Arrays.copyOf(quadSizes, quads.length);
+        }
+        float[] q = quads[g.page];
+        int n = quadSizes[g.page];
+        if (q == null || n + 16 > q.length) {
+            q = q == null ? new float[256] : Arrays.copyOf(q, q.length * 2);
+            quads[g.page] = q;
+        }
+        double inv = 1 / current.scale;
+        float x0 = (float) ((x + g.left) * inv);
+        float y0 = (float) ((y + g.top) * inv);
+        float x1 = (float) ((x + g.left + g.width) * inv);
+        float y1 = (float) ((y + g.top + g.height) * inv);
+        q[n++] = x0; q[n++] = y0; q[n++] = g.s0; q[n++] = g.t0;
+        q[n++] = x1; q[n++] = y0; q[n++] = g.s1; q[n++] = g.t0;
+        q[n++] = x1; q[n++] = y1; q[n++] = g.s1; q[n++] = g.t1;
+        q[n++] = x0; q[n++] = y1; q[n++] = g.s0; q[n++] = g.t1;
+        quadSizes[g.page] = n;
+        pendingQuads++;
+        return g;
+    }
+
+    // Draws the pending quads, with one glDrawArrays per atlas page
+    private void flushQuads(AgileState glState) {
+        if (pendingQuads == 0)
+            return;
+        GL2 gl = glState.getGL();
+        gl.glEnableClientState(GL2.GL_VERTEX_ARRAY);
+        gl.glEnableClientState(GL2.GL_TEXTURE_COORD_ARRAY);
+        for (int page = 0; page < quads.length; page++) {
+            int n = quadSizes[page];
+            if (n == 0)
+                continue;
+            bind(glState, page);
+            if (quadBuffer == null || quadBuffer.capacity() < n)
+                quadBuffer = VertexArray.newByteBuffer(
+                    Math.max(n, quadBuffer == null ? 0 : quadBuffer.capacity() * 2) * 4).asFloatBuffer();
+            quadBuffer.clear();
+            quadBuffer.put(quads[page], 0, n);
+            // x, y, s, t interleaved
+            quadBuffer.position(0);
+            gl.glVertexPointer(2, GL2.GL_FLOAT, 16, quadBuffer);
+            quadBuffer.position(2);
+            gl.glTexCoordPointer(2, GL2.GL_FLOAT, 16, quadBuffer);
+            gl.glDrawArrays(GL2.GL_QUADS, 0, n / 4);
+            drawCount++;
+            quadSizes[page] = 0;
+        }
+        gl.glDisableClientState(GL2.GL_TEXTURE_COORD_ARRAY);
+        gl.glDisableClientState(GL2.GL_VERTEX_ARRAY);
+        pendingQuads = 0;
+        textureAtlas.beginRun();
+    }
+
+    public void render(
+        GLAutoDrawable drawable,
+        String string,
+        double scale,
+        Font font) {
+
+        GL2 gl = drawable.getGL().getGL2();
+        AgileState glState = AgileState.get(gl);
+        begin(gl, glState);
+        int x = 0;
+        for (int i = 0; i < string.length(); ) {
+            int c = string.codePointAt(i);
+            i += Character.charCount(c);
+            addGlyph(glState, current.getGlyphCode(c), x, 0);
+            x += current.metrics.charWidth(c);
+        }
+        end(glState);
+    }
+
     public void render(
             GLAutoDrawable drawable,
             GlyphVector g,
             double scale) {
-        StringBuffer s = new StringBuffer();
-        for (int i = 0; i < g.getNumGlyphs(); i++) {
-            for (char c = 0; c < 256; c++) {
-                if (current.glyphs.getGlyphCode(c) == g.getGlyphCode(i)) {
-                    s.append(c);
-                    break;
-                }
-            }
+        GL2 gl = drawable.getGL().getGL2();
+        AgileState glState = AgileState.get(gl);
+        int n = g.getNumGlyphs();
+        glyphCodes = g.getGlyphCodes(0, n, glyphCodes != null && glyphCodes.length >= n ? glyphCodes : null);
+        glyphPositions = g.getGlyphPositions(0, n, glyphPositions != null && glyphPositions.length >= 2 * n ? glyphPositions : null);
+        // The positions are in the space of the font, the glyphs at its scale
+        double s = current.scale;
+        begin(gl, glState);
+        for (int i = 0; i < n; i++) {
+            int code = glyphCodes[i];
+            if (!GlyphAtlas.isInvisible(code))
+                addGlyph(glState, code, glyphPositions[2 * i] * s, glyphPositions[2 * i + 1] * s);
         }
-        render(drawable, s.toString(), scale, g.getFont());
+        end(glState);
     }
 
     public void release(GLAutoDrawable drawable) {
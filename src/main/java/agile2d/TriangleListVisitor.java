@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2006 Jon Meyer, Ben Bederson and Jean-Daniel Fekete               *
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d;
+
+import agile2d.geom.VertexArray;
+
+/**
+ * Collects the fans, strips and triangles of a tesselation into a single
+ * indexed triangle list, so that a whole fill is drawn with one
+ * glDrawElements instead of one glDrawArrays per primitive.
+ *
+ * <p>
+ * Vertices with the same coordinates are stored once: the GLU tesselator
+ * repeats the vertices shared by its primitives, and the triangulator
+ * those of adjacent trapezoids. Degenerate triangles, with twice the same
+ * vertex, are dropped.
+ * </p>
+ */
+public final class TriangleListVisitor implements TesselatorVisitor {
+    private VertexArray vertices = new VertexArray();
+    private int[]       indices = new int[256];
+    private int         indexCount;
+    private int         primitiveCount;
+
+    // Current primitive
+    private int   mode;
+    private int[] primitive = new int[64];
+    private int   primitiveSize;
+
+    // Open addressing hash table of the vertex indices, keyed by coordinates
+    private int[] table = new int[256];
+    private float[] coords = new float[2];
+
+    public TriangleListVisitor() {
+        vertices.setMode(VertexArray.MODE_POINTS);
+        java.util.Arrays.fill(table, -1);
+    }
+
+    /**
+     * Empties the list, keeping its storage.
+     */
+    public void clear() {
+        if (table.length > 4096 && vertices.getVertexCount() * 16 < table.length)
+            table = new int[4096]; // Shrink after a large tesselation
+        vertices.clear();
+        vertices.setMode(VertexArray.MODE_POINTS);
+        java.util.Arrays.fill(table, -1);
+        indexCount = 0;
+        primitiveCount = 0;
+        primitiveSize = 0;
+    }
+
+    /**
+     * Returns the distinct vertices, referenced by the indices.
+     */
+    public VertexArray getVertices() {
+        return vertices;
+    }
+
+    /**
+     * Returns the indices of the vertices of the triangles, three per
+     * triangle. The array may be longer than {@link #getIndexCount()}.
+     */
+    public int[] getIndices() {
+        return indices;
+    }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    public int getTriangleCount() {
+        return indexCount / 3;
+    }
+
+    /**
+     * Returns the number of primitives received from the tesselator, each
+     * of which would have been a draw call.
+     */
+    public int getPrimitiveCount() {
+        return primitiveCount;
+    }
+
+    /**
+     * Appends the triangles, with their vertices expanded, to an array in
+     * the MODE_TRIANGLES mode.
+     */
+    public void getTriangles(VertexArray out) {
+        out.reserve(out.getCoordsCount() + indexCount * 2);
+        for (int i = 0; i < indexCount; i++) {
+            vertices.getVertex(indices[i], coords);
+            out.addVertex(coords[0], coords[1]);
+        }
+    }
+
+    // TesselatorVisitor
+
+    public void begin(int mode) {
+        this.mode = mode;
+        primitiveSize = 0;
+        primitiveCount++;
+    }
+
+    public void addVertex(double[] coords) {
+        addVertex(coords[0], coords[1]);
+    }
+
+    public void addVertex(double x, double y) {
+        if (primitiveSize == primitive.length) {
+            int[] newPrimitive = new int[primitive.length * 2];
+            System.arraycopy(primitive, 0, newPrimitive, 0, primitiveSize);
+            primitive = newPrimitive;
+        }
+        primitive[primitiveSize++] = indexOf((float)x, (float)y);
+    }
+
+    public void end() {
+        int[] p = primitive;
+        int n = primitiveSize;
+        switch (mode) {
+        case VertexArray.MODE_TRIANGLES:
+            for (int i = 0; i + 2 < n; i += 3)
+                triangle(p[i], p[i + 1], p[i + 2]);
+            break;
+        case VertexArray.MODE_TRIANGLE_STRIP:
+            // Every other triangle is reversed to keep the orientation
+            for (int i = 2; i < n; i++) {
+                if ((i & 1) == 0)
+                    triangle(p[i - 2], p[i - 1], p[i]);
+                else
+                    triangle(p[i - 1], p[i - 2], p[i]);
+            }
+            break;
+        case VertexArray.MODE_TRIANGLE_FAN:
+        case VertexArray.MODE_POLYGON:
+            for (int i = 2; i < n; i++)
+                triangle(p[0], p[i - 1], p[i]);
+            break;
+        case VertexArray.MODE_QUADS:
+            for (int i = 0; i + 3 < n; i += 4) {
+                triangle(p[i], p[i + 1], p[i + 2]);
+                triangle(p[i], p[i + 2], p[i + 3]);
+            }
+            break;
+        case VertexArray.MODE_QUAD_STRIP:
+            for (int i = 0; i + 3 < n; i += 2) {
+                triangle(p[i], p[i + 1], p[i + 3]);
+                triangle(p[i], p[i + 3], p[i + 2]);
+            }
+            break;
+        default:
+            // Lines and points have no area
+            break;
+        }
+        primitiveSize = 0;
+    }
+
+    public void combine(double[] coords, Object[] data, float[] weight, Object[] dataOut) {
+        Tesselator.defaultCombine(coords, data, weight, dataOut);
+    }
+
+    public void error(int errorCode) {
+        Tesselator.defaultError(errorCode);
+    }
+
+    private void triangle(int a, int b, int c) {
+        if (a == b || b == c || a == c)
+            return;
+        if (indexCount + 3 > indices.length) {
+            int[] newIndices = new int[indices.length * 2];
+            System.arraycopy(indices, 0, newIndices, 0, indexCount);
+            indices = newIndices;
+        }
+        indices[indexCount++] = a;
+        indices[indexCount++] = b;
+        indices[indexCount++] = c;
+    }
+
+    // Returns the index of a vertex, adding it if it is new
+    private int indexOf(float x, float y) {
+        int mask = table.length - 1;
+        int h = hash(x, y) & mask;
+        while (table[h] != -1) {
+            vertices.getVertex(table[h], coords);
+            if (coords[0] == x && coords[1] == y)
+                return table[h];
+            h = (h + 1) & mask;
+        }
+        int index = vertices.getVertexCount();
+        vertices.addVertex(x, y);
+        table[h] = index;
+        // Keep the table at most half full
+        if (2 * (index + 1) > table.length)
+            rehash();
+        return index;
+    }
+
+    private static int hash(float x, float y) {
+        int h = Float.floatToIntBits(x + 0f) * 31 + Float.floatToIntBits(y + 0f);
+        return h ^ (h >>> 16);
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        java.util.Arrays.fill(table, -1);
+        int mask = table.length - 1;
+        int n = vertices.getVertexCount();
+        for (int i = 0; i < n; i++) {
+            vertices.getVertex(i, coords);
+            int h = hash(coords[0], coords[1]) & mask;
+            while (table[h] != -1)
+                h = (h + 1) & mask;
+            table[h] = i;
+        }
+    }
+}
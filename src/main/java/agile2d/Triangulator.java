@@ -0,0 +1,476 @@
+/*
+ * Copyright (C) 2006 Jon Meyer, Ben Bederson and Jean-Daniel Fekete               *
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d;
+
+import java.awt.geom.PathIterator;
+import java.util.Arrays;
+
+import agile2d.geom.VertexArray;
+
+
+/**
+ * Pure Java triangulator for flattened paths, usable instead of the GLU
+ * tesselator.
+ *
+ * <p>
+ * The triangulator sweeps a horizontal line over the edges of the path.
+ * The plane is cut in bands at every vertex and every edge intersection, so
+ * that no two edges cross inside a band; the parts of a band that are inside
+ * the path according to its winding rule are trapezoids, which are merged
+ * vertically as long as they are bounded by the same edges, and output as
+ * triangles. Both the even-odd and the non-zero winding rules are supported,
+ * as well as holes, multiple contours and self-intersecting contours.
+ * </p>
+ *
+ * <p>
+ * The triangulator does not use OpenGL. A Triangulator is not thread safe but
+ * holds no shared state: each thread should use its own instance.
+ * </p>
+ */
+public final class Triangulator {
+    private static final double EPSILON = 1e-7;
+
+    // Edges, oriented from top (smaller y) to bottom
+    private double[] ex0 = new double[64];
+    private double[] ey0 = new double[64];
+    private double[] ex1 = new double[64];
+    private double[] ey1 = new double[64];
+    private int[]    dir = new int[64]; // +1 if the path goes down, -1 otherwise
+    private int      nEdges;
+
+    // Intersections of the edges with the current band
+    private double[] xTop = new double[64];
+    private double[] xBottom = new double[64];
+
+    // Ordinates of the vertices, and edges sorted by their first band
+    private double[] ys = new double[128];
+    private int      nYs;
+    private int[]    starts = new int[129];
+    private int[]    sorted = new int[64];
+
+    // Edges crossing the current band, sorted from left to right
+    private int[]    active = new int[64];
+    private int      nActive;
+
+    // Trapezoids being built, and spans of the current band
+    private int[]    openLeft = new int[16];
+    private int[]    openRight = new int[16];
+    private double[] openTop = new double[16];
+    private int      nOpen;
+    private int[]    spanLeft = new int[16];
+    private int[]    spanRight = new int[16];
+    private boolean[] spanOpen = new boolean[16];
+    private int      nSpans;
+    private int[]    spanOf = newIndex(64); // span starting at each edge, or -1
+
+    private double[] coords = new double[6];
+
+    // Output
+    private VertexArray       out;
+    private TesselatorVisitor visitor;
+    private int               triangleCount;
+
+    /**
+     * Triangulates the interior of a flattened path and appends the
+     * triangles to a VertexArray. If the mode of the array is not set, it
+     * is set to MODE_TRIANGLES.
+     *
+     * @param path the path, using its winding rule
+     * @param array the array receiving the triangles
+     * @return the number of triangles added
+     */
+    public int triangulate(PathIterator path, VertexArray array) {
+        boolean evenOdd = path.getWindingRule() == PathIterator.WIND_EVEN_ODD;
+        readPath(path);
+        return triangulate(evenOdd, array, null);
+    }
+
+    /**
+     * Triangulates the interior of a polygon defined by a list of points and
+     * appends the triangles to a VertexArray.
+     *
+     * @param xPts the X coordinates
+     * @param yPts the Y coordinates
+     * @param nPts the number of points
+     * @param windingRule PathIterator.WIND_EVEN_ODD or PathIterator.WIND_NON_ZERO
+     * @param array the array receiving the triangles
+     * @return the number of triangles added
+     */
+    public int triangulate(int[] xPts, int[] yPts, int nPts, int windingRule, VertexArray array) {
+        readPolygon(xPts, yPts, nPts);
+        return triangulate(windingRule == PathIterator.WIND_EVEN_ODD, array, null);
+    }
+
+    /**
+     * Triangulates the interior of a flattened path and sends the triangles
+     * to a visitor, within one begin(GL_TRIANGLES)/end() pair.
+     */
+    void triangulate(PathIterator path, TesselatorVisitor visitor) {
+        boolean evenOdd = path.getWindingRule() == PathIterator.WIND_EVEN_ODD;
+        readPath(path);
+        triangulate(evenOdd, null, visitor);
+    }
+
+    /**
+     * Triangulates the interior of a polygon defined by a list of points,
+     * using the even-odd rule, and sends the triangles to a visitor.
+     */
+    void triangulate(int[] xPts, int[] yPts, int nPts, TesselatorVisitor visitor) {
+        readPolygon(xPts, yPts, nPts);
+        triangulate(true, null, visitor);
+    }
+
+    private int triangulate(boolean evenOdd, VertexArray array, TesselatorVisitor visitor) {
+        this.out = array;
+        this.visitor = visitor;
+        this.triangleCount = 0;
+        try {
+            if (array != null && array.getMode() == VertexArray.MODE_INVALID)
+                array.setMode(VertexArray.MODE_TRIANGLES);
+            if (visitor != null)
+                visitor.begin(VertexArray.MODE_TRIANGLES);
+            sweep(evenOdd);
+            if (visitor != null)
+                visitor.end();
+        }
+        finally {
+            this.out = null;
+            this.visitor = null;
+        }
+        return triangleCount;
+    }
+
+    // INPUT
+
+    private void readPath(PathIterator path) {
+        nEdges = 0;
+        double startX = 0, startY = 0;
+        double lastX = 0, lastY = 0;
+        boolean open = false;
+        while (!path.isDone()) {
+            int type = path.currentSegment(coords);
+            switch (type) {
+            case PathIterator.SEG_MOVETO:
+                if (open)
+                    addEdge(lastX, lastY, startX, startY);
+                startX = lastX = coords[0];
+                startY = lastY = coords[1];
+                open = true;
+                break;
+            case PathIterator.SEG_LINETO:
+            case PathIterator.SEG_QUADTO:
+            case PathIterator.SEG_CUBICTO:
+                // Curves are expected to be flattened; use their end point
+                int i = (type == PathIterator.SEG_LINETO) ? 0 :
+                    (type == PathIterator.SEG_QUADTO) ? 2 : 4;
+                if (!open) {
+                    startX = lastX;
+                    startY = lastY;
+                    open = true;
+                }
+                addEdge(lastX, lastY, coords[i], coords[i+1]);
+                lastX = coords[i];
+                lastY = coords[i+1];
+                break;
+            case PathIterator.SEG_CLOSE:
+                if (open)
+                    addEdge(lastX, lastY, startX, startY);
+                lastX = startX;
+                lastY = startY;
+                open = false;
+                break;
+            }
+            path.next();
+        }
+        if (open)
+            addEdge(lastX, lastY, startX, startY);
+    }
+
+    private void readPolygon(int[] xPts, int[] yPts, int nPts) {
+        nEdges = 0;
+        if (nPts < 3)
+            return;
+        for (int i = 1; i < nPts; i++)
+            addEdge(xPts[i-1], yPts[i-1], xPts[i], yPts[i]);
+        addEdge(xPts[nPts-1], yPts[nPts-1], xPts[0], yPts[0]);
+    }
+
+    private void addEdge(double xa, double ya, double xb, double yb) {
+        if (ya == yb)
+            return; // horizontal edges do not change the winding
+        if (nEdges == ex0.length) {
+            int size = nEdges * 2;
+            ex0 = Arrays.copyOf(ex0, size);
+            ey0 = Arrays.copyOf(ey0, size);
+            ex1 = Arrays.copyOf(ex1, size);
+            ey1 = Arrays.copyOf(ey1, size);
+            dir = Arrays.copyOf(dir, size);
+            xTop = new double[size];
+            xBottom = new double[size];
+            sorted = new int[size];
+            active = new int[size];
+            spanOf = newIndex(size);
+        }
+        if (ya < yb) {
+            ex0[nEdges] = xa; ey0[nEdges] = ya;
+            ex1[nEdges] = xb; ey1[nEdges] = yb;
+            dir[nEdges] = 1;
+        }
+        else {
+            ex0[nEdges] = xb; ey0[nEdges] = yb;
+            ex1[nEdges] = xa; ey1[nEdges] = ya;
+            dir[nEdges] = -1;
+        }
+        nEdges++;
+    }
+
+    private static int[] newIndex(int size) {
+        int[] index = new int[size];
+        Arrays.fill(index, -1);
+        return index;
+    }
+
+    private double xAt(int e, double y) {
+        if (y <= ey0[e])
+            return ex0[e];
+        if (y >= ey1[e])
+            return ex1[e];
+        return ex0[e] + (ex1[e] - ex0[e]) * (y - ey0[e]) / (ey1[e] - ey0[e]);
+    }
+
+    // SWEEP
+
+    private void sweep(boolean evenOdd) {
+        if (nEdges == 0)
+            return;
+        sortEdges();
+        nActive = 0;
+        nOpen = 0;
+        for (int k = 0; k < nYs - 1; k++) {
+            double top = ys[k];
+            double bottom = ys[k+1];
+
+            // Update the active edges
+            int n = 0;
+            for (int i = 0; i < nActive; i++) {
+                if (ey1[active[i]] > top)
+                    active[n++] = active[i];
+            }
+            for (int i = starts[k]; i < starts[k+1]; i++)
+                active[n++] = sorted[i];
+            nActive = n;
+
+            // Split the band where edges cross
+            while (true) {
+                double y = nextBand(top, bottom);
+                emitBand(top, y, evenOdd);
+                if (y >= bottom)
+                    break;
+                top = y;
+            }
+        }
+        closeTrapezoids(ys[nYs-1]);
+    }
+
+    // Collects the ordinates of the vertices and sorts the edges by the
+    // band where they start.
+    private void sortEdges() {
+        if (ys.length < nEdges * 2) {
+            ys = new double[nEdges * 2];
+            starts = new int[nEdges * 2 + 1];
+        }
+        nYs = 0;
+        for (int e = 0; e < nEdges; e++) {
+            ys[nYs++] = ey0[e];
+            ys[nYs++] = ey1[e];
+        }
+        Arrays.sort(ys, 0, nYs);
+        int n = 1;
+        for (int i = 1; i < nYs; i++) {
+            if (ys[i] != ys[n-1])
+                ys[n++] = ys[i];
+        }
+        nYs = n;
+
+        // Counting sort: starts[k] is the index of the first edge of band k
+        Arrays.fill(starts, 0, nYs + 1, 0);
+        for (int e = 0; e < nEdges; e++)
+            starts[Arrays.binarySearch(ys, 0, nYs, ey0[e]) + 1]++;
+        for (int i = 1; i <= nYs; i++)
+            starts[i] += starts[i-1];
+        // Filling advances starts[k] to starts[k+1]; shift back afterwards
+        for (int e = 0; e < nEdges; e++) {
+            int k = Arrays.binarySearch(ys, 0, nYs, ey0[e]);
+            sorted[starts[k]++] = e;
+        }
+        for (int i = nYs; i > 0; i--)
+            starts[i] = starts[i-1];
+        starts[0] = 0;
+    }
+
+    // Sorts the active edges by their abscissa at the top of the band and
+    // returns the ordinate of the first crossing between them, or the
+    // bottom of the band. On return, xTop and xBottom contain the abscissas
+    // at the top and bottom of the returned band.
+    private double nextBand(double top, double bottom) {
+        for (int i = 0; i < nActive; i++) {
+            int e = active[i];
+            xTop[e] = xAt(e, top);
+            xBottom[e] = xAt(e, bottom);
+        }
+        // Insertion sort, the order changes little from band to band
+        for (int i = 1; i < nActive; i++) {
+            int e = active[i];
+            int j = i - 1;
+            while (j >= 0 && isRightOf(active[j], e)) {
+                active[j+1] = active[j];
+                j--;
+            }
+            active[j+1] = e;
+        }
+        // The first crossing is between two neighbors
+        double y = bottom;
+        for (int i = 0; i < nActive - 1; i++) {
+            int a = active[i];
+            int b = active[i+1];
+            if (xBottom[a] > xBottom[b] + EPSILON) {
+                double da = xBottom[a] - xTop[a];
+                double db = xBottom[b] - xTop[b];
+                double yc = top + (bottom - top) * (xTop[b] - xTop[a]) / (da - db);
+                if (yc > top + EPSILON && yc < y)
+                    y = yc;
+            }
+        }
+        if (y < bottom) {
+            for (int i = 0; i < nActive; i++) {
+                int e = active[i];
+                xBottom[e] = xAt(e, y);
+            }
+        }
+        return y;
+    }
+
+    private boolean isRightOf(int a, int b) {
+        double d = xTop[a] - xTop[b];
+        if (d > EPSILON)
+            return true;
+        if (d < -EPSILON)
+            return false;
+        return xBottom[a] > xBottom[b];
+    }
+
+    // Computes the inside spans of the band and extends or emits the
+    // trapezoids accordingly.
+    private void emitBand(double top, double bottom, boolean evenOdd) {
+        nSpans = 0;
+        int winding = 0;
+        int left = -1;
+        for (int i = 0; i < nActive; i++) {
+            int e = active[i];
+            boolean wasInside = evenOdd ? (winding & 1) != 0 : winding != 0;
+            winding += dir[e];
+            boolean inside = evenOdd ? (winding & 1) != 0 : winding != 0;
+            if (!wasInside && inside) {
+                left = e;
+            }
+            else if (wasInside && !inside) {
+                addSpan(left, e);
+            }
+        }
+
+        // Trapezoids bounded by the same edges continue, others are closed
+        for (int i = 0; i < nSpans; i++) {
+            spanOpen[i] = false;
+            spanOf[spanLeft[i]] = i;
+        }
+        int n = 0;
+        for (int j = 0; j < nOpen; j++) {
+            int match = spanOf[openLeft[j]];
+            if (match != -1 && (spanOpen[match] || spanRight[match] != openRight[j]))
+                match = -1;
+            if (match == -1) {
+                trapezoid(openLeft[j], openRight[j], openTop[j], top);
+            }
+            else {
+                spanOpen[match] = true;
+                openLeft[n] = openLeft[j];
+                openRight[n] = openRight[j];
+                openTop[n] = openTop[j];
+                n++;
+            }
+        }
+        nOpen = n;
+        for (int i = 0; i < nSpans; i++) {
+            spanOf[spanLeft[i]] = -1;
+            if (!spanOpen[i])
+                openTrapezoid(spanLeft[i], spanRight[i], top);
+        }
+    }
+
+    private void addSpan(int left, int right) {
+        if (nSpans == spanLeft.length) {
+            spanLeft = Arrays.copyOf(spanLeft, nSpans * 2);
+            spanRight = Arrays.copyOf(spanRight, nSpans * 2);
+            spanOpen = Arrays.copyOf(spanOpen, nSpans * 2);
+        }
+        spanLeft[nSpans] = left;
+        spanRight[nSpans] = right;
+        nSpans++;
+    }
+
+    private void openTrapezoid(int left, int right, double top) {
+        if (nOpen == openLeft.length) {
+            openLeft = Arrays.copyOf(openLeft, nOpen * 2);
+            openRight = Arrays.copyOf(openRight, nOpen * 2);
+            openTop = Arrays.copyOf(openTop, nOpen * 2);
+        }
+        openLeft[nOpen] = left;
+        openRight[nOpen] = right;
+        openTop[nOpen] = top;
+        nOpen++;
+    }
+
+    private void closeTrapezoids(double bottom) {
+        for (int j = 0; j < nOpen; j++)
+            trapezoid(openLeft[j], openRight[j], openTop[j], bottom);
+        nOpen = 0;
+    }
+
+    // OUTPUT
+
+    private void trapezoid(int left, int right, double top, double bottom) {
+        if (bottom - top <= 0)
+            return;
+        double xl0 = xAt(left, top);
+        double xr0 = xAt(right, top);
+        double xl1 = xAt(left, bottom);
+        double xr1 = xAt(right, bottom);
+        boolean topWide = xr0 - xl0 > EPSILON;
+        boolean bottomWide = xr1 - xl1 > EPSILON;
+        if (topWide) {
+            triangle(xl0, top, xr0, top, bottomWide ? xr1 : xl1, bottom);
+        }
+        if (bottomWide) {
+            triangle(xl0, top, xr1, bottom, xl1, bottom);
+        }
+    }
+
+    private void triangle(double xa, double ya, double xb, double yb, double xc, double yc) {
+        if (out != null) {
+            out.addVertex((float)xa, (float)ya);
+            out.addVertex((float)xb, (float)yb);
+            out.addVertex((float)xc, (float)yc);
+        }
+        else {
+            visitor.addVertex(xa, ya);
+            visitor.addVertex(xb, yb);
+            visitor.addVertex(xc, yc);
+        }
+        triangleCount++;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d.geom;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+/**
+ * Pool of direct byte buffers in native order, used by VertexArray and
+ * VertexAttributes.
+ *
+ * <p>
+ * The sizes are rounded up to a power of two size class. The buffers of the
+ * small classes, up to 4 KB, are cut from 64 KB slabs, so that many small
+ * arrays, such as the tesselations of glyphs, do not each pin a separate
+ * native allocation. Buffers returned by {@link #release(ByteBuffer)} are
+ * kept in a free list per class and reused by the next allocations of that
+ * class, up to a maximum number of free bytes. Buffers larger than the
+ * largest class are allocated and freed by the JVM as usual.
+ * </p>
+ *
+ * <p>
+ * Buffers that are never released are reclaimed by the garbage collector,
+ * but still count as used in the statistics. The pool is thread safe.
+ * </p>
+ */
+public final class BufferPool {
+    /** Log2 of the smallest size class, 64 bytes. */
+    public static final int MIN_SHIFT = 6;
+    /** Log2 of the largest size class cut from slabs, 4 KB. */
+    public static final int SLAB_SHIFT = 12;
+    /** Log2 of the largest pooled size class, 16 MB. */
+    public static final int MAX_SHIFT = 24;
+    /** Size of the slabs. */
+    public static final int SLAB_SIZE = 64 * 1024;
+
+    private static ByteBuffer[][] free = new ByteBuffer[MAX_SHIFT + 1][];
+    private static int[]          freeCount = new int[MAX_SHIFT + 1];
+    private static long           maxFreeBytes = 32L * 1024 * 1024;
+
+    private static ByteBuffer slab;
+    private static int        slabOffset;
+
+    // Statistics
+    private static long usedBytes;
+    private static long freeBytes;
+    private static long reservedBytes;
+    private static long highWaterBytes;
+    private static int  allocations;
+    private static int  releases;
+
+    private BufferPool() { }
+
+    /**
+     * Returns the log2 of the size class holding a number of bytes, or -1
+     * if it is too large to be pooled.
+     */
+    public static int getSizeClass(int bytes) {
+        if (bytes <= (1 << MIN_SHIFT))
+            return MIN_SHIFT;
+        int shift = 32 - Integer.numberOfLeadingZeros(bytes - 1);
+        return shift <= MAX_SHIFT ? shift : -1;
+    }
+
+    /**
+     * Returns a cleared direct buffer in native order whose capacity is at
+     * least the specified number of bytes.
+     */
+    public static synchronized ByteBuffer allocate(int bytes) {
+        allocations++;
+        int shift = getSizeClass(bytes);
+        if (shift < 0) {
+            reservedBytes += bytes;
+            use(bytes);
+            return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        }
+        int size = 1 << shift;
+        ByteBuffer b;
+        if (freeCount[shift] != 0) {
+            b = free[shift][--freeCount[shift]];
+            free[shift][freeCount[shift]] = null;
+            freeBytes -= size;
+            b.clear();
+        }
+        else if (shift <= SLAB_SHIFT) {
+            b = cut(size);
+        }
+        else {
+            reservedBytes += size;
+            b = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+        }
+        use(size);
+        return b;
+    }
+
+    private static void use(long bytes) {
+        usedBytes += bytes;
+        if (usedBytes > highWaterBytes)
+            highWaterBytes = usedBytes;
+    }
+
+    // Cuts a buffer from the current slab
+    private static ByteBuffer cut(int size) {
+        if (slab == null || slabOffset + size > SLAB_SIZE) {
+            if (slab != null) {
+                // Put the end of the slab in the free lists
+                int shift = SLAB_SHIFT;
+                while (SLAB_SIZE - slabOffset >= (1 << MIN_SHIFT)) {
+                    while ((1 << shift) > SLAB_SIZE - slabOffset)
+                        shift--;
+                    ByteBuffer rest = slice(1 << shift);
+                    push(rest, shift);
+                    freeBytes += 1 << shift;
+                }
+            }
+            slab = ByteBuffer.allocateDirect(SLAB_SIZE);
+            slabOffset = 0;
+            reservedBytes += SLAB_SIZE;
+        }
+        return slice(size);
+    }
+
+    private static ByteBuffer slice(int size) {
+        slab.limit(slabOffset + size);
+        slab.position(slabOffset);
+        ByteBuffer b = slab.slice().order(ByteOrder.nativeOrder());
+        slab.clear();
+        slabOffset += size;
+        return b;
+    }
+
+    private static void push(ByteBuffer b, int shift) {
+        ByteBuffer[] list = free[shift];
+        if (list == null)
+            list = free[shift] = new ByteBuffer[16];
+        else if (freeCount[shift] == list.length) {
+            ByteBuffer[] newList = new ByteBuffer[list.length * 2];
+            System.arraycopy(list, 0, newList, 0, list.length);
+            list = free[shift] = newList;
+        }
+        list[freeCount[shift]++] = b;
+    }
+
+    /**
+     * Returns a buffer obtained from {@link #allocate(int)} to the pool.
+     * The buffer, and any view of it, must not be used afterwards.
+     */
+    public static synchronized void release(ByteBuffer b) {
+        if (b == null || !b.isDirect())
+            return;
+        releases++;
+        int size = b.capacity();
+        int shift = getSizeClass(size);
+        if (shift < 0 || (1 << shift) != size) {
+            // Not pooled
+            usedBytes -= size;
+            reservedBytes -= size;
+            return;
+        }
+        usedBytes -= size;
+        if (shift > SLAB_SHIFT && freeBytes + size > maxFreeBytes) {
+            reservedBytes -= size; // Left to the garbage collector
+            return;
+        }
+        push(b, shift);
+        freeBytes += size;
+    }
+
+    /**
+     * Sets the maximum number of bytes kept in the free lists of the
+     * classes larger than the slab classes, and trims them.
+     */
+    public static synchronized void setMaxFreeBytes(long bytes) {
+        maxFreeBytes = bytes;
+        for (int shift = MAX_SHIFT; shift > SLAB_SHIFT && freeBytes > maxFreeBytes; shift--) {
+            while (freeCount[shift] != 0 && freeBytes > maxFreeBytes) {
+                free[shift][--freeCount[shift]] = null;
+                freeBytes -= 1 << shift;
+                reservedBytes -= 1 << shift;
+            }
+        }
+    }
+
+    public static synchronized long getMaxFreeBytes() {
+        return maxFreeBytes;
+    }
+
+    /**
+     * Returns the number of bytes of the buffers allocated and not released.
+     */
+    public static synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Returns the number of bytes of the buffers in the free lists.
+     */
+    public static synchronized long getFreeBytes() {
+        return freeBytes;
+    }
+
+    /**
+     * Returns the number of native bytes allocated by the pool, including
+     * the unused part of the current slab.
+     */
+    public static synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    /**
+     * Returns the maximum number of used bytes reached.
+     */
+    public static synchronized long getHighWaterBytes() {
+        return highWaterBytes;
+    }
+
+    /**
+     * Returns the number of free buffers of a size class.
+     */
+    public static synchronized int getFreeCount(int shift) {
+        return shift < 0 || shift > MAX_SHIFT ? 0 : freeCount[shift];
+    }
+
+    public static synchronized int getAllocationCount() {
+        return allocations;
+    }
+
+    public static synchronized int getReleaseCount() {
+        return releases;
+    }
+
+    /**
+     * Resets the high-water mark to the current number of used bytes, and
+     * the allocation and release counts.
+     */
+    public static synchronized void resetStatistics() {
+        highWaterBytes = usedBytes;
+        allocations = 0;
+        releases = 0;
+    }
+}
@@ -8,17 +8,28 @@ package agile2d.geom;
 
 import java.awt.geom.AffineTransform;
 import java.awt.geom.PathIterator;
+import java.nio.FloatBuffer;
 
 /**
  * Takes a PathIterator and generates a new path iterator which applies an AffineTransform
  * to the first path.
  *
+ * <p>
+ * Also provides the bulk transformation of arrays and buffers of
+ * coordinates, in one pass specialized for translations, scales and
+ * general transforms, whose loops are simple enough to be vectorized by
+ * the JIT.
+ * </p>
+ *
  * @author Jean-Daniel Fekete
  * @version $Revision: 1.2 $
  */
 public class TransformPathIterator implements PathIterator {
+    private static final int CHUNK = 1024;
+
     PathIterator iter;
     AffineTransform transform;
+    double m00, m10, m01, m11, m02, m12;
 
     /**
      * Constructor for TransformPathIterator.
@@ -28,35 +39,120 @@ public class TransformPathIterator implements PathIterator {
     public TransformPathIterator(PathIterator iter, AffineTransform transform) {
         this.iter = iter;
         this.transform = transform;
+        m00 = transform.getScaleX();
+        m10 = transform.getShearY();
+        m01 = transform.getShearX();
+        m11 = transform.getScaleY();
+        m02 = transform.getTranslateX();
+        m12 = transform.getTranslateY();
     }
 
-
+    /**
+     * Transforms an array of points, like
+     * {@link AffineTransform#transform(float[], int, float[], int, int)}.
+     * The source and destination may be the same array at the same offset.
+     *
+     * @param at the transform
+     * @param src the interleaved X and Y source coordinates
+     * @param srcOff the offset of the first point in src
+     * @param dst the destination array
+     * @param dstOff the offset of the first point in dst
+     * @param numPts the number of points
+     */
+    public static void transform(AffineTransform at, float[] src, int srcOff,
+                                 float[] dst, int dstOff, int numPts) {
+        if (src == dst && dstOff > srcOff && dstOff < srcOff + numPts * 2) {
+            // Overlapping forwards, let Java2D copy it first
+            at.transform(src, srcOff, dst, dstOff, numPts);
+            return;
+        }
+        double m00 = at.getScaleX(), m10 = at.getShearY();
+        double m01 = at.getShearX(), m11 = at.getScaleY();
+        double m02 = at.getTranslateX(), m12 = at.getTranslateY();
+        int n = numPts * 2;
+        if (m01 == 0 && m10 == 0) {
+            if (m00 == 1 && m11 == 1) {
+                for (int i = 0; i < n; i += 2) {
+                    dst[dstOff + i] = (float)(src[srcOff + i] + m02);
+                    dst[dstOff + i + 1] = (float)(src[srcOff + i + 1] + m12);
+                }
+            }
+            else {
+                for (int i = 0; i < n; i += 2) {
+                    dst[dstOff + i] = (float)(m00 * src[srcOff + i] + m02);
+                    dst[dstOff + i + 1] = (float)(m11 * src[srcOff + i + 1] + m12);
+                }
+            }
+        }
+        else {
+            for (int i = 0; i < n; i += 2) {
+                double x = src[srcOff + i], y = src[srcOff + i + 1];
+                dst[dstOff + i] = (float)(m00 * x + m01 * y + m02);
+                dst[dstOff + i + 1] = (float)(m10 * x + m11 * y + m12);
+            }
+        }
+    }
 
     /**
-     * @see java.awt.geom.PathIterator#currentSegment(double[])
+     * Transforms points read from a buffer at its position, and puts them
+     * in another at its position, advancing both positions. The buffers
+     * may be two views of the same storage. Buffers backed by arrays are
+     * transformed in place, direct buffers are copied in chunks.
+     *
+     * @param at the transform
+     * @param src the interleaved X and Y source coordinates
+     * @param dst the destination buffer
+     * @param numPts the number of points
      */
-    public int currentSegment(double[] coords) {
-        int type = iter.currentSegment(coords);
-        switch(type) {
+    public static void transform(AffineTransform at, FloatBuffer src, FloatBuffer dst, int numPts) {
+        int n = numPts * 2;
+        if (src.hasArray() && dst.hasArray()) {
+            transform(at, src.array(), src.arrayOffset() + src.position(),
+                      dst.array(), dst.arrayOffset() + dst.position(), numPts);
+            src.position(src.position() + n);
+            dst.position(dst.position() + n);
+            return;
+        }
+        float[] chunk = new float[Math.min(n, CHUNK)];
+        for (int done = 0; done < n; done += chunk.length) {
+            int len = Math.min(chunk.length, n - done);
+            src.get(chunk, 0, len);
+            transform(at, chunk, 0, chunk, 0, len / 2);
+            dst.put(chunk, 0, len);
+        }
+    }
+
+    // Transforms the points of a segment with the cached matrix
+    private int transformSegment(int type, float[] coords) {
+        int n;
+        switch (type) {
         case SEG_MOVETO:
         case SEG_LINETO:
-            transform.transform(coords, 0, coords, 0, 1);
+            n = 2;
             break;
         case SEG_QUADTO:
-            transform.transform(coords, 0, coords, 0, 2);
+            n = 4;
             break;
         case SEG_CUBICTO:
-            transform.transform(coords, 0, coords, 0, 3);
+            n = 6;
             break;
-        case SEG_CLOSE:
+        default:
+            return type;
+        }
+        for (int i = 0; i < n; i += 2) {
+            double x = coords[i], y = coords[i+1];
+            coords[i] = (float)(m00 * x + m01 * y + m02);
+            coords[i+1] = (float)(m10 * x + m11 * y + m12);
         }
         return type;
     }
 
+
+
     /**
-     * @see java.awt.geom.PathIterator#currentSegment(float[])
+     * @see java.awt.geom.PathIterator#currentSegment(double[])
      */
-    public int currentSegment(float[] coords) {
+    public int currentSegment(double[] coords) {
         int type = iter.currentSegment(coords);
         switch(type) {
         case SEG_MOVETO:
@@ -74,6 +170,13 @@ public class TransformPathIterator implements PathIterator {
         return type;
     }
 
+    /**
+     * @see java.awt.geom.PathIterator#currentSegment(float[])
+     */
+    public int currentSegment(float[] coords) {
+        return transformSegment(iter.currentSegment(coords), coords);
+    }
+
     /**
      * @see java.awt.geom.PathIterator#getWindingRule()
      */
@@ -91,9 +91,34 @@ public class VertexArray implements Shape {
     /** Constant for the polygon mode */
     public static final short MODE_POLYGON = 9;
 
+    /** Storage in a direct float buffer, read by OpenGL in place */
+    public static final int STORAGE_DIRECT = 0;
+    /** Storage in a float array on the heap, copied to OpenGL when drawn */
+    public static final int STORAGE_HEAP = 1;
+    /**
+     * Storage in a direct buffer of shorts, quantized with a scale and an
+     * offset per axis, and read in place as shorts by OpenGL
+     */
+    public static final int STORAGE_SHORT = 2;
+
+    private static final float[] NO_FLOATS = new float[0];
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocateDirect(0);
+
     private int mode;
+    private int storage = STORAGE_DIRECT;
+    private ByteBuffer byteBuffer;
     private java.nio.FloatBuffer dataBuffer;
+    private float[] floatData = NO_FLOATS;
+    private java.nio.ShortBuffer shortBuffer; // View of byteBuffer with STORAGE_SHORT
+    // Quantization of the short storage: x = offsetX + scaleX * s
+    private float scaleX = 1, scaleY = 1, offsetX, offsetY;
     private int top;
+    // Bounds of the vertices, extended as they are added and recomputed
+    // after the coordinates have been modified in place
+    private float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+    private float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+    private boolean boundsInvalid;
     private transient GeneralPath path;
     private static int nb_buffers_counter=0, nb_elements_in_buffer=0;
 
@@ -104,16 +129,20 @@ public class VertexArray implements Shape {
      *        needed.
      */
     public VertexArray(int reserve) {
-        dataBuffer = newByteBuffer(reserve*4).asFloatBuffer();
+        byteBuffer = newByteBuffer(reserve*4);
+        dataBuffer = byteBuffer.asFloatBuffer();
         mode = MODE_INVALID;
     }
 
+    /**
+     * Returns a direct buffer in native order of at least the specified
+     * number of bytes, from the {@link BufferPool}. It can be returned to
+     * the pool with {@link BufferPool#release(ByteBuffer)}.
+     */
     public static ByteBuffer newByteBuffer(int numElements) {
         nb_buffers_counter++;
         nb_elements_in_buffer+=numElements;
-        ByteBuffer bb = ByteBuffer.allocateDirect(numElements);
-        bb.order(ByteOrder.nativeOrder());
-        return bb;
+        return BufferPool.allocate(numElements);
     }
 
     /**
@@ -149,22 +178,178 @@ public class VertexArray implements Shape {
      */
     public java.nio.FloatBuffer getData() {
         java.nio.FloatBuffer ret = newByteBuffer(top*4).asFloatBuffer();
-        int pos = dataBuffer.position();
-        dataBuffer.rewind();
-        ret.put(dataBuffer);
-        dataBuffer.position(pos);
-        ret.position(pos);
-        System.out.println("Copy copy\n");
+        putCoords(ret);
+        ret.position(top);
         return ret;
     }
 
     /**
-     * Return the reference to the internal array of coordinates.
+     * Return the reference to the internal array of coordinates. With a
+     * storage other than STORAGE_DIRECT, returns a copy of the coordinates
+     * expanded to floats: modifying it does not change the array.
      *
      * @return the array of coordinates.
      */
     public java.nio.FloatBuffer getDataRef() {
-        return dataBuffer;
+        if (storage == STORAGE_DIRECT)
+            return dataBuffer;
+        // Not from the pool: the copy is left to the garbage collector
+        java.nio.FloatBuffer ret = ByteBuffer.allocateDirect(top*4)
+            .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        putCoords(ret);
+        ret.rewind();
+        return ret;
+    }
+
+    /**
+     * Puts the coordinates, expanded to floats, in a buffer at its current
+     * position.
+     */
+    public void putCoords(java.nio.FloatBuffer buffer) {
+        switch (storage) {
+        case STORAGE_HEAP:
+            buffer.put(floatData, 0, top);
+            break;
+        case STORAGE_SHORT:
+            for (int i = 0; i < top; i += 2) {
+                buffer.put(offsetX + scaleX * shortBuffer.get(i));
+                buffer.put(offsetY + scaleY * shortBuffer.get(i+1));
+            }
+            break;
+        default:
+            java.nio.FloatBuffer d = dataBuffer.duplicate();
+            d.position(0);
+            d.limit(top);
+            buffer.put(d);
+        }
+    }
+
+    /**
+     * Puts the quantized coordinates of an array with the STORAGE_SHORT
+     * storage in a buffer at its current position.
+     */
+    public void putQuantized(java.nio.ShortBuffer buffer) {
+        if (storage != STORAGE_SHORT)
+            throw new IllegalStateException("Storage is not STORAGE_SHORT");
+        java.nio.ShortBuffer d = shortBuffer.duplicate();
+        d.position(0);
+        d.limit(top);
+        buffer.put(d);
+    }
+
+    /**
+     * Returns the reference to the direct buffer of quantized coordinates
+     * of an array with the STORAGE_SHORT storage, rewound, to be read in
+     * place by OpenGL with the quantization of {@link #getQuantization}.
+     *
+     * @return the buffer of quantized coordinates.
+     */
+    public java.nio.ShortBuffer getQuantizedRef() {
+        if (storage != STORAGE_SHORT)
+            throw new IllegalStateException("Storage is not STORAGE_SHORT");
+        shortBuffer.rewind();
+        return shortBuffer;
+    }
+
+    /**
+     * Returns the quantization of the STORAGE_SHORT storage, mapping the
+     * stored shorts to coordinates: x = offsetX + scaleX * sx.
+     *
+     * @param params an array receiving scaleX, scaleY, offsetX and offsetY
+     */
+    public void getQuantization(float[] params) {
+        params[0] = scaleX;
+        params[1] = scaleY;
+        params[2] = offsetX;
+        params[3] = offsetY;
+    }
+
+    /**
+     * Returns the storage: STORAGE_DIRECT, STORAGE_HEAP or STORAGE_SHORT.
+     */
+    public int getStorage() {
+        return storage;
+    }
+
+    /**
+     * Converts the storage of the coordinates.
+     *
+     * <p>
+     * STORAGE_DIRECT is read by OpenGL in place. STORAGE_HEAP keeps the
+     * coordinates in a compact float array for arrays mostly used by Java
+     * code, copied to a direct buffer when drawn. STORAGE_SHORT quantizes
+     * the coordinates to 16 bits over their bounds in a direct buffer read
+     * in place by OpenGL, taking half the memory and bandwidth of floats,
+     * for cached geometry such as glyphs and icons; the error is
+     * the size of the bounds / 65534. Adding vertices to an array with
+     * STORAGE_SHORT converts it back to STORAGE_HEAP.
+     * </p>
+     *
+     * @param newStorage STORAGE_DIRECT, STORAGE_HEAP or STORAGE_SHORT
+     */
+    public void setStorage(int newStorage) {
+        if (newStorage == storage)
+            return;
+        float[] coords = new float[top];
+        switch (storage) {
+        case STORAGE_HEAP:
+            System.arraycopy(floatData, 0, coords, 0, top);
+            break;
+        case STORAGE_SHORT:
+            for (int i = 0; i < top; i += 2) {
+                coords[i] = offsetX + scaleX * shortBuffer.get(i);
+                coords[i+1] = offsetY + scaleY * shortBuffer.get(i+1);
+            }
+            break;
+        default:
+            dataBuffer.position(0);
+            dataBuffer.get(coords);
+        }
+        if (byteBuffer != EMPTY)
+            BufferPool.release(byteBuffer);
+        byteBuffer = EMPTY;
+        dataBuffer = EMPTY.asFloatBuffer();
+        floatData = NO_FLOATS;
+        shortBuffer = null;
+        scaleX = scaleY = 1;
+        offsetX = offsetY = 0;
+        storage = newStorage;
+
+        switch (newStorage) {
+        case STORAGE_HEAP:
+            floatData = coords;
+            break;
+        case STORAGE_SHORT:
+            quantize(coords);
+            invalidate();
+            break;
+        default:
+            storage = STORAGE_DIRECT;
+            byteBuffer = newByteBuffer(Math.max(top, 2)*4);
+            dataBuffer = byteBuffer.asFloatBuffer();
+            dataBuffer.put(coords);
+        }
+    }
+
+    private void quantize(float[] coords) {
+        float xmin = 0, xmax = 0, ymin = 0, ymax = 0;
+        for (int i = 0; i < top; i += 2) {
+            if (i == 0 || coords[i] < xmin) xmin = coords[i];
+            if (i == 0 || coords[i] > xmax) xmax = coords[i];
+            if (i == 0 || coords[i+1] < ymin) ymin = coords[i+1];
+            if (i == 0 || coords[i+1] > ymax) ymax = coords[i+1];
+        }
+        offsetX = (xmin + xmax) / 2;
+        offsetY = (ymin + ymax) / 2;
+        scaleX = xmax > xmin ? (xmax - xmin) / 65534 : 1;
+        scaleY = ymax > ymin ? (ymax - ymin) / 65534 : 1;
+        byteBuffer = newByteBuffer(Math.max(top, 2)*2);
+        shortBuffer = byteBuffer.asShortBuffer();
+        for (int i = 0; i < top; i += 2) {
+            shortBuffer.put((short)Math.max(-32767, Math.min(32767, Math.round((coords[i] - offsetX) / scaleX))));
+            shortBuffer.put((short)Math.max(-32767, Math.min(32767, Math.round((coords[i+1] - offsetY) / scaleY))));
+        }
+        shortBuffer.rewind();
     }
 
     /**
@@ -172,10 +357,80 @@ public class VertexArray implements Shape {
      */
     public void clear() {
         top = 0;
-        dataBuffer.rewind();
+        path = null;
+        resetBounds();
+        if (storage == STORAGE_DIRECT)
+            dataBuffer.rewind();
+        else if (storage == STORAGE_SHORT)
+            setStorage(STORAGE_HEAP);
         mode = MODE_INVALID;
     }
 
+    /**
+     * Returns the storage of the array to the {@link BufferPool} and
+     * empties it. The array can still be used: it allocates a new buffer
+     * when vertices are added. The buffer returned by {@link #getDataRef()}
+     * must not be used anymore.
+     */
+    public void release() {
+        if (byteBuffer != EMPTY) {
+            BufferPool.release(byteBuffer);
+            byteBuffer = EMPTY;
+            dataBuffer = EMPTY.asFloatBuffer();
+        }
+        floatData = NO_FLOATS;
+        shortBuffer = null;
+        if (storage == STORAGE_SHORT)
+            storage = STORAGE_HEAP;
+        top = 0;
+        path = null;
+        resetBounds();
+        mode = MODE_INVALID;
+    }
+
+    /**
+     * Reallocates the storage of the array in the smallest buffer holding
+     * its vertices, returning the previous one to the {@link BufferPool}.
+     * Arrays kept for a long time, such as the tesselations of glyphs,
+     * should be trimmed once built.
+     */
+    public void trimToSize() {
+        if (storage == STORAGE_HEAP) {
+            if (floatData.length != top) {
+                float[] newData = new float[top];
+                System.arraycopy(floatData, 0, newData, 0, top);
+                floatData = newData;
+            }
+            return;
+        }
+        if (storage == STORAGE_SHORT)
+            return; // Always trimmed
+        if (BufferPool.getSizeClass(top*4) == BufferPool.getSizeClass(dataBuffer.capacity()*4))
+            return;
+        if (top == 0) {
+            int m = mode;
+            release();
+            mode = m;
+            return;
+        }
+        realloc(top);
+    }
+
+    // Moves the coordinates to a new buffer of at least the specified
+    // number of floats, leaving the position at top
+    private void realloc(int size) {
+        ByteBuffer newByteBuffer = newByteBuffer(size*4);
+        java.nio.FloatBuffer newBuffer = newByteBuffer.asFloatBuffer();
+        dataBuffer.position(0);
+        dataBuffer.limit(top);
+        newBuffer.put(dataBuffer);
+        if (byteBuffer != EMPTY)
+            BufferPool.release(byteBuffer);
+        byteBuffer = newByteBuffer;
+        dataBuffer = newBuffer;
+        dataBuffer.position(top);
+    }
+
     /**
      * Returns the mode.
      *
@@ -200,21 +455,25 @@ public class VertexArray implements Shape {
      * @param size the number of vertex coordinates to reserve.
      */
     public void reserve(int size) {
+        if (storage != STORAGE_DIRECT) {
+            if (storage == STORAGE_SHORT)
+                setStorage(STORAGE_HEAP);
+            if (floatData.length < size) {
+                float[] newData = new float[Math.max(size, floatData.length * 2)];
+                System.arraycopy(floatData, 0, newData, 0, top);
+                floatData = newData;
+            }
+            return;
+        }
         if (dataBuffer.capacity() < size) {
             //
             int newSize = dataBuffer.capacity() * 2;
             if (newSize < size)
                 newSize = size;
 
-            // create a new buffer with the requested size, but copy only elements up to the current top
-            java.nio.FloatBuffer newBuffer = newByteBuffer(newSize*4).asFloatBuffer();
-            dataBuffer.position(0);
-            dataBuffer.limit(top);
-            newBuffer.put(dataBuffer);
-
-            // the old buffer is disposed and the new one starts with position at top and limit as the size
-            dataBuffer = newBuffer;
-            dataBuffer.position(top);
+            // create a new buffer with the requested size, but copy only elements up to the current top;
+            // the old buffer returns to the pool and the new one starts with position at top
+            realloc(newSize);
         }
 
     }
@@ -226,11 +485,7 @@ public class VertexArray implements Shape {
      */
     public void addVertex(double[] coords) {
         assert(mode != MODE_INVALID);
-        reserve(top + 2);
-        dataBuffer.put((float) coords[0]);
-        dataBuffer.put((float) coords[1]);
-        path = null;
-        top += 2;
+        addVertex((float) coords[0], (float) coords[1]);
     }
 
     /**
@@ -240,11 +495,7 @@ public class VertexArray implements Shape {
      * @param y the Y coordinate
      */
     public void addVertex(double x, double y) {
-        reserve(top + 2);
-        dataBuffer.put((float) x);
-        dataBuffer.put((float) y);
-        path = null;
-        top += 2;
+        addVertex((float) x, (float) y);
     }
 
     /**
@@ -253,11 +504,7 @@ public class VertexArray implements Shape {
      * @param coords an array of at least two float values.
      */
     public void addVertex(float[] coords) {
-        reserve(top + 2);
-        dataBuffer.put((float) coords[0]);
-        dataBuffer.put((float) coords[1]);
-        path = null;
-        top += 2;
+        addVertex(coords[0], coords[1]);
     }
 
     /**
@@ -268,12 +515,128 @@ public class VertexArray implements Shape {
      */
     public void addVertex(float x, float y) {
         reserve(top + 2);
-        dataBuffer.put((float) x);
-        dataBuffer.put((float) y);
+        if (storage == STORAGE_DIRECT) {
+            dataBuffer.put(x);
+            dataBuffer.put(y);
+        }
+        else {
+            floatData[top] = x;
+            floatData[top+1] = y;
+        }
+        if (x < minX) minX = x;
+        if (x > maxX) maxX = x;
+        if (y < minY) minY = y;
+        if (y > maxY) maxY = y;
         path = null;
         top += 2;
     }
 
+    /**
+     * Add vertices with a single capacity check and a bulk copy.
+     *
+     * @param xy the interleaved X and Y coordinates
+     * @param off the index of the first X coordinate in xy
+     * @param count the number of vertices
+     */
+    public void addVertices(float[] xy, int off, int count) {
+        int n = count * 2;
+        if (off < 0 || count < 0 || off + n > xy.length)
+            throw new IndexOutOfBoundsException();
+        reserve(top + n);
+        if (storage == STORAGE_DIRECT)
+            dataBuffer.put(xy, off, n);
+        else
+            System.arraycopy(xy, off, floatData, top, n);
+        for (int i = off; i < off + n; i += 2)
+            include(xy[i], xy[i+1]);
+        path = null;
+        top += n;
+    }
+
+    /**
+     * Add the vertices of a buffer of interleaved X and Y coordinates, from
+     * its position to its limit, with a single capacity check and a bulk
+     * copy. The position of the buffer is advanced past the vertices read.
+     *
+     * @param xy the coordinates
+     */
+    public void addVertices(java.nio.FloatBuffer xy) {
+        int n = xy.remaining() & ~1;
+        reserve(top + n);
+        if (storage == STORAGE_DIRECT) {
+            int limit = xy.limit();
+            xy.limit(xy.position() + n);
+            dataBuffer.put(xy);
+            xy.limit(limit);
+        }
+        else {
+            xy.get(floatData, top, n);
+        }
+        int from = top;
+        top += n;
+        for (int i = from; i < top; i += 2)
+            include(getCoord(i), getCoord(i+1));
+        path = null;
+    }
+
+    /**
+     * Replace the vertices, keeping the mode and the storage allocated
+     * when it is large enough, for arrays updated at every frame.
+     *
+     * @param xy the interleaved X and Y coordinates
+     * @param off the index of the first X coordinate in xy
+     * @param count the number of vertices
+     */
+    public void setVertices(float[] xy, int off, int count) {
+        truncate();
+        addVertices(xy, off, count);
+    }
+
+    /**
+     * Replace the vertices by the content of a buffer of interleaved X and
+     * Y coordinates, keeping the mode and the storage allocated when it is
+     * large enough.
+     *
+     * @param xy the coordinates
+     */
+    public void setVertices(java.nio.FloatBuffer xy) {
+        truncate();
+        addVertices(xy);
+    }
+
+    private void resetBounds() {
+        minX = minY = Float.POSITIVE_INFINITY;
+        maxX = maxY = Float.NEGATIVE_INFINITY;
+        boundsInvalid = false;
+    }
+
+    private void include(float x, float y) {
+        if (x < minX) minX = x;
+        if (x > maxX) maxX = x;
+        if (y < minY) minY = y;
+        if (y > maxY) maxY = y;
+    }
+
+    /**
+     * Notifies the array that its coordinates have been modified in place,
+     * through the buffer returned by {@link #getDataRef()}: its bounds are
+     * recomputed when next requested.
+     */
+    public void invalidate() {
+        boundsInvalid = true;
+        path = null;
+    }
+
+    // Removes the vertices, turning quantized storage into floats
+    private void truncate() {
+        top = 0;
+        resetBounds();
+        if (storage == STORAGE_DIRECT)
+            dataBuffer.clear();
+        else if (storage == STORAGE_SHORT)
+            setStorage(STORAGE_HEAP);
+    }
+
     /**
      * Return the coordinates of a specified vertex.
      *
@@ -286,8 +649,82 @@ public class VertexArray implements Shape {
         int i = index * 2;
         if (i < 0 || (i + 1) >= top)
             throw new ArrayIndexOutOfBoundsException(index);
-        coords[0] = dataBuffer.get(i);
-        coords[1] = dataBuffer.get(i+1);
+        coords[0] = getCoord(i);
+        coords[1] = getCoord(i+1);
+    }
+
+    /**
+     * Copies the coordinates of a range of vertices, optionally
+     * transformed, with bulk operations.
+     *
+     * @param first the index of the first vertex
+     * @param count the number of vertices
+     * @param dst the array receiving the interleaved X and Y coordinates
+     * @param dstOff the offset of the first coordinate in dst
+     * @param at the transform to apply, or null
+     */
+    public void getCoords(int first, int count, float[] dst, int dstOff, AffineTransform at) {
+        int i = first * 2, n = count * 2;
+        if (first < 0 || count < 0 || i + n > top)
+            throw new ArrayIndexOutOfBoundsException(first + count);
+        switch (storage) {
+        case STORAGE_HEAP:
+            if (at != null) {
+                TransformPathIterator.transform(at, floatData, i, dst, dstOff, count);
+                return;
+            }
+            System.arraycopy(floatData, i, dst, dstOff, n);
+            return;
+        case STORAGE_SHORT:
+            for (int j = 0; j < n; j += 2) {
+                dst[dstOff + j] = offsetX + scaleX * shortBuffer.get(i + j);
+                dst[dstOff + j + 1] = offsetY + scaleY * shortBuffer.get(i + j + 1);
+            }
+            break;
+        default:
+            java.nio.FloatBuffer d = dataBuffer.duplicate();
+            d.clear();
+            d.position(i);
+            d.get(dst, dstOff, n);
+        }
+        if (at != null)
+            TransformPathIterator.transform(at, dst, dstOff, dst, dstOff, count);
+    }
+
+    /**
+     * Transforms the vertices in place. The coordinates of an array with
+     * the STORAGE_SHORT storage are converted to STORAGE_HEAP first.
+     *
+     * @param at the transform
+     */
+    public void transform(AffineTransform at) {
+        if (at.isIdentity() || top == 0)
+            return;
+        if (storage == STORAGE_SHORT)
+            setStorage(STORAGE_HEAP);
+        if (storage == STORAGE_HEAP) {
+            TransformPathIterator.transform(at, floatData, 0, floatData, 0, top / 2);
+        }
+        else {
+            java.nio.FloatBuffer src = dataBuffer.duplicate();
+            java.nio.FloatBuffer dst = dataBuffer.duplicate();
+            src.clear();
+            dst.clear();
+            TransformPathIterator.transform(at, src, dst, top / 2);
+        }
+        invalidate();
+    }
+
+    // Returns the coordinate at an index, whatever the storage
+    private float getCoord(int i) {
+        switch (storage) {
+        case STORAGE_HEAP:
+            return floatData[i];
+        case STORAGE_SHORT:
+            return (i & 1) == 0 ? offsetX + scaleX * shortBuffer.get(i) : offsetY + scaleY * shortBuffer.get(i);
+        default:
+            return dataBuffer.get(i);
+        }
     }
 
     /**
@@ -296,8 +733,7 @@ public class VertexArray implements Shape {
      * @param coords the two vertices (four coordinates) of the line.
      */
     public void addLine(float[] coords) {
-        addVertex(coords[0], coords[1]);
-        addVertex(coords[2], coords[3]);
+        addVertices(coords, 0, 2);
     }
 
     /**
@@ -319,9 +755,7 @@ public class VertexArray implements Shape {
      * @param coords the three vertices (six coordinates) of the triangle.
      */
     public void addTriangle(float[] coords) {
-        addVertex(coords[0], coords[1]);
-        addVertex(coords[2], coords[3]);
-        addVertex(coords[4], coords[5]);
+        addVertices(coords, 0, 3);
     }
 
     /**
@@ -352,10 +786,7 @@ public class VertexArray implements Shape {
      * @param coords the four vertices (eight coordinates) of the quad.
      */
     public void addQuad(float[] coords) {
-        addVertex(coords[0], coords[1]);
-        addVertex(coords[2], coords[3]);
-        addVertex(coords[4], coords[5]);
-        addVertex(coords[5], coords[6]);
+        addVertices(coords, 0, 4);
     }
 
     /**
@@ -402,8 +833,12 @@ public class VertexArray implements Shape {
      * @see java.awt.Shape#contains(double, double, double, double)
      */
     public boolean contains(double x, double y, double w, double h) {
-        if (mode < MODE_TRIANGLES)
+        if (mode < MODE_TRIANGLES || w <= 0 || h <= 0 || !boundsContain(x, y, w, h))
             return false;
+        // A rectangle within one triangle is within the array, otherwise
+        // it may still be covered by several of them
+        if (queryTriangles(CONTAINS_RECT, x, y, w, h))
+            return true;
         return toGeneralPath().contains(x, y, w, h);
     }
 
@@ -411,9 +846,9 @@ public class VertexArray implements Shape {
      * @see java.awt.Shape#contains(double, double)
      */
     public boolean contains(double x, double y) {
-        if (mode < MODE_TRIANGLES)
+        if (mode < MODE_TRIANGLES || !boundsContain(x, y, 0, 0))
             return false;
-        return toGeneralPath().contains(x, y);
+        return queryTriangles(CONTAINS_POINT, x, y, 0, 0);
     }
 
     /**
@@ -427,9 +862,7 @@ public class VertexArray implements Shape {
      * @see java.awt.Shape#contains(Rectangle2D)
      */
     public boolean contains(Rectangle2D r) {
-        if (mode < MODE_TRIANGLES)
-            return false;
-        return toGeneralPath().contains(r);
+        return contains(r.getX(), r.getY(), r.getWidth(), r.getHeight());
     }
 
     /**
@@ -445,30 +878,16 @@ public class VertexArray implements Shape {
     public Rectangle2D getBounds2D() {
         if (top == 0)
             return null;
+        validateBounds();
+        return new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+    }
 
-        float xmin = 0;
-        float ymin = 0;
-        float xmax = 0;
-        float ymax = 0;
-
-        // TODO improve by relative addressing
-        xmin = dataBuffer.get(0);
-        xmax = xmin;
-        ymin = dataBuffer.get(1);
-        ymax = ymin;
-        for (int i = 2; i < top; i += 2) {
-            float datai = dataBuffer.get(i);
-            if (datai < xmin)
-                xmin = datai;
-            else if (datai > xmax)
-                xmax = datai;
-            datai = dataBuffer.get(i+1);
-            if (datai < ymin)
-                ymin = datai;
-            else if (datai > ymax)
-                ymax = datai;
-        }
-        return new Rectangle2D.Double(xmin, ymin, xmax - xmin, ymax - ymin);
+    private void validateBounds() {
+        if (boundsInvalid) {
+            resetBounds();
+            for (int i = 0; i < top; i += 2)
+                include(getCoord(i), getCoord(i+1));
+        }
     }
 
     GeneralPath toGeneralPath() {
@@ -525,9 +944,8 @@ public class VertexArray implements Shape {
                 return null;
         }
 
-        if (at != null) {
-            return new TransformPathIterator(iter, at);
-        }
+        if (at != null && !at.isIdentity())
+            iter.setTransform(at);
         return iter;
     }
 
@@ -535,21 +953,131 @@ public class VertexArray implements Shape {
      * @see java.awt.Shape#intersects(double, double, double, double)
      */
     public boolean intersects(double x, double y, double w, double h) {
-        return toGeneralPath().intersects(x, y, w, h);
+        if (w <= 0 || h <= 0 || top == 0)
+            return false;
+        validateBounds();
+        if (maxX < x || minX > x + w || maxY < y || minY > y + h)
+            return false;
+        if (mode < MODE_TRIANGLES)
+            return toGeneralPath().intersects(x, y, w, h);
+        return queryTriangles(INTERSECTS, x, y, w, h);
     }
 
     /**
      * @see java.awt.Shape#intersects(Rectangle2D)
      */
     public boolean intersects(Rectangle2D r) {
-        return toGeneralPath().intersects(r);
+        return intersects(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+    }
+
+    private static final int CONTAINS_POINT = 0;
+    private static final int CONTAINS_RECT = 1;
+    private static final int INTERSECTS = 2;
+
+    private boolean boundsContain(double x, double y, double w, double h) {
+        validateBounds();
+        return x >= minX && y >= minY && x + w <= maxX && y + h <= maxY;
+    }
+
+    // Tests the triangles covered by the array, in the order of the mode,
+    // until one satisfies the query
+    private boolean queryTriangles(int query, double x, double y, double w, double h) {
+        int n = top / 2;
+        switch (mode) {
+        case MODE_TRIANGLES:
+            for (int i = 0; i + 2 < n; i += 3)
+                if (queryTriangle(query, i, i + 1, i + 2, x, y, w, h))
+                    return true;
+            break;
+        case MODE_TRIANGLE_STRIP:
+            for (int i = 0; i + 2 < n; i++)
+                if (queryTriangle(query, i, i + 1, i + 2, x, y, w, h))
+                    return true;
+            break;
+        case MODE_TRIANGLE_FAN:
+        case MODE_POLYGON:
+            for (int i = 1; i + 1 < n; i++)
+                if (queryTriangle(query, 0, i, i + 1, x, y, w, h))
+                    return true;
+            break;
+        case MODE_QUADS:
+            for (int i = 0; i + 3 < n; i += 4)
+                if (queryTriangle(query, i, i + 1, i + 2, x, y, w, h)
+                    || queryTriangle(query, i, i + 2, i + 3, x, y, w, h))
+                    return true;
+            break;
+        case MODE_QUAD_STRIP:
+            for (int i = 0; i + 3 < n; i += 2)
+                if (queryTriangle(query, i, i + 1, i + 2, x, y, w, h)
+                    || queryTriangle(query, i + 1, i + 3, i + 2, x, y, w, h))
+                    return true;
+            break;
+        default:
+            break;
+        }
+        return false;
+    }
+
+    private boolean queryTriangle(int query, int a, int b, int c,
+                                  double x, double y, double w, double h) {
+        double ax = getCoord(2*a), ay = getCoord(2*a+1);
+        double bx = getCoord(2*b), by = getCoord(2*b+1);
+        double cx = getCoord(2*c), cy = getCoord(2*c+1);
+        if (Math.max(ax, Math.max(bx, cx)) < x || Math.min(ax, Math.min(bx, cx)) > x + w
+            || Math.max(ay, Math.max(by, cy)) < y || Math.min(ay, Math.min(by, cy)) > y + h)
+            return false;
+        // Orientation of the triangle, to tell the inner side of its edges
+        double area = (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+        switch (query) {
+        case CONTAINS_POINT:
+            return inside(area, ax, ay, bx, by, cx, cy, x, y);
+        case CONTAINS_RECT:
+            return inside(area, ax, ay, bx, by, cx, cy, x, y)
+                && inside(area, ax, ay, bx, by, cx, cy, x + w, y)
+                && inside(area, ax, ay, bx, by, cx, cy, x + w, y + h)
+                && inside(area, ax, ay, bx, by, cx, cy, x, y + h);
+        default:
+            // Overlapping bounds, unless an edge separates the rectangle
+            return !separates(area, ax, ay, bx, by, x, y, w, h)
+                && !separates(area, bx, by, cx, cy, x, y, w, h)
+                && !separates(area, cx, cy, ax, ay, x, y, w, h);
+        }
+    }
+
+    // True if (px, py) is inside or on the boundary of the triangle
+    private static boolean inside(double area, double ax, double ay, double bx, double by,
+                                  double cx, double cy, double px, double py) {
+        double d1 = (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+        double d2 = (cx - bx) * (py - by) - (cy - by) * (px - bx);
+        double d3 = (ax - cx) * (py - cy) - (ay - cy) * (px - cx);
+        if (area < 0)
+            return d1 <= 0 && d2 <= 0 && d3 <= 0;
+        if (area > 0)
+            return d1 >= 0 && d2 >= 0 && d3 >= 0;
+        // Degenerate triangle, already within its bounds
+        return d1 == 0 && d2 == 0 && d3 == 0;
+    }
+
+    // True if the rectangle is entirely outside the edge from a to b
+    private static boolean separates(double area, double ax, double ay, double bx, double by,
+                                     double x, double y, double w, double h) {
+        if (area == 0)
+            return false;
+        double ex = bx - ax, ey = by - ay;
+        double sign = area > 0 ? 1 : -1;
+        return sign * (ex * (y - ay) - ey * (x - ax)) < 0
+            && sign * (ex * (y - ay) - ey * (x + w - ax)) < 0
+            && sign * (ex * (y + h - ay) - ey * (x + w - ax)) < 0
+            && sign * (ex * (y + h - ay) - ey * (x - ax)) < 0;
     }
 
     protected void finalize() throws Throwable {
         try {
             //System.out.println("VertexArray. Calling finalize method.");
-            this.dataBuffer.limit(0);
-            this.dataBuffer.clear();
+            if (this.dataBuffer != null) {
+                this.dataBuffer.limit(0);
+                this.dataBuffer.clear();
+            }
         } finally {
             super.finalize();
         }
@@ -558,11 +1086,34 @@ public class VertexArray implements Shape {
     abstract class VertexArrayIterator implements PathIterator {
         int index;
         float[] c;
+        // Transform applied to the vertices, without a TransformPathIterator
+        AffineTransform at;
+        double m00, m10, m01, m11, m02, m12;
 
         VertexArrayIterator() {
             index = 0;
         }
 
+        void setTransform(AffineTransform at) {
+            this.at = at;
+            m00 = at.getScaleX();
+            m10 = at.getShearY();
+            m01 = at.getShearX();
+            m11 = at.getScaleY();
+            m02 = at.getTranslateX();
+            m12 = at.getTranslateY();
+        }
+
+        // Returns the coordinates of a vertex, transformed
+        final void vertex(int i, float[] coords) {
+            getVertex(i, coords);
+            if (at != null) {
+                double x = coords[0], y = coords[1];
+                coords[0] = (float)(m00 * x + m01 * y + m02);
+                coords[1] = (float)(m10 * x + m11 * y + m12);
+            }
+        }
+
         /**
          * @see java.awt.geom.PathIterator#currentSegment(float[])
          */
@@ -600,14 +1151,14 @@ public class VertexArray implements Shape {
 
     class PointsIterator extends VertexArrayIterator {
         public int currentSegment(float[] coords) {
-            getVertex(index, coords);
+            vertex(index, coords);
             return SEG_MOVETO;
         }
     }
 
     class LinesIterator extends VertexArrayIterator {
         public int currentSegment(float[] coords) {
-            getVertex(index, coords);
+            vertex(index, coords);
             if ((index & 1) == 0) { // even vertex, SEG_MOVETO
                 return SEG_MOVETO;
             }
@@ -619,7 +1170,7 @@ public class VertexArray implements Shape {
 
     class LineStripIterator extends VertexArrayIterator {
         public int currentSegment(float[] coords) {
-            getVertex(index, coords);
+            vertex(index, coords);
             if (index == 0)
                 return SEG_MOVETO;
             else
@@ -666,11 +1217,11 @@ public class VertexArray implements Shape {
 
             switch (rem) {
                 case 0 :
-                    getVertex(index, coords);
+                    vertex(index, coords);
                     return SEG_MOVETO;
                 case 1 :
                 case 2 :
-                    getVertex(index, coords);
+                    vertex(index, coords);
                     return SEG_LINETO;
                 default :
                     return SEG_CLOSE;
@@ -711,11 +1262,11 @@ public class VertexArray implements Shape {
 
             switch (rem) {
                 case 0 :
-                    getVertex(0, coords);
+                    vertex(0, coords);
                     return SEG_MOVETO;
                 case 1 :
                 case 2 :
-                    getVertex(index, coords);
+                    vertex(index, coords);
                     return SEG_LINETO;
                 default :
                     return SEG_CLOSE;
@@ -746,12 +1297,12 @@ public class VertexArray implements Shape {
 
             switch (rem) {
                 case 0 :
-                    getVertex(index, coords);
+                    vertex(index, coords);
                     return SEG_MOVETO;
                 case 1 :
                 case 2 :
                 case 3 :
-                    getVertex(index, coords);
+                    vertex(index, coords);
                     return SEG_LINETO;
                 default :
                     return SEG_CLOSE;
@@ -778,14 +1329,13 @@ public class VertexArray implements Shape {
 
     class PolygonIterator extends VertexArrayIterator {
         public boolean isDone() {
-            return index > top;
+            return index > getVertexCount();
         }
 
         public int currentSegment(float[] coords) {
-            if (index == top)
+            if (index == getVertexCount())
                 return SEG_CLOSE;
-            coords[0] = dataBuffer.get(index);
-            coords[1] = dataBuffer.get(index + 1);
+            vertex(index, coords);
             if (index == 0)
                 return SEG_MOVETO;
             return SEG_LINETO;
@@ -821,12 +1371,12 @@ public class VertexArray implements Shape {
                     {
                     TriangleShape shape = new TriangleShape();
                     for (int i = 0; i < (top - 5); i += 6) {
-                        shape.setX0(dataBuffer.get(i + 0));
-                        shape.setY0( dataBuffer.get(i + 1));
-                        shape.setX1(dataBuffer.get(i + 2));
-                        shape.setY1( dataBuffer.get(i + 3));
-                        shape.setX2(dataBuffer.get(i + 4));
-                        shape.setY2( dataBuffer.get(i + 5));
+                        shape.setX0(getCoord(i + 0));
+                        shape.setY0( getCoord(i + 1));
+                        shape.setX1(getCoord(i + 2));
+                        shape.setY1( getCoord(i + 3));
+                        shape.setX2(getCoord(i + 4));
+                        shape.setY2( getCoord(i + 5));
                         shape.drawSmooth(g2d, attributes, i / 2);
                     }
                 }
@@ -835,12 +1385,12 @@ public class VertexArray implements Shape {
                     {
                     TriangleShape shape = new TriangleShape();
                     for (int i = 0; i < (top - 3); i += 4) {
-                        shape.setX0(dataBuffer.get(i + 0));
-                        shape.setY0( dataBuffer.get(i + 1));
-                        shape.setX1(dataBuffer.get(i + 2));
-                        shape.setY1( dataBuffer.get(i + 3));
-                        shape.setX2(dataBuffer.get(i + 4));
-                        shape.setY2( dataBuffer.get(i + 5));
+                        shape.setX0(getCoord(i + 0));
+                        shape.setY0( getCoord(i + 1));
+                        shape.setX1(getCoord(i + 2));
+                        shape.setY1( getCoord(i + 3));
+                        shape.setX2(getCoord(i + 4));
+                        shape.setY2( getCoord(i + 5));
                         shape.drawSmooth(g2d, attributes, i / 2);
                     }
                 }
@@ -848,13 +1398,13 @@ public class VertexArray implements Shape {
                 case MODE_TRIANGLE_FAN :
                     {
                     TriangleShape shape = new TriangleShape();
-                    shape.setX0(dataBuffer.get(0));
-                    shape.setY0( dataBuffer.get(1));
+                    shape.setX0(getCoord(0));
+                    shape.setY0( getCoord(1));
                     for (int i = 2; i < (top - 3); i += 2) {
-                        shape.setX1(dataBuffer.get(i + 2));
-                        shape.setY1( dataBuffer.get(i + 3));
-                        shape.setX2(dataBuffer.get(i + 4));
-                        shape.setY2( dataBuffer.get(i + 5));
+                        shape.setX1(getCoord(i + 2));
+                        shape.setY1( getCoord(i + 3));
+                        shape.setX2(getCoord(i + 4));
+                        shape.setY2( getCoord(i + 5));
                         shape.drawSmooth(g2d, attributes, i / 2);
                     }
                 }
@@ -863,14 +1413,14 @@ public class VertexArray implements Shape {
                     {
                     QuadShape shape = new QuadShape();
                     for (int i = 0; i < (top - 7); i += 8) {
-                        shape.setX0(dataBuffer.get(i + 0));
-                        shape.setY0(dataBuffer.get(i + 1));
-                        shape.setX1(dataBuffer.get(i + 2));
-                        shape.setY1(dataBuffer.get(i + 3));
-                        shape.setX2(dataBuffer.get(i + 4));
-                        shape.setY2(dataBuffer.get(i + 5));
-                        shape.setX3(dataBuffer.get(i + 6));
-                        shape.setY3(dataBuffer.get(i + 7));
+                        shape.setX0(getCoord(i + 0));
+                        shape.setY0(getCoord(i + 1));
+                        shape.setX1(getCoord(i + 2));
+                        shape.setY1(getCoord(i + 3));
+                        shape.setX2(getCoord(i + 4));
+                        shape.setY2(getCoord(i + 5));
+                        shape.setX3(getCoord(i + 6));
+                        shape.setY3(getCoord(i + 7));
                         shape.drawSmooth(g2d, attributes, i / 2);
                     }
                 }
@@ -879,14 +1429,14 @@ public class VertexArray implements Shape {
                     {
                     QuadShape shape = new QuadShape();
                     for (int i = 0; i < (top - 5); i += 6) {
-                        shape.setX0(dataBuffer.get(i + 0));
-                        shape.setY0(dataBuffer.get(i + 1));
-                        shape.setX1(dataBuffer.get(i + 2));
-                        shape.setY1(dataBuffer.get(i + 3));
-                        shape.setX2(dataBuffer.get(i + 4));
-                        shape.setY2(dataBuffer.get(i + 5));
-                        shape.setX3(dataBuffer.get(i + 6));
-                        shape.setY3(dataBuffer.get(i + 7));
+                        shape.setX0(getCoord(i + 0));
+                        shape.setY0(getCoord(i + 1));
+                        shape.setX1(getCoord(i + 2));
+                        shape.setY1(getCoord(i + 3));
+                        shape.setX2(getCoord(i + 4));
+                        shape.setY2(getCoord(i + 5));
+                        shape.setX3(getCoord(i + 6));
+                        shape.setY3(getCoord(i + 7));
                         shape.drawSmooth(g2d, attributes, i / 2);
                     }
                 }
@@ -921,12 +1471,12 @@ public class VertexArray implements Shape {
                 {
                     TriangleShape shape = new TriangleShape();
                     for (int i = 0; i < (top - 5); i += 6) {
-                        shape.setX0(dataBuffer.get(i + 0));
-                        shape.setY0(dataBuffer.get(i + 1));
-                        shape.setX1(dataBuffer.get(i + 2));
-                        shape.setY1(dataBuffer.get(i + 3));
-                        shape.setX2(dataBuffer.get(i + 4));
-                        shape.setY2(dataBuffer.get(i + 5));
+                        shape.setX0(getCoord(i + 0));
+                        shape.setY0(getCoord(i + 1));
+                        shape.setX1(getCoord(i + 2));
+                        shape.setY1(getCoord(i + 3));
+                        shape.setX2(getCoord(i + 4));
+                        shape.setY2(getCoord(i + 5));
                         shape.fillSmooth(g2d, attributes, i / 2);
                     }
                     break;
@@ -935,12 +1485,12 @@ public class VertexArray implements Shape {
                 {
                     TriangleShape shape = new TriangleShape();
                     for (int i = 0; i < (top - 3); i += 4) {
-                        shape.setX0(dataBuffer.get(i + 0));
-                        shape.setY0( dataBuffer.get(i + 1));
-                        shape.setX1(dataBuffer.get(i + 2));
-                        shape.setY1(dataBuffer.get(i + 3));
-                        shape.setX2(dataBuffer.get(i + 4));
-                        shape.setY2(dataBuffer.get(i + 5));
+                        shape.setX0(getCoord(i + 0));
+                        shape.setY0( getCoord(i + 1));
+                        shape.setX1(getCoord(i + 2));
+                        shape.setY1(getCoord(i + 3));
+                        shape.setX2(getCoord(i + 4));
+                        shape.setY2(getCoord(i + 5));
                         shape.fillSmooth(g2d, attributes, i / 2);
                     }
                     break;
@@ -948,13 +1498,13 @@ public class VertexArray implements Shape {
                 case MODE_TRIANGLE_FAN :
                 {
                     TriangleShape shape = new TriangleShape();
-                    shape.setX0(dataBuffer.get(0));
-                    shape.setY0( dataBuffer.get(1));
+                    shape.setX0(getCoord(0));
+                    shape.setY0( getCoord(1));
                     for (int i = 2; i < (top - 3); i += 2) {
-                        shape.setX1(dataBuffer.get(i + 2));
-                        shape.setY1( dataBuffer.get(i + 3));
-                        shape.setX2(dataBuffer.get(i + 4));
-                        shape.setY2( dataBuffer.get(i + 5));
+                        shape.setX1(getCoord(i + 2));
+                        shape.setY1( getCoord(i + 3));
+                        shape.setX2(getCoord(i + 4));
+                        shape.setY2( getCoord(i + 5));
                         shape.fillSmooth(g2d, attributes, i / 2);
                     }
                     break;
@@ -963,14 +1513,14 @@ public class VertexArray implements Shape {
                 {
                     QuadShape shape = new QuadShape();
                     for (int i = 0; i < (top - 7); i += 8) {
-                        shape.setX0(dataBuffer.get(i + 0));
-                        shape.setY0( dataBuffer.get(i + 1));
-                        shape.setX1(dataBuffer.get(i + 2));
-                        shape.setY1( dataBuffer.get(i + 3));
-                        shape.setX2(dataBuffer.get(i + 4));
-                        shape.setY2( dataBuffer.get(i + 5));
-                        shape.setX3(dataBuffer.get(i + 6));
-                        shape.setY3( dataBuffer.get(i + 7));
+                        shape.setX0(getCoord(i + 0));
+                        shape.setY0( getCoord(i + 1));
+                        shape.setX1(getCoord(i + 2));
+                        shape.setY1( getCoord(i + 3));
+                        shape.setX2(getCoord(i + 4));
+                        shape.setY2( getCoord(i + 5));
+                        shape.setX3(getCoord(i + 6));
+                        shape.setY3( getCoord(i + 7));
                         shape.fillSmooth(g2d, attributes, i / 2);
                     }
                     break;
@@ -979,14 +1529,14 @@ public class VertexArray implements Shape {
                 {
                     QuadShape shape = new QuadShape();
                     for (int i = 0; i < (top - 5); i += 6) {
-                        shape.setX0(dataBuffer.get(i + 0));
-                        shape.setY0( dataBuffer.get(i + 1));
-                        shape.setX1(dataBuffer.get(i + 2));
-                        shape.setY1( dataBuffer.get(i + 3));
-                        shape.setX3(dataBuffer.get(i + 4));
-                        shape.setY3( dataBuffer.get(i + 5));
-                        shape.setX2(dataBuffer.get(i + 6));
-                        shape.setY2( dataBuffer.get(i + 7));
+                        shape.setX0(getCoord(i + 0));
+                        shape.setY0( getCoord(i + 1));
+                        shape.setX1(getCoord(i + 2));
+                        shape.setY1( getCoord(i + 3));
+                        shape.setX3(getCoord(i + 4));
+                        shape.setY3( getCoord(i + 5));
+                        shape.setX2(getCoord(i + 6));
+                        shape.setY2( getCoord(i + 7));
                         shape.fillSmooth(g2d, attributes, i / 2);
                     }
                     break;
@@ -15,12 +15,24 @@ import java.io.Serializable;
 
 /**
  * Memorize the result of a tesselation.
+ *
+ * <p>
+ * Once built, a list can be packed with {@link #pack(int)}: the vertices of
+ * all its arrays are then stored in a single VertexArray, sorted by mode,
+ * with tables of the first vertex, vertex count and mode of each array,
+ * so that it can be drawn with one glMultiDrawArrays per mode.
+ * </p>
  */
 public class VertexArrayList implements Shape, Serializable {
     private static final long serialVersionUID = -22386521332422441L;
     private VertexArray[] list;
     private int           top;
     private transient Area area;
+    // Packed storage
+    private VertexArray   packed;
+    private int[]         firsts;
+    private int[]         counts;
+    private int[]         modes;
 
     /**
      * Create a new VertexArrayList object.
@@ -36,6 +48,26 @@ public class VertexArrayList implements Shape, Serializable {
     public void clear() {
         top = 0;
         area = null;
+        if (packed != null) {
+            packed.release();
+            packed = null;
+            firsts = counts = modes = null;
+            list = new VertexArray[10];
+        }
+    }
+
+    /**
+     * Clears the VertexArrayList and returns the storage of its
+     * VertexArrays to the {@link BufferPool}.
+     */
+    public void release() {
+        if (packed == null) {
+            for (int i = 0; i < top; i++) {
+                list[i].release();
+                list[i] = null;
+            }
+        }
+        clear();
     }
 
     /**
@@ -60,6 +92,8 @@ public class VertexArrayList implements Shape, Serializable {
      * @param v the <code>VertexArray</code>
      */
     public void add(VertexArray v) {
+        if (packed != null)
+            unpack();
         area = null;
         resize(top + 1);
         list[top++] = v;
@@ -75,7 +109,7 @@ public class VertexArrayList implements Shape, Serializable {
     }
 
     public int capacity() {
-        return list.length;
+        return list == null ? top : list.length;
     }
 
     /**
@@ -86,9 +120,113 @@ public class VertexArrayList implements Shape, Serializable {
      * @return the <code>VertexArray</code> at the specified index
      */
     public VertexArray getVertexArrayAt(int index) {
+        if (packed != null) {
+            if (index >= top)
+                throw new ArrayIndexOutOfBoundsException(index);
+            // Rebuilt from the packed storage
+            VertexArray v = new VertexArray(counts[index] * 2);
+            v.setMode(modes[index]);
+            float[] coords = new float[2];
+            for (int i = firsts[index]; i < firsts[index] + counts[index]; i++) {
+                packed.getVertex(i, coords);
+                v.addVertex(coords);
+            }
+            return v;
+        }
         return list[index];
     }
 
+    /**
+     * Moves the vertices of all the arrays into a single VertexArray, and
+     * releases them. The arrays are sorted by mode, which is correct for
+     * arrays that do not overlap, like the results of a tesselation.
+     * Arrays returned by {@link #getVertexArrayAt(int)} are then copies,
+     * and adding an array unpacks the list.
+     *
+     * @param storage the storage of the packed VertexArray, such as
+     *   VertexArray.STORAGE_SHORT for lists kept with glyphs
+     */
+    public void pack(int storage) {
+        if (packed != null)
+            return;
+        int total = 0;
+        for (int i = 0; i < top; i++)
+            total += list[i].getCoordsCount();
+        VertexArray[] sorted = new VertexArray[top];
+        System.arraycopy(list, 0, sorted, 0, top);
+        // Stable sort by mode, there are few of them
+        for (int i = 1; i < top; i++) {
+            VertexArray v = sorted[i];
+            int j = i;
+            for (; j > 0 && sorted[j-1].getMode() > v.getMode(); j--)
+                sorted[j] = sorted[j-1];
+            sorted[j] = v;
+        }
+
+        packed = new VertexArray(Math.max(total, 2));
+        firsts = new int[top];
+        counts = new int[top];
+        modes = new int[top];
+        for (int i = 0; i < top; i++) {
+            VertexArray v = sorted[i];
+            java.nio.FloatBuffer data = v.getDataRef().duplicate();
+            data.position(0);
+            data.limit(v.getCoordsCount());
+            firsts[i] = packed.getVertexCount();
+            counts[i] = v.getVertexCount();
+            modes[i] = v.getMode();
+            packed.addVertices(data);
+            v.release();
+        }
+        packed.setStorage(storage);
+        list = null;
+    }
+
+    private void unpack() {
+        VertexArray[] arrays = new VertexArray[Math.max(top, 10)];
+        for (int i = 0; i < top; i++)
+            arrays[i] = getVertexArrayAt(i);
+        packed.release();
+        packed = null;
+        firsts = counts = modes = null;
+        list = arrays;
+    }
+
+    public boolean isPacked() {
+        return packed != null;
+    }
+
+    /**
+     * Returns the VertexArray holding the vertices of a packed list, or
+     * null if the list is not packed.
+     */
+    public VertexArray getPackedRef() {
+        return packed;
+    }
+
+    /**
+     * Returns the index of the first vertex of each array in the packed
+     * VertexArray. Only valid for packed lists.
+     */
+    public int[] getFirstsRef() {
+        return firsts;
+    }
+
+    /**
+     * Returns the vertex count of each array of a packed list.
+     */
+    public int[] getCountsRef() {
+        return counts;
+    }
+
+    /**
+     * Returns the mode of each array of a packed list, in increasing
+     * order.
+     */
+    public int[] getModesRef() {
+        return modes;
+    }
+
     public void fill(Graphics g) {
         for (int i = 0; i < size(); i++) {
             getVertexArrayAt(i).fill(g);
@@ -189,7 +327,9 @@ public class VertexArrayList implements Shape, Serializable {
 
     protected void finalize() throws Throwable {
         try {
-            for(int i=0; i<list.length; i++){
+            for(int i=0; list != null && i<list.length; i++){
+                if (list[i] == null)
+                    continue;
                 list[i].clear();
                 list[i].finalize();
             }
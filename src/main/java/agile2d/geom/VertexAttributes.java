@@ -25,10 +25,14 @@ import agile2d.ImageUtils;
  * @version $Revision: 1.2 $
  */
 public class VertexAttributes {
+    private static final java.nio.ByteBuffer EMPTY = java.nio.ByteBuffer.allocateDirect(0);
+
     private java.nio.IntBuffer colorBuffer;
     private java.nio.ByteBuffer bcolorBuffer;
     private int     top;
     private boolean smooth;
+    // Conversion buffer of addColors
+    private int[]   scratch = new int[256];
 
     public VertexAttributes(int reserve) {
         bcolorBuffer = VertexArray.newByteBuffer(reserve*4);
@@ -69,6 +73,20 @@ public class VertexAttributes {
         colorBuffer.rewind();
     }
 
+    /**
+     * Returns the storage of the attributes to the {@link BufferPool} and
+     * empties them. They can still be used: a new buffer is allocated when
+     * colors are added.
+     */
+    public void release() {
+        if (bcolorBuffer.capacity() != 0) {
+            BufferPool.release(bcolorBuffer);
+            bcolorBuffer = EMPTY;
+            colorBuffer = bcolorBuffer.asIntBuffer();
+        }
+        top = 0;
+    }
+
     /**
      * Ensures that the array has at least the specified size.
      */
@@ -83,6 +101,8 @@ public class VertexAttributes {
             colorBuffer.limit(top);
             newBuffer.put(colorBuffer);
 
+            if (bcolorBuffer.capacity() != 0)
+                BufferPool.release(bcolorBuffer);
             colorBuffer = newBuffer;
             bcolorBuffer = newbcolorBuffer;
             colorBuffer.position(top);
@@ -105,6 +125,43 @@ public class VertexAttributes {
         top++;
     }
 
+    /**
+     * Appends ARGB colors to the vertex attributes array, with a single
+     * capacity check. The colors are converted to RGBA through a small
+     * scratch array copied in bulk.
+     *
+     * @param argb the colors, as returned by Color.getRGB()
+     * @param off the index of the first color in argb
+     * @param count the number of colors
+     */
+    public void addColors(int[] argb, int off, int count) {
+        if (off < 0 || count < 0 || off + count > argb.length)
+            throw new IndexOutOfBoundsException();
+        reserve(top + count);
+        int[] tmp = scratch;
+        for (int done = 0; done < count; done += tmp.length) {
+            int n = Math.min(tmp.length, count - done);
+            int src = off + done;
+            for (int i = 0; i < n; i++)
+                tmp[i] = ImageUtils.ARGBtoRGBA(argb[src + i]);
+            colorBuffer.put(tmp, 0, n);
+        }
+        top += count;
+    }
+
+    /**
+     * Replaces the colors of the vertex attributes array, keeping its
+     * storage when it is large enough.
+     *
+     * @param argb the colors, as returned by Color.getRGB()
+     * @param off the index of the first color in argb
+     * @param count the number of colors
+     */
+    public void setColors(int[] argb, int off, int count) {
+        clear();
+        addColors(argb, off, count);
+    }
+
     /**
      * Returns the color attribute at the specified index.
      */
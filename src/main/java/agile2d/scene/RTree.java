@@ -0,0 +1,352 @@
+/*
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d.scene;
+
+import java.util.List;
+
+
+/**
+ * R-tree of the bounds of scene nodes, with the quadratic split of Guttman.
+ *
+ * <p>
+ * Insertions and removals only touch the path from a leaf to the root, plus
+ * the reinsertion of the entries of the nodes left underfull by a removal,
+ * so the tree is never rebuilt. An entry whose new bounds stay inside its
+ * leaf is updated in place.
+ * </p>
+ */
+final class RTree {
+    static final int MAX_ENTRIES = 16;
+    static final int MIN_ENTRIES = 6;
+
+    /**
+     * A bounding box in the tree: either a scene node or an inner node.
+     */
+    static class Entry {
+        double minX, minY, maxX, maxY;
+        Node parent;
+        final SceneNode item;
+
+        Entry(SceneNode item) {
+            this.item = item;
+        }
+
+        final void setBounds(double minX, double minY, double maxX, double maxY) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+
+        final boolean intersects(double x1, double y1, double x2, double y2) {
+            return minX <= x2 && x1 <= maxX && minY <= y2 && y1 <= maxY;
+        }
+
+        final boolean contains(Entry e) {
+            return minX <= e.minX && minY <= e.minY && e.maxX <= maxX && e.maxY <= maxY;
+        }
+
+        final double area() {
+            return (maxX - minX) * (maxY - minY);
+        }
+
+        // Area of the union with another box
+        final double unionArea(Entry e) {
+            return (Math.max(maxX, e.maxX) - Math.min(minX, e.minX))
+                * (Math.max(maxY, e.maxY) - Math.min(minY, e.minY));
+        }
+    }
+
+    static final class Node extends Entry {
+        final int level; // 0 for the leaves
+        final Entry[] children = new Entry[MAX_ENTRIES + 1];
+        int count;
+
+        Node(int level) {
+            super(null);
+            this.level = level;
+        }
+
+        void add(Entry e) {
+            children[count++] = e;
+            e.parent = this;
+        }
+
+        void remove(Entry e) {
+            for (int i = 0; i < count; i++) {
+                if (children[i] == e) {
+                    children[i] = children[--count];
+                    children[count] = null;
+                    e.parent = null;
+                    return;
+                }
+            }
+        }
+
+        void updateBounds() {
+            if (count == 0) {
+                setBounds(0, 0, 0, 0);
+                return;
+            }
+            Entry e = children[0];
+            double x1 = e.minX, y1 = e.minY, x2 = e.maxX, y2 = e.maxY;
+            for (int i = 1; i < count; i++) {
+                e = children[i];
+                x1 = Math.min(x1, e.minX);
+                y1 = Math.min(y1, e.minY);
+                x2 = Math.max(x2, e.maxX);
+                y2 = Math.max(y2, e.maxY);
+            }
+            setBounds(x1, y1, x2, y2);
+        }
+    }
+
+    private Node root = new Node(0);
+    private int  size;
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the root, whose bounds contain all the entries.
+     */
+    Entry getRoot() {
+        return root;
+    }
+
+    void clear() {
+        root = new Node(0);
+        size = 0;
+    }
+
+    /**
+     * Adds the entry of a scene node, whose bounds are set.
+     */
+    void insert(Entry e) {
+        insert(e, 0);
+        size++;
+    }
+
+    /**
+     * Removes the entry of a scene node.
+     */
+    void remove(Entry e) {
+        Node leaf = e.parent;
+        if (leaf == null)
+            return;
+        leaf.remove(e);
+        size--;
+        condense(leaf);
+    }
+
+    /**
+     * Changes the bounds of the entry of a scene node.
+     */
+    void update(Entry e, double minX, double minY, double maxX, double maxY) {
+        Node leaf = e.parent;
+        e.setBounds(minX, minY, maxX, maxY);
+        if (leaf == null || leaf.contains(e))
+            return; // The bounds of the ancestors remain valid
+        leaf.remove(e);
+        condense(leaf);
+        insert(e, 0);
+    }
+
+    /**
+     * Adds to a list the scene nodes whose bounds intersect a rectangle.
+     */
+    void search(double x1, double y1, double x2, double y2, List<SceneNode> result) {
+        if (size != 0)
+            search(root, x1, y1, x2, y2, result);
+    }
+
+    private static void search(Node node, double x1, double y1, double x2, double y2,
+                               List<SceneNode> result) {
+        for (int i = 0; i < node.count; i++) {
+            Entry e = node.children[i];
+            if (!e.intersects(x1, y1, x2, y2))
+                continue;
+            if (node.level == 0)
+                result.add(e.item);
+            else
+                search((Node)e, x1, y1, x2, y2, result);
+        }
+    }
+
+    // Inserts an entry in a node of the specified level, splitting the
+    // nodes that overflow up to the root.
+    private void insert(Entry e, int level) {
+        Node node = chooseNode(e, level);
+        node.add(e);
+        Node split = null;
+        if (node.count > MAX_ENTRIES)
+            split = split(node);
+        while (true) {
+            node.updateBounds();
+            Node parent = node.parent;
+            if (parent == null) {
+                if (split != null) {
+                    root = new Node(node.level + 1);
+                    root.add(node);
+                    root.add(split);
+                    root.updateBounds();
+                }
+                return;
+            }
+            if (split != null) {
+                parent.add(split);
+                split = parent.count > MAX_ENTRIES ? split(parent) : null;
+            }
+            node = parent;
+        }
+    }
+
+    // Descends to the node of the specified level whose bounds grow the
+    // least when adding the entry
+    private Node chooseNode(Entry e, int level) {
+        Node node = root;
+        while (node.level > level) {
+            Entry best = null;
+            double bestGrowth = 0, bestArea = 0;
+            for (int i = 0; i < node.count; i++) {
+                Entry c = node.children[i];
+                double area = c.area();
+                double growth = c.unionArea(e) - area;
+                if (best == null || growth < bestGrowth
+                    || (growth == bestGrowth && area < bestArea)) {
+                    best = c;
+                    bestGrowth = growth;
+                    bestArea = area;
+                }
+            }
+            if (best == null) { // Root emptied by a removal
+                best = new Node(node.level - 1);
+                node.add(best);
+            }
+            node = (Node)best;
+        }
+        return node;
+    }
+
+    // Quadratic split: moves part of the children of an overflowing node
+    // to a new sibling, which is returned
+    private Node split(Node node) {
+        Entry[] entries = new Entry[node.count];
+        System.arraycopy(node.children, 0, entries, 0, node.count);
+        for (int i = 0; i < node.count; i++)
+            node.children[i] = null;
+        node.count = 0;
+
+        // The seeds are the pair wasting the most area together
+        int s1 = 0, s2 = 1;
+        double worst = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < entries.length; i++) {
+            for (int j = i + 1; j < entries.length; j++) {
+                double waste = entries[i].unionArea(entries[j])
+                    - entries[i].area() - entries[j].area();
+                if (waste > worst) {
+                    worst = waste;
+                    s1 = i;
+                    s2 = j;
+                }
+            }
+        }
+        Node sibling = new Node(node.level);
+        node.add(entries[s1]);
+        sibling.add(entries[s2]);
+        node.updateBounds();
+        sibling.updateBounds();
+        entries[s1] = null;
+        entries[s2] = null;
+
+        int remaining = entries.length - 2;
+        while (remaining > 0) {
+            // Give the rest to a group that would be too small otherwise
+            Node needy = null;
+            if (node.count + remaining == MIN_ENTRIES)
+                needy = node;
+            else if (sibling.count + remaining == MIN_ENTRIES)
+                needy = sibling;
+            if (needy != null) {
+                for (int i = 0; i < entries.length; i++) {
+                    if (entries[i] != null)
+                        needy.add(entries[i]);
+                }
+                needy.updateBounds();
+                break;
+            }
+
+            // Pick the entry with the strongest preference for a group
+            int next = -1;
+            double bestDiff = -1, d1 = 0, d2 = 0;
+            for (int i = 0; i < entries.length; i++) {
+                Entry e = entries[i];
+                if (e == null)
+                    continue;
+                double g1 = node.unionArea(e) - node.area();
+                double g2 = sibling.unionArea(e) - sibling.area();
+                double diff = Math.abs(g1 - g2);
+                if (diff > bestDiff) {
+                    bestDiff = diff;
+                    next = i;
+                    d1 = g1;
+                    d2 = g2;
+                }
+            }
+            Node group;
+            if (d1 != d2)
+                group = d1 < d2 ? node : sibling;
+            else if (node.area() != sibling.area())
+                group = node.area() < sibling.area() ? node : sibling;
+            else
+                group = node.count <= sibling.count ? node : sibling;
+            group.add(entries[next]);
+            group.updateBounds();
+            entries[next] = null;
+            remaining--;
+        }
+        return sibling;
+    }
+
+    // Walks up from a node that lost an entry, removing the underfull
+    // nodes and reinserting their entries at their level
+    private void condense(Node node) {
+        Node orphans = null; // Chained through their parent field
+        while (node != root) {
+            Node parent = node.parent;
+            if (node.count < MIN_ENTRIES) {
+                parent.remove(node);
+                node.parent = orphans;
+                orphans = node;
+            }
+            else {
+                node.updateBounds();
+            }
+            node = parent;
+        }
+        root.updateBounds();
+
+        while (orphans != null) {
+            Node orphan = orphans;
+            orphans = orphan.parent;
+            orphan.parent = null;
+            for (int i = 0; i < orphan.count; i++) {
+                Entry e = orphan.children[i];
+                e.parent = null;
+                insert(e, orphan.level);
+            }
+        }
+
+        while (root.level > 0 && root.count == 1) {
+            root = (Node)root.children[0];
+            root.parent = null;
+        }
+        if (root.level > 0 && root.count == 0)
+            root = new Node(0);
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d.scene;
+
+import java.awt.BasicStroke;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import agile2d.AgileRenderingHints;
+
+
+/**
+ * A retained set of {@link SceneNode}s, indexed by their bounds in an
+ * R-tree.
+ *
+ * <p>
+ * Rendering a large scene only visits the nodes intersecting the viewport,
+ * and point or rectangle queries take a logarithmic time in the number of
+ * nodes. Adding, removing or changing a node updates the index
+ * incrementally. The nodes are rendered in the order they were added.
+ * </p>
+ *
+ * <p>
+ * The nodes are rendered with {@link AgileRenderingHints#KEY_IMMUTABLE_SHAPE_HINT},
+ * so that an AgileGraphics2D keeps their tesselations in its geometry cache
+ * from one frame to the next. Any other Graphics2D can render a scene too.
+ * A scene is not thread safe.
+ * </p>
+ */
+public class Scene {
+    static final Stroke DEFAULT_STROKE = new BasicStroke();
+
+    private static final Comparator<SceneNode> ORDER = new Comparator<SceneNode>() {
+        public int compare(SceneNode a, SceneNode b) {
+            return a.order < b.order ? -1 : (a.order == b.order ? 0 : 1);
+        }
+    };
+
+    private RTree                tree = new RTree();
+    private long                 nextOrder;
+    private ArrayList<SceneNode> visible = new ArrayList<SceneNode>();
+    private Point2D.Double       point = new Point2D.Double();
+
+    /**
+     * Adds a node on top of the others.
+     *
+     * @throws IllegalArgumentException if the node is in another scene
+     */
+    public void add(SceneNode node) {
+        if (node.scene == this)
+            return;
+        if (node.scene != null)
+            throw new IllegalArgumentException("The node belongs to another scene");
+        node.scene = this;
+        node.order = nextOrder++;
+        node.computeBounds();
+        tree.insert(node.entry);
+    }
+
+    /**
+     * Removes a node.
+     *
+     * @return true if the node was in this scene
+     */
+    public boolean remove(SceneNode node) {
+        if (node.scene != this)
+            return false;
+        tree.remove(node.entry);
+        node.scene = null;
+        return true;
+    }
+
+    /**
+     * Moves a node on top of the others.
+     */
+    public void toFront(SceneNode node) {
+        if (node.scene == this)
+            node.order = nextOrder++;
+    }
+
+    /**
+     * Removes all the nodes.
+     */
+    public void clear() {
+        visible.clear();
+        tree.search(Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                    Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, visible);
+        for (int i = 0; i < visible.size(); i++) {
+            SceneNode node = visible.get(i);
+            node.scene = null;
+            node.entry.parent = null;
+        }
+        visible.clear();
+        tree.clear();
+    }
+
+    public int size() {
+        return tree.size();
+    }
+
+    /**
+     * Returns the bounds of all the nodes, or null if the scene is empty.
+     */
+    public Rectangle2D getBounds() {
+        if (tree.size() == 0)
+            return null;
+        RTree.Entry root = tree.getRoot();
+        return new Rectangle2D.Double(root.minX, root.minY,
+                                      root.maxX - root.minX, root.maxY - root.minY);
+    }
+
+    // Called by the nodes when their geometry changes
+    void update(SceneNode node) {
+        RTree.Entry e = node.entry;
+        double minX = e.minX, minY = e.minY, maxX = e.maxX, maxY = e.maxY;
+        node.computeBounds();
+        double x1 = e.minX, y1 = e.minY, x2 = e.maxX, y2 = e.maxY;
+        e.setBounds(minX, minY, maxX, maxY);
+        tree.update(e, x1, y1, x2, y2);
+    }
+
+    /**
+     * Adds to a list the nodes whose bounds intersect a rectangle, from the
+     * bottom to the top.
+     *
+     * @param rect the rectangle in scene coordinates
+     * @param result the list receiving the nodes, or null
+     * @return the list
+     */
+    public List<SceneNode> query(Rectangle2D rect, List<SceneNode> result) {
+        if (result == null)
+            result = new ArrayList<SceneNode>();
+        int first = result.size();
+        tree.search(rect.getMinX(), rect.getMinY(), rect.getMaxX(), rect.getMaxY(), result);
+        Collections.sort(result.subList(first, result.size()), ORDER);
+        return result;
+    }
+
+    /**
+     * Returns the topmost node whose filled or stroked shape contains a
+     * point, or null.
+     *
+     * @param x the x coordinate in the scene
+     * @param y the y coordinate in the scene
+     */
+    public SceneNode pick(double x, double y) {
+        visible.clear();
+        tree.search(x, y, x, y, visible);
+        SceneNode top = null;
+        for (int i = 0; i < visible.size(); i++) {
+            SceneNode node = visible.get(i);
+            if ((top == null || node.order > top.order) && hits(node, x, y))
+                top = node;
+        }
+        visible.clear();
+        return top;
+    }
+
+    private boolean hits(SceneNode node, double x, double y) {
+        point.setLocation(x, y);
+        AffineTransform t = node.getTransform();
+        if (t != null) {
+            try {
+                t.inverseTransform(point, point);
+            }
+            catch (NoninvertibleTransformException e) {
+                return false;
+            }
+        }
+        Shape shape = node.getShape();
+        if (node.getFillPaint() != null && shape.contains(point))
+            return true;
+        if (node.getDrawPaint() != null) {
+            Stroke s = node.getStroke() == null ? DEFAULT_STROKE : node.getStroke();
+            return s.createStrokedShape(shape).contains(point);
+        }
+        return false;
+    }
+
+    /**
+     * Renders the nodes intersecting the clip of a graphics.
+     *
+     * @return the number of nodes rendered
+     */
+    public int render(Graphics2D g) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null)
+            return render(g, null);
+        return render(g, clip);
+    }
+
+    /**
+     * Renders the nodes intersecting a viewport.
+     *
+     * @param g the graphics, whose transform maps the scene to the screen
+     * @param viewport the viewport in scene coordinates, or null to render
+     *   all the nodes
+     * @return the number of nodes rendered
+     */
+    public int render(Graphics2D g, Rectangle2D viewport) {
+        visible.clear();
+        if (viewport == null)
+            tree.search(Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                        Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, visible);
+        else
+            tree.search(viewport.getMinX(), viewport.getMinY(),
+                        viewport.getMaxX(), viewport.getMaxY(), visible);
+        Collections.sort(visible, ORDER);
+
+        RenderingHints.Key key = AgileRenderingHints.KEY_IMMUTABLE_SHAPE_HINT;
+        Object immutable = g.getRenderingHint(key);
+        AffineTransform savedTransform = g.getTransform();
+        Paint savedPaint = g.getPaint();
+        Stroke savedStroke = g.getStroke();
+        g.setRenderingHint(key, Boolean.TRUE);
+        try {
+            for (int i = 0; i < visible.size(); i++) {
+                SceneNode node = visible.get(i);
+                AffineTransform t = node.getTransform();
+                if (t != null)
+                    g.transform(t);
+                if (node.getFillPaint() != null) {
+                    g.setPaint(node.getFillPaint());
+                    g.fill(node.getShape());
+                }
+                if (node.getDrawPaint() != null) {
+                    g.setPaint(node.getDrawPaint());
+                    g.setStroke(node.getStroke() == null ? DEFAULT_STROKE : node.getStroke());
+                    g.draw(node.getShape());
+                }
+                if (t != null)
+                    g.setTransform(savedTransform);
+            }
+        }
+        finally {
+            g.setRenderingHint(key, immutable == null ? Boolean.FALSE : immutable);
+            g.setTransform(savedTransform);
+            g.setPaint(savedPaint);
+            g.setStroke(savedStroke);
+        }
+        int count = visible.size();
+        visible.clear();
+        return count;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d.scene;
+
+import java.awt.BasicStroke;
+import java.awt.Paint;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+
+
+/**
+ * An item of a {@link Scene}: a shape filled and/or stroked, with an
+ * optional transform from the shape to the scene coordinates.
+ *
+ * <p>
+ * The shape is rendered with the immutable shape hint, so its tesselation is
+ * cached: it must not be modified while the node is in a scene. To change
+ * the geometry, set a new shape. Each setter updates the spatial index of the
+ * scene of the node.
+ * </p>
+ */
+public class SceneNode {
+    private Shape           shape;
+    private Paint           fillPaint;
+    private Paint           drawPaint;
+    private Stroke          stroke;
+    private AffineTransform transform;
+
+    Scene       scene;
+    long        order;
+    RTree.Entry entry = new RTree.Entry(this);
+
+    /**
+     * Creates a node filling a shape.
+     *
+     * @param shape the shape
+     * @param fillPaint the paint filling the shape
+     */
+    public SceneNode(Shape shape, Paint fillPaint) {
+        this(shape, fillPaint, null, null);
+    }
+
+    /**
+     * Creates a node.
+     *
+     * @param shape the shape
+     * @param fillPaint the paint filling the shape, or null
+     * @param drawPaint the paint stroking the shape, or null
+     * @param stroke the stroke, or null for the default stroke
+     */
+    public SceneNode(Shape shape, Paint fillPaint, Paint drawPaint, Stroke stroke) {
+        if (shape == null)
+            throw new NullPointerException("shape");
+        this.shape = shape;
+        this.fillPaint = fillPaint;
+        this.drawPaint = drawPaint;
+        this.stroke = stroke;
+    }
+
+    public Shape getShape() {
+        return shape;
+    }
+
+    public void setShape(Shape shape) {
+        if (shape == null)
+            throw new NullPointerException("shape");
+        this.shape = shape;
+        changed();
+    }
+
+    public Paint getFillPaint() {
+        return fillPaint;
+    }
+
+    public void setFillPaint(Paint fillPaint) {
+        this.fillPaint = fillPaint;
+    }
+
+    public Paint getDrawPaint() {
+        return drawPaint;
+    }
+
+    public void setDrawPaint(Paint drawPaint) {
+        this.drawPaint = drawPaint;
+        changed();
+    }
+
+    public Stroke getStroke() {
+        return stroke;
+    }
+
+    public void setStroke(Stroke stroke) {
+        this.stroke = stroke;
+        changed();
+    }
+
+    /**
+     * Returns the transform from the shape to the scene, or null for the
+     * identity. The transform must not be modified: set a new one instead.
+     */
+    public AffineTransform getTransform() {
+        return transform;
+    }
+
+    public void setTransform(AffineTransform transform) {
+        this.transform = transform;
+        changed();
+    }
+
+    /**
+     * Returns the scene containing this node, or null.
+     */
+    public Scene getScene() {
+        return scene;
+    }
+
+    /**
+     * Returns the bounds of the node in the scene, including its stroke.
+     */
+    public Rectangle2D getBounds() {
+        return new Rectangle2D.Double(entry.minX, entry.minY,
+                                      entry.maxX - entry.minX, entry.maxY - entry.minY);
+    }
+
+    private void changed() {
+        if (scene != null)
+            scene.update(this);
+    }
+
+    // Computes the bounds of the node in the scene into its entry
+    void computeBounds() {
+        Rectangle2D b = shape.getBounds2D();
+        if (drawPaint != null) {
+            Stroke s = stroke == null ? Scene.DEFAULT_STROKE : stroke;
+            if (s instanceof BasicStroke) {
+                // Miter joins and square caps extend beyond half the width
+                BasicStroke bs = (BasicStroke)s;
+                double pad = bs.getLineWidth() / 2;
+                if (bs.getLineJoin() == BasicStroke.JOIN_MITER)
+                    pad *= Math.max(bs.getMiterLimit(), Math.sqrt(2));
+                else
+                    pad *= Math.sqrt(2);
+                b = new Rectangle2D.Double(b.getX() - pad, b.getY() - pad,
+                                           b.getWidth() + 2 * pad, b.getHeight() + 2 * pad);
+            }
+            else {
+                b = s.createStrokedShape(shape).getBounds2D();
+            }
+        }
+        if (transform != null && !transform.isIdentity())
+            b = transform.createTransformedShape(b).getBounds2D();
+        entry.setBounds(b.getMinX(), b.getMinY(), b.getMaxX(), b.getMaxY());
+    }
+}
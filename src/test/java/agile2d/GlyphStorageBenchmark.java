@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d;
+
+import java.awt.Font;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.nio.FloatBuffer;
+
+import agile2d.geom.BufferPool;
+import agile2d.geom.VertexArray;
+
+/**
+ * Measures the memory taken by the tesselated glyphs of a font with each
+ * storage of VertexArray, and the time taken to prepare them for OpenGL
+ * when they are drawn: the heap storage is copied to a direct buffer, the
+ * direct and short storages are read in place. No GL context is needed.
+ *
+ * <p>
+ * Run it with: <code>java agile2d.GlyphStorageBenchmark [font] [size]
+ * [iterations]</code>
+ * </p>
+ */
+public class GlyphStorageBenchmark {
+    static final int DEFAULT_SIZE = 72;
+    static final int DEFAULT_ITERATIONS = 200;
+
+    static VertexArray[] tesselate(Font font) {
+        FontRenderContext frc = new FontRenderContext(null, true, true);
+        char[] chars = new char[256 - 32];
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = (char)(i + 32);
+        GlyphVector gv = font.createGlyphVector(frc, chars);
+        Triangulator triangulator = new Triangulator();
+        VertexArray[] glyphs = new VertexArray[gv.getNumGlyphs()];
+        for (int i = 0; i < glyphs.length; i++) {
+            Shape s = gv.getGlyphOutline(i, -(float)gv.getGlyphPosition(i).getX(), 0);
+            glyphs[i] = new VertexArray();
+            triangulator.triangulate(s.getPathIterator(null, 0.01), glyphs[i]);
+            glyphs[i].trimToSize();
+        }
+        return glyphs;
+    }
+
+    static long bytes(VertexArray array) {
+        int coords = array.getCoordsCount();
+        switch (array.getStorage()) {
+        case VertexArray.STORAGE_HEAP:
+            return 4L * coords;
+        case VertexArray.STORAGE_SHORT:
+            return 1L << BufferPool.getSizeClass(2 * Math.max(coords, 2));
+        default:
+            return 1L << BufferPool.getSizeClass(4 * coords);
+        }
+    }
+
+    static void report(String name, VertexArray[] glyphs) {
+        long total = 0;
+        for (int i = 0; i < glyphs.length; i++)
+            total += bytes(glyphs[i]);
+        System.out.println(name + ": " + (double)total / glyphs.length + " bytes/glyph");
+    }
+
+    public static void main(String[] args) {
+        String name = args.length > 0 ? args[0] : "Serif";
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SIZE;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ITERATIONS;
+
+        VertexArray[] glyphs = tesselate(new Font(name, Font.PLAIN, size));
+        long vertices = 0;
+        int maxCoords = 0;
+        for (int i = 0; i < glyphs.length; i++) {
+            vertices += glyphs[i].getVertexCount();
+            maxCoords = Math.max(maxCoords, glyphs[i].getCoordsCount());
+        }
+        System.out.println(glyphs.length + " glyphs, " + (double)vertices / glyphs.length + " vertices/glyph");
+
+        FloatBuffer floats = VertexArray.newByteBuffer(maxCoords * 4).asFloatBuffer();
+        float[] coords = new float[2];
+        float[] q = new float[4];
+        int[] storages = { VertexArray.STORAGE_DIRECT, VertexArray.STORAGE_HEAP, VertexArray.STORAGE_SHORT };
+        String[] names = { "direct", "heap", "short" };
+        for (int s = 0; s < storages.length; s++) {
+            double error = 0;
+            float[][] reference = new float[glyphs.length][];
+            for (int i = 0; i < glyphs.length; i++) {
+                reference[i] = new float[glyphs[i].getCoordsCount()];
+                for (int v = 0; v < glyphs[i].getVertexCount(); v++) {
+                    glyphs[i].getVertex(v, coords);
+                    reference[i][2*v] = coords[0];
+                    reference[i][2*v+1] = coords[1];
+                }
+                glyphs[i].setStorage(storages[s]);
+                for (int v = 0; v < glyphs[i].getVertexCount(); v++) {
+                    glyphs[i].getVertex(v, coords);
+                    error = Math.max(error, Math.abs(coords[0] - reference[i][2*v]));
+                    error = Math.max(error, Math.abs(coords[1] - reference[i][2*v+1]));
+                }
+            }
+            report(names[s], glyphs);
+            System.out.println(names[s] + ": max error " + error);
+
+            // What ShapeManager does before glVertexPointer
+            long start = System.nanoTime();
+            for (int it = 0; it < iterations; it++) {
+                for (int i = 0; i < glyphs.length; i++) {
+                    VertexArray g = glyphs[i];
+                    switch (g.getStorage()) {
+                    case VertexArray.STORAGE_SHORT:
+                        g.getQuantizedRef();
+                        g.getQuantization(q);
+                        break;
+                    case VertexArray.STORAGE_HEAP:
+                        floats.clear();
+                        g.putCoords(floats);
+                        break;
+                    default:
+                        g.getDataRef().rewind();
+                    }
+                }
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.println(names[s] + ": " + (double)nanos / (vertices * iterations) + " ns/vertex to draw");
+            // Back to the direct reference storage for the next one
+            for (int i = 0; i < glyphs.length; i++)
+                glyphs[i].setStorage(VertexArray.STORAGE_DIRECT);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.util.Random;
+
+import agile2d.geom.TransformPathIterator;
+import agile2d.geom.VertexArray;
+
+/**
+ * Measures the number of points per second obtained from a large
+ * transformed VertexArray: through a TransformPathIterator wrapping its
+ * untransformed iterator, through its own transforming iterator, and with
+ * bulk copies of its coordinates. No GL context is needed.
+ *
+ * <p>
+ * Run it with: <code>java agile2d.PathTransformBenchmark [vertices]
+ * [iterations]</code>
+ * </p>
+ */
+public class PathTransformBenchmark {
+    static final int DEFAULT_VERTICES = 1000000;
+    static final int DEFAULT_ITERATIONS = 20;
+
+    // Sums the coordinates so that the iteration is not optimized away
+    static double iterate(PathIterator it) {
+        float[] coords = new float[6];
+        double sum = 0;
+        while (!it.isDone()) {
+            if (it.currentSegment(coords) != PathIterator.SEG_CLOSE)
+                sum += coords[0] + coords[1];
+            it.next();
+        }
+        return sum;
+    }
+
+    static void report(String name, long nanos, int iterations, int nVertices, double sum) {
+        double points = (double)iterations * nVertices;
+        System.out.println(name + ": " + (long)(points * 1e9 / nanos) + " points/s"
+                           + " (checksum " + (float)sum + ")");
+    }
+
+    public static void main(String[] args) {
+        int nVertices = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_VERTICES;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+
+        Random random = new Random(0);
+        float[] xy = new float[nVertices * 2];
+        for (int i = 0; i < xy.length; i++)
+            xy[i] = random.nextFloat() * 1000;
+        VertexArray array = new VertexArray(xy.length);
+        array.setMode(VertexArray.MODE_LINE_STRIP);
+        array.addVertices(xy, 0, nVertices);
+        AffineTransform at = AffineTransform.getRotateInstance(0.5, 500, 500);
+        at.scale(1.5, 1.5);
+        float[] dst = new float[xy.length];
+
+        for (int pass = 0; pass < 2; pass++) {
+            // The first pass warms up the JIT
+            boolean last = pass == 1;
+            long start = System.nanoTime();
+            double sum = 0;
+            for (int i = 0; i < iterations; i++)
+                sum += iterate(new TransformPathIterator(array.getPathIterator(null), at));
+            if (last)
+                report("TransformPathIterator", System.nanoTime() - start, iterations, nVertices, sum);
+
+            start = System.nanoTime();
+            sum = 0;
+            for (int i = 0; i < iterations; i++)
+                sum += iterate(array.getPathIterator(at));
+            if (last)
+                report("VertexArray iterator", System.nanoTime() - start, iterations, nVertices, sum);
+
+            start = System.nanoTime();
+            sum = 0;
+            for (int i = 0; i < iterations; i++) {
+                array.getCoords(0, nVertices, dst, 0, at);
+                sum += dst[0] + dst[1];
+            }
+            if (last)
+                report("Bulk getCoords", System.nanoTime() - start, iterations, nVertices, sum);
+
+            start = System.nanoTime();
+            sum = 0;
+            for (int i = 0; i < iterations; i++) {
+                at.transform(xy, 0, dst, 0, nVertices);
+                sum += dst[0] + dst[1];
+            }
+            if (last)
+                report("AffineTransform.transform", System.nanoTime() - start, iterations, nVertices, sum);
+
+            start = System.nanoTime();
+            sum = 0;
+            for (int i = 0; i < iterations; i++) {
+                TransformPathIterator.transform(at, xy, 0, dst, 0, nVertices);
+                sum += dst[0] + dst[1];
+            }
+            if (last)
+                report("TransformPathIterator.transform", System.nanoTime() - start, iterations, nVertices, sum);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2006 Jon Meyer, Ben Bederson and Jean-Daniel Fekete               *
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d;
+
+import java.awt.geom.GeneralPath;
+import java.awt.geom.PathIterator;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import javax.media.opengl.glu.GLU;
+
+import agile2d.geom.VertexArray;
+
+/**
+ * Measures the memory allocated per tesselated vertex when filling large
+ * concave polygons, such as map outlines, with the GLU tesselator and
+ * with the pure Java triangulator. No GL context is needed.
+ *
+ * <p>
+ * This benchmark lives in the agile2d package to reach the package-private
+ * Tesselator. Run it with: <code>java agile2d.TesselatorBenchmark [vertices]
+ * [iterations]</code>
+ * </p>
+ */
+public class TesselatorBenchmark {
+    static final int DEFAULT_VERTICES = 20000;
+    static final int DEFAULT_ITERATIONS = 50;
+
+    // Counts the vertices produced by the tesselator, without allocating
+    static final class CountingVisitor extends TesselatorAdapter {
+        long count;
+
+        public void addVertex(double[] coords) {
+            count++;
+        }
+
+        public void addVertex(double x, double y) {
+            count++;
+        }
+    }
+
+    // A coastline-like closed outline, whose radius follows a random walk
+    static GeneralPath createPolygon(int nVertices) {
+        Random random = new Random(0);
+        GeneralPath path = new GeneralPath(PathIterator.WIND_NON_ZERO, nVertices + 1);
+        double radius = 500;
+        for (int i = 0; i < nVertices; i++) {
+            double angle = 2 * Math.PI * i / nVertices;
+            radius += random.nextDouble() - 0.5;
+            float x = (float)(600 + radius * Math.cos(angle));
+            float y = (float)(600 + radius * Math.sin(angle));
+            if (i == 0)
+                path.moveTo(x, y);
+            else
+                path.lineTo(x, y);
+        }
+        path.closePath();
+        return path;
+    }
+
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    static void report(String name, long bytes, long nanos, int iterations, int nVertices) {
+        long vertices = (long)iterations * nVertices;
+        System.out.println(name + ": "
+                           + (double)bytes / vertices + " bytes/vertex, "
+                           + (double)nanos / vertices + " ns/vertex");
+    }
+
+    public static void main(String[] args) {
+        int nVertices = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_VERTICES;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+        GeneralPath polygon = createPolygon(nVertices);
+
+        Tesselator tesselator = new Tesselator(new GLU());
+        CountingVisitor visitor = new CountingVisitor();
+        Triangulator triangulator = new Triangulator();
+        VertexArray triangles = new VertexArray(nVertices * 12);
+
+        // Warm up, and let the pools reach their steady size
+        for (int i = 0; i < 5; i++) {
+            tesselator.tesselate(polygon.getPathIterator(null), visitor);
+            triangles.clear();
+            triangulator.triangulate(polygon.getPathIterator(null), triangles);
+        }
+
+        long bytes = allocatedBytes();
+        long time = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            tesselator.tesselate(polygon.getPathIterator(null), visitor);
+        time = System.nanoTime() - time;
+        bytes = allocatedBytes() - bytes;
+        report("GLU tesselator", bytes, time, iterations, nVertices);
+
+        bytes = allocatedBytes();
+        time = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            triangles.clear();
+            triangulator.triangulate(polygon.getPathIterator(null), triangles);
+        }
+        time = System.nanoTime() - time;
+        bytes = allocatedBytes() - bytes;
+        report("Java triangulator", bytes, time, iterations, nVertices);
+    }
+}
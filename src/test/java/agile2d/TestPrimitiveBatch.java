@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.nio.FloatBuffer;
+
+import javax.media.opengl.GL2;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import agile2d.geom.VertexArray;
+
+/**
+ * <b>TestPrimitiveBatch</b>
+ * Checks the vertices and colors collected by a PrimitiveBatch for
+ * batched paths and instances. The batch is package private, as the other
+ * helpers of the GraphicsEngine, so this test lives in its package; it is
+ * never flushed, so no GL context is needed.
+ */
+public class TestPrimitiveBatch {
+    static void assertVertices(double[] expected, PrimitiveBatch batch) {
+        Assert.assertEquals(expected.length / 2, batch.getVertexCount());
+        float[] xy = new float[2];
+        for (int i = 0; i < batch.getVertexCount(); i++) {
+            batch.getVertex(i, xy);
+            Assert.assertEquals(expected[2 * i], xy[0], 1e-5);
+            Assert.assertEquals(expected[2 * i + 1], xy[1], 1e-5);
+        }
+    }
+
+    @Test
+    public void testRectOutline() {
+        PrimitiveBatch batch = new PrimitiveBatch(null);
+        Assert.assertTrue(batch.accepts(GL2.GL_LINES, 0, 1));
+        batch.addPath(new Rectangle2D.Double(10, 20, 30, 40).getPathIterator(null), false);
+        assertVertices(new double[] {
+            10, 20, 40, 20,
+            40, 20, 40, 60,
+            40, 60, 10, 60,
+            10, 60, 10, 20
+        }, batch);
+        Assert.assertTrue(batch.hasLines());
+        Assert.assertFalse(batch.accepts(GL2.GL_TRIANGLES, 0, 1));
+    }
+
+    @Test
+    public void testRectFill() {
+        PrimitiveBatch batch = new PrimitiveBatch(null);
+        Assert.assertTrue(batch.accepts(GL2.GL_TRIANGLES, 0, 1));
+        batch.addPath(new Rectangle2D.Double(10, 20, 30, 40).getPathIterator(null), true);
+        // The last lineto goes back to the first point, a degenerate triangle
+        assertVertices(new double[] {
+            10, 20, 40, 20, 40, 60,
+            10, 20, 40, 60, 10, 60,
+            10, 20, 10, 60, 10, 20
+        }, batch);
+        batch.clear();
+        Assert.assertTrue(batch.isEmpty());
+    }
+
+    @Test
+    public void testTransformAndColor() {
+        PrimitiveBatch batch = new PrimitiveBatch(null);
+        batch.setTransform(new AffineTransform(2, 0, 0, 3, 5, 7));
+        batch.setColor((byte) 10, (byte) 20, (byte) 30, (byte) -1);
+        Assert.assertTrue(batch.accepts(GL2.GL_LINES, 0, 1));
+        batch.addPath(new Rectangle2D.Double(1, 1, 1, 1).getPathIterator(null), false);
+        batch.setColor((byte) 40, (byte) 50, (byte) 60, (byte) 70);
+        batch.addLine(0, 0, 1, 1);
+        assertVertices(new double[] {
+            7, 10, 9, 10,
+            9, 10, 9, 13,
+            9, 13, 7, 13,
+            7, 13, 7, 10,
+            5, 7, 7, 10
+        }, batch);
+        byte[] rgba = new byte[4];
+        batch.getColor(0, rgba);
+        Assert.assertArrayEquals(new byte[] { 10, 20, 30, -1 }, rgba);
+        batch.getColor(9, rgba);
+        Assert.assertArrayEquals(new byte[] { 40, 50, 60, 70 }, rgba);
+        Assert.assertEquals(2, batch.getPrimitiveCount());
+    }
+
+    @Test
+    public void testInstances() {
+        PrimitiveBatch batch = new PrimitiveBatch(null);
+        batch.setTransform(AffineTransform.getTranslateInstance(100, 0));
+        Assert.assertTrue(batch.accepts(GL2.GL_TRIANGLES, 0, 1));
+        FloatBuffer triangle = VertexArray.newByteBuffer(6 * 4).asFloatBuffer();
+        triangle.put(new float[] { 0, 0, 1, 0, 0, 1 });
+        // A translation, then a scale by 2
+        float[] matrices = { 1, 0, 0, 1, 10, 20,  2, 0, 0, 2, 0, 0 };
+        batch.addInstance(triangle, 3, matrices, 0);
+        batch.addInstance(triangle, 3, matrices, 6);
+        assertVertices(new double[] {
+            110, 20, 111, 20, 110, 21,
+            100, 0, 102, 0, 100, 2
+        }, batch);
+    }
+}
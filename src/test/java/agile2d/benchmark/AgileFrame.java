@@ -17,6 +17,7 @@ import javax.media.opengl.glu.GLU;
 import javax.media.opengl.GLEventListener;
 
 import agile2d.AgileGraphics2D;
+import agile2d.AgileRenderingHints;
 
 /**
  * <b>AgileCanvas</b>
@@ -29,6 +30,8 @@ public class AgileFrame implements GLEventListener, KeyListener{
     private AnimeBenchmark bench;
     private int w, h;
     private static int current_strategy = AgileGraphics2D.ROUGH_TEXT_RENDERING_STRATEGY;
+    // Run with -Dagile2d.instances=true to fill the ovals as instances
+    private final static boolean USE_INSTANCES = Boolean.getBoolean("agile2d.instances");
 
     public void setStrategy(int strat){
         current_strategy = strat;
@@ -97,16 +100,22 @@ public class AgileFrame implements GLEventListener, KeyListener{
 
         // Restore all the Java2D Graphics defaults
         jgraphics.resetAll(drawable);
+        // Batch the small primitives into as few draw calls as possible
+        jgraphics.setRenderingHint(AgileRenderingHints.KEY_BATCH_PRIMITIVES_HINT, Boolean.TRUE);
 
         // Paint sample primitives
         jgraphics.setBackground(Color.WHITE);
         jgraphics.clearRect(0, 0, w, h);
 
-        AnimeBenchmark.drawFullOvals(jgraphics);
+        if (USE_INSTANCES)
+            AnimeBenchmark.drawFullOvalInstances(jgraphics);
+        else
+            AnimeBenchmark.drawFullOvals(jgraphics);
         AnimeBenchmark.drawRects(jgraphics);
         AnimeBenchmark.drawImages(jgraphics);
         AnimeBenchmark.drawBigText(AnimeBenchmark.WIN_W, AnimeBenchmark.WIN_H, jgraphics);
         AnimeBenchmark.drawEmptyOvals(jgraphics);
+        jgraphics.flush();
 
         bench.increment();
         bench.step();
@@ -13,6 +13,7 @@ import java.awt.Graphics2D;
 import java.awt.GraphicsEnvironment;
 import java.awt.Image;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.net.URL;
@@ -20,6 +21,8 @@ import java.util.Random;
 
 import javax.imageio.ImageIO;
 
+import agile2d.AgileGraphics2D;
+
 public class AnimeBenchmark{
     public final static int WIN_W = 960;
     public final static int WIN_H = 900;
@@ -55,6 +58,9 @@ public class AnimeBenchmark{
     private static String[] availableNames = {"imgBench1.jpg", "imgBench2.jpg", "imgBench3.jpg", "imgBench4.jpg", "imgBench5.jpg", "imgBench6.jpg", "imgBench7.jpg", "imgBench8.jpg", "imgBench9.jpg", "imgBench10.jpg", "imgBench11.jpg", "imgBench12.jpg", "imgBench13.jpg", "imgBench14.jpg", "imgBench15.jpg"};
     private static String[] imageNames = new String[MAX_NB_IMAGES];
     private final static AffineTransform idTransform = new AffineTransform();
+    private final static Ellipse2D unitOval = new Ellipse2D.Double(0, 0, 1, 1);
+    private static float[] ovalTransforms = new float[MAX_NB_SHAPES * 6];
+    private static int[] ovalColors = new int[MAX_NB_SHAPES];
 
     private int frame_counter;
     private long lastFPS;
@@ -197,6 +203,25 @@ public class AnimeBenchmark{
         }
     }
 
+    // Same as drawFullOvals, with one call for all the ovals
+    public static void drawFullOvalInstances(AgileGraphics2D g2){
+        int first_fillOval = 2*(MAX_NB_SHAPES/3);
+        for(int i=0; i<nb_fullOvals; i++){
+            int[] c = shapeCoord[first_fillOval+i];
+            int k = i*6;
+            ovalTransforms[k] = c[2];
+            ovalTransforms[k+1] = 0;
+            ovalTransforms[k+2] = 0;
+            ovalTransforms[k+3] = c[3];
+            ovalTransforms[k+4] = c[0];
+            ovalTransforms[k+5] = c[1];
+            ovalColors[i] = shapeColor[first_fillOval+i].getRGB();
+        }
+        g2.scale(zFactor, zFactor);
+        g2.fillInstances(unitOval, ovalTransforms, ovalColors, nb_fullOvals);
+        g2.setTransform(idTransform);
+    }
+
     public static void setNbFonts(int n){
         nb_fonts = n;
     }
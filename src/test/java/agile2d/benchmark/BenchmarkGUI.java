@@ -50,7 +50,7 @@ public class BenchmarkGUI implements ActionListener, ChangeListener, Runnable{
     G2DFrame simplePanel;
     JPanel mainPanel, leftPanel, topPanel, radioPanel, canvasRadioPanel;
     JSlider sliderFFamilies, sliderFFRepeat, sliderRects, sliderEmptyOvals, sliderFilledOvals, sliderImages;
-    JRadioButton bestStrButton, roughStrButton;
+    JRadioButton bestStrButton, roughStrButton, fieldStrButton;
     JRadioButton gljBut, glcBut, newtBut, jfBut;
     ButtonGroup strGroup, canvasGroup;
     JLabel fpsLabel;
@@ -76,6 +76,7 @@ public class BenchmarkGUI implements ActionListener, ChangeListener, Runnable{
     private void enableAgileOptions(boolean b_){
         this.roughStrButton.setEnabled(b_);
         this.bestStrButton.setEnabled(b_);
+        this.fieldStrButton.setEnabled(b_);
     }
 
 
@@ -185,7 +186,7 @@ public class BenchmarkGUI implements ActionListener, ChangeListener, Runnable{
         //Label
         fpsLabel = new JLabel("Initializing...");
         //Radio buttons
-        radioPanel = new JPanel(new GridLayout(1, 2));
+        radioPanel = new JPanel(new GridLayout(1, 3));
         radioPanel.setBorder(BorderFactory.createEtchedBorder());
         canvasRadioPanel = new JPanel(new GridLayout(1, 3));
         canvasRadioPanel.setBorder(BorderFactory.createEtchedBorder());
@@ -231,16 +232,24 @@ public class BenchmarkGUI implements ActionListener, ChangeListener, Runnable{
         if(agile.getStrategy()==AgileGraphics2D.ROUGH_TEXT_RENDERING_STRATEGY)
             roughStrButton.setSelected(true);
 
+        fieldStrButton = new JRadioButton("Distance Field Text Render Strategy");
+        fieldStrButton.setActionCommand("FieldRender");
+        if(agile.getStrategy()==AgileGraphics2D.DISTANCE_FIELD_TEXT_RENDERING_STRATEGY)
+            fieldStrButton.setSelected(true);
+
         //Group the radio buttons.
         strGroup.add(bestStrButton);
         strGroup.add(roughStrButton);
+        strGroup.add(fieldStrButton);
 
         //Register a listener for the radio buttons.
         bestStrButton.addActionListener(this);
         roughStrButton.addActionListener(this);
+        fieldStrButton.addActionListener(this);
 
         radioPanel.add(bestStrButton);
         radioPanel.add(roughStrButton);
+        radioPanel.add(fieldStrButton);
 
         //Canvas group buttons
         canvasGroup = new ButtonGroup();
@@ -365,6 +374,9 @@ public class BenchmarkGUI implements ActionListener, ChangeListener, Runnable{
         else if ("BestRender".equals(e.getActionCommand())) {
             agile.setStrategy(AgileGraphics2D.BEST_TEXT_RENDERING_STRATEGY);
         }
+        else if ("FieldRender".equals(e.getActionCommand())) {
+            agile.setStrategy(AgileGraphics2D.DISTANCE_FIELD_TEXT_RENDERING_STRATEGY);
+        }
         else if ("GLJPanel".equals(e.getActionCommand())) {
             removeCurrentCanvas();
             currentCanvas=GLJPANEL_TYPE;
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d.test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import agile2d.geom.BufferPool;
+import agile2d.geom.VertexArray;
+
+/**
+ * <b>TestBufferPool</b>
+ * Checks the size classes, the reuse of released buffers and the storage
+ * of vertex arrays.
+ */
+public class TestBufferPool {
+    @Test
+    public void testSizeClasses() {
+        Assert.assertEquals(BufferPool.MIN_SHIFT, BufferPool.getSizeClass(0));
+        Assert.assertEquals(BufferPool.MIN_SHIFT, BufferPool.getSizeClass(64));
+        Assert.assertEquals(7, BufferPool.getSizeClass(65));
+        Assert.assertEquals(10, BufferPool.getSizeClass(1024));
+        Assert.assertEquals(-1, BufferPool.getSizeClass((1 << BufferPool.MAX_SHIFT) + 1));
+
+        ByteBuffer b = BufferPool.allocate(100);
+        Assert.assertTrue(b.isDirect());
+        Assert.assertEquals(ByteOrder.nativeOrder(), b.order());
+        Assert.assertEquals(128, b.capacity());
+        Assert.assertEquals(0, b.position());
+        BufferPool.release(b);
+    }
+
+    @Test
+    public void testReuse() {
+        ByteBuffer a = BufferPool.allocate(3000);
+        ByteBuffer b = BufferPool.allocate(3000);
+        long used = BufferPool.getUsedBytes();
+        BufferPool.release(a);
+        Assert.assertEquals(used - 4096, BufferPool.getUsedBytes());
+        ByteBuffer c = BufferPool.allocate(2500);
+        Assert.assertSame(a, c);
+        Assert.assertEquals(0, c.position());
+        Assert.assertEquals(4096, c.limit());
+
+        // Slab slices do not overlap
+        c.putInt(0, 1234);
+        b.putInt(0, 5678);
+        Assert.assertEquals(1234, c.getInt(0));
+        Assert.assertTrue(BufferPool.getHighWaterBytes() >= BufferPool.getUsedBytes());
+        BufferPool.release(b);
+        BufferPool.release(c);
+    }
+
+    @Test
+    public void testVertexArray() {
+        VertexArray array = new VertexArray();
+        array.setMode(VertexArray.MODE_TRIANGLES);
+        for (int i = 0; i < 3; i++)
+            array.addVertex(i, 2 * i);
+        Assert.assertEquals(256, array.getDataRef().capacity());
+        array.trimToSize();
+        Assert.assertEquals(16, array.getDataRef().capacity());
+        Assert.assertEquals(3, array.getVertexCount());
+        float[] coords = new float[2];
+        array.getVertex(2, coords);
+        Assert.assertEquals(4f, coords[1], 0);
+
+        for (int i = 0; i < 100; i++)
+            array.addVertex(i, i);
+        Assert.assertEquals(103, array.getVertexCount());
+        array.getVertex(102, coords);
+        Assert.assertEquals(99f, coords[0], 0);
+
+        array.release();
+        Assert.assertEquals(0, array.getVertexCount());
+        array.setMode(VertexArray.MODE_LINES);
+        array.addVertex(1, 2);
+        array.getVertex(0, coords);
+        Assert.assertEquals(2f, coords[1], 0);
+        array.release();
+        array.release();
+    }
+
+    @Test
+    public void testStorage() {
+        VertexArray array = new VertexArray();
+        array.setMode(VertexArray.MODE_TRIANGLES);
+        array.addVertex(-10, 5);
+        array.addVertex(20.5f, 7);
+        array.addVertex(3.25f, 105);
+        float[] coords = new float[2];
+
+        array.setStorage(VertexArray.STORAGE_HEAP);
+        Assert.assertEquals(VertexArray.STORAGE_HEAP, array.getStorage());
+        array.getVertex(1, coords);
+        Assert.assertEquals(20.5f, coords[0], 0);
+        array.addVertex(1, 1);
+        Assert.assertEquals(4, array.getVertexCount());
+        Assert.assertEquals(8, array.getDataRef().remaining());
+
+        array.setStorage(VertexArray.STORAGE_SHORT);
+        array.getVertex(2, coords);
+        Assert.assertEquals(3.25f, coords[0], 30.5 / 65534);
+        Assert.assertEquals(105f, coords[1], 104.0 / 65534);
+        ShortBuffer shorts = ShortBuffer.allocate(8);
+        array.putQuantized(shorts);
+        float[] q = new float[4];
+        array.getQuantization(q);
+        Assert.assertEquals(-10f, q[2] + q[0] * shorts.get(0), 30.5 / 65534);
+        Assert.assertEquals(-32767, shorts.get(0));
+        // Drawn in place from a direct buffer
+        ShortBuffer ref = array.getQuantizedRef();
+        Assert.assertTrue(ref.isDirect());
+        Assert.assertEquals(0, ref.position());
+        for (int i = 0; i < 6; i++)
+            Assert.assertEquals(shorts.get(i), ref.get(i));
+
+        // Adding to quantized coordinates goes back to floats
+        array.addVertex(2, 2);
+        Assert.assertEquals(VertexArray.STORAGE_HEAP, array.getStorage());
+        Assert.assertEquals(5, array.getVertexCount());
+        array.setStorage(VertexArray.STORAGE_DIRECT);
+        Assert.assertTrue(array.getDataRef().isDirect());
+        array.getVertex(4, coords);
+        Assert.assertEquals(2f, coords[0], 0);
+        array.release();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d.test;
+
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Ellipse2D;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import agile2d.DistanceField;
+import agile2d.GlyphAtlas;
+
+/**
+ * <b>TestDistanceField</b>
+ * Checks the distance fields of a disc and of glyphs stored as distance
+ * fields in a GlyphAtlas.
+ */
+public class TestDistanceField {
+    @Test
+    public void testDisc() {
+        int size = 64;
+        double spread = 8;
+        byte[] field = new byte[size * size];
+        // A disc of radius 20 centered in the field
+        DistanceField.compute(new Ellipse2D.Double(12, 12, 40, 40), 0, 0, size, size,
+                              spread, 4, field, 0, size);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                double r = Math.hypot(x + 0.5 - 32, y + 0.5 - 32);
+                double expected = 0.5 - (r - 20) / (2 * spread);
+                expected = Math.max(0, Math.min(1, expected));
+                double actual = (field[y * size + x] & 0xFF) / 255.0;
+                // Within a third of a pixel
+                Assert.assertEquals(expected, actual, 0.34 / (2 * spread) + 1 / 255.0);
+            }
+        }
+    }
+
+    @Test
+    public void testAtlas() {
+        Font font = new Font("Dialog", Font.PLAIN, 48);
+        FontRenderContext frc = new FontRenderContext(null, true, true);
+        int code = font.createGlyphVector(frc, "O").getGlyphCode(0);
+        GlyphAtlas images = new GlyphAtlas(256, 256, 1);
+        GlyphAtlas fields = new GlyphAtlas(256, 256, 1, 6);
+        GlyphAtlas.Glyph image = images.getGlyph(font, 1, true, true, code);
+        GlyphAtlas.Glyph field = fields.getGlyph(font, 1, true, true, code);
+        Assert.assertEquals(6, fields.getSpread());
+        // The field covers the outline and the spread around it
+        Assert.assertTrue(Math.abs(field.getWidth() - 12 - image.getWidth()) <= 2);
+        Assert.assertTrue(Math.abs(field.getLeft() + 6 - image.getLeft()) <= 1);
+        Assert.assertEquals(image.getAdvance(), field.getAdvance(), 0);
+
+        byte[] pixels = fields.getPagePixels(field.getPage());
+        int width = fields.getPageWidth();
+        int x0 = field.getX() + 1, y0 = field.getY() + 1;
+        int cy = y0 + field.getHeight() / 2;
+        // Outside at the border, inside on the ring, outside in the hole
+        Assert.assertEquals(0, pixels[cy * width + x0] & 0xFF);
+        int inside = 0;
+        for (int x = x0; x < x0 + field.getWidth() / 4; x++)
+            inside = Math.max(inside, pixels[cy * width + x] & 0xFF);
+        Assert.assertTrue(inside > 128);
+        Assert.assertTrue((pixels[cy * width + x0 + field.getWidth() / 2] & 0xFF) < 128);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d.test;
+
+import java.awt.Font;
+import java.awt.Rectangle;
+import java.awt.font.FontRenderContext;
+import java.util.ArrayList;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import agile2d.GlyphAtlas;
+
+/**
+ * <b>TestGlyphAtlas</b>
+ * Checks the packing of glyphs into the pages of a GlyphAtlas, the
+ * eviction of the least recently used page and the glyphs of fallback fonts.
+ */
+public class TestGlyphAtlas {
+    static final FontRenderContext FRC = new FontRenderContext(null, true, false);
+
+    static int code(Font font, char c) {
+        return font.createGlyphVector(FRC, new char[] { c }).getGlyphCode(0);
+    }
+
+    static boolean inked(GlyphAtlas atlas, GlyphAtlas.Glyph g) {
+        byte[] pixels = atlas.getPagePixels(g.getPage());
+        int width = atlas.getPageWidth();
+        for (int y = 0; y < g.getHeight() + 2; y++)
+            for (int x = 0; x < g.getWidth() + 2; x++)
+                if (pixels[(g.getY() + y) * width + g.getX() + x] != 0)
+                    return true;
+        return false;
+    }
+
+    @Test
+    public void testPacking() {
+        Font font = new Font("Dialog", Font.PLAIN, 12);
+        GlyphAtlas atlas = new GlyphAtlas(256, 256, 4);
+        ArrayList<GlyphAtlas.Glyph> glyphs = new ArrayList<GlyphAtlas.Glyph>();
+        // Latin, Cyrillic and Greek letters
+        String s = "AgQ\u0416\u0436\u042f\u03a9\u03b2";
+        for (int i = 0; i < s.length(); i++) {
+            GlyphAtlas.Glyph g = atlas.getGlyph(font, 2, true, false, code(font, s.charAt(i)));
+            Assert.assertNotNull(g);
+            Assert.assertTrue(g.getWidth() > 0);
+            Assert.assertTrue(inked(atlas, g));
+            glyphs.add(g);
+        }
+        // Every glyph of the font at two scales
+        for (int code = 0; code < font.getNumGlyphs(); code++) {
+            for (int scale = 1; scale <= 2; scale++) {
+                GlyphAtlas.Glyph g = atlas.getGlyph(font, scale, true, false, code);
+                Assert.assertNotNull(g);
+                glyphs.add(g);
+            }
+        }
+        Assert.assertEquals(4, atlas.getPageCount());
+        Assert.assertTrue(atlas.getEvictionCount() > 0);
+        Assert.assertTrue(atlas.getGlyphCount() < 2 * font.getNumGlyphs());
+
+        // The glyphs still in the atlas do not overlap
+        for (int p = 0; p < atlas.getPageCount(); p++) {
+            ArrayList<Rectangle> page = new ArrayList<Rectangle>();
+            for (int i = 0; i < glyphs.size(); i++) {
+                GlyphAtlas.Glyph g = glyphs.get(i);
+                if (g.getPage() != p || g.getWidth() == 0)
+                    continue;
+                Rectangle r = new Rectangle(g.getX(), g.getY(), g.getWidth() + 2, g.getHeight() + 2);
+                Assert.assertTrue(new Rectangle(0, 0, 256, 256).contains(r));
+                for (int j = 0; j < page.size(); j++)
+                    Assert.assertFalse(page.get(j).intersects(r));
+                page.add(r);
+            }
+        }
+
+        // The same key returns the same glyph, other flags another one
+        GlyphAtlas.Glyph a = atlas.getGlyph(font, 1, true, false, code(font, 'A'));
+        Assert.assertSame(a, atlas.getGlyph(font, 1.001, true, false, code(font, 'A')));
+        Assert.assertNotSame(a, atlas.getGlyph(font, 1, false, false, code(font, 'A')));
+        Assert.assertNotSame(a, atlas.getGlyph(font.deriveFont(Font.BOLD), 1, true, false, code(font, 'A')));
+    }
+
+    @Test
+    public void testEviction() {
+        Font font = new Font("Dialog", Font.PLAIN, 20);
+        GlyphAtlas atlas = new GlyphAtlas(48, 48, 2);
+        GlyphAtlas.Glyph kept = atlas.getGlyph(font, 1, true, false, code(font, 'W'));
+        int version = atlas.getPageVersion(kept.getPage());
+        ArrayList<GlyphAtlas.Glyph> others = new ArrayList<GlyphAtlas.Glyph>();
+        for (char c = 'a'; c <= 'z'; c++) {
+            others.add(atlas.getGlyph(font, 1, true, false, code(font, c)));
+            // Using it keeps its page from being evicted
+            Assert.assertSame(kept, atlas.getGlyph(font, 1, true, false, code(font, 'W')));
+        }
+        Assert.assertTrue(atlas.getPageCount() <= 2);
+        Assert.assertTrue(atlas.getEvictionCount() > 0);
+        Assert.assertFalse(kept.isEvicted());
+        Assert.assertTrue(inked(atlas, kept));
+        Assert.assertTrue(atlas.getPageVersion(kept.getPage()) > version);
+        int evicted = 0;
+        for (int i = 0; i < others.size(); i++)
+            if (others.get(i).isEvicted())
+                evicted++;
+        Assert.assertTrue(evicted > 0);
+        Assert.assertEquals(others.size() + 1 - evicted, atlas.getGlyphCount());
+
+        // Too large for a page
+        Assert.assertNull(atlas.getGlyph(font, 10, true, false, code(font, 'W')));
+
+        atlas.clear();
+        Assert.assertEquals(0, atlas.getGlyphCount());
+        Assert.assertTrue(kept.isEvicted());
+    }
+
+    @Test
+    public void testChangedRows() {
+        Font font = new Font("Dialog", Font.PLAIN, 12);
+        GlyphAtlas atlas = new GlyphAtlas(128, 128, 1);
+        int[] rows = new int[2];
+        GlyphAtlas.Glyph a = atlas.getGlyph(font, 1, true, false, code(font, 'A'));
+        Assert.assertTrue(atlas.getChangedRows(0, 0, rows));
+        Assert.assertEquals(0, rows[0]);
+        Assert.assertEquals(a.getHeight() + 2, rows[1]);
+        int version = atlas.getPageVersion(0);
+        Assert.assertFalse(atlas.getChangedRows(0, version, rows));
+        Assert.assertEquals((double)(a.getWidth() + 2) * (a.getHeight() + 2) / (128 * 128),
+                            atlas.getOccupancy(), 1e-9);
+
+        // Fill the first shelf, then start a second one
+        GlyphAtlas.Glyph g;
+        do {
+            g = atlas.getGlyph(font, 1, true, false, code(font, 'M'));
+            font = font.deriveFont(font.getSize2D() * 0.99f);
+        } while (g.getY() == 0);
+        Assert.assertTrue(atlas.getChangedRows(0, version, rows));
+        Assert.assertEquals(0, rows[0]);
+        Assert.assertEquals(g.getY() + g.getHeight() + 2, rows[1]);
+        version = atlas.getPageVersion(0);
+        atlas.getGlyph(font, 1, true, false, code(font, 'N'));
+        Assert.assertTrue(atlas.getChangedRows(0, version, rows));
+        Assert.assertEquals(g.getY(), rows[0]);
+    }
+
+    @Test
+    public void testRuns() {
+        Font font = new Font("Dialog", Font.PLAIN, 20);
+        GlyphAtlas atlas = new GlyphAtlas(48, 48, 2);
+        ArrayList<GlyphAtlas.Glyph> run = new ArrayList<GlyphAtlas.Glyph>();
+        atlas.beginRun();
+        GlyphAtlas.Glyph g;
+        char c = 'a';
+        while ((g = atlas.getGlyph(font, 1, true, false, code(font, c++))) != null)
+            run.add(g);
+        // Both pages are full of glyphs of the run, none was evicted
+        Assert.assertEquals(2, atlas.getPageCount());
+        Assert.assertEquals(0, atlas.getEvictionCount());
+        for (int i = 0; i < run.size(); i++)
+            Assert.assertFalse(run.get(i).isEvicted());
+        // A new run can evict them
+        atlas.beginRun();
+        Assert.assertNotNull(atlas.getGlyph(font, 1, true, false, code(font, c)));
+        Assert.assertEquals(1, atlas.getEvictionCount());
+        atlas.endRun();
+    }
+
+    @Test
+    public void testFallbackGlyphs() {
+        // Logical fonts give the characters missing from their first
+        // physical font a glyph code with the slot of a fallback font in
+        // its high byte, beyond the number of glyphs of the font
+        Font font = new Font("Serif", Font.PLAIN, 20);
+        int code = code(font, '\u2603');
+        Assert.assertTrue(code >>> 24 != 0);
+        Assert.assertTrue(code >= font.getNumGlyphs());
+        Assert.assertFalse(GlyphAtlas.isInvisible(code));
+        GlyphAtlas atlas = new GlyphAtlas(128, 128, 1);
+        GlyphAtlas.Glyph g = atlas.getGlyph(font, 1, true, false, code);
+        Assert.assertNotNull(g);
+        Assert.assertTrue(g.getWidth() > 0);
+        Assert.assertTrue(inked(atlas, g));
+
+        // Tabs and line separators are mapped to invisible glyphs
+        Assert.assertTrue(GlyphAtlas.isInvisible(code(font, '\t')));
+        Assert.assertTrue(GlyphAtlas.isInvisible(0xFFFE));
+        Assert.assertTrue(GlyphAtlas.isInvisible((code & 0xFF000000) | 0xFFFF));
+        Assert.assertFalse(GlyphAtlas.isInvisible(code(font, 'A')));
+    }
+}
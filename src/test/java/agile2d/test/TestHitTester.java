@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d.test;
+
+import java.awt.BasicStroke;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import agile2d.HitTester;
+
+/**
+ * <b>TestHitTester</b>
+ * Compares the results of a HitTester with those of Java2D's
+ * Graphics2D.hit for random shapes, rectangles and transforms, on filled
+ * shapes and on strokes with every join and cap. The rectangles closer
+ * to the outline than the flattening tolerance are skipped. Also checks
+ * that only the part of the rectangle inside the clip is tested.
+ */
+public class TestHitTester {
+    static final int CASES = 20000;
+    // Flattening tolerance of the HitTester, in pixels
+    static final double TOLERANCE = 0.25;
+
+    static final int[] JOINS = {
+        BasicStroke.JOIN_MITER, BasicStroke.JOIN_ROUND, BasicStroke.JOIN_BEVEL
+    };
+    static final int[] CAPS = {
+        BasicStroke.CAP_BUTT, BasicStroke.CAP_ROUND, BasicStroke.CAP_SQUARE
+    };
+
+    // A polygon or a star with 5 or 7 points, convex, or concave and
+    // self-intersecting depending on its step
+    static Shape star(Random random) {
+        GeneralPath p = new GeneralPath();
+        int n = 5 + 2 * random.nextInt(2);
+        int step = 1 + random.nextInt(n / 2);
+        for (int i = 0; i < n; i++) {
+            double a = 2 * Math.PI * i * step / n;
+            double x = 50 + 40 * Math.cos(a), y = 50 + 40 * Math.sin(a);
+            if (i == 0)
+                p.moveTo(x, y);
+            else
+                p.lineTo(x, y);
+        }
+        p.closePath();
+        return p;
+    }
+
+    static Shape randomShape(Random random) {
+        switch (random.nextInt(4)) {
+        case 0:
+            return new Ellipse2D.Double(10, 20, 80, 50);
+        case 1:
+            return new RoundRectangle2D.Double(10, 10, 70, 60, 20, 30);
+        case 2:
+            return star(random);
+        default:
+            // An open curve
+            GeneralPath p = new GeneralPath();
+            p.moveTo(10, 80);
+            p.curveTo(30, 0, 70, 100, 90, 20);
+            p.quadTo(60, 60, 40, 30);
+            return p;
+        }
+    }
+
+    static AffineTransform randomTransform(Random random) {
+        AffineTransform at = new AffineTransform();
+        at.translate(random.nextDouble() * 40 - 20, random.nextDouble() * 40 - 20);
+        if (random.nextBoolean())
+            at.rotate(random.nextDouble() * 2 * Math.PI, 50, 50);
+        at.scale(0.5 + random.nextDouble() * 2, 0.5 + random.nextDouble() * 2);
+        return at;
+    }
+
+    static Rectangle randomRect(Random random) {
+        // Small rectangles, including empty ones, around the shapes
+        return new Rectangle(random.nextInt(240) - 40, random.nextInt(240) - 40,
+                             random.nextInt(12), random.nextInt(12));
+    }
+
+    // Tells if the result of Java2D changes when the rectangle is grown or
+    // shrunk by the flattening tolerance, so that it is too close to the
+    // outline for the triangles to give the same result
+    static boolean isAmbiguous(Rectangle rect, Shape shape, BasicStroke stroke,
+                               boolean onStroke, AffineTransform at) {
+        if (rect.isEmpty())
+            return false;
+        Shape s = at.createTransformedShape(onStroke ? stroke.createStrokedShape(shape) : shape);
+        double t = TOLERANCE;
+        return s.intersects(rect.x - t, rect.y - t, rect.width + 2 * t, rect.height + 2 * t)
+            != s.intersects(rect.x + t, rect.y + t, rect.width - 2 * t, rect.height - 2 * t);
+    }
+
+    void compare(boolean onStroke, long seed) {
+        Random random = new Random(seed);
+        HitTester tester = new HitTester();
+        BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        int hits = 0;
+        int ambiguous = 0;
+        for (int i = 0; i < CASES; i++) {
+            Shape shape = randomShape(random);
+            AffineTransform at = randomTransform(random);
+            Rectangle rect = randomRect(random);
+            BasicStroke stroke = new BasicStroke(1 + random.nextFloat() * 9,
+                                                 CAPS[i % 3], JOINS[i / 3 % 3], 4);
+            g.setTransform(at);
+            g.setStroke(stroke);
+            boolean expected = g.hit(rect, shape, onStroke);
+            if (isAmbiguous(rect, shape, stroke, onStroke, at)) {
+                ambiguous++;
+                continue;
+            }
+            boolean actual = tester.hit(rect, shape, stroke, onStroke, at, false);
+            Assert.assertEquals("case " + i + ": " + rect + " " + at, expected, actual);
+            if (expected)
+                hits++;
+        }
+        g.dispose();
+        // Few cases are skipped, both outcomes are tested
+        Assert.assertTrue(ambiguous < CASES / 20);
+        Assert.assertTrue(hits > CASES / 20);
+        Assert.assertTrue(hits < CASES * 9 / 10);
+    }
+
+    @Test
+    public void testFill() {
+        compare(false, 1);
+    }
+
+    @Test
+    public void testStroke() {
+        compare(true, 2);
+    }
+
+    @Test
+    public void testEmptyRect() {
+        HitTester tester = new HitTester();
+        Shape shape = new Ellipse2D.Double(0, 0, 100, 100);
+        BasicStroke stroke = new BasicStroke(4);
+        AffineTransform at = new AffineTransform();
+        Assert.assertTrue(tester.hit(new Rectangle(40, 40, 20, 20), shape, stroke, false, at, false));
+        Assert.assertFalse(tester.hit(new Rectangle(40, 40, 0, 20), shape, stroke, false, at, false));
+        Assert.assertFalse(tester.hit(new Rectangle(40, 40, 20, 0), shape, stroke, false, at, false));
+        Assert.assertFalse(tester.hit(new Rectangle(0, 48, 0, 4), shape, stroke, true, at, false));
+        Assert.assertFalse(tester.hit(new Rectangle(40, 40, -5, 20), shape, stroke, false, at, false));
+    }
+
+    @Test
+    public void testClip() {
+        HitTester tester = new HitTester();
+        Shape shape = new Ellipse2D.Double(0, 0, 100, 100);
+        BasicStroke stroke = new BasicStroke(4);
+        AffineTransform at = AffineTransform.getScaleInstance(2, 2);
+        Rectangle rect = new Rectangle(90, 90, 20, 20);
+        Assert.assertTrue(tester.hit(rect, shape, stroke, false, at, null, false));
+        // A clip excluding the shape
+        Shape clip = new Rectangle(300, 300, 100, 100);
+        Assert.assertFalse(tester.hit(rect, shape, stroke, false, at, clip, false));
+        Assert.assertFalse(tester.hit(rect, shape, stroke, true, at, clip, false));
+        Assert.assertFalse(tester.hit(new Rectangle(250, 250, 100, 100), shape, stroke, false, at, clip, true));
+        // A clip keeping only the part of the rectangle outside the shape
+        clip = new Rectangle(0, 0, 12, 12);
+        Assert.assertTrue(tester.hit(new Rectangle(0, 0, 200, 200), shape, stroke, false, at, null, false));
+        Assert.assertFalse(tester.hit(new Rectangle(0, 0, 200, 200), shape, stroke, false, at, clip, false));
+        // The clip and the rectangle only overlap at the corner of its bounds
+        clip = new Ellipse2D.Double(100, 100, 100, 100);
+        Assert.assertFalse(tester.hit(new Rectangle(95, 95, 10, 10), shape, stroke, false, at, clip, false));
+        Assert.assertTrue(tester.hit(new Rectangle(145, 145, 10, 10), shape, stroke, false, at, clip, false));
+    }
+
+    @Test
+    public void testImmutable() {
+        // The cached triangles and last query give the same results
+        Random random = new Random(3);
+        HitTester tester = new HitTester();
+        Shape shape = star(random);
+        BasicStroke stroke = new BasicStroke(3);
+        for (int i = 0; i < 2000; i++) {
+            AffineTransform at = i % 2 == 0 ? new AffineTransform() : randomTransform(random);
+            Rectangle rect = randomRect(random);
+            boolean onStroke = random.nextBoolean();
+            boolean expected = tester.hit(rect, shape, stroke, onStroke, at, false);
+            Assert.assertEquals(expected, tester.hit(rect, shape, stroke, onStroke, at, true));
+            Assert.assertEquals(expected, tester.hit(rect, shape, stroke, onStroke, at, true));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d.test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import agile2d.scene.Scene;
+import agile2d.scene.SceneNode;
+
+/**
+ * <b>TestScene</b>
+ * Checks the queries of the spatial index of a scene against a linear scan,
+ * while nodes are added, moved and removed.
+ */
+public class TestScene {
+    private static SceneNode randomNode(Random random) {
+        double x = random.nextDouble() * 1000, y = random.nextDouble() * 1000;
+        double w = 1 + random.nextDouble() * 20, h = 1 + random.nextDouble() * 20;
+        return new SceneNode(new Rectangle2D.Double(x, y, w, h), Color.red);
+    }
+
+    private static void assertSameQuery(Scene scene, List<SceneNode> nodes, Rectangle2D rect) {
+        HashSet<SceneNode> expected = new HashSet<SceneNode>();
+        for (SceneNode node : nodes) {
+            Rectangle2D b = node.getBounds();
+            if (b.getMinX() <= rect.getMaxX() && rect.getMinX() <= b.getMaxX()
+                && b.getMinY() <= rect.getMaxY() && rect.getMinY() <= b.getMaxY())
+                expected.add(node);
+        }
+        List<SceneNode> found = scene.query(rect, null);
+        Assert.assertEquals(expected, new HashSet<SceneNode>(found));
+        Assert.assertEquals(expected.size(), found.size());
+    }
+
+    @Test
+    public void testIncrementalIndex() {
+        Random random = new Random(42);
+        Scene scene = new Scene();
+        List<SceneNode> nodes = new ArrayList<SceneNode>();
+        for (int step = 0; step < 3000; step++) {
+            int op = random.nextInt(4);
+            if (op <= 1 || nodes.isEmpty()) {
+                SceneNode node = randomNode(random);
+                scene.add(node);
+                nodes.add(node);
+            }
+            else if (op == 2) {
+                SceneNode node = nodes.remove(random.nextInt(nodes.size()));
+                Assert.assertTrue(scene.remove(node));
+                Assert.assertNull(node.getScene());
+            }
+            else {
+                SceneNode node = nodes.get(random.nextInt(nodes.size()));
+                node.setTransform(AffineTransform.getTranslateInstance(random.nextDouble() * 200 - 100,
+                                                                       random.nextDouble() * 200 - 100));
+            }
+            Assert.assertEquals(nodes.size(), scene.size());
+            if (step % 100 == 0) {
+                for (int i = 0; i < 10; i++) {
+                    double x = random.nextDouble() * 1000, y = random.nextDouble() * 1000;
+                    assertSameQuery(scene, nodes, new Rectangle2D.Double(x, y, random.nextDouble() * 200,
+                                                                         random.nextDouble() * 200));
+                }
+            }
+        }
+        while (!nodes.isEmpty()) {
+            scene.remove(nodes.remove(nodes.size() - 1));
+            if (nodes.size() % 50 == 0)
+                assertSameQuery(scene, nodes, new Rectangle2D.Double(0, 0, 1000, 1000));
+        }
+        Assert.assertEquals(0, scene.size());
+        Assert.assertNull(scene.getBounds());
+    }
+
+    @Test
+    public void testPick() {
+        Scene scene = new Scene();
+        SceneNode bottom = new SceneNode(new Rectangle2D.Double(0, 0, 100, 100), Color.blue);
+        SceneNode top = new SceneNode(new Ellipse2D.Double(0, 0, 50, 50), Color.red);
+        top.setTransform(AffineTransform.getTranslateInstance(25, 25));
+        scene.add(bottom);
+        scene.add(top);
+        Assert.assertSame(top, scene.pick(50, 50));
+        Assert.assertSame(bottom, scene.pick(27, 27)); // Outside the circle
+        Assert.assertNull(scene.pick(150, 50));
+        scene.toFront(bottom);
+        Assert.assertSame(bottom, scene.pick(50, 50));
+        List<SceneNode> found = scene.query(new Rectangle2D.Double(40, 40, 5, 5), null);
+        Assert.assertEquals(2, found.size());
+        Assert.assertSame(top, found.get(0));
+    }
+
+    @Test
+    public void testRender() {
+        Scene scene = new Scene();
+        for (int i = 0; i < 10; i++)
+            scene.add(new SceneNode(new Rectangle2D.Double(i * 20, 0, 10, 10), Color.green));
+        BufferedImage image = new BufferedImage(100, 20, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setClip(0, 0, 95, 20);
+        Assert.assertEquals(5, scene.render(g));
+        Assert.assertEquals(Color.green.getRGB(), image.getRGB(45, 5));
+        Assert.assertEquals(0, image.getRGB(55, 5));
+        g.dispose();
+    }
+}
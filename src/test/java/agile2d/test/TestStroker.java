@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d.test;
+
+import java.awt.BasicStroke;
+import java.awt.Shape;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import agile2d.Stroker;
+import agile2d.geom.VertexArray;
+
+/**
+ * <b>TestStroker</b>
+ * Checks that the triangles of the direct stroker cover the same area as
+ * the outline computed by BasicStroke, away from its boundary.
+ */
+public class TestStroker {
+    final static private double FLATNESS = 0.05;
+    final static private double MARGIN = 0.4;
+
+    private static VertexArray stroke(Shape shape, BasicStroke stroke) {
+        VertexArray array = new VertexArray();
+        new Stroker().stroke(shape.getPathIterator(null, FLATNESS), stroke, FLATNESS, array);
+        Assert.assertEquals(VertexArray.MODE_TRIANGLES, array.getMode());
+        Assert.assertEquals(0, array.getVertexCount() % 3);
+        return array;
+    }
+
+    private static boolean covers(VertexArray array, double x, double y) {
+        float[] a = new float[2], b = new float[2], c = new float[2];
+        for (int i = 0; i < array.getVertexCount(); i += 3) {
+            array.getVertex(i, a);
+            array.getVertex(i+1, b);
+            array.getVertex(i+2, c);
+            double d1 = (b[0]-a[0])*(y-a[1]) - (b[1]-a[1])*(x-a[0]);
+            double d2 = (c[0]-b[0])*(y-b[1]) - (c[1]-b[1])*(x-b[0]);
+            double d3 = (a[0]-c[0])*(y-c[1]) - (a[1]-c[1])*(x-c[0]);
+            if ((d1 >= 0 && d2 >= 0 && d3 >= 0) || (d1 <= 0 && d2 <= 0 && d3 <= 0))
+                return true;
+        }
+        return false;
+    }
+
+    // Samples the stroked shape on a grid, skipping the samples too close
+    // to the outline to be decided.
+    private static void assertSameCoverage(Shape shape, BasicStroke stroke) {
+        VertexArray array = stroke(shape, stroke);
+        Area outline = new Area(stroke.createStrokedShape(shape));
+        Rectangle2D bounds = outline.getBounds2D();
+        Rectangle2D.Double cell = new Rectangle2D.Double();
+        int checked = 0;
+        for (double y = bounds.getMinY() - 2.3; y < bounds.getMaxY() + 2; y += 0.7) {
+            for (double x = bounds.getMinX() - 2.3; x < bounds.getMaxX() + 2; x += 0.7) {
+                cell.setRect(x - MARGIN, y - MARGIN, 2 * MARGIN, 2 * MARGIN);
+                boolean inside = outline.contains(cell);
+                if (!inside && outline.intersects(cell))
+                    continue;
+                Assert.assertEquals("at "+x+","+y, inside, covers(array, x, y));
+                checked++;
+            }
+        }
+        Assert.assertTrue(checked > 0);
+    }
+
+    private static GeneralPath zigzag() {
+        GeneralPath path = new GeneralPath();
+        path.moveTo(10, 10);
+        path.lineTo(60, 40);
+        path.lineTo(20, 60);
+        path.lineTo(70, 70);
+        path.lineTo(70, 20);
+        return path;
+    }
+
+    @Test
+    public void testJoins() {
+        GeneralPath path = zigzag();
+        assertSameCoverage(path, new BasicStroke(8, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10));
+        assertSameCoverage(path, new BasicStroke(8, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 1.5f));
+        assertSameCoverage(path, new BasicStroke(8, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL));
+        assertSameCoverage(path, new BasicStroke(8, BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND));
+    }
+
+    @Test
+    public void testCaps() {
+        Line2D line = new Line2D.Double(10, 20, 80, 50);
+        assertSameCoverage(line, new BasicStroke(10, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER));
+        assertSameCoverage(line, new BasicStroke(10, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_MITER));
+        assertSameCoverage(line, new BasicStroke(10, BasicStroke.CAP_ROUND, BasicStroke.JOIN_MITER));
+    }
+
+    @Test
+    public void testClosed() {
+        assertSameCoverage(new Rectangle2D.Double(10, 10, 50, 30), new BasicStroke(6));
+        assertSameCoverage(new Ellipse2D.Double(10, 10, 60, 40), new BasicStroke(5));
+    }
+
+    @Test
+    public void testDashes() {
+        float[] dashes = { 12, 5, 3, 5 };
+        assertSameCoverage(zigzag(), new BasicStroke(4, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER,
+                                                     10, dashes, 7));
+        assertSameCoverage(new Rectangle2D.Double(10, 10, 50, 30),
+                           new BasicStroke(3, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND,
+                                           10, dashes, 0));
+    }
+
+    @Test
+    public void testClosedDashes() {
+        // The dash crossing the start of a closed subpath is joined there
+        Rectangle2D rect = new Rectangle2D.Double(0, 0, 100, 100);
+        float[] dashes = { 30, 10 };
+        int[] caps = { BasicStroke.CAP_BUTT, BasicStroke.CAP_SQUARE, BasicStroke.CAP_ROUND };
+        for (int i = 0; i < caps.length; i++) {
+            assertSameCoverage(rect, new BasicStroke(6, caps[i], BasicStroke.JOIN_MITER,
+                                                     10, dashes, 20));
+            assertSameCoverage(rect, new BasicStroke(6, caps[i], BasicStroke.JOIN_ROUND,
+                                                     10, dashes, 5));
+            // Starting in a gap, the first dash is capped
+            assertSameCoverage(rect, new BasicStroke(6, caps[i], BasicStroke.JOIN_MITER,
+                                                     10, dashes, 35));
+            assertSameCoverage(new Ellipse2D.Double(10, 10, 60, 40),
+                               new BasicStroke(4, caps[i], BasicStroke.JOIN_BEVEL,
+                                               10, new float[] { 9, 4, 2, 4 }, 3));
+        }
+        // A single dash covering the whole subpath is capped at its start
+        assertSameCoverage(rect, new BasicStroke(6, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_MITER,
+                                                 10, new float[] { 500, 10 }, 0));
+    }
+}
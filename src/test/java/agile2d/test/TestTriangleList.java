@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d.test;
+
+import java.awt.geom.Ellipse2D;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import agile2d.TriangleListVisitor;
+import agile2d.Triangulator;
+import agile2d.geom.VertexArray;
+
+/**
+ * <b>TestTriangleList</b>
+ * Checks that the primitives of a tesselation merged into an indexed
+ * triangle list cover the same triangles, with their orientation, and
+ * share their vertices.
+ */
+public class TestTriangleList {
+    // Twice the signed areas of the triangles of an array
+    private static double[] areas(VertexArray array) {
+        double[] areas = new double[array.getVertexCount() / 3];
+        float[] a = new float[2], b = new float[2], c = new float[2];
+        for (int i = 0; i < areas.length; i++) {
+            array.getVertex(3 * i, a);
+            array.getVertex(3 * i + 1, b);
+            array.getVertex(3 * i + 2, c);
+            areas[i] = (b[0]-a[0])*(c[1]-a[1]) - (c[0]-a[0])*(b[1]-a[1]);
+        }
+        return areas;
+    }
+
+    private static void send(TriangleListVisitor list, int mode, double[] xy) {
+        list.begin(mode);
+        for (int i = 0; i < xy.length; i += 2)
+            list.addVertex(xy[i], xy[i + 1]);
+        list.end();
+    }
+
+    @Test
+    public void testPrimitives() {
+        TriangleListVisitor list = new TriangleListVisitor();
+        // A counter-clockwise fan, strip and triangle sharing vertices
+        send(list, VertexArray.MODE_TRIANGLE_FAN, new double[] { 0, 0, 2, 0, 2, 2, 0, 2 });
+        send(list, VertexArray.MODE_TRIANGLE_STRIP, new double[] { 2, 0, 4, 0, 2, 2, 4, 2, 2, 4 });
+        send(list, VertexArray.MODE_TRIANGLES, new double[] { 0, 2, 2, 2, 0, 4, 1, 1, 1, 1, 3, 3 });
+        Assert.assertEquals(3, list.getPrimitiveCount());
+        // 2 + 3 + 1 triangles, the degenerate one is dropped
+        Assert.assertEquals(6, list.getTriangleCount());
+        // 16 vertices sent, 10 distinct ones
+        Assert.assertEquals(10, list.getVertices().getVertexCount());
+
+        VertexArray triangles = new VertexArray();
+        triangles.setMode(VertexArray.MODE_TRIANGLES);
+        list.getTriangles(triangles);
+        double[] areas = areas(triangles);
+        double total = 0;
+        for (int i = 0; i < areas.length; i++) {
+            Assert.assertTrue(areas[i] > 0);
+            total += areas[i];
+        }
+        Assert.assertEquals(2 * (4 + 6 + 2), total, 1e-9);
+
+        list.clear();
+        Assert.assertEquals(0, list.getIndexCount());
+        Assert.assertEquals(0, list.getVertices().getVertexCount());
+    }
+
+    @Test
+    public void testSharedVertices() {
+        VertexArray array = new VertexArray();
+        new Triangulator().triangulate(new Ellipse2D.Double(0, 0, 100, 60).getPathIterator(null, 0.01), array);
+        double[] expected = areas(array);
+        TriangleListVisitor list = new TriangleListVisitor();
+        float[] v = new float[2];
+        list.begin(VertexArray.MODE_TRIANGLES);
+        for (int i = 0; i < array.getVertexCount(); i++) {
+            array.getVertex(i, v);
+            list.addVertex(v[0], v[1]);
+        }
+        list.end();
+        Assert.assertTrue(list.getVertices().getVertexCount() * 2 < array.getVertexCount());
+
+        VertexArray triangles = new VertexArray();
+        triangles.setMode(VertexArray.MODE_TRIANGLES);
+        list.getTriangles(triangles);
+        double[] actual = areas(triangles);
+        int j = 0;
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] == 0 && (j == actual.length || actual[j] != 0))
+                continue; // Degenerate, dropped
+            Assert.assertEquals(expected[i], actual[j++], 0);
+        }
+        Assert.assertEquals(actual.length, j);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d.test;
+
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import agile2d.Triangulator;
+import agile2d.geom.VertexArray;
+
+/**
+ * <b>TestTriangulator</b>
+ * Checks the pure Java triangulator without any OpenGL context: the
+ * triangles must cover exactly the interior of the shape.
+ */
+public class TestTriangulator {
+    final static private double AREA_TOLERANCE = 1e-3;
+
+    private static VertexArray triangulate(Shape shape) {
+        VertexArray array = new VertexArray();
+        new Triangulator().triangulate(shape.getPathIterator(null, 0.1), array);
+        Assert.assertEquals(VertexArray.MODE_TRIANGLES, array.getMode());
+        Assert.assertEquals(0, array.getVertexCount() % 3);
+        return array;
+    }
+
+    private static double area(VertexArray array) {
+        double area = 0;
+        float[] a = new float[2], b = new float[2], c = new float[2];
+        for (int i = 0; i < array.getVertexCount(); i += 3) {
+            array.getVertex(i, a);
+            array.getVertex(i+1, b);
+            array.getVertex(i+2, c);
+            area += Math.abs((b[0]-a[0])*(c[1]-a[1]) - (c[0]-a[0])*(b[1]-a[1])) / 2;
+        }
+        return area;
+    }
+
+    private static boolean covers(VertexArray array, double x, double y) {
+        float[] a = new float[2], b = new float[2], c = new float[2];
+        for (int i = 0; i < array.getVertexCount(); i += 3) {
+            array.getVertex(i, a);
+            array.getVertex(i+1, b);
+            array.getVertex(i+2, c);
+            double d1 = (b[0]-a[0])*(y-a[1]) - (b[1]-a[1])*(x-a[0]);
+            double d2 = (c[0]-b[0])*(y-b[1]) - (c[1]-b[1])*(x-b[0]);
+            double d3 = (a[0]-c[0])*(y-c[1]) - (a[1]-c[1])*(x-c[0]);
+            if ((d1 >= 0 && d2 >= 0 && d3 >= 0) || (d1 <= 0 && d2 <= 0 && d3 <= 0))
+                return true;
+        }
+        return false;
+    }
+
+    // Samples the shape on a grid offset from integer coordinates, so
+    // that no sample lies on an edge.
+    private static void assertSameCoverage(Shape shape, VertexArray array) {
+        java.awt.Rectangle bounds = shape.getBounds();
+        for (double y = bounds.y - 1.3; y < bounds.getMaxY() + 1; y += 2.1) {
+            for (double x = bounds.x - 1.3; x < bounds.getMaxX() + 1; x += 2.1) {
+                Assert.assertEquals("at "+x+","+y, shape.contains(x, y), covers(array, x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testConvex() {
+        Ellipse2D oval = new Ellipse2D.Double(10, 20, 100, 50);
+        VertexArray array = triangulate(oval);
+        assertSameCoverage(oval, array);
+    }
+
+    @Test
+    public void testHole() {
+        GeneralPath path = new GeneralPath(PathIterator.WIND_EVEN_ODD);
+        path.moveTo(0, 0);
+        path.lineTo(100, 0);
+        path.lineTo(100, 100);
+        path.lineTo(0, 100);
+        path.closePath();
+        path.moveTo(25, 25);
+        path.lineTo(75, 25);
+        path.lineTo(75, 75);
+        path.lineTo(25, 75);
+        path.closePath();
+        VertexArray array = triangulate(path);
+        Assert.assertEquals(100*100 - 50*50, area(array), AREA_TOLERANCE);
+        assertSameCoverage(path, array);
+    }
+
+    @Test
+    public void testWindingRules() {
+        // A pentagram: the center is inside for non-zero, outside for even-odd
+        Path2D.Double star = new Path2D.Double(PathIterator.WIND_NON_ZERO);
+        for (int i = 0; i < 5; i++) {
+            double angle = Math.PI / 2 + i * 4 * Math.PI / 5;
+            double x = 100 + 90 * Math.cos(angle);
+            double y = 100 - 90 * Math.sin(angle);
+            if (i == 0)
+                star.moveTo(x, y);
+            else
+                star.lineTo(x, y);
+        }
+        star.closePath();
+        VertexArray nonZero = triangulate(star);
+        Assert.assertTrue(covers(nonZero, 100, 100));
+        assertSameCoverage(star, nonZero);
+
+        star.setWindingRule(PathIterator.WIND_EVEN_ODD);
+        VertexArray evenOdd = triangulate(star);
+        Assert.assertFalse(covers(evenOdd, 100, 100));
+        assertSameCoverage(star, evenOdd);
+        Assert.assertTrue(area(evenOdd) < area(nonZero));
+    }
+
+    @Test
+    public void testSelfIntersecting() {
+        // A bow tie: a left and a right triangle meeting at (50, 50)
+        int[] xPts = { 0, 100, 100, 0 };
+        int[] yPts = { 0, 100, 0, 100 };
+        VertexArray array = new VertexArray();
+        new Triangulator().triangulate(xPts, yPts, 4, PathIterator.WIND_EVEN_ODD, array);
+        Assert.assertEquals(2 * 50 * 100 / 2, area(array), AREA_TOLERANCE);
+        Assert.assertTrue(covers(array, 25, 50));
+        Assert.assertFalse(covers(array, 50, 25));
+    }
+
+    @Test
+    public void testEmpty() {
+        VertexArray array = new VertexArray();
+        Triangulator triangulator = new Triangulator();
+        Assert.assertEquals(0, triangulator.triangulate(new GeneralPath().getPathIterator(null), array));
+        Assert.assertEquals(0, triangulator.triangulate(new int[] { 0, 10 }, new int[] { 0, 10 }, 2,
+                                                        PathIterator.WIND_NON_ZERO, array));
+        Assert.assertEquals(0, array.getVertexCount());
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2012 Rodrigo de Almeida, Jean-Daniel Fekete and Emmanuel Pietriga *
+ *
+ * SPDX-License-Identifier: BSD-4-Clause
+ */
+
+package agile2d.test;
+
+import java.awt.Color;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import agile2d.geom.TransformPathIterator;
+import agile2d.geom.VertexArray;
+import agile2d.geom.VertexArrayList;
+import agile2d.geom.VertexAttributes;
+
+/**
+ * <b>TestVertexArray</b>
+ * Checks the bulk methods of vertex arrays and attributes against their
+ * per-vertex counterparts, the bounds and queries of vertex arrays against
+ * Java2D areas, the packing of vertex array lists and the transformation of
+ * their coordinates.
+ */
+public class TestVertexArray {
+    private static void assertSameVertices(VertexArray expected, VertexArray actual) {
+        Assert.assertEquals(expected.getVertexCount(), actual.getVertexCount());
+        float[] a = new float[2], b = new float[2];
+        for (int i = 0; i < expected.getVertexCount(); i++) {
+            expected.getVertex(i, a);
+            actual.getVertex(i, b);
+            Assert.assertEquals(a[0], b[0], 0);
+            Assert.assertEquals(a[1], b[1], 0);
+        }
+    }
+
+    @Test
+    public void testAddVertices() {
+        float[] xy = new float[1002];
+        for (int i = 0; i < xy.length; i++)
+            xy[i] = i * 0.5f;
+        VertexArray expected = new VertexArray();
+        expected.setMode(VertexArray.MODE_POINTS);
+        for (int i = 1; i < 501; i++)
+            expected.addVertex(xy[2*i], xy[2*i+1]);
+
+        VertexArray array = new VertexArray(4);
+        array.setMode(VertexArray.MODE_POINTS);
+        array.addVertices(xy, 2, 500);
+        assertSameVertices(expected, array);
+
+        FloatBuffer buffer = FloatBuffer.wrap(xy);
+        buffer.position(2);
+        buffer.limit(1002);
+        VertexArray fromBuffer = new VertexArray();
+        fromBuffer.setMode(VertexArray.MODE_POINTS);
+        fromBuffer.setStorage(VertexArray.STORAGE_HEAP);
+        fromBuffer.addVertices(buffer);
+        Assert.assertEquals(1002, buffer.position());
+        assertSameVertices(expected, fromBuffer);
+
+        // Replacing keeps the mode and reuses the buffer
+        FloatBuffer data = array.getDataRef();
+        array.setVertices(xy, 0, 3);
+        Assert.assertEquals(3, array.getVertexCount());
+        Assert.assertEquals(VertexArray.MODE_POINTS, array.getMode());
+        Assert.assertSame(data, array.getDataRef());
+        array.setStorage(VertexArray.STORAGE_SHORT);
+        array.setVertices(xy, 4, 1);
+        Assert.assertEquals(VertexArray.STORAGE_HEAP, array.getStorage());
+        float[] v = new float[2];
+        array.getVertex(0, v);
+        Assert.assertEquals(2f, v[0], 0);
+
+        float[] quad = { 0, 0, 0, 1, 1, 1, 1, 0 };
+        array.clear();
+        array.setMode(VertexArray.MODE_QUADS);
+        array.addQuad(quad);
+        array.getVertex(3, v);
+        Assert.assertEquals(1f, v[0], 0);
+        Assert.assertEquals(0f, v[1], 0);
+    }
+
+    @Test
+    public void testAddColors() {
+        int[] argb = new int[600];
+        for (int i = 0; i < argb.length; i++)
+            argb[i] = 0x80000000 | (i * 0x010203);
+        VertexAttributes expected = new VertexAttributes();
+        for (int i = 0; i < argb.length; i++)
+            expected.addColor(argb[i]);
+        VertexAttributes attributes = new VertexAttributes(1);
+        attributes.addColors(argb, 0, argb.length);
+        Assert.assertEquals(expected.getSize(), attributes.getSize());
+        for (int i = 0; i < argb.length; i++)
+            Assert.assertEquals(expected.getColorValueAt(i), attributes.getColorValueAt(i));
+        Assert.assertEquals(new Color(argb[7], true), attributes.getColorAt(7));
+
+        attributes.setColors(argb, 10, 2);
+        Assert.assertEquals(2, attributes.getSize());
+        Assert.assertEquals(expected.getColorValueAt(11), attributes.getColorValueAt(1));
+    }
+
+    @Test
+    public void testBounds() {
+        VertexArray array = new VertexArray();
+        array.setMode(VertexArray.MODE_TRIANGLES);
+        Assert.assertNull(array.getBounds2D());
+        array.addTriangle(1, 2, 5, -3, 4, 8);
+        Assert.assertEquals(new Rectangle2D.Double(1, -3, 4, 11), array.getBounds2D());
+        array.addVertices(new float[] { -1, 0 }, 0, 1);
+        Assert.assertEquals(-1, array.getBounds2D().getMinX(), 0);
+
+        // Modified in place
+        array.getDataRef().put(0, 10);
+        array.getDataRef().put(6, 0);
+        array.invalidate();
+        Assert.assertEquals(new Rectangle2D.Double(0, -3, 10, 11), array.getBounds2D());
+        array.clear();
+        Assert.assertNull(array.getBounds2D());
+    }
+
+    @Test
+    public void testTriangleQueries() {
+        Random random = new Random(1);
+        int[] modes = { VertexArray.MODE_TRIANGLES, VertexArray.MODE_TRIANGLE_STRIP,
+                        VertexArray.MODE_TRIANGLE_FAN, VertexArray.MODE_QUADS };
+        for (int m = 0; m < modes.length; m++) {
+            VertexArray array = new VertexArray();
+            array.setMode(modes[m]);
+            if (modes[m] == VertexArray.MODE_QUADS) {
+                // OpenGL expects convex quads
+                for (int i = 0; i < 6; i++)
+                    array.addRect(random.nextFloat() * 80, random.nextFloat() * 80,
+                                  random.nextFloat() * 20, random.nextFloat() * 20);
+            }
+            else {
+                for (int i = 0; i < 24; i++)
+                    array.addVertex(random.nextFloat() * 100, random.nextFloat() * 100);
+            }
+            // The union of the triangles, as drawn
+            Area area = new Area();
+            float[] v = new float[6];
+            int n = array.getVertexCount();
+            for (int i = 0; i + 2 < n; i++) {
+                int a = i, b = i + 1, c = i + 2;
+                if (modes[m] == VertexArray.MODE_TRIANGLES && i % 3 != 0)
+                    continue;
+                if (modes[m] == VertexArray.MODE_TRIANGLE_FAN)
+                    a = 0;
+                if (modes[m] == VertexArray.MODE_QUADS) {
+                    if (i % 4 == 1 || i % 4 == 3)
+                        continue;
+                    if (i % 4 == 2) {
+                        a = i - 2;
+                        b = i;
+                        c = i + 1;
+                    }
+                }
+                array.getVertex(a, v);
+                GeneralPath triangle = new GeneralPath();
+                triangle.moveTo(v[0], v[1]);
+                array.getVertex(b, v);
+                triangle.lineTo(v[0], v[1]);
+                array.getVertex(c, v);
+                triangle.lineTo(v[0], v[1]);
+                triangle.closePath();
+                area.add(new Area(triangle));
+            }
+            for (int i = 0; i < 2000; i++) {
+                double x = random.nextDouble() * 120 - 10, y = random.nextDouble() * 120 - 10;
+                double w = random.nextDouble() * 10 + 0.01, h = random.nextDouble() * 10 + 0.01;
+                Assert.assertEquals(area.intersects(x, y, w, h), array.intersects(x, y, w, h));
+                if (array.contains(x, y, w, h))
+                    Assert.assertTrue(area.contains(x, y, w, h));
+                // Points on the edges are ambiguous
+                if (!area.intersects(x - 1e-3, y - 1e-3, 2e-3, 2e-3)
+                    || area.contains(x - 1e-3, y - 1e-3, 2e-3, 2e-3))
+                    Assert.assertEquals(area.contains(x, y), array.contains(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testPackedList() {
+        VertexArrayList list = new VertexArrayList();
+        VertexArray[] copies = new VertexArray[3];
+        int[] modes = { VertexArray.MODE_TRIANGLE_STRIP, VertexArray.MODE_TRIANGLES,
+                        VertexArray.MODE_TRIANGLE_FAN };
+        for (int i = 0; i < 3; i++) {
+            VertexArray v = new VertexArray();
+            copies[i] = new VertexArray();
+            v.setMode(modes[i]);
+            copies[i].setMode(modes[i]);
+            for (int j = 0; j < 3 + i; j++) {
+                v.addVertex(10 * i + j, j % 2);
+                copies[i].addVertex(10 * i + j, j % 2);
+            }
+            list.add(v);
+        }
+        Rectangle2D bounds = list.getBounds2D();
+        list.pack(VertexArray.STORAGE_HEAP);
+        Assert.assertTrue(list.isPacked());
+        Assert.assertEquals(3, list.size());
+        Assert.assertEquals(12, list.getPackedRef().getVertexCount());
+        Assert.assertArrayEquals(new int[] { 4, 5, 6 }, list.getModesRef());
+        Assert.assertArrayEquals(new int[] { 4, 3, 5 }, list.getCountsRef());
+        Assert.assertArrayEquals(new int[] { 0, 4, 7 }, list.getFirstsRef());
+        assertSameVertices(copies[1], list.getVertexArrayAt(0));
+        assertSameVertices(copies[0], list.getVertexArrayAt(1));
+        Assert.assertEquals(VertexArray.MODE_TRIANGLE_FAN, list.getVertexArrayAt(2).getMode());
+        Assert.assertEquals(bounds, list.getBounds2D());
+
+        // Adding an array unpacks the list
+        list.add(copies[0]);
+        Assert.assertFalse(list.isPacked());
+        Assert.assertEquals(4, list.size());
+        assertSameVertices(copies[2], list.getVertexArrayAt(2));
+        list.release();
+        Assert.assertEquals(0, list.size());
+    }
+
+    @Test
+    public void testTransformedIterators() {
+        AffineTransform at = AffineTransform.getRotateInstance(0.3, 5, 7);
+        at.scale(2, 0.5);
+        float[] xy = new float[2 * 1000];
+        Random random = new Random(2);
+        for (int i = 0; i < xy.length; i++)
+            xy[i] = random.nextFloat() * 100;
+        int[] modes = { VertexArray.MODE_POINTS, VertexArray.MODE_LINES, VertexArray.MODE_LINE_STRIP,
+                        VertexArray.MODE_LINE_LOOP, VertexArray.MODE_TRIANGLES,
+                        VertexArray.MODE_TRIANGLE_STRIP, VertexArray.MODE_TRIANGLE_FAN,
+                        VertexArray.MODE_QUADS, VertexArray.MODE_QUAD_STRIP, VertexArray.MODE_POLYGON };
+        for (int m = 0; m < modes.length; m++) {
+            VertexArray array = new VertexArray();
+            array.setMode(modes[m]);
+            array.addVertices(xy, 0, 1000);
+            PathIterator expected = new TransformPathIterator(array.getPathIterator(null), at);
+            PathIterator actual = array.getPathIterator(at);
+            float[] a = new float[6], b = new float[6];
+            int segments = 0;
+            while (!expected.isDone()) {
+                Assert.assertFalse(actual.isDone());
+                Assert.assertEquals(expected.currentSegment(a), actual.currentSegment(b));
+                Assert.assertEquals(a[0], b[0], 0);
+                Assert.assertEquals(a[1], b[1], 0);
+                expected.next();
+                actual.next();
+                segments++;
+            }
+            Assert.assertTrue(actual.isDone());
+            Assert.assertTrue(segments >= 1000);
+        }
+
+        float[] expected = new float[xy.length];
+        at.transform(xy, 0, expected, 0, 1000);
+        VertexArray array = new VertexArray();
+        array.setMode(VertexArray.MODE_POINTS);
+        array.addVertices(xy, 0, 1000);
+        float[] actual = new float[xy.length + 2];
+        array.getCoords(10, 990, actual, 2, at);
+        Assert.assertEquals(expected[20], actual[2], 0);
+        Assert.assertEquals(expected[xy.length - 1], actual[2 + 2 * 989 + 1], 0);
+
+        array.transform(at);
+        float[] v = new float[2];
+        array.getVertex(999, v);
+        Assert.assertEquals(expected[xy.length - 2], v[0], 0);
+        Rectangle2D bounds = array.getBounds2D();
+        Assert.assertTrue(bounds.getMinX() <= v[0] && v[0] <= bounds.getMaxX());
+        FloatBuffer buffer = FloatBuffer.wrap(xy.clone());
+        TransformPathIterator.transform(at, buffer, buffer.duplicate(), 1000);
+        Assert.assertEquals(2000, buffer.position());
+        Assert.assertEquals(expected[7], buffer.get(7), 0);
+    }
+}